@@ -0,0 +1,245 @@
+package com.randomlake.library.repository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import com.randomlake.library.dto.PatronDueItems;
+import com.randomlake.library.dto.ReportLoanPatronMedia;
+import com.randomlake.library.enums.ItemStatus;
+import com.randomlake.library.enums.LoanStatus;
+import com.randomlake.library.model.Loan;
+import com.randomlake.library.model.Media;
+import com.randomlake.library.model.Patron;
+import de.flapdoodle.embed.mongo.commands.ServerAddress;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+
+/*
+ * Guards the scheduler queries on the loans collection against silently falling back to a
+ * collection scan, and runs the circulation report pipeline on a real server. The indexes come
+ * from the annotations on Loan, and the plans are read from the database profiler after running
+ * the real repository methods.
+ */
+public class LoanRepositoryQueryPlanTest {
+
+  private static final String DATABASE = "library-it";
+
+  private static TransitionWalker.ReachedState<RunningMongodProcess> mongod;
+  private static MongoClient client;
+  private static MongoTemplate mongoTemplate;
+  private static LoanRepository loanRepository;
+
+  private LocalDate today;
+
+  @BeforeAll
+  static void startMongo() {
+    mongod = Mongod.instance().start(Version.Main.V7_0);
+    ServerAddress address = mongod.current().getServerAddress();
+    client = MongoClients.create("mongodb://" + address.getHost() + ":" + address.getPort());
+    mongoTemplate = new MongoTemplate(client, DATABASE);
+
+    // Create exactly the indexes declared on the model
+    MongoMappingContext mappingContext =
+        (MongoMappingContext) mongoTemplate.getConverter().getMappingContext();
+    IndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+    IndexOperations indexOps = mongoTemplate.indexOps(Loan.class);
+    resolver.resolveIndexFor(Loan.class).forEach(indexOps::ensureIndex);
+
+    loanRepository =
+        new MongoRepositoryFactory(mongoTemplate)
+            .getRepository(
+                LoanRepository.class,
+                RepositoryFragments.just(new LoanRepositoryCustomImpl(mongoTemplate)));
+  }
+
+  @AfterAll
+  static void stopMongo() {
+    if (client != null) {
+      client.close();
+    }
+    if (mongod != null) {
+      mongod.close();
+    }
+  }
+
+  @BeforeEach
+  void setUp() {
+    today = LocalDate.now();
+    mongoTemplate.remove(new Query(), Loan.class);
+
+    mongoTemplate.insert(loan(1, 10, ItemStatus.CHECKED_OUT, today.minusDays(45)));
+    mongoTemplate.insert(loan(2, 11, ItemStatus.RETURNED, today.minusDays(45)));
+    mongoTemplate.insert(loan(3, 12, ItemStatus.CHECKED_OUT, today.plusDays(3)));
+
+    // Start each test with an empty profile so only its own queries are inspected
+    MongoDatabase database = client.getDatabase(DATABASE);
+    database.runCommand(new Document("profile", 0));
+    database.getCollection("system.profile").drop();
+    database.runCommand(new Document("profile", 2));
+  }
+
+  @Test
+  public void findLoansWithOverdueItems_matchesCheckedOutItemsOnly() {
+    List<Loan> loans =
+        loanRepository.findLoansWithOverdueItems(today.minusDays(30), ItemStatus.CHECKED_OUT);
+
+    assertEquals(List.of(1), loans.stream().map(Loan::getLoanId).toList());
+  }
+
+  @Test
+  public void findLoansWithOverdueItems_usesCompoundIndex() {
+    loanRepository.findLoansWithOverdueItems(today.minusDays(30), ItemStatus.CHECKED_OUT);
+
+    String plan = lastLoansQueryPlan();
+    assertTrue(plan.startsWith("IXSCAN"), plan);
+    assertTrue(plan.contains("items.status") && plan.contains("items.dueDate"), plan);
+  }
+
+  @Test
+  public void findActiveLoansByDueDateAndItemStatus_usesIndex() {
+    loanRepository.findActiveLoansByDueDateAndItemStatus(
+        today.plusDays(3), LoanStatus.ACTIVE, ItemStatus.CHECKED_OUT);
+
+    String plan = lastLoansQueryPlan();
+    assertFalse(plan.contains("COLLSCAN"), plan);
+  }
+
+  @Test
+  public void streamLoansWithOverdueItems_usesIndex() {
+    try (Stream<Loan> loans =
+        loanRepository.streamLoansWithOverdueItems(today.minusDays(30), 0, 100)) {
+      assertEquals(List.of(1), loans.map(Loan::getLoanId).toList());
+    }
+
+    String plan = lastLoansQueryPlan();
+    assertFalse(plan.contains("COLLSCAN"), plan);
+  }
+
+  @Test
+  public void reportLoanPatronMedia_joinsPatronAndMediaPerItem() {
+    mongoTemplate.remove(new Query(), Patron.class);
+    mongoTemplate.remove(new Query(), Media.class);
+    Patron patron = new Patron();
+    patron.setPatronId(1);
+    patron.setPatronName("John Q. Public");
+    mongoTemplate.insert(patron);
+    Media media = new Media();
+    media.setMediaId(10);
+    media.setMediaTitle("Shogun");
+    media.setAuthorName("James Clavell");
+    mongoTemplate.insert(media);
+
+    List<ReportLoanPatronMedia> page =
+        loanRepository.getReportLoanPatronMedia(Optional.empty(), 0, 10);
+    List<ReportLoanPatronMedia> exported;
+    try (Stream<ReportLoanPatronMedia> stream =
+        loanRepository.streamReportLoanPatronMedia(Optional.of(1), 100)) {
+      exported = stream.toList();
+    }
+
+    assertEquals(List.of(1, 2, 3), page.stream().map(ReportLoanPatronMedia::getLoanId).toList());
+    ReportLoanPatronMedia first = page.get(0);
+    assertEquals("John Q. Public", first.getPatronName());
+    assertEquals("Shogun", first.getItems().get(0).getMediaDetails().getMediaTitle());
+    assertEquals("James Clavell", first.getItems().get(0).getMediaDetails().getAuthorName());
+    // Loan 2's media was never added, so its item has no details
+    assertNull(page.get(1).getItems().get(0).getMediaDetails());
+    assertEquals(1, exported.size());
+    assertEquals("Shogun", exported.get(0).getItems().get(0).getMediaDetails().getMediaTitle());
+  }
+
+  @Test
+  public void streamDueItemsByPatron_joinsMediaTitle() {
+    mongoTemplate.remove(new Query(), Media.class);
+    Media media = new Media();
+    media.setMediaId(12);
+    media.setMediaTitle("Tai-Pan");
+    media.setAuthorName("James Clavell");
+    mongoTemplate.insert(media);
+
+    List<PatronDueItems> due;
+    try (Stream<PatronDueItems> stream =
+        loanRepository.streamDueItemsByPatron(List.of(today.plusDays(3)))) {
+      due = stream.toList();
+    }
+
+    assertEquals(1, due.size());
+    assertEquals(3, due.get(0).getPatronId());
+    PatronDueItems.DueItem item = due.get(0).getItems().get(0);
+    assertEquals(12, item.getMediaId());
+    assertEquals("Tai-Pan", item.getMediaTitle());
+  }
+
+  @Test
+  public void applyItemReturns_completesLoanWhoseItemsComeBackAtTwoDesks() {
+    Loan loan = loan(4, 20, ItemStatus.CHECKED_OUT, today.plusDays(7));
+    Loan.LoanItem second = new Loan.LoanItem();
+    second.setMediaId(21);
+    second.setDueDate(today.plusDays(7));
+    second.setStatus(ItemStatus.CHECKED_OUT);
+    loan.getItems().add(second);
+    mongoTemplate.insert(loan);
+
+    // Each desk read the loan with both items out, so neither could see the loan complete
+    assertEquals(1, loanRepository.applyItemReturns(Map.of(4, List.of(20)), today));
+    assertEquals(LoanStatus.ACTIVE, loanRepository.findByLoanId(4).orElseThrow().getStatus());
+    assertEquals(1, loanRepository.applyItemReturns(Map.of(4, List.of(21)), today));
+
+    Loan returned = loanRepository.findByLoanId(4).orElseThrow();
+    assertEquals(LoanStatus.COMPLETED, returned.getStatus());
+    assertTrue(
+        returned.getItems().stream().allMatch(item -> item.getStatus() == ItemStatus.RETURNED));
+    // A loan that is no longer active matches nothing
+    assertEquals(0, loanRepository.applyItemReturns(Map.of(4, List.of(21)), today));
+  }
+
+  private String lastLoansQueryPlan() {
+    Document entry =
+        client
+            .getDatabase(DATABASE)
+            .getCollection("system.profile")
+            .find(new Document("ns", DATABASE + ".loans").append("op", "query"))
+            .sort(new Document("ts", -1))
+            .first();
+    assertNotNull(entry, "No query on loans was profiled");
+    return entry.getString("planSummary");
+  }
+
+  private static Loan loan(int loanId, int mediaId, ItemStatus itemStatus, LocalDate dueDate) {
+    Loan.LoanItem item = new Loan.LoanItem();
+    item.setMediaId(mediaId);
+    item.setCheckoutDate(dueDate.minusDays(14));
+    item.setDueDate(dueDate);
+    item.setStatus(itemStatus);
+
+    Loan loan = new Loan();
+    loan.setLoanId(loanId);
+    loan.setPatronId(loanId);
+    loan.setStatus(LoanStatus.ACTIVE);
+    loan.setItems(new ArrayList<>(List.of(item)));
+    return loan;
+  }
+}
@@ -0,0 +1,85 @@
+package com.randomlake.library.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+/*
+ * Bounded read-through cache of entities keyed by their numeric business ID. Entries expire a
+ * fixed time after they were loaded, and the least used ones are evicted once the cache is full.
+ * Callers always get their own copy, since services modify the entities they look up before
+ * saving them. Every write to a cached entity must invalidate its entry; an invalidation issued
+ * while the same key is being loaded waits for the load and then removes the result, so a write
+ * cannot be overtaken by a read that started before it.
+ */
+public abstract class LookupCache<T> {
+
+  private final String name;
+  private final Cache<Integer, T> cache;
+  private final UnaryOperator<T> copier;
+
+  protected LookupCache(String name, long maximumSize, Duration ttl, UnaryOperator<T> copier) {
+    this.name = name;
+    this.copier = copier;
+    this.cache =
+        Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(ttl).recordStats().build();
+  }
+
+  // Copies an entity by mapping it to a BSON document and back, as a round trip to Mongo would
+  protected static <T> UnaryOperator<T> copyThrough(MongoConverter converter, Class<T> type) {
+    return entity -> {
+      Document document = new Document();
+      converter.write(entity, document);
+      return converter.read(type, document);
+    };
+  }
+
+  /**
+   * Returns a copy of the cached entity, loading it on a miss. Absent entities are not cached.
+   *
+   * @param id The business ID of the entity.
+   * @param loader Loads the entity from the database on a miss.
+   * @return A copy of the entity, or an empty Optional if it does not exist.
+   */
+  public Optional<T> get(int id, IntFunction<Optional<T>> loader) {
+    T cached = cache.get(id, key -> loader.apply(key).orElse(null));
+    return Optional.ofNullable(cached).map(copier);
+  }
+
+  public void invalidate(int id) {
+    cache.invalidate(id);
+  }
+
+  public void invalidateAll(Collection<Integer> ids) {
+    cache.invalidateAll(ids);
+  }
+
+  // For writes that do not know which entities they changed, such as a bulk patch
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  // Runs pending maintenance such as size-based eviction, which is otherwise done lazily
+  public void cleanUp() {
+    cache.cleanUp();
+  }
+
+  public long estimatedSize() {
+    return cache.estimatedSize();
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+}
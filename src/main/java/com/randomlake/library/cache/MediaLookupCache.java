@@ -0,0 +1,26 @@
+package com.randomlake.library.cache;
+
+import com.randomlake.library.model.Media;
+import java.time.Duration;
+import java.util.function.UnaryOperator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.stereotype.Component;
+
+// Cache in front of MediaRepository.findByMediaId
+@Component
+public class MediaLookupCache extends LookupCache<Media> {
+
+  @Autowired
+  public MediaLookupCache(
+      MongoConverter mongoConverter,
+      @Value("${cache.lookup.maximum.size:10000}") long maximumSize,
+      @Value("${cache.lookup.ttl.seconds:300}") long ttlSeconds) {
+    this(maximumSize, Duration.ofSeconds(ttlSeconds), copyThrough(mongoConverter, Media.class));
+  }
+
+  public MediaLookupCache(long maximumSize, Duration ttl, UnaryOperator<Media> copier) {
+    super("media", maximumSize, ttl, copier);
+  }
+}
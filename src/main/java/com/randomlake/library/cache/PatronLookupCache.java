@@ -0,0 +1,26 @@
+package com.randomlake.library.cache;
+
+import com.randomlake.library.model.Patron;
+import java.time.Duration;
+import java.util.function.UnaryOperator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.stereotype.Component;
+
+// Cache in front of PatronRepository.findByPatronId
+@Component
+public class PatronLookupCache extends LookupCache<Patron> {
+
+  @Autowired
+  public PatronLookupCache(
+      MongoConverter mongoConverter,
+      @Value("${cache.lookup.maximum.size:10000}") long maximumSize,
+      @Value("${cache.lookup.ttl.seconds:300}") long ttlSeconds) {
+    this(maximumSize, Duration.ofSeconds(ttlSeconds), copyThrough(mongoConverter, Patron.class));
+  }
+
+  public PatronLookupCache(long maximumSize, Duration ttl, UnaryOperator<Patron> copier) {
+    super("patron", maximumSize, ttl, copier);
+  }
+}
@@ -1,12 +1,21 @@
 package com.randomlake.library.config;
 
 import com.randomlake.library.model.ApplicationUser;
+import com.randomlake.library.model.Loan;
+import com.randomlake.library.model.Media;
+import com.randomlake.library.model.Patron;
 import com.randomlake.library.repository.UserRepository;
+import com.randomlake.library.service.CirculationLedgerService;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 @Configuration
@@ -32,4 +41,38 @@ public class DataInitializer {
       }
     };
   }
+
+  /* Documents written before Media, Patron and Loan became versioned have no version field. Read
+   * back with a null version they would look new, and saving them would attempt an insert, so
+   * they are given version 0 once at startup.
+   */
+  @Bean
+  public CommandLineRunner backfillVersions(MongoTemplate mongoTemplate) {
+    return args -> {
+      for (Class<?> type : List.of(Media.class, Patron.class, Loan.class)) {
+        long updated =
+            mongoTemplate
+                .updateMulti(
+                    new Query(Criteria.where("version").exists(false)),
+                    new Update().set("version", 0L),
+                    type)
+                .getModifiedCount();
+        if (updated > 0) {
+          log.info("Set initial version on {} {} documents", updated, type.getSimpleName());
+        }
+      }
+    };
+  }
+
+  // Loans used to embed their transaction log; move any still holding one into the ledger
+  @Bean
+  public CommandLineRunner migrateLoanTransactionLogs(
+      CirculationLedgerService circulationLedgerService) {
+    return args -> {
+      int migrated = circulationLedgerService.migrateEmbeddedLogs();
+      if (migrated > 0) {
+        log.info("Moved the transaction logs of {} loans to the circulation ledger", migrated);
+      }
+    };
+  }
 }
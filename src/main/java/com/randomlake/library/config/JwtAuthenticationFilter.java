@@ -1,56 +1,62 @@
 package com.randomlake.library.config;
 
+import com.randomlake.library.service.CustomUserDetailsService;
 import com.randomlake.library.util.JwtUtil;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
   private final JwtUtil jwtUtil;
-  private final UserDetailsService userDetailsService;
+  private final CustomUserDetailsService userDetailsService;
+  private static final Logger log = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
 
-  public JwtAuthenticationFilter(JwtUtil jwtUtil, UserDetailsService userDetailsService) {
+  public JwtAuthenticationFilter(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService) {
     this.jwtUtil = jwtUtil;
     this.userDetailsService = userDetailsService;
   }
 
+  /* The token is verified once and then recognised by its hash, and the user details come from
+   * a short-lived cache, so an authenticated request normally costs two in-memory lookups.
+   */
   @Override
   protected void doFilterInternal(
       HttpServletRequest request, HttpServletResponse response, FilterChain chain)
       throws ServletException, IOException {
 
-    System.out.println("JwtAuthenticationFilter invoked");
-
     String token = resolveToken(request);
-    if (token != null && jwtUtil.validateToken(token)) {
-      String username = jwtUtil.extractUsername(token);
-
-      System.out.println("Token valid. Username: " + username);
-
-      UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+    if (token != null) {
+      Optional<String> username = jwtUtil.verifyAndExtractUsername(token);
+      if (username.isPresent()) {
+        try {
+          UserDetails userDetails = userDetailsService.loadAuthenticatedUser(username.get());
 
-      // Set the authentication context
-      SecurityContextHolder.getContext()
-          .setAuthentication(
-              new UsernamePasswordAuthenticationToken(
-                  userDetails, null, userDetails.getAuthorities()));
+          // Set the authentication context
+          SecurityContextHolder.getContext()
+              .setAuthentication(
+                  new UsernamePasswordAuthenticationToken(
+                      userDetails, null, userDetails.getAuthorities()));
+        } catch (UsernameNotFoundException e) {
+          log.debug("Token subject {} no longer exists", username.get());
+        }
+      }
     }
     chain.doFilter(request, response);
   }
 
   private String resolveToken(HttpServletRequest request) {
     String bearerToken = request.getHeader("Authorization");
-
-    System.out.println("Authorization Header: " + bearerToken); // Debug log for incoming token
-
     if (bearerToken != null && bearerToken.startsWith("Bearer ")) {
       return bearerToken.substring(7);
     }
@@ -10,7 +10,6 @@ import org.springframework.security.config.annotation.authentication.configurati
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
@@ -35,8 +34,8 @@ public class SecurityConfig {
   }
 
   @Bean
-  public SecurityFilterChain securityFilterChain(
-      HttpSecurity http, JwtUtil jwtUtil, UserDetailsService userDetailsService) throws Exception {
+  public SecurityFilterChain securityFilterChain(HttpSecurity http, JwtUtil jwtUtil)
+      throws Exception {
 
     JwtAuthenticationFilter jwtAuthenticationFilter =
         new JwtAuthenticationFilter(jwtUtil, userDetailsService);
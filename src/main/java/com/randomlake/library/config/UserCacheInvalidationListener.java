@@ -0,0 +1,29 @@
+package com.randomlake.library.config;
+
+import com.randomlake.library.model.ApplicationUser;
+import com.randomlake.library.service.CustomUserDetailsService;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+// Drops cached user details whenever a user is written, including a rename or role change
+@Component
+public class UserCacheInvalidationListener extends AbstractMongoEventListener<ApplicationUser> {
+
+  private final CustomUserDetailsService userDetailsService;
+
+  public UserCacheInvalidationListener(CustomUserDetailsService userDetailsService) {
+    this.userDetailsService = userDetailsService;
+  }
+
+  @Override
+  public void onAfterSave(AfterSaveEvent<ApplicationUser> event) {
+    userDetailsService.evictAuthenticatedUsers();
+  }
+
+  @Override
+  public void onAfterDelete(AfterDeleteEvent<ApplicationUser> event) {
+    userDetailsService.evictAuthenticatedUsers();
+  }
+}
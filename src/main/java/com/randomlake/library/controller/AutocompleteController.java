@@ -0,0 +1,40 @@
+package com.randomlake.library.controller;
+
+import com.randomlake.library.search.AutocompleteTrie.Suggestion;
+import com.randomlake.library.service.AutocompleteService;
+import java.util.List;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+// Suggest-as-you-type for the staff desk; answered from memory without touching the database
+@RestController
+@RequestMapping("/api/autocomplete")
+public class AutocompleteController {
+
+  private final AutocompleteService autocompleteService;
+
+  public AutocompleteController(AutocompleteService autocompleteService) {
+    this.autocompleteService = autocompleteService;
+  }
+
+  @GetMapping("/titles")
+  public ResponseEntity<List<Suggestion>> suggestTitles(
+      @RequestParam String prefix, @RequestParam(defaultValue = "10") int limit) {
+    return ResponseEntity.ok(autocompleteService.suggestTitles(prefix, limit));
+  }
+
+  @GetMapping("/authors")
+  public ResponseEntity<List<Suggestion>> suggestAuthors(
+      @RequestParam String prefix, @RequestParam(defaultValue = "10") int limit) {
+    return ResponseEntity.ok(autocompleteService.suggestAuthors(prefix, limit));
+  }
+
+  @GetMapping("/patrons")
+  public ResponseEntity<List<Suggestion>> suggestPatronNames(
+      @RequestParam String prefix, @RequestParam(defaultValue = "10") int limit) {
+    return ResponseEntity.ok(autocompleteService.suggestPatronNames(prefix, limit));
+  }
+}
@@ -0,0 +1,45 @@
+package com.randomlake.library.controller;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.randomlake.library.cache.LookupCache;
+import com.randomlake.library.cache.MediaLookupCache;
+import com.randomlake.library.cache.PatronLookupCache;
+import com.randomlake.library.dto.CacheStatsResponse;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/cache")
+public class CacheController {
+
+  private final List<LookupCache<?>> caches;
+
+  public CacheController(MediaLookupCache mediaLookupCache, PatronLookupCache patronLookupCache) {
+    this.caches = List.of(mediaLookupCache, patronLookupCache);
+  }
+
+  // Hit, miss and eviction counts of the lookup caches since startup
+  @GetMapping("/stats")
+  public ResponseEntity<List<CacheStatsResponse>> getCacheStats() {
+    return ResponseEntity.ok(caches.stream().map(this::toResponse).toList());
+  }
+
+  private CacheStatsResponse toResponse(LookupCache<?> cache) {
+    CacheStats stats = cache.stats();
+    CacheStatsResponse response = new CacheStatsResponse();
+    response.setCacheName(cache.getName());
+    response.setSize(cache.estimatedSize());
+    response.setHitCount(stats.hitCount());
+    response.setMissCount(stats.missCount());
+    response.setHitRate(stats.hitRate());
+    response.setEvictionCount(stats.evictionCount());
+    response.setLoadFailureCount(stats.loadFailureCount());
+    response.setAverageLoadPenaltyMillis(
+        stats.averageLoadPenalty() / TimeUnit.MILLISECONDS.toNanos(1));
+    return response;
+  }
+}
@@ -1,25 +1,37 @@
 package com.randomlake.library.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.randomlake.library.dto.CardResponse;
 import com.randomlake.library.dto.CardStatusUpdateRequest;
+import com.randomlake.library.dto.PageResponse;
 import com.randomlake.library.mapper.CardMapper;
 import com.randomlake.library.model.Card;
 import com.randomlake.library.service.CardService;
+import com.randomlake.library.util.ConditionalRequests;
+import com.randomlake.library.util.NdjsonWriter;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/cards")
 public class CardController {
 
+  private static final String ETAG_SCOPE = "card";
+
   private final CardService cardService;
+  private final ObjectMapper objectMapper;
 
-  public CardController(CardService cardService) {
+  public CardController(CardService cardService, ObjectMapper objectMapper) {
     this.cardService = cardService;
+    this.objectMapper = objectMapper;
   }
 
   @GetMapping
@@ -30,11 +42,37 @@ public class CardController {
     return new ResponseEntity<>(dtoList, HttpStatus.OK);
   }
 
+  // Keyset-paginated listing; pass nextCursor from the previous page to fetch the next one
+  @GetMapping("/page")
+  public ResponseEntity<PageResponse<CardResponse>> getCardsPage(
+      @RequestParam(required = false) String cursor, @RequestParam(required = false) Integer size) {
+    PageResponse<Card> page = cardService.getCardPage(cursor, size);
+    return ResponseEntity.ok(page.map(CardMapper::toCardResponse));
+  }
+
+  // Full export as newline-delimited JSON, written as the collection is read
+  @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamCards() {
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .body(
+            NdjsonWriter.write(
+                cardService::streamAllCards, CardMapper::toCardResponse, objectMapper));
+  }
+
+  // Sent with ETag and Last-Modified; a request whose validators still match gets 304
   @GetMapping("/{cardId}")
-  public ResponseEntity<CardResponse> getCardByID(@PathVariable int cardId) {
+  public ResponseEntity<CardResponse> getCardByID(
+      @PathVariable int cardId, HttpServletRequest request) {
+    Optional<ResponseEntity<CardResponse>> notModified =
+        ConditionalRequests.checkNotModified(
+            request, ETAG_SCOPE, cardId, () -> cardService.getCardLastUpdateDate(cardId));
+    if (notModified.isPresent()) {
+      return notModified.get();
+    }
     Card card = cardService.getCardById(cardId);
     CardResponse response = CardMapper.toCardResponse(card);
-    return new ResponseEntity<>(response, HttpStatus.OK);
+    return ConditionalRequests.ok(response, ETAG_SCOPE, cardId, card.getLastUpdateDate());
   }
 
   @GetMapping("/patron/{patronId}")
@@ -59,11 +97,18 @@ public class CardController {
     return ResponseEntity.status(HttpStatus.CREATED).body(savedCard);
   }
 
+  // With If-Match the status only changes if the card has not changed since that ETag
   @PutMapping("/{cardId}/status")
   public ResponseEntity<CardResponse> updateCardStatus(
-      @PathVariable int cardId, @Valid @RequestBody CardStatusUpdateRequest request) {
-    Card card = cardService.updateCardStatus(cardId, request.getNewStatus());
+      @PathVariable int cardId,
+      @Valid @RequestBody CardStatusUpdateRequest request,
+      HttpServletRequest httpRequest) {
+    Card card =
+        cardService.updateCardStatus(
+            cardId,
+            request.getNewStatus(),
+            ConditionalRequests.ifMatch(httpRequest, ETAG_SCOPE, cardId));
     CardResponse updatedCard = CardMapper.toCardResponse(card);
-    return ResponseEntity.ok(updatedCard);
+    return ConditionalRequests.ok(updatedCard, ETAG_SCOPE, cardId, card.getLastUpdateDate());
   }
 }
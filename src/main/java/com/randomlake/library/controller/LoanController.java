@@ -2,6 +2,8 @@ package com.randomlake.library.controller;
 
 import com.randomlake.library.dto.LoanActionRequest;
 import com.randomlake.library.dto.LoanResponse;
+import com.randomlake.library.dto.PageResponse;
+import com.randomlake.library.dto.TransactionLogResponse;
 import com.randomlake.library.dto.TransactionResponse;
 import com.randomlake.library.service.LoanService;
 import jakarta.validation.Valid;
@@ -46,6 +48,14 @@ public class LoanController {
     return ResponseEntity.ok(loans);
   }
 
+  @GetMapping("/{loanId}/transactions")
+  public ResponseEntity<PageResponse<TransactionLogResponse>> getLoanTransactions(
+      @PathVariable int loanId,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(required = false) Integer size) {
+    return ResponseEntity.ok(loanService.getLoanLedgerPage(loanId, cursor, size));
+  }
+
   @DeleteMapping("/history/loan/{loanId}")
   public ResponseEntity<Void> deleteLoanById(@PathVariable int loanId) {
     loanService.deleteLoanById(loanId);
@@ -1,23 +1,43 @@
 package com.randomlake.library.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.randomlake.library.dto.BulkPatchRequest;
+import com.randomlake.library.dto.BulkPatchResponse;
+import com.randomlake.library.dto.MediaIntakeResult;
 import com.randomlake.library.dto.MediaRequest;
 import com.randomlake.library.dto.MediaResponse;
+import com.randomlake.library.dto.PageResponse;
+import com.randomlake.library.dto.SearchResponse;
+import com.randomlake.library.enums.MediaStatus;
 import com.randomlake.library.mapper.MediaMapper;
 import com.randomlake.library.model.Media;
+import com.randomlake.library.service.MediaIntakeService;
+import com.randomlake.library.service.MediaSearchService;
 import com.randomlake.library.service.MediaService;
+import com.randomlake.library.util.ConditionalRequests;
+import com.randomlake.library.util.NdjsonWriter;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/collection/media")
 public class MediaController {
 
+  private static final String ETAG_SCOPE = "media";
+
   @Autowired private MediaService mediaService;
+  @Autowired private MediaSearchService mediaSearchService;
+  @Autowired private MediaIntakeService mediaIntakeService;
+  @Autowired private ObjectMapper objectMapper;
 
   @GetMapping
   public ResponseEntity<List<MediaResponse>> getAllMedia() {
@@ -26,14 +46,52 @@ public class MediaController {
     return new ResponseEntity<>(mediaResponses, HttpStatus.OK);
   }
 
+  // Keyset-paginated listing; pass nextCursor from the previous page to fetch the next one
+  @GetMapping("/page")
+  public ResponseEntity<PageResponse<MediaResponse>> getMediaPage(
+      @RequestParam(required = false) String cursor, @RequestParam(required = false) Integer size) {
+    PageResponse<Media> page = mediaService.getMediaPage(cursor, size);
+    return ResponseEntity.ok(page.map(MediaMapper::toDto));
+  }
+
+  // Full export as newline-delimited JSON, written as the collection is read
+  @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamMedia() {
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .body(NdjsonWriter.write(mediaService::streamAllMedia, MediaMapper::toDto, objectMapper));
+  }
+
+  // Ranked search over title, author, classification and publisher; words may be partial
+  @GetMapping("/search")
+  public ResponseEntity<SearchResponse<MediaResponse>> searchMedia(
+      @RequestParam("q") String query,
+      @RequestParam(required = false) String mediaType,
+      @RequestParam(required = false) String mediaFormat,
+      @RequestParam(required = false) MediaStatus status,
+      @RequestParam(required = false) Integer page,
+      @RequestParam(required = false) Integer size) {
+    SearchResponse<Media> results =
+        mediaSearchService.search(query, mediaType, mediaFormat, status, page, size);
+    return ResponseEntity.ok(results.map(MediaMapper::toDto));
+  }
+
+  // Sent with ETag and Last-Modified; a request whose validators still match gets 304
   @GetMapping("/{mediaId}")
-  public ResponseEntity<MediaResponse> getMediaByID(@PathVariable int mediaId) {
+  public ResponseEntity<MediaResponse> getMediaByID(
+      @PathVariable int mediaId, HttpServletRequest request) {
+    Optional<ResponseEntity<MediaResponse>> notModified =
+        ConditionalRequests.checkNotModified(
+            request, ETAG_SCOPE, mediaId, () -> mediaService.getMediaLastUpdateDate(mediaId));
+    if (notModified.isPresent()) {
+      return notModified.get();
+    }
     Media media = mediaService.getMediaById(mediaId);
     if (media == null) {
       return ResponseEntity.notFound().build();
     }
     MediaResponse mediaResponse = MediaMapper.toDto(media);
-    return ResponseEntity.ok(mediaResponse);
+    return ConditionalRequests.ok(mediaResponse, ETAG_SCOPE, mediaId, media.getLastUpdateDate());
   }
 
   @GetMapping("/author/{authorName}")
@@ -85,21 +143,55 @@ public class MediaController {
     return new ResponseEntity<>(mediaResponse, HttpStatus.CREATED);
   }
 
+  // Bulk intake of new acquisitions: a JSON array or NDJSON in, one result line per row out
+  @PostMapping(
+      value = "/bulk",
+      consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+      produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> addMediaBulk(HttpServletRequest request) {
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .body(
+            NdjsonWriter.<MediaIntakeResult>produce(
+                sink -> mediaIntakeService.ingest(request.getInputStream(), sink), objectMapper));
+  }
+
+  // With If-Match the update only goes ahead if the item has not changed since that ETag
   @PutMapping("/{mediaId}")
   public ResponseEntity<MediaResponse> updateMedia(
-      @PathVariable("mediaId") int mediaId, @Valid @RequestBody MediaRequest mediaRequest) {
+      @PathVariable("mediaId") int mediaId,
+      @Valid @RequestBody MediaRequest mediaRequest,
+      HttpServletRequest request) {
     Media mediaDetails = MediaMapper.toEntity(mediaRequest);
-    Media updatedMedia = mediaService.updateMediaFull(mediaId, mediaDetails);
+    Media updatedMedia =
+        mediaService.updateMediaFull(
+            mediaId, mediaDetails, ConditionalRequests.ifMatch(request, ETAG_SCOPE, mediaId));
     MediaResponse mediaResponse = MediaMapper.toDto(updatedMedia);
-    return ResponseEntity.ok(mediaResponse);
+    return ConditionalRequests.ok(
+        mediaResponse, ETAG_SCOPE, mediaId, updatedMedia.getLastUpdateDate());
+  }
+
+  // Bulk PATCH: the same updates applied to every item matching the filter in one call
+  @PatchMapping
+  public ResponseEntity<BulkPatchResponse> patchUpdateMediaMatching(
+      @Valid @RequestBody BulkPatchRequest bulkPatchRequest) {
+    return ResponseEntity.ok(
+        BulkPatchResponse.of(
+            mediaService.updateMediaMatching(
+                bulkPatchRequest.getFilter(), bulkPatchRequest.getUpdates())));
   }
 
   @PatchMapping("/{mediaId}")
   public ResponseEntity<MediaResponse> patchUpdateMedia(
-      @PathVariable("mediaId") int mediaId, @RequestBody Map<String, Object> updates) {
-    Media patchUpdatedMedia = mediaService.updateMediaPartial(mediaId, updates);
+      @PathVariable("mediaId") int mediaId,
+      @RequestBody Map<String, Object> updates,
+      HttpServletRequest request) {
+    Media patchUpdatedMedia =
+        mediaService.updateMediaPartial(
+            mediaId, updates, ConditionalRequests.ifMatch(request, ETAG_SCOPE, mediaId));
     MediaResponse mediaResponse = MediaMapper.toDto(patchUpdatedMedia);
-    return ResponseEntity.ok(mediaResponse);
+    return ConditionalRequests.ok(
+        mediaResponse, ETAG_SCOPE, mediaId, patchUpdatedMedia.getLastUpdateDate());
   }
 
   @DeleteMapping("/{mediaId}")
@@ -1,25 +1,45 @@
 package com.randomlake.library.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.randomlake.library.dto.BulkPatchRequest;
+import com.randomlake.library.dto.BulkPatchResponse;
+import com.randomlake.library.dto.PageResponse;
+import com.randomlake.library.dto.PatronImportJobResponse;
 import com.randomlake.library.dto.PatronRequest;
 import com.randomlake.library.dto.PatronResponse;
+import com.randomlake.library.enums.ImportFormat;
 import com.randomlake.library.mapper.PatronMapper;
 import com.randomlake.library.model.Patron;
+import com.randomlake.library.model.PatronImportJob;
+import com.randomlake.library.service.PatronImportService;
 import com.randomlake.library.service.PatronService;
+import com.randomlake.library.util.ConditionalRequests;
+import com.randomlake.library.util.NdjsonWriter;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.security.Principal;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/patrons")
 public class PatronController {
 
+  private static final String ETAG_SCOPE = "patron";
+
   @Autowired private PatronService patronService;
+  @Autowired private PatronImportService patronImportService;
+  @Autowired private ObjectMapper objectMapper;
 
   @GetMapping
   public ResponseEntity<List<PatronResponse>> getAllPatrons() {
@@ -29,14 +49,39 @@ public class PatronController {
     return new ResponseEntity<>(patronResponses, HttpStatus.OK);
   }
 
+  // Keyset-paginated listing; pass nextCursor from the previous page to fetch the next one
+  @GetMapping("/page")
+  public ResponseEntity<PageResponse<PatronResponse>> getPatronsPage(
+      @RequestParam(required = false) String cursor, @RequestParam(required = false) Integer size) {
+    PageResponse<Patron> page = patronService.getPatronPage(cursor, size);
+    return ResponseEntity.ok(page.map(PatronMapper::toDto));
+  }
+
+  // Full export as newline-delimited JSON, written as the collection is read
+  @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamPatrons() {
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .body(
+            NdjsonWriter.write(patronService::streamAllPatrons, PatronMapper::toDto, objectMapper));
+  }
+
+  // Sent with ETag and Last-Modified; a request whose validators still match gets 304
   @GetMapping("/{patronId}")
-  public ResponseEntity<PatronResponse> getPatronByID(@PathVariable int patronId) {
+  public ResponseEntity<PatronResponse> getPatronByID(
+      @PathVariable int patronId, HttpServletRequest request) {
+    Optional<ResponseEntity<PatronResponse>> notModified =
+        ConditionalRequests.checkNotModified(
+            request, ETAG_SCOPE, patronId, () -> patronService.getPatronLastUpdateDate(patronId));
+    if (notModified.isPresent()) {
+      return notModified.get();
+    }
     Patron patron = patronService.getPatronById(patronId);
     if (patron == null) {
       return ResponseEntity.notFound().build();
     }
     PatronResponse patronResponse = PatronMapper.toDto(patron);
-    return ResponseEntity.ok(patronResponse);
+    return ConditionalRequests.ok(patronResponse, ETAG_SCOPE, patronId, patron.getLastUpdateDate());
   }
 
   @GetMapping("/patron/name/{patronName}")
@@ -93,20 +138,74 @@ public class PatronController {
     return new ResponseEntity<>(patronResponse, HttpStatus.CREATED);
   }
 
+  // Bulk import from CSV or JSON, run in the background: poll the job until it is COMPLETED
+  @PostMapping(
+      value = "/import",
+      consumes = {
+        ImportFormat.TEXT_CSV_VALUE,
+        MediaType.APPLICATION_JSON_VALUE,
+        MediaType.APPLICATION_NDJSON_VALUE
+      })
+  public ResponseEntity<PatronImportJobResponse> importPatrons(
+      HttpServletRequest request, Principal principal) throws IOException {
+    PatronImportJob job =
+        patronImportService.submit(
+            ImportFormat.fromContentType(request.getContentType()),
+            request.getInputStream(),
+            principal == null ? "anonymous" : principal.getName());
+    return new ResponseEntity<>(PatronMapper.toImportJobResponse(job), HttpStatus.ACCEPTED);
+  }
+
+  @GetMapping("/import/{jobId}")
+  public ResponseEntity<PatronImportJobResponse> getImportJob(@PathVariable String jobId) {
+    return ResponseEntity.ok(PatronMapper.toImportJobResponse(patronImportService.getJob(jobId)));
+  }
+
+  // Picks a failed or lost import up again after the last row it saved
+  @PostMapping("/import/{jobId}/resume")
+  public ResponseEntity<PatronImportJobResponse> resumeImportJob(@PathVariable String jobId) {
+    return new ResponseEntity<>(
+        PatronMapper.toImportJobResponse(patronImportService.resume(jobId)), HttpStatus.ACCEPTED);
+  }
+
+  // With If-Match the update only goes ahead if the patron has not changed since that ETag
   @PutMapping("/{patronId}")
   public ResponseEntity<PatronResponse> updatePatron(
-      @PathVariable("patronId") int patronId, @Valid @RequestBody PatronRequest patronRequest) {
+      @PathVariable("patronId") int patronId,
+      @Valid @RequestBody PatronRequest patronRequest,
+      HttpServletRequest request) {
     Patron patronDetails = PatronMapper.toEntity(patronRequest);
-    Patron updatedPatron = patronService.updatePatron(patronId, null, patronDetails);
+    Patron updatedPatron =
+        patronService.updatePatron(
+            patronId,
+            null,
+            patronDetails,
+            ConditionalRequests.ifMatch(request, ETAG_SCOPE, patronId));
     PatronResponse patronResponse = PatronMapper.toDto(updatedPatron);
-    return ResponseEntity.ok(patronResponse);
+    return ConditionalRequests.ok(
+        patronResponse, ETAG_SCOPE, patronId, updatedPatron.getLastUpdateDate());
+  }
+
+  // Bulk PATCH: the same updates applied to every patron matching the filter in one call
+  @PatchMapping
+  public ResponseEntity<BulkPatchResponse> patchUpdatePatronMatching(
+      @Valid @RequestBody BulkPatchRequest bulkPatchRequest) {
+    return ResponseEntity.ok(
+        BulkPatchResponse.of(
+            patronService.updatePatronsMatching(
+                bulkPatchRequest.getFilter(), bulkPatchRequest.getUpdates())));
   }
 
   @PatchMapping("/{patronId}")
   public ResponseEntity<PatronResponse> patchUpdatePatron(
-      @PathVariable("patronId") int patronId, @RequestBody Map<String, Object> updates) {
-    Patron patchUpdatedPatron = patronService.updatePatron(patronId, updates, null);
+      @PathVariable("patronId") int patronId,
+      @RequestBody Map<String, Object> updates,
+      HttpServletRequest request) {
+    Patron patchUpdatedPatron =
+        patronService.updatePatron(
+            patronId, updates, null, ConditionalRequests.ifMatch(request, ETAG_SCOPE, patronId));
     PatronResponse patronResponse = PatronMapper.toDto(patchUpdatedPatron);
-    return ResponseEntity.ok(patronResponse);
+    return ConditionalRequests.ok(
+        patronResponse, ETAG_SCOPE, patronId, patchUpdatedPatron.getLastUpdateDate());
   }
 }
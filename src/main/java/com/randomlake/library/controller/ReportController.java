@@ -1,38 +1,70 @@
 package com.randomlake.library.controller;
 
-import com.randomlake.library.dto.ReportCardPatron;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.randomlake.library.dto.PageResponse;
 import com.randomlake.library.dto.ReportLoanPatronMedia;
-import com.randomlake.library.service.CardService;
+import com.randomlake.library.enums.ExceptionType;
+import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.mapper.ReportMapper;
+import com.randomlake.library.report.ReportCatalog;
+import com.randomlake.library.report.ReportDefinition;
+import com.randomlake.library.report.ReportEngine;
+import com.randomlake.library.report.ReportFormat;
 import com.randomlake.library.service.LoanService;
+import com.randomlake.library.util.CsvWriter;
+import com.randomlake.library.util.NdjsonWriter;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/reports")
 public class ReportController {
 
-  private final CardService cardService;
+  private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
   private final LoanService loanService;
+  private final ReportEngine reportEngine;
+  private final ObjectMapper objectMapper;
 
   @Autowired
-  public ReportController(CardService cardService, LoanService loanService) {
-    this.cardService = cardService;
+  public ReportController(
+      LoanService loanService, ReportEngine reportEngine, ObjectMapper objectMapper) {
     this.loanService = loanService;
+    this.reportEngine = reportEngine;
+    this.objectMapper = objectMapper;
   }
 
+  /* Streamed reports: filter with cardId, patronId and cardStatus (cards-patrons) or loanId,
+   * patronId and loanStatus (loan-items); pick columns with a comma-separated columns list.
+   */
   @GetMapping("/cards-patrons")
-  public ResponseEntity<List<ReportCardPatron>> getReportCardPatron(
-      @RequestParam(required = false) Integer cardId,
-      @RequestParam(required = false) Integer patronId) {
-    List<ReportCardPatron> report =
-        cardService.getReportCardPatron(Optional.ofNullable(cardId), Optional.ofNullable(patronId));
-    return ResponseEntity.ok(report);
+  public ResponseEntity<StreamingResponseBody> getReportCardPatron(
+      @RequestParam Map<String, String> params,
+      @RequestParam(required = false) List<String> columns,
+      @RequestParam(defaultValue = "json") String format) {
+    return streamReport(ReportCatalog.CARDS_PATRONS, params, columns, format);
+  }
+
+  @GetMapping("/loan-items")
+  public ResponseEntity<StreamingResponseBody> getReportLoanItems(
+      @RequestParam Map<String, String> params,
+      @RequestParam(required = false) List<String> columns,
+      @RequestParam(defaultValue = "json") String format) {
+    return streamReport(ReportCatalog.LOAN_ITEMS, params, columns, format);
   }
 
   @GetMapping("/loans-patrons")
@@ -42,4 +74,53 @@ public class ReportController {
         loanService.getReportLoanPatronMedia(Optional.ofNullable(patronId));
     return ResponseEntity.ok(report);
   }
+
+  // Keyset-paginated circulation report; without a patronId it covers every patron
+  @GetMapping("/loans-patrons/page")
+  public ResponseEntity<PageResponse<ReportLoanPatronMedia>> getReportLoanPatronMediaPage(
+      @RequestParam(required = false) Integer patronId,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(required = false) Integer size) {
+    return ResponseEntity.ok(
+        loanService.getReportLoanPatronMediaPage(Optional.ofNullable(patronId), cursor, size));
+  }
+
+  // Full circulation report written as it is read, one loan per NDJSON line or one item per CSV row
+  @GetMapping("/loans-patrons/export")
+  public ResponseEntity<StreamingResponseBody> exportReportLoanPatronMedia(
+      @RequestParam(required = false) Integer patronId,
+      @RequestParam(defaultValue = "ndjson") String format) {
+    Supplier<Stream<ReportLoanPatronMedia>> source =
+        () -> loanService.streamReportLoanPatronMedia(Optional.ofNullable(patronId));
+    return switch (format.toLowerCase()) {
+      case "ndjson" -> ResponseEntity.ok()
+          .contentType(MediaType.APPLICATION_NDJSON)
+          .body(NdjsonWriter.write(source, Function.identity(), objectMapper));
+      case "csv" -> ResponseEntity.ok()
+          .contentType(TEXT_CSV)
+          .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"loans-patrons.csv\"")
+          .body(
+              CsvWriter.write(
+                  source,
+                  ReportMapper.LOAN_PATRON_MEDIA_COLUMNS,
+                  ReportMapper::toLoanPatronMediaRows));
+      default -> throw new GeneralException(
+          ExceptionType.INVALID_INPUT,
+          "Unsupported report format: " + format,
+          HttpStatus.BAD_REQUEST);
+    };
+  }
+
+  private ResponseEntity<StreamingResponseBody> streamReport(
+      ReportDefinition report, Map<String, String> params, List<String> columns, String format) {
+    ReportFormat reportFormat = ReportFormat.fromParam(format);
+    StreamingResponseBody body = reportEngine.export(report, params, columns, reportFormat);
+    ResponseEntity.BodyBuilder response =
+        ResponseEntity.ok().contentType(reportFormat.getMediaType());
+    if (reportFormat == ReportFormat.CSV) {
+      response.header(
+          HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + report.name() + ".csv\"");
+    }
+    return response.body(body);
+  }
 }
@@ -0,0 +1,118 @@
+package com.randomlake.library.controller;
+
+import com.randomlake.library.dto.ReportJobRequest;
+import com.randomlake.library.dto.ReportJobResponse;
+import com.randomlake.library.mapper.ReportMapper;
+import com.randomlake.library.model.ReportJob;
+import com.randomlake.library.report.ReportCatalog;
+import com.randomlake.library.report.ReportFormat;
+import com.randomlake.library.service.ReportJobService;
+import jakarta.validation.Valid;
+import java.security.Principal;
+import java.util.Locale;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+// Background report runs: submit, poll until COMPLETED, then download the result
+@RestController
+@RequestMapping("/api/reports/jobs")
+public class ReportJobController {
+
+  private final ReportJobService reportJobService;
+
+  public ReportJobController(ReportJobService reportJobService) {
+    this.reportJobService = reportJobService;
+  }
+
+  @PostMapping
+  public ResponseEntity<ReportJobResponse> submitJob(
+      @Valid @RequestBody ReportJobRequest request, Principal principal) {
+    ReportJob job =
+        reportJobService.submit(
+            ReportCatalog.get(request.getReport()),
+            request.getFilters(),
+            request.getColumns(),
+            ReportFormat.fromParam(request.getFormat()),
+            principal == null ? "anonymous" : principal.getName());
+    return new ResponseEntity<>(ReportMapper.toReportJobResponse(job), HttpStatus.ACCEPTED);
+  }
+
+  @GetMapping("/{jobId}")
+  public ResponseEntity<ReportJobResponse> getJob(@PathVariable String jobId) {
+    return ResponseEntity.ok(ReportMapper.toReportJobResponse(reportJobService.getJob(jobId)));
+  }
+
+  /* Sent gzip-encoded as stored when the client accepts it, otherwise decompressed on the way out.
+   * The encoding depends on Accept-Encoding, so caches are told to key on it.
+   */
+  @GetMapping("/{jobId}/result")
+  public ResponseEntity<StreamingResponseBody> getResult(
+      @PathVariable String jobId,
+      @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+    ReportJob job = reportJobService.getJob(jobId);
+    boolean gzip = acceptsGzip(acceptEncoding);
+    StreamingResponseBody body = reportJobService.openResult(job, gzip);
+
+    ResponseEntity.BodyBuilder response =
+        ResponseEntity.ok()
+            .contentType(job.getFormat().getMediaType())
+            .varyBy(HttpHeaders.ACCEPT_ENCODING)
+            .header(
+                HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\""
+                    + job.getReportName()
+                    + "."
+                    + job.getFormat().getExtension()
+                    + "\"");
+    if (gzip) {
+      response.header(HttpHeaders.CONTENT_ENCODING, "gzip").contentLength(job.getResultSize());
+    }
+    return response.body(body);
+  }
+
+  /* Whether gzip is among the accepted codings with a non-zero quality. A gzip entry of its own
+   * decides over "*", so "gzip;q=0, *" refuses it.
+   */
+  private static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    // Quality of an explicit gzip entry, or -1 without one
+    double gzip = -1;
+    double wildcard = 0;
+    for (String entry : acceptEncoding.split(",")) {
+      String[] parts = entry.split(";");
+      String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+      if (coding.equals("gzip") || coding.equals("x-gzip")) {
+        gzip = Math.max(gzip, quality(parts));
+      } else if (coding.equals("*")) {
+        wildcard = quality(parts);
+      }
+    }
+    return gzip >= 0 ? gzip > 0 : wildcard > 0;
+  }
+
+  // The q parameter of an Accept-Encoding entry; 1 when absent, 0 when unreadable
+  private static double quality(String[] parts) {
+    for (int i = 1; i < parts.length; i++) {
+      String parameter = parts[i].trim();
+      if (parameter.length() > 2 && parameter.substring(0, 2).equalsIgnoreCase("q=")) {
+        try {
+          return Double.parseDouble(parameter.substring(2).trim());
+        } catch (NumberFormatException e) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+}
@@ -0,0 +1,44 @@
+package com.randomlake.library.controller;
+
+import com.randomlake.library.dto.CardResponse;
+import com.randomlake.library.dto.ChangeSetResponse;
+import com.randomlake.library.dto.MediaResponse;
+import com.randomlake.library.dto.PatronResponse;
+import com.randomlake.library.mapper.CardMapper;
+import com.randomlake.library.mapper.MediaMapper;
+import com.randomlake.library.mapper.PatronMapper;
+import com.randomlake.library.service.SyncService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+// Delta-sync feeds; clients send the nextToken of their previous poll as "since"
+@RestController
+public class SyncController {
+
+  private final SyncService syncService;
+
+  public SyncController(SyncService syncService) {
+    this.syncService = syncService;
+  }
+
+  @GetMapping("/api/collection/media/changes")
+  public ResponseEntity<ChangeSetResponse<MediaResponse>> getMediaChanges(
+      @RequestParam(required = false) String since, @RequestParam(required = false) Integer size) {
+    return ResponseEntity.ok(syncService.getMediaChanges(since, size).map(MediaMapper::toDto));
+  }
+
+  @GetMapping("/api/patrons/changes")
+  public ResponseEntity<ChangeSetResponse<PatronResponse>> getPatronChanges(
+      @RequestParam(required = false) String since, @RequestParam(required = false) Integer size) {
+    return ResponseEntity.ok(syncService.getPatronChanges(since, size).map(PatronMapper::toDto));
+  }
+
+  @GetMapping("/api/cards/changes")
+  public ResponseEntity<ChangeSetResponse<CardResponse>> getCardChanges(
+      @RequestParam(required = false) String since, @RequestParam(required = false) Integer size) {
+    return ResponseEntity.ok(
+        syncService.getCardChanges(since, size).map(CardMapper::toCardResponse));
+  }
+}
@@ -0,0 +1,20 @@
+package com.randomlake.library.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+
+/*
+ * A PATCH applied to every record matching the filter. Filter entries are property names with the
+ * value to match, or a list of values to match any of; the updates use the same form as a
+ * single-record PATCH.
+ */
+@Getter
+@Setter
+public class BulkPatchRequest {
+
+  @NotEmpty private Map<String, Object> filter;
+
+  @NotEmpty private Map<String, Object> updates;
+}
@@ -0,0 +1,21 @@
+package com.randomlake.library.dto;
+
+import com.mongodb.client.result.UpdateResult;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkPatchResponse {
+
+  private long matchedCount;
+  private long modifiedCount;
+
+  public static BulkPatchResponse of(UpdateResult result) {
+    return new BulkPatchResponse(result.getMatchedCount(), result.getModifiedCount());
+  }
+}
@@ -0,0 +1,17 @@
+package com.randomlake.library.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class CacheStatsResponse {
+  private String cacheName;
+  private long size;
+  private long hitCount;
+  private long missCount;
+  private double hitRate;
+  private long evictionCount;
+  private long loadFailureCount;
+  private double averageLoadPenaltyMillis;
+}
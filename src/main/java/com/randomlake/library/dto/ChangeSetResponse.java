@@ -0,0 +1,30 @@
+package com.randomlake.library.dto;
+
+import java.util.List;
+import java.util.function.Function;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/*
+ * One batch of a delta-sync feed: documents created or modified since the token, IDs deleted
+ * since the token, and the token to send on the next poll. When hasMore is true the client should
+ * poll again straight away instead of waiting for its next interval.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ChangeSetResponse<T> {
+
+  private List<T> changed;
+  private List<Integer> deletedIds;
+  private String nextToken;
+  private boolean hasMore;
+
+  public <R> ChangeSetResponse<R> map(Function<T, R> mapper) {
+    return new ChangeSetResponse<>(
+        changed.stream().map(mapper).toList(), deletedIds, nextToken, hasMore);
+  }
+}
@@ -15,5 +15,6 @@ public class LoanResponse {
   private LocalDateTime createdDate;
   private LocalDateTime lastUpdateDate;
   private List<LoanItemResponse> items;
-  private List<TransactionLogResponse> transactionLogs;
+  // Pages through the loan's checkouts and returns, which are not listed with the loan
+  private String transactionsPath;
 }
@@ -0,0 +1,33 @@
+package com.randomlake.library.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Outcome of one row of a bulk media intake; rows are numbered from 1 in upload order
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MediaIntakeResult {
+
+  public static final String CREATED = "CREATED";
+  public static final String FAILED = "FAILED";
+
+  private int row;
+  private String status;
+  private Integer mediaId;
+  private String barCodeId;
+  private String error;
+
+  public static MediaIntakeResult created(int row, int mediaId, String barCodeId) {
+    return new MediaIntakeResult(row, CREATED, mediaId, barCodeId, null);
+  }
+
+  public static MediaIntakeResult failed(int row, String error) {
+    return new MediaIntakeResult(row, FAILED, null, null, error);
+  }
+}
@@ -0,0 +1,23 @@
+package com.randomlake.library.dto;
+
+import java.util.List;
+import java.util.function.Function;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// One page of a keyset-paginated listing; nextCursor is null on the last page
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class PageResponse<T> {
+
+  private List<T> items;
+  private String nextCursor;
+
+  public <R> PageResponse<R> map(Function<T, R> mapper) {
+    return new PageResponse<>(items.stream().map(mapper).toList(), nextCursor);
+  }
+}
@@ -0,0 +1,11 @@
+package com.randomlake.library.dto;
+
+// Closed projection of a patron's contact details; only these fields are read from the database
+public interface PatronContact {
+
+  int getPatronId();
+
+  String getEmailAddress();
+
+  String getContactMethod();
+}
@@ -0,0 +1,25 @@
+package com.randomlake.library.dto;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+
+// Checked-out items of one patron that fall on a notification due date, with their titles
+@Getter
+@Setter
+public class PatronDueItems {
+
+  private int patronId;
+  private List<DueItem> items = new ArrayList<>();
+
+  @Getter
+  @Setter
+  public static class DueItem {
+
+    private int mediaId;
+    private String mediaTitle;
+    private LocalDate dueDate;
+  }
+}
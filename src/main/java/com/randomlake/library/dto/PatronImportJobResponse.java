@@ -0,0 +1,28 @@
+package com.randomlake.library.dto;
+
+import com.randomlake.library.enums.ImportFormat;
+import com.randomlake.library.enums.ImportJobStatus;
+import com.randomlake.library.model.PatronImportJob;
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class PatronImportJobResponse {
+
+  private String jobId;
+  private ImportFormat format;
+  private ImportJobStatus status;
+  private int rowsProcessed;
+  private int created;
+  private int duplicates;
+  private int failed;
+  private List<PatronImportJob.RowError> errors;
+  private String errorMessage;
+  private LocalDateTime createdDate;
+  private LocalDateTime startedDate;
+  private LocalDateTime completedDate;
+  private LocalDateTime lastUpdateDate;
+}
@@ -0,0 +1,20 @@
+package com.randomlake.library.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class ReportJobRequest {
+
+  @NotBlank(message = "Report name is required")
+  private String report;
+
+  private String format = "csv";
+  private List<String> columns;
+  private Map<String, String> filters = new HashMap<>();
+}
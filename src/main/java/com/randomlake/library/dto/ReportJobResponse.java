@@ -0,0 +1,25 @@
+package com.randomlake.library.dto;
+
+import com.randomlake.library.enums.ReportJobStatus;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class ReportJobResponse {
+
+  private String jobId;
+  private String report;
+  private String format;
+  private Map<String, String> filters;
+  private List<String> columns;
+  private ReportJobStatus status;
+  private long resultSize;
+  private String errorMessage;
+  private LocalDateTime createdDate;
+  private LocalDateTime startedDate;
+  private LocalDateTime completedDate;
+}
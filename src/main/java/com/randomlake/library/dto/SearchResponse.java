@@ -0,0 +1,25 @@
+package com.randomlake.library.dto;
+
+import java.util.List;
+import java.util.function.Function;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// One page of ranked search hits, best first; page numbers start at 0
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class SearchResponse<T> {
+
+  private List<T> items;
+  private int totalHits;
+  private int page;
+  private int size;
+
+  public <R> SearchResponse<R> map(Function<T, R> mapper) {
+    return new SearchResponse<>(items.stream().map(mapper).toList(), totalHits, page, size);
+  }
+}
@@ -4,8 +4,11 @@ public enum ExceptionType {
   CARD_LOST,
   CARD_NOT_FOUND,
   CARD_ALREADY_EXISTS,
+  CONCURRENT_MODIFICATION,
   FINE_NOT_FOUND,
   FINE_ALREADY_EXISTS,
+  IMPORT_JOB_NOT_FOUND,
+  IMPORT_JOB_REJECTED,
   INVALID_INPUT,
   INVALID_OPERATION,
   INVALID_STATUS,
@@ -16,5 +19,8 @@ public enum ExceptionType {
   PATRON_ALREADY_EXISTS,
   PATRON_NOT_FOUND,
   PATRON_INELIGIBLE,
+  REPORT_JOB_NOT_FOUND,
+  REPORT_JOB_REJECTED,
+  SEARCH_UNAVAILABLE,
   SEQUENCE_GENERATION_FAILED
 }
@@ -0,0 +1,30 @@
+package com.randomlake.library.enums;
+
+import com.randomlake.library.exception.GeneralException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+// Upload formats of a patron import; JSON covers both a JSON array and one object per line
+public enum ImportFormat {
+  CSV,
+  JSON;
+
+  public static final String TEXT_CSV_VALUE = "text/csv";
+
+  public static ImportFormat fromContentType(String contentType) {
+    if (contentType != null) {
+      MediaType type = MediaType.parseMediaType(contentType);
+      if (type.isCompatibleWith(MediaType.parseMediaType(TEXT_CSV_VALUE))) {
+        return CSV;
+      }
+      if (type.isCompatibleWith(MediaType.APPLICATION_JSON)
+          || type.isCompatibleWith(MediaType.APPLICATION_NDJSON)) {
+        return JSON;
+      }
+    }
+    throw new GeneralException(
+        ExceptionType.INVALID_INPUT,
+        "Unsupported import format: " + contentType,
+        HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+  }
+}
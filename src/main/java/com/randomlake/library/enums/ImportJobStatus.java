@@ -0,0 +1,8 @@
+package com.randomlake.library.enums;
+
+public enum ImportJobStatus {
+  QUEUED,
+  RUNNING,
+  COMPLETED,
+  FAILED
+}
@@ -0,0 +1,8 @@
+package com.randomlake.library.enums;
+
+public enum OutboxStatus {
+  PENDING,
+  SENDING,
+  SENT,
+  FAILED
+}
@@ -0,0 +1,8 @@
+package com.randomlake.library.enums;
+
+public enum ReportJobStatus {
+  QUEUED,
+  RUNNING,
+  COMPLETED,
+  FAILED
+}
@@ -1,6 +1,9 @@
 package com.randomlake.library.exception;
 
+import com.randomlake.library.enums.ExceptionType;
 import jakarta.validation.ConstraintViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -15,6 +18,28 @@ public class GlobalExceptionHandler {
     return new ResponseEntity<>(errorResponse, ex.getHttpStatus());
   }
 
+  // The ETag lets the client fetch the current version before trying again
+  @ExceptionHandler(PreconditionFailedException.class)
+  public ResponseEntity<ErrorResponse> handlePreconditionFailed(PreconditionFailedException ex) {
+    ErrorResponse errorResponse = new ErrorResponse(ex.getMessage(), ex.getType());
+    ResponseEntity.BodyBuilder response = ResponseEntity.status(ex.getHttpStatus());
+    if (ex.getEtag() != null) {
+      response.eTag(ex.getEtag());
+    }
+    return response.body(errorResponse);
+  }
+
+  // A versioned save lost a race with another write to the same document
+  @ExceptionHandler(OptimisticLockingFailureException.class)
+  public ResponseEntity<ErrorResponse> handleOptimisticLockingFailure(
+      OptimisticLockingFailureException ex) {
+    ErrorResponse errorResponse =
+        new ErrorResponse(
+            "The record was changed by another request; reload it and try again",
+            ExceptionType.CONCURRENT_MODIFICATION);
+    return new ResponseEntity<>(errorResponse, HttpStatus.CONFLICT);
+  }
+
   @ExceptionHandler(ConstraintViolationException.class)
   public ResponseEntity<String> handleValidationExceptions(
       ConstraintViolationException ex, WebRequest request) {
@@ -0,0 +1,20 @@
+package com.randomlake.library.exception;
+
+import com.randomlake.library.enums.ExceptionType;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+// An If-Match update found the record changed; carries its current ETag, if it has one
+@Getter
+public class PreconditionFailedException extends GeneralException {
+
+  private final String etag;
+
+  public PreconditionFailedException(String etag) {
+    super(
+        ExceptionType.CONCURRENT_MODIFICATION,
+        "The record has changed since it was read; reload it and try again",
+        HttpStatus.PRECONDITION_FAILED);
+    this.etag = etag;
+  }
+}
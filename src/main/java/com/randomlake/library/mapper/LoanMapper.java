@@ -3,12 +3,14 @@ package com.randomlake.library.mapper;
 import com.randomlake.library.dto.LoanItemResponse;
 import com.randomlake.library.dto.LoanResponse;
 import com.randomlake.library.dto.TransactionLogResponse;
+import com.randomlake.library.model.CirculationEvent;
 import com.randomlake.library.model.Loan;
 import java.util.ArrayList;
 import java.util.List;
 
 public class LoanMapper {
 
+  // The ledger is left out so a loan history costs no query per loan; the path pages through it
   public static LoanResponse toLoanResponse(Loan loan) {
     if (loan == null) {
       return null;
@@ -36,19 +38,16 @@ public class LoanMapper {
     }
     response.setItems(itemResponses);
 
-    // Map Transaction Logs
-    List<TransactionLogResponse> logResponses = new ArrayList<>();
-    if (loan.getTransactionLog() != null) {
-      for (Loan.TransactionLog logEntry : loan.getTransactionLog()) {
-        TransactionLogResponse logResponse = new TransactionLogResponse();
-        logResponse.setTransactionType(logEntry.getTransactionType());
-        logResponse.setTransactionDate(logEntry.getTransactionDate());
-        logResponse.setMediaIds(logEntry.getMediaIds());
-        logResponses.add(logResponse);
-      }
-    }
-    response.setTransactionLogs(logResponses);
+    response.setTransactionsPath("/api/loans/" + loan.getLoanId() + "/transactions");
 
     return response;
   }
+
+  public static TransactionLogResponse toTransactionLogResponse(CirculationEvent event) {
+    TransactionLogResponse logResponse = new TransactionLogResponse();
+    logResponse.setTransactionType(event.getTransactionType());
+    logResponse.setTransactionDate(event.getTransactionDate());
+    logResponse.setMediaIds(event.getMediaIds());
+    return logResponse;
+  }
 }
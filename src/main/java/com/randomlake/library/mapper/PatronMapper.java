@@ -1,8 +1,10 @@
 package com.randomlake.library.mapper;
 
+import com.randomlake.library.dto.PatronImportJobResponse;
 import com.randomlake.library.dto.PatronRequest;
 import com.randomlake.library.dto.PatronResponse;
 import com.randomlake.library.model.Patron;
+import com.randomlake.library.model.PatronImportJob;
 
 public class PatronMapper {
 
@@ -46,4 +48,22 @@ public class PatronMapper {
     response.setLastUpdateDate(patron.getLastUpdateDate());
     return response;
   }
+
+  public static PatronImportJobResponse toImportJobResponse(PatronImportJob job) {
+    PatronImportJobResponse response = new PatronImportJobResponse();
+    response.setJobId(job.getJobId());
+    response.setFormat(job.getFormat());
+    response.setStatus(job.getStatus());
+    response.setRowsProcessed(job.getRowsProcessed());
+    response.setCreated(job.getCreated());
+    response.setDuplicates(job.getDuplicates());
+    response.setFailed(job.getFailed());
+    response.setErrors(job.getErrors());
+    response.setErrorMessage(job.getErrorMessage());
+    response.setCreatedDate(job.getCreatedDate());
+    response.setStartedDate(job.getStartedDate());
+    response.setCompletedDate(job.getCompletedDate());
+    response.setLastUpdateDate(job.getLastUpdateDate());
+    return response;
+  }
 }
@@ -0,0 +1,81 @@
+package com.randomlake.library.mapper;
+
+import com.randomlake.library.dto.ReportJobResponse;
+import com.randomlake.library.dto.ReportLoanPatronMedia;
+import com.randomlake.library.model.ReportJob;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Flattens report rows for CSV exports and maps report jobs to responses
+public class ReportMapper {
+
+  public static final List<String> LOAN_PATRON_MEDIA_COLUMNS =
+      List.of(
+          "loanId",
+          "patronId",
+          "patronName",
+          "loanStatus",
+          "mediaId",
+          "mediaTitle",
+          "authorName",
+          "isbnId",
+          "mediaType",
+          "mediaFormat",
+          "classificationCategory",
+          "classificationSubcategory",
+          "checkoutDate",
+          "dueDate",
+          "returnDate",
+          "itemStatus");
+
+  // One row per loan item; a loan without items still gets a row with the item columns empty
+  public static Stream<List<?>> toLoanPatronMediaRows(ReportLoanPatronMedia report) {
+    if (report.getItems() == null || report.getItems().isEmpty()) {
+      Object[] row = new Object[LOAN_PATRON_MEDIA_COLUMNS.size()];
+      row[0] = report.getLoanId();
+      row[1] = report.getPatronId();
+      row[2] = report.getPatronName();
+      row[3] = report.getLoanStatus();
+      return Stream.of(Arrays.asList(row));
+    }
+    return report.getItems().stream()
+        .map(
+            item -> {
+              ReportLoanPatronMedia.MediaDetails media = item.getMediaDetails();
+              return Arrays.asList(
+                  report.getLoanId(),
+                  report.getPatronId(),
+                  report.getPatronName(),
+                  report.getLoanStatus(),
+                  item.getMediaId(),
+                  media == null ? null : media.getMediaTitle(),
+                  media == null ? null : media.getAuthorName(),
+                  media == null ? null : media.getIsbnId(),
+                  media == null ? null : media.getMediaType(),
+                  media == null ? null : media.getMediaFormat(),
+                  media == null ? null : media.getClassificationCategory(),
+                  media == null ? null : media.getClassificationSubcategory(),
+                  item.getCheckoutDate(),
+                  item.getDueDate(),
+                  item.getReturnDate(),
+                  item.getStatus());
+            });
+  }
+
+  public static ReportJobResponse toReportJobResponse(ReportJob job) {
+    ReportJobResponse response = new ReportJobResponse();
+    response.setJobId(job.getJobId());
+    response.setReport(job.getReportName());
+    response.setFormat(job.getFormat().getExtension());
+    response.setFilters(job.getFilters());
+    response.setColumns(job.getColumns());
+    response.setStatus(job.getStatus());
+    response.setResultSize(job.getResultSize());
+    response.setErrorMessage(job.getErrorMessage());
+    response.setCreatedDate(job.getCreatedDate());
+    response.setStartedDate(job.getStartedDate());
+    response.setCompletedDate(job.getCompletedDate());
+    return response;
+  }
+}
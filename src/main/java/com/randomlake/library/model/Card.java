@@ -9,10 +9,14 @@ import lombok.NoArgsConstructor;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
+// Backs the delta-sync feed, which reads changes in (update time, cardId) order
 @EqualsAndHashCode(callSuper = false)
+@CompoundIndex(name = "lastUpdateDate_cardId", def = "{ 'last_update_date': 1, 'cardId': 1 }")
 @Document(collection = "cards")
 @Data
 @AllArgsConstructor
@@ -21,13 +25,14 @@ public class Card extends BaseModel {
 
   @Id private ObjectId id;
 
-  private int cardId;
+  @Indexed private int cardId;
 
   @CreatedDate private LocalDateTime createdDate;
 
   @Field("bar_code")
   private String barCodeId;
 
+  @Indexed
   @Field("patron_id")
   private int patronId;
 
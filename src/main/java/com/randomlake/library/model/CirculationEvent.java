@@ -0,0 +1,46 @@
+package com.randomlake.library.model;
+
+import com.randomlake.library.enums.TransactionType;
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/*
+ * One checkout or return in the append-only circulation ledger. Events are only ever inserted;
+ * the loan document holds the current state. The ObjectId orders events by insertion time, and
+ * loanId_id serves paging through a loan's events in that order.
+ */
+@Document(collection = "circulation_ledger")
+@CompoundIndex(name = "loanId_id", def = "{ 'loanId': 1, '_id': 1 }")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CirculationEvent {
+
+  @Id private ObjectId id;
+
+  private int loanId;
+  private int patronId;
+  private TransactionType transactionType;
+  private LocalDateTime transactionDate;
+  private List<Integer> mediaIds;
+
+  public CirculationEvent(
+      int loanId,
+      int patronId,
+      TransactionType transactionType,
+      LocalDateTime transactionDate,
+      List<Integer> mediaIds) {
+    this.loanId = loanId;
+    this.patronId = patronId;
+    this.transactionType = transactionType;
+    this.transactionDate = transactionDate;
+    this.mediaIds = mediaIds;
+  }
+}
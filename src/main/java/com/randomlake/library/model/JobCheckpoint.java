@@ -0,0 +1,25 @@
+package com.randomlake.library.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Progress marker for long-running scheduled jobs so an interrupted run can resume
+@Document(collection = "job_checkpoints")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class JobCheckpoint {
+
+  @Id private String jobName;
+
+  private LocalDate runDate;
+  private int lastProcessedId;
+  private boolean completed;
+  private LocalDateTime startedAt;
+  private LocalDateTime lastUpdateDate;
+}
@@ -2,7 +2,6 @@ package com.randomlake.library.model;
 
 import com.randomlake.library.enums.ItemStatus;
 import com.randomlake.library.enums.LoanStatus;
-import com.randomlake.library.enums.TransactionType;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -14,10 +13,23 @@ import org.bson.types.ObjectId;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+// Multikey index backing the due-date and overdue queries, which always match on item status
+// first and then on a due date or due date range; patronId_loanId serves per-patron circulation
+// reports, which page through a patron's loans in loanId order; lastUpdateDate_loanId finds the
+// latest change to the collection, which tells stored report results when they are stale.
+// Checkouts and returns are kept in the circulation ledger (CirculationEvent), not on the loan
 @Document(collection = "loans")
+@CompoundIndexes({
+  @CompoundIndex(name = "items_status_dueDate", def = "{ 'items.status': 1, 'items.dueDate': 1 }"),
+  @CompoundIndex(name = "patronId_loanId", def = "{ 'patronId': 1, 'loanId': 1 }"),
+  @CompoundIndex(name = "lastUpdateDate_loanId", def = "{ 'lastUpdateDate': 1, 'loanId': 1 }")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -32,26 +44,19 @@ public class Loan {
   @Indexed private LoanStatus status;
 
   private List<LoanItem> items = new ArrayList<>();
-  private List<TransactionLog> transactionLog = new ArrayList<>();
 
   @CreatedDate private LocalDateTime createdDate;
   @LastModifiedDate private LocalDateTime lastUpdateDate;
 
+  @Version private Long version;
+
   @Data
   public static class LoanItem {
 
     private int mediaId;
     private LocalDate checkoutDate;
-    @Indexed private LocalDate dueDate;
+    private LocalDate dueDate;
     private LocalDate returnDate;
-    @Indexed private ItemStatus status;
-  }
-
-  @Data
-  public static class TransactionLog {
-
-    private TransactionType transactionType;
-    private LocalDateTime transactionDate;
-    private List<Integer> mediaIds;
+    private ItemStatus status;
   }
 }
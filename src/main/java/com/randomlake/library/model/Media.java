@@ -7,10 +7,15 @@ import lombok.*;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
+// Backs the delta-sync feed, which reads changes in (update time, mediaId) order
 @EqualsAndHashCode(callSuper = true)
+@CompoundIndex(name = "lastUpdateDate_mediaId", def = "{ 'last_update_date': 1, 'mediaId': 1 }")
 @Document(collection = "media")
 @Data
 @AllArgsConstructor
@@ -19,7 +24,7 @@ public class Media extends BaseModel {
 
   @Id private ObjectId id;
 
-  private int mediaId;
+  @Indexed private int mediaId;
 
   @CreatedDate private LocalDateTime created_date;
 
@@ -71,6 +76,9 @@ public class Media extends BaseModel {
   @Field("is_sensitive")
   private boolean isSensitive;
 
+  // Optimistic lock: a save fails if the document changed since it was read
+  @Version private Long version;
+
   public String getId() {
     return id != null ? id.toHexString() : null;
   }
@@ -0,0 +1,58 @@
+package com.randomlake.library.model;
+
+import com.randomlake.library.enums.OutboxStatus;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// A notification waiting to be delivered; the dispatcher claims due entries by status and time
+@Document(collection = "notification_outbox")
+@CompoundIndex(name = "status_nextAttemptAt", def = "{ 'status': 1, 'nextAttemptAt': 1 }")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class NotificationOutbox {
+
+  @Id private ObjectId id;
+
+  // Identifies the notification across job runs so the same message is only queued once
+  @Indexed(unique = true)
+  private String idempotencyKey;
+
+  private int patronId;
+  private String recipient;
+  private String subject;
+  private String body;
+
+  private OutboxStatus status;
+  private int attempts;
+  private LocalDateTime nextAttemptAt;
+  private LocalDateTime leaseExpiresAt;
+  private String lastError;
+
+  private LocalDateTime createdDate;
+  private LocalDateTime sentDate;
+
+  public NotificationOutbox(
+      int patronId,
+      String idempotencyKey,
+      String recipient,
+      String subject,
+      String body,
+      LocalDateTime now) {
+    this.patronId = patronId;
+    this.idempotencyKey = idempotencyKey;
+    this.recipient = recipient;
+    this.subject = subject;
+    this.body = body;
+    this.status = OutboxStatus.PENDING;
+    this.nextAttemptAt = now;
+    this.createdDate = now;
+  }
+}
@@ -12,10 +12,22 @@ import lombok.NoArgsConstructor;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
+/* lastUpdateDate_patronId backs the delta-sync feed, which reads changes in (update time,
+ * patronId) order; patronName_dateOfBirth backs the duplicate check on new patrons and covers the
+ * key scan of a patron import.
+ */
 @EqualsAndHashCode(callSuper = true)
+@CompoundIndexes({
+  @CompoundIndex(name = "lastUpdateDate_patronId", def = "{ 'lastUpdateDate': 1, 'patronId': 1 }"),
+  @CompoundIndex(name = "patronName_dateOfBirth", def = "{ 'patron_name': 1, 'date_of_birth': 1 }")
+})
 @Document(collection = "patrons")
 @Data
 @AllArgsConstructor
@@ -24,7 +36,7 @@ public class Patron extends BaseModel {
 
   @Id private ObjectId id;
 
-  private int patronId;
+  @Indexed private int patronId;
 
   @CreatedDate private LocalDateTime created_date;
 
@@ -65,6 +77,8 @@ public class Patron extends BaseModel {
   @Field("checked_out_items")
   private List<Integer> checkedOutItems = new ArrayList<>();
 
+  @Version private Long version;
+
   public String getId() {
     return id != null ? id.toHexString() : null;
   }
@@ -0,0 +1,61 @@
+package com.randomlake.library.model;
+
+import com.randomlake.library.enums.ImportFormat;
+import com.randomlake.library.enums.ImportJobStatus;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/* A patron import run in the background from an upload kept in GridFS. The counts and
+ * rowsProcessed are saved together after every chunk, so they always describe the same point of
+ * the upload and a failed import resumes right after the last chunk written. The version stops
+ * two nodes from resuming the same import at once.
+ */
+@Document(collection = "patron_imports")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PatronImportJob {
+
+  @Id private ObjectId id;
+
+  @Indexed(unique = true)
+  private String jobId;
+
+  private ImportFormat format;
+  private ObjectId uploadFileId;
+  private String requestedBy;
+
+  private ImportJobStatus status;
+  private int rowsProcessed;
+  private int created;
+  private int duplicates;
+  private int failed;
+  // The first rows that could not be imported, up to patron.import.errors.max
+  private List<RowError> errors = new ArrayList<>();
+  private String errorMessage;
+
+  @Indexed private LocalDateTime createdDate;
+  private LocalDateTime startedDate;
+  private LocalDateTime completedDate;
+  private LocalDateTime lastUpdateDate;
+
+  @Version private Long version;
+
+  // Rows are numbered from 1 in upload order, not counting a CSV header
+  @Data
+  @AllArgsConstructor
+  @NoArgsConstructor
+  public static class RowError {
+    private int row;
+    private String error;
+  }
+}
@@ -0,0 +1,55 @@
+package com.randomlake.library.model;
+
+import com.randomlake.library.enums.ReportJobStatus;
+import com.randomlake.library.report.ReportFormat;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/* A report run in the background. The result is kept gzipped in GridFS and handed out again for
+ * a request with the same parameters until one of the report's source collections changes;
+ * paramsHash_sourceVersion finds such a result, requestedBy_status counts a user's running jobs.
+ */
+@Document(collection = "report_jobs")
+@CompoundIndexes({
+  @CompoundIndex(
+      name = "paramsHash_sourceVersion",
+      def = "{ 'paramsHash': 1, 'sourceVersion': 1 }"),
+  @CompoundIndex(name = "requestedBy_status", def = "{ 'requestedBy': 1, 'status': 1 }")
+})
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReportJob {
+
+  @Id private ObjectId id;
+
+  @Indexed(unique = true)
+  private String jobId;
+
+  private String reportName;
+  private ReportFormat format;
+  private Map<String, String> filters;
+  private List<String> columns;
+  private String paramsHash;
+  private String sourceVersion;
+  private String requestedBy;
+
+  private ReportJobStatus status;
+  private ObjectId resultFileId;
+  private long resultSize;
+  private String errorMessage;
+
+  @Indexed private LocalDateTime createdDate;
+  private LocalDateTime startedDate;
+  private LocalDateTime completedDate;
+}
@@ -0,0 +1,37 @@
+package com.randomlake.library.model;
+
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Records a deleted document so delta-sync clients can drop their copy of it
+@Document(collection = "tombstones")
+@CompoundIndex(
+    name = "collection_deletedDate_entityId",
+    def = "{ 'collectionName': 1, 'deletedDate': 1, 'entityId': 1 }")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Tombstone {
+
+  public static final String MEDIA = "media";
+  public static final String PATRONS = "patrons";
+  public static final String CARDS = "cards";
+
+  @Id private ObjectId id;
+
+  private String collectionName;
+  private int entityId;
+  private LocalDateTime deletedDate;
+
+  public Tombstone(String collectionName, int entityId, LocalDateTime deletedDate) {
+    this.collectionName = collectionName;
+    this.entityId = entityId;
+    this.deletedDate = deletedDate;
+  }
+}
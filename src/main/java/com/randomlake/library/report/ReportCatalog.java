@@ -0,0 +1,140 @@
+package com.randomlake.library.report;
+
+import com.randomlake.library.enums.ExceptionType;
+import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.report.ReportDefinition.Column;
+import com.randomlake.library.report.ReportDefinition.Filter;
+import com.randomlake.library.report.ReportDefinition.Source;
+import java.util.List;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.http.HttpStatus;
+
+// The reports served by the report engine
+public final class ReportCatalog {
+
+  private ReportCatalog() {}
+
+  // Every card with the contact details of its patron, in cardId order
+  public static final ReportDefinition CARDS_PATRONS =
+      new ReportDefinition(
+          "cards-patrons",
+          "cards",
+          List.of(new Source("cards", "last_update_date"), new Source("patrons", "lastUpdateDate")),
+          Sort.by(Sort.Direction.ASC, "cardId"),
+          List.of(
+              new Filter("cardId", "cardId", true),
+              new Filter("patronId", "patron_id", true),
+              new Filter("cardStatus", "card_status", false)),
+          List.of(
+              lookup(
+                  "patrons",
+                  "patron_id",
+                  "patronId",
+                  "p",
+                  "patronId",
+                  "patron_status",
+                  "patron_name",
+                  "street_address",
+                  "city_name",
+                  "state_name",
+                  "zip_code",
+                  "telephone_home",
+                  "telephone_mobile",
+                  "email_address"),
+              Aggregation.unwind("p")),
+          List.of(
+              Column.of("cardId", "cardId"),
+              Column.of("cardStatus", "card_status"),
+              Column.of("patronId", "p.patronId"),
+              Column.of("patronStatus", "p.patron_status"),
+              Column.of("patronName", "p.patron_name"),
+              Column.of("streetAddress", "p.street_address"),
+              Column.of("cityName", "p.city_name"),
+              Column.of("stateName", "p.state_name"),
+              Column.of("zipCode", "p.zip_code"),
+              Column.of("telephoneHome", "p.telephone_home"),
+              Column.of("telephoneMobile", "p.telephone_mobile"),
+              Column.of("emailAddress", "p.email_address")));
+
+  // One row per loan item with its patron and media, in loanId order
+  public static final ReportDefinition LOAN_ITEMS =
+      new ReportDefinition(
+          "loan-items",
+          "loans",
+          List.of(
+              new Source("loans", "lastUpdateDate"),
+              new Source("patrons", "lastUpdateDate"),
+              new Source("media", "last_update_date")),
+          Sort.by(Sort.Direction.ASC, "loanId"),
+          List.of(
+              new Filter("loanId", "loanId", true),
+              new Filter("patronId", "patronId", true),
+              new Filter("loanStatus", "status", false)),
+          List.of(
+              Aggregation.unwind("items", true),
+              lookup("patrons", "patronId", "patronId", "patron", "patron_name"),
+              Aggregation.unwind("patron", true),
+              lookup(
+                  "media",
+                  "items.mediaId",
+                  "mediaId",
+                  "media",
+                  "media_title",
+                  "author_name",
+                  "isbn_id",
+                  "media_type",
+                  "media_format",
+                  "classification_category",
+                  "classification_subcategory"),
+              Aggregation.unwind("media", true)),
+          List.of(
+              Column.of("loanId", "loanId"),
+              Column.of("patronId", "patronId"),
+              Column.of("patronName", "patron.patron_name"),
+              Column.of("loanStatus", "status"),
+              Column.of("mediaId", "items.mediaId"),
+              Column.of("mediaTitle", "media.media_title"),
+              Column.of("authorName", "media.author_name"),
+              Column.of("isbnId", "media.isbn_id"),
+              Column.of("mediaType", "media.media_type"),
+              Column.of("mediaFormat", "media.media_format"),
+              Column.of("classificationCategory", "media.classification_category"),
+              Column.of("classificationSubcategory", "media.classification_subcategory"),
+              Column.date("checkoutDate", "items.checkoutDate"),
+              Column.date("dueDate", "items.dueDate"),
+              Column.date("returnDate", "items.returnDate"),
+              Column.of("itemStatus", "items.status")));
+
+  private static final List<ReportDefinition> ALL = List.of(CARDS_PATRONS, LOAN_ITEMS);
+
+  public static ReportDefinition get(String name) {
+    return ALL.stream()
+        .filter(report -> report.name().equals(name))
+        .findFirst()
+        .orElseThrow(
+            () ->
+                new GeneralException(
+                    ExceptionType.INVALID_INPUT, "Unknown report: " + name, HttpStatus.NOT_FOUND));
+  }
+
+  // Equality $lookup on an indexed field that brings back only the named fields
+  private static AggregationOperation lookup(
+      String from, String localField, String foreignField, String as, String... fields) {
+    Document projection = new Document("_id", 0);
+    for (String field : fields) {
+      projection.append(field, 1);
+    }
+    Document stage =
+        new Document(
+            "$lookup",
+            new Document("from", from)
+                .append("localField", localField)
+                .append("foreignField", foreignField)
+                .append("pipeline", List.of(new Document("$project", projection)))
+                .append("as", as));
+    return context -> stage;
+  }
+}
@@ -0,0 +1,55 @@
+package com.randomlake.library.report;
+
+import java.util.List;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+
+/**
+ * A flat report over one collection.
+ *
+ * @param name The name the report is requested by.
+ * @param collection The collection the aggregation runs on.
+ * @param sources Every collection the report reads, used to tell when a stored result is stale.
+ * @param sort Row order; should be backed by an index on the collection.
+ * @param filters Request parameters that narrow the report, matched before any join.
+ * @param stages Join and reshaping stages run after the filters and sort.
+ * @param columns Every column the report can return, in default order.
+ */
+public record ReportDefinition(
+    String name,
+    String collection,
+    List<Source> sources,
+    Sort sort,
+    List<Filter> filters,
+    List<AggregationOperation> stages,
+    List<Column> columns) {
+
+  /**
+   * @param collection A collection the report reads.
+   * @param updatedField Indexed field holding the last modification time of a document.
+   */
+  public record Source(String collection, String updatedField) {}
+
+  /**
+   * @param param Request parameter name.
+   * @param field Field of the report collection it is matched against.
+   * @param numeric Whether the parameter is parsed as an integer.
+   */
+  public record Filter(String param, String field, boolean numeric) {}
+
+  /**
+   * @param name Column name in the output.
+   * @param field Path of the value in the documents the stages produce.
+   * @param date Whether the value is a LocalDate, which Mongo hands back as a Date.
+   */
+  public record Column(String name, String field, boolean date) {
+
+    public static Column of(String name, String field) {
+      return new Column(name, field, false);
+    }
+
+    public static Column date(String name, String field) {
+      return new Column(name, field, true);
+    }
+  }
+}
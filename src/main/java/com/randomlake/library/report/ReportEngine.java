@@ -0,0 +1,187 @@
+package com.randomlake.library.report;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.randomlake.library.enums.ExceptionType;
+import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.report.ReportDefinition.Column;
+import com.randomlake.library.report.ReportDefinition.Filter;
+import com.randomlake.library.util.CsvWriter;
+import com.randomlake.library.util.NdjsonWriter;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/*
+ * Runs a report definition as a single aggregation and writes its rows to the response as they
+ * come off the cursor, so memory use stays at one cursor batch whatever the size of the report.
+ * Filters are matched before any join so they can use the collection's indexes, only the
+ * requested columns are projected, and the aggregation may spill to disk for sorts and joins
+ * that outgrow the server's in-memory limit.
+ */
+@Component
+public class ReportEngine {
+
+  private final MongoTemplate mongoTemplate;
+  private final ObjectMapper objectMapper;
+
+  // Rows read per cursor batch
+  @Value("${report.cursor.batch.size:500}")
+  private int batchSize;
+
+  public ReportEngine(MongoTemplate mongoTemplate, ObjectMapper objectMapper) {
+    this.mongoTemplate = mongoTemplate;
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * Prepares a report for streaming. Parameters are checked here, on the request thread; the
+   * aggregation itself only runs once the returned body is written.
+   *
+   * @param report The report to run.
+   * @param params Request parameters; those naming a filter of the report narrow it.
+   * @param columnNames Columns to return in this order, or null or empty for all of them.
+   * @param format Output format.
+   * @return The response body writing the report.
+   */
+  public StreamingResponseBody export(
+      ReportDefinition report,
+      Map<String, String> params,
+      List<String> columnNames,
+      ReportFormat format) {
+    List<Column> columns = selectColumns(report, columnNames);
+    Aggregation aggregation = buildAggregation(report, params, columns);
+    Supplier<Stream<Map<String, Object>>> rows =
+        () ->
+            mongoTemplate
+                .aggregateStream(aggregation, report.collection(), Document.class)
+                .map(document -> toRow(document, columns));
+
+    return switch (format) {
+      case CSV -> CsvWriter.write(
+          rows,
+          columns.stream().map(Column::name).toList(),
+          row -> Stream.of(new ArrayList<>(row.values())));
+      case NDJSON -> NdjsonWriter.write(rows, Function.identity(), objectMapper);
+      case JSON -> writeJsonArray(rows);
+    };
+  }
+
+  Aggregation buildAggregation(
+      ReportDefinition report, Map<String, String> params, List<Column> columns) {
+    List<AggregationOperation> pipeline = new ArrayList<>();
+    Criteria criteria = filterCriteria(report, params);
+    if (criteria != null) {
+      pipeline.add(Aggregation.match(criteria));
+    }
+    pipeline.add(Aggregation.sort(report.sort()));
+    pipeline.addAll(report.stages());
+
+    Document projection = new Document("_id", 0);
+    for (Column column : columns) {
+      projection.append(column.name(), "$" + column.field());
+    }
+    Document projectStage = new Document("$project", projection);
+    pipeline.add(context -> projectStage);
+
+    return Aggregation.newAggregation(pipeline)
+        .withOptions(
+            AggregationOptions.builder().allowDiskUse(true).cursorBatchSize(batchSize).build());
+  }
+
+  private static Criteria filterCriteria(ReportDefinition report, Map<String, String> params) {
+    Criteria criteria = null;
+    for (Filter filter : report.filters()) {
+      String value = params.get(filter.param());
+      if (value == null || value.isBlank()) {
+        continue;
+      }
+      Object match = filter.numeric() ? parseInt(filter.param(), value) : value;
+      criteria =
+          criteria == null
+              ? Criteria.where(filter.field()).is(match)
+              : criteria.and(filter.field()).is(match);
+    }
+    return criteria;
+  }
+
+  private static int parseInt(String param, String value) {
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new GeneralException(
+          ExceptionType.INVALID_INPUT, param + " must be a number", HttpStatus.BAD_REQUEST);
+    }
+  }
+
+  private static List<Column> selectColumns(ReportDefinition report, List<String> columnNames) {
+    if (columnNames == null || columnNames.isEmpty()) {
+      return report.columns();
+    }
+    Map<String, Column> byName = new LinkedHashMap<>();
+    report.columns().forEach(column -> byName.put(column.name(), column));
+    List<Column> selected = new ArrayList<>();
+    for (String name : columnNames) {
+      Column column = byName.get(name.trim());
+      if (column == null) {
+        throw new GeneralException(
+            ExceptionType.INVALID_INPUT,
+            "Unknown column for report " + report.name() + ": " + name,
+            HttpStatus.BAD_REQUEST);
+      }
+      if (!selected.contains(column)) {
+        selected.add(column);
+      }
+    }
+    return selected;
+  }
+
+  // Missing values come out as nulls so every row has every selected column
+  private static Map<String, Object> toRow(Document document, List<Column> columns) {
+    Map<String, Object> row = new LinkedHashMap<>();
+    for (Column column : columns) {
+      Object value = document.get(column.name());
+      if (column.date() && value instanceof Date date) {
+        // LocalDate values are stored as midnight in the server's zone
+        value = date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+      }
+      row.put(column.name(), value);
+    }
+    return row;
+  }
+
+  private StreamingResponseBody writeJsonArray(Supplier<Stream<Map<String, Object>>> source) {
+    ObjectWriter writer =
+        objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    return outputStream -> {
+      try (Stream<Map<String, Object>> rows = source.get();
+          JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+        generator.writeStartArray();
+        Iterator<Map<String, Object>> cursor = rows.iterator();
+        while (cursor.hasNext()) {
+          writer.writeValue(generator, cursor.next());
+        }
+        generator.writeEndArray();
+      }
+    };
+  }
+}
@@ -0,0 +1,41 @@
+package com.randomlake.library.report;
+
+import com.randomlake.library.enums.ExceptionType;
+import com.randomlake.library.exception.GeneralException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+public enum ReportFormat {
+  CSV(MediaType.parseMediaType("text/csv"), "csv"),
+  NDJSON(MediaType.APPLICATION_NDJSON, "ndjson"),
+  JSON(MediaType.APPLICATION_JSON, "json");
+
+  private final MediaType mediaType;
+  private final String extension;
+
+  ReportFormat(MediaType mediaType, String extension) {
+    this.mediaType = mediaType;
+    this.extension = extension;
+  }
+
+  public MediaType getMediaType() {
+    return mediaType;
+  }
+
+  public String getExtension() {
+    return extension;
+  }
+
+  // Parses the format request parameter, case-insensitively
+  public static ReportFormat fromParam(String format) {
+    for (ReportFormat value : values()) {
+      if (value.extension.equalsIgnoreCase(format)) {
+        return value;
+      }
+    }
+    throw new GeneralException(
+        ExceptionType.INVALID_INPUT,
+        "Unsupported report format: " + format,
+        HttpStatus.BAD_REQUEST);
+  }
+}
@@ -0,0 +1,89 @@
+package com.randomlake.library.report;
+
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.gridfs.GridFSUploadStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+// Keeps finished report output gzipped in the report_results GridFS bucket
+@Component
+public class ReportResultStore {
+
+  static final String BUCKET = "report_results";
+
+  private final MongoTemplate mongoTemplate;
+
+  private volatile GridFSBucket bucket;
+
+  public ReportResultStore(MongoTemplate mongoTemplate) {
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  /**
+   * Writes a report into a new file, compressing it on the way; nothing is kept if writing fails.
+   *
+   * @return The id of the file and its compressed size.
+   */
+  public StoredResult store(String filename, StreamingResponseBody report) throws IOException {
+    GridFSUploadStream upload = bucket().openUploadStream(filename);
+    CountingOutputStream counter = new CountingOutputStream(upload);
+    try {
+      // Report writers close their output; the gzip trailer is only written when we close it
+      try (GZIPOutputStream gzip = new GZIPOutputStream(counter, 64 * 1024)) {
+        report.writeTo(StreamUtils.nonClosing(gzip));
+      }
+    } catch (IOException | RuntimeException e) {
+      upload.abort();
+      throw e;
+    }
+    return new StoredResult(upload.getObjectId(), counter.count);
+  }
+
+  // The gzipped bytes as stored
+  public InputStream open(ObjectId fileId) {
+    return bucket().openDownloadStream(fileId);
+  }
+
+  public void delete(ObjectId fileId) {
+    bucket().delete(fileId);
+  }
+
+  private GridFSBucket bucket() {
+    if (bucket == null) {
+      bucket = GridFSBuckets.create(mongoTemplate.getDb(), BUCKET);
+    }
+    return bucket;
+  }
+
+  public record StoredResult(ObjectId fileId, long size) {}
+
+  private static final class CountingOutputStream extends FilterOutputStream {
+
+    private long count;
+
+    private CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+}
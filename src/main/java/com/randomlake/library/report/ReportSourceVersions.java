@@ -0,0 +1,60 @@
+package com.randomlake.library.report;
+
+import com.mongodb.client.MongoCollection;
+import com.randomlake.library.report.ReportDefinition.Source;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.HexFormat;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+/*
+ * Fingerprints the state of the collections a report reads: for each one, its document count
+ * and the latest modification time, read from the end of the index on the modified field. Any
+ * insert or update moves the latest time and any delete changes the count, so a stored result
+ * stays valid exactly as long as the fingerprint does.
+ */
+@Component
+public class ReportSourceVersions {
+
+  private final MongoTemplate mongoTemplate;
+
+  public ReportSourceVersions(MongoTemplate mongoTemplate) {
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  public String versionOf(ReportDefinition report) {
+    StringBuilder state = new StringBuilder();
+    for (Source source : report.sources()) {
+      MongoCollection<Document> collection = mongoTemplate.getCollection(source.collection());
+      Document latest =
+          collection
+              .find()
+              .sort(new Document(source.updatedField(), -1))
+              .projection(new Document(source.updatedField(), 1))
+              .limit(1)
+              .first();
+      Date updated = latest == null ? null : latest.get(source.updatedField(), Date.class);
+      state
+          .append(source.collection())
+          .append(':')
+          .append(collection.estimatedDocumentCount())
+          .append(':')
+          .append(updated == null ? 0 : updated.getTime())
+          .append(';');
+    }
+    return sha256(state.toString());
+  }
+
+  private static String sha256(String value) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+}
@@ -4,13 +4,23 @@ import com.randomlake.library.enums.CardStatus;
 import com.randomlake.library.model.Card;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 import org.bson.types.ObjectId;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.repository.Meta;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
 public interface CardRepository extends MongoRepository<Card, ObjectId>, CardRepositoryCustom {
 
   Optional<Card> findByCardId(int cardId);
 
+  // Keyset pagination: the page that follows the last cardId already returned
+  List<Card> findByCardIdGreaterThanOrderByCardIdAsc(int cardId, Limit limit);
+
+  // Cursor over the whole collection in cardId order, read from the server in batches
+  @Meta(cursorBatchSize = 500)
+  Stream<Card> streamAllByOrderByCardIdAsc();
+
   List<Card> findByPatronId(int patronId);
 
   void deleteById(int cardId);
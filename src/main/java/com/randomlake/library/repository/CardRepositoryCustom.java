@@ -1,9 +1,19 @@
 package com.randomlake.library.repository;
 
-import com.randomlake.library.dto.ReportCardPatron;
+import com.randomlake.library.enums.CardStatus;
+import com.randomlake.library.model.Card;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 public interface CardRepositoryCustom {
-  List<ReportCardPatron> getReportCardPatron(Optional<Integer> cardId, Optional<Integer> patronId);
+  List<Card> findChangedSince(LocalDateTime since, int afterCardId, LocalDateTime until, int limit);
+
+  Optional<LocalDateTime> findLastUpdateDate(int cardId);
+
+  Optional<Card> updateStatus(
+      int cardId,
+      LocalDateTime seenLastUpdateDate,
+      CardStatus newStatus,
+      LocalDateTime lastUpdateDate);
 }
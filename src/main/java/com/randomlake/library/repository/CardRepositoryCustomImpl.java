@@ -1,12 +1,17 @@
 package com.randomlake.library.repository;
 
-import com.randomlake.library.dto.ReportCardPatron;
-import java.util.*;
+import com.randomlake.library.enums.CardStatus;
+import com.randomlake.library.model.Card;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.aggregation.*;
 import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -20,87 +25,39 @@ public class CardRepositoryCustomImpl implements CardRepositoryCustom {
     this.mongoTemplate = mongoTemplate;
   }
 
+  // Cards modified after the sync watermark, in (last_update_date, cardId) order
   @Override
-  public List<ReportCardPatron> getReportCardPatron(
-      Optional<Integer> cardIdOpt, Optional<Integer> patronIdOpt) {
-
-    // Initialize a list to hold aggregation operations
-    List<AggregationOperation> operations = new ArrayList<>();
-
-    // Optional $match stage for filtering by Card ID and/or Patron ID
-    if (cardIdOpt.isPresent() || patronIdOpt.isPresent()) {
-      Criteria criteria = new Criteria();
-
-      List<Criteria> criteriaList = new ArrayList<>();
-
-      cardIdOpt.ifPresent(cardId -> criteriaList.add(Criteria.where("cardId").is(cardId)));
-      patronIdOpt.ifPresent(patronId -> criteriaList.add(Criteria.where("patron_id").is(patronId)));
-
-      // Combine criteria with AND logic
-      if (!criteriaList.isEmpty()) {
-        criteria.andOperator(criteriaList.toArray(new Criteria[0]));
-        MatchOperation matchOperation = Aggregation.match(criteria);
-        operations.add(matchOperation);
-      }
-    }
-
-    // Basic $lookup operation
-    LookupOperation lookupOperation =
-        LookupOperation.newLookup()
-            .from("patrons") // Collection to join
-            .localField("patron_id") // Field from 'cards' collection
-            .foreignField("patronId") // Field from 'patrons' collection
-            .as("p"); // Alias for joined data
-
-    operations.add(lookupOperation);
-
-    // $unwind operation to deconstruct the 'p' array
-    UnwindOperation unwindOperation = Aggregation.unwind("p");
-    operations.add(unwindOperation);
-
-    // $project operation to shape the final output
-    ProjectionOperation projectionOperation =
-        Aggregation.project()
-            .andExclude("_id")
-            .and("cardId")
-            .as("cardId")
-            .and("card_status")
-            .as("cardStatus")
-            .and("p.patronId")
-            .as("patronId")
-            .and("p.patron_status")
-            .as("patronStatus")
-            .and("p.patron_name")
-            .as("patronName")
-            .and("p.street_address")
-            .as("streetAddress")
-            .and("p.city_name")
-            .as("cityName")
-            .and("p.state_name")
-            .as("stateName")
-            .and("p.zip_code")
-            .as("zipCode")
-            .and("p.telephone_home")
-            .as("telephoneHome")
-            .and("p.telephone_mobile")
-            .as("telephoneMobile")
-            .and("p.email_address")
-            .as("emailAddress");
-
-    operations.add(projectionOperation);
-
-    // Build the aggregation pipeline
-    Aggregation aggregation = Aggregation.newAggregation(operations);
-
-    // Execute the aggregation
-    AggregationResults<ReportCardPatron> results =
-        mongoTemplate.aggregate(
-            aggregation,
-            "cards", // Collection name
-            ReportCardPatron.class);
+  public List<Card> findChangedSince(
+      LocalDateTime since, int afterCardId, LocalDateTime until, int limit) {
+    return mongoTemplate.find(
+        ChangeFeedCriteria.changedAfter(
+            "last_update_date", "cardId", since, afterCardId, until, limit),
+        Card.class);
+  }
 
-    List<ReportCardPatron> mappedResults = results.getMappedResults();
+  // Reads only the modification time, for answering conditional requests without the document
+  @Override
+  public Optional<LocalDateTime> findLastUpdateDate(int cardId) {
+    Query query = new Query(Criteria.where("cardId").is(cardId));
+    query.fields().include("lastUpdateDate").exclude("_id");
+    return Optional.ofNullable(mongoTemplate.findOne(query, Card.class))
+        .map(Card::getLastUpdateDate);
+  }
 
-    return results.getMappedResults();
+  /* Sets the status with a single findAndModify and returns the card as written, or empty if it
+   * does not exist or has been modified since it was read with that seenLastUpdateDate.
+   */
+  @Override
+  public Optional<Card> updateStatus(
+      int cardId,
+      LocalDateTime seenLastUpdateDate,
+      CardStatus newStatus,
+      LocalDateTime lastUpdateDate) {
+    Query query =
+        new Query(Criteria.where("cardId").is(cardId).and("lastUpdateDate").is(seenLastUpdateDate));
+    Update update = new Update().set("status", newStatus).set("lastUpdateDate", lastUpdateDate);
+    return Optional.ofNullable(
+        mongoTemplate.findAndModify(
+            query, update, FindAndModifyOptions.options().returnNew(true), Card.class));
   }
 }
@@ -0,0 +1,43 @@
+package com.randomlake.library.repository;
+
+import java.time.LocalDateTime;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+/*
+ * Builds delta-sync queries that read a collection in (timestamp, id) order after a watermark.
+ * Documents that were never stamped sort first and are paged by id alone; a watermark without a
+ * timestamp is still inside that group. Anything stamped at or after the upper bound is left for
+ * the next poll, so writes still in flight while a page is read are not skipped.
+ */
+final class ChangeFeedCriteria {
+
+  private ChangeFeedCriteria() {}
+
+  static Query changedAfter(
+      String timestampField,
+      String idField,
+      LocalDateTime since,
+      int afterId,
+      LocalDateTime until,
+      int limit) {
+    Criteria criteria;
+    if (since == null) {
+      criteria =
+          new Criteria()
+              .orOperator(
+                  Criteria.where(timestampField).is(null).and(idField).gt(afterId),
+                  Criteria.where(timestampField).lt(until));
+    } else {
+      criteria =
+          new Criteria()
+              .orOperator(
+                  Criteria.where(timestampField).gt(since).lt(until),
+                  Criteria.where(timestampField).is(since).and(idField).gt(afterId));
+    }
+    return new Query(criteria)
+        .with(Sort.by(Sort.Direction.ASC, timestampField, idField))
+        .limit(limit);
+  }
+}
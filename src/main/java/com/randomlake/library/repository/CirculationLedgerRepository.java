@@ -0,0 +1,19 @@
+package com.randomlake.library.repository;
+
+import com.randomlake.library.model.CirculationEvent;
+import java.util.List;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CirculationLedgerRepository extends MongoRepository<CirculationEvent, ObjectId> {
+
+  // First page of a loan's events, in insertion order
+  List<CirculationEvent> findByLoanIdOrderByIdAsc(int loanId, Limit limit);
+
+  // Next page of a loan's events, after the last event of the previous page
+  List<CirculationEvent> findByLoanIdAndIdGreaterThanOrderByIdAsc(
+      int loanId, ObjectId afterId, Limit limit);
+}
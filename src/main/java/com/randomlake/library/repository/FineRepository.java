@@ -2,6 +2,7 @@ package com.randomlake.library.repository;
 
 import com.randomlake.library.enums.FineType;
 import com.randomlake.library.model.Fine;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.mongodb.repository.MongoRepository;
@@ -23,4 +24,10 @@ public interface FineRepository extends MongoRepository<Fine, String> {
   List<Fine> findActiveFinesByPatronId(int patronId);
 
   Optional<Fine> findByFineId(int fineId);
+
+  // Fines of one type for a set of patrons, projected to the keys needed for duplicate checks
+  @Query(
+      value = "{ 'fineType' : ?0, 'patronId' : { $in : ?1 } }",
+      fields = "{ 'patronId' : 1, 'mediaId' : 1 }")
+  List<Fine> findByFineTypeAndPatronIdIn(FineType fineType, Collection<Integer> patronIds);
 }
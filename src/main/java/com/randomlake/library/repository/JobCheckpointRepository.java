@@ -0,0 +1,8 @@
+package com.randomlake.library.repository;
+
+import com.randomlake.library.model.JobCheckpoint;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface JobCheckpointRepository extends MongoRepository<JobCheckpoint, String> {}
@@ -4,6 +4,7 @@ import com.randomlake.library.enums.ItemStatus;
 import com.randomlake.library.enums.LoanStatus;
 import com.randomlake.library.model.Loan;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.mongodb.repository.MongoRepository;
@@ -23,26 +24,31 @@ public interface LoanRepository extends MongoRepository<Loan, String>, LoanRepos
   // Find loans by patron ID
   List<Loan> findByPatronId(int patronId);
 
-  // Find first active loan by patron
-  Optional<Loan> findFirstByPatronIdAndStatus(int patronId, LoanStatus status);
-
   // Find loans by mediaId, checking within the LoanItem array
   @Query("{ 'items.mediaId' : ?0 }")
   List<Loan> findByMediaId(int mediaId);
 
   // Find active loan for a patron with specific media item
-  @Query("{ 'patronId': ?0, 'status': ?1, 'items.mediaId': ?2, 'items.status': ?3 }")
+  @Query(
+      "{ 'patronId': ?0, 'status': ?1, 'items': { $elemMatch: { 'mediaId': ?2, 'status': ?3 } } }")
   Optional<Loan> findActiveByPatronIdAndMediaId(
       int patronId, LoanStatus status, int mediaId, ItemStatus itemStatus);
 
+  // Find active loans for a patron holding any of the given media items
+  @Query(
+      "{ 'patronId': ?0, 'status': ?1, 'items': { $elemMatch: { 'mediaId': { $in: ?2 }, 'status': ?3 } } }")
+  List<Loan> findActiveByPatronIdAndMediaIdIn(
+      int patronId, LoanStatus status, Collection<Integer> mediaIds, ItemStatus itemStatus);
+
   // Find active loans with items due on a specific date and item status CHECKED_OUT
   @Query("{ 'status': ?1, 'items': { $elemMatch: { 'dueDate' : ?0, 'status': ?2 } } }")
   List<Loan> findActiveLoansByDueDateAndItemStatus(
       LocalDate dueDate, LoanStatus loanStatus, ItemStatus itemStatus);
 
-  // Find loans that have items overdue by a certain date
-  @Query("{ 'items': { $elemMatch: { 'dueDate' : { $lt : ?0 }, 'status': 'CHECKED_0UT' } } }")
-  List<Loan> findLoansWithOverdueItems(LocalDate overdueDate);
+  // Find loans that have items overdue by a certain date; served by the items.status/items.dueDate
+  // compound index on Loan
+  @Query("{ 'items': { $elemMatch: { 'status': ?1, 'dueDate' : { $lt : ?0 } } } }")
+  List<Loan> findLoansWithOverdueItems(LocalDate overdueDate, ItemStatus itemStatus);
 
   // Count active overdue items for a patron
   @Query(
@@ -1,9 +1,26 @@
 package com.randomlake.library.repository;
 
+import com.randomlake.library.dto.PatronDueItems;
 import com.randomlake.library.dto.ReportLoanPatronMedia;
+import com.randomlake.library.model.Loan;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface LoanRepositoryCustom {
-  List<ReportLoanPatronMedia> getReportLoanPatronMedia(Optional<Integer> loanId);
+  List<ReportLoanPatronMedia> getReportLoanPatronMedia(
+      Optional<Integer> patronId, int afterLoanId, int limit);
+
+  Stream<ReportLoanPatronMedia> streamReportLoanPatronMedia(
+      Optional<Integer> patronId, int batchSize);
+
+  // Returns the number of loans the returns matched
+  int applyItemReturns(Map<Integer, List<Integer>> mediaIdsByLoanId, LocalDate returnDate);
+
+  Stream<Loan> streamLoansWithOverdueItems(LocalDate overdueDate, int afterLoanId, int batchSize);
+
+  Stream<PatronDueItems> streamDueItemsByPatron(Collection<LocalDate> dueDates);
 }
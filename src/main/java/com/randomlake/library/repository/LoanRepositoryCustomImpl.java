@@ -1,13 +1,26 @@
 package com.randomlake.library.repository;
 
+import com.randomlake.library.dto.PatronDueItems;
 import com.randomlake.library.dto.ReportLoanPatronMedia;
+import com.randomlake.library.enums.ItemStatus;
+import com.randomlake.library.enums.LoanStatus;
+import com.randomlake.library.model.Loan;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.*;
 import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -19,31 +32,91 @@ public class LoanRepositoryCustomImpl implements LoanRepositoryCustom {
     this.mongoTemplate = mongoTemplate;
   }
 
+  /* One page of the circulation report in loanId order, for a single patron or for everyone.
+   * The page is cut on loanId before anything is joined, so only the loans on the page are
+   * looked up in patrons and media.
+   */
   @Override
-  public List<ReportLoanPatronMedia> getReportLoanPatronMedia(Optional<Integer> patronIdOpt) {
+  public List<ReportLoanPatronMedia> getReportLoanPatronMedia(
+      Optional<Integer> patronIdOpt, int afterLoanId, int limit) {
+    List<AggregationOperation> pipeline = new ArrayList<>();
+    pipeline.add(Aggregation.match(reportCriteria(patronIdOpt, afterLoanId)));
+    pipeline.add(Aggregation.sort(Sort.by(Sort.Direction.ASC, "loanId")));
+    pipeline.add(Aggregation.limit(limit));
+    pipeline.addAll(reportJoinStages());
+    return mongoTemplate
+        .aggregate(Aggregation.newAggregation(pipeline), "loans", ReportLoanPatronMedia.class)
+        .getMappedResults();
+  }
 
+  // The whole circulation report in loanId order on a server-side cursor, for exports
+  @Override
+  public Stream<ReportLoanPatronMedia> streamReportLoanPatronMedia(
+      Optional<Integer> patronIdOpt, int batchSize) {
     List<AggregationOperation> pipeline = new ArrayList<>();
+    pipeline.add(Aggregation.match(reportCriteria(patronIdOpt, 0)));
+    pipeline.add(Aggregation.sort(Sort.by(Sort.Direction.ASC, "loanId")));
+    pipeline.addAll(reportJoinStages());
+    Aggregation aggregation =
+        Aggregation.newAggregation(pipeline)
+            .withOptions(AggregationOptions.builder().cursorBatchSize(batchSize).build());
+    return mongoTemplate.aggregateStream(aggregation, "loans", ReportLoanPatronMedia.class);
+  }
 
-    // Match stage for patronId (if present)
-    Criteria criteria = new Criteria();
+  private static Criteria reportCriteria(Optional<Integer> patronIdOpt, int afterLoanId) {
+    Criteria criteria = Criteria.where("loanId").gt(afterLoanId);
     patronIdOpt.ifPresent(patronId -> criteria.and("patronId").is(patronId));
-    pipeline.add(Aggregation.match(criteria));
+    return criteria;
+  }
 
-    // Lookup for patrons
-    pipeline.add(Aggregation.lookup("patrons", "patronId", "patronId", "patronInfo"));
+  /* Joins each loan with its patron and media on the patronId and mediaId indexes. The inner
+   * pipelines return only the report fields rather than whole documents. Each item picks up its
+   * media with $indexOfArray/$arrayElemAt, which every supported server version accepts; a
+   * computed $getField name is rejected before MongoDB 8.0.
+   */
+  private static List<AggregationOperation> reportJoinStages() {
+    Document patronLookup =
+        new Document(
+            "$lookup",
+            new Document("from", "patrons")
+                .append("localField", "patronId")
+                .append("foreignField", "patronId")
+                .append(
+                    "pipeline",
+                    List.of(
+                        new Document("$project", new Document("_id", 0).append("patron_name", 1))))
+                .append("as", "patronInfo"));
 
-    // Unwind patronInfo
-    pipeline.add(Aggregation.unwind("patronInfo"));
+    Document mediaLookup =
+        new Document(
+            "$lookup",
+            new Document("from", "media")
+                .append("localField", "items.mediaId")
+                .append("foreignField", "mediaId")
+                .append(
+                    "pipeline",
+                    List.of(
+                        new Document(
+                            "$project",
+                            new Document("_id", 0)
+                                .append("mediaId", 1)
+                                .append("mediaTitle", "$media_title")
+                                .append("authorName", "$author_name")
+                                .append("isbnId", "$isbn_id")
+                                .append("classificationCategory", "$classification_category")
+                                .append("classificationSubcategory", "$classification_subcategory")
+                                .append("mediaType", "$media_type")
+                                .append("mediaFormat", "$media_format"))))
+                .append("as", "mediaInfo"));
 
-    // Lookup for media items
-    pipeline.add(Aggregation.lookup("media", "items.mediaId", "mediaId", "mediaInfo"));
+    // Position of the item's media among the looked-up media, or -1 if it was not found
+    Document mediaIndex =
+        new Document("$indexOfArray", List.of("$mediaInfo.mediaId", "$$item.mediaId"));
 
-    // Project fields using raw Document for nested array mapping
     Document itemsMapping =
         new Document(
             "$map",
-            new Document()
-                .append("input", "$items")
+            new Document("input", "$items")
                 .append("as", "item")
                 .append(
                     "in",
@@ -56,61 +129,176 @@ public class LoanRepositoryCustomImpl implements LoanRepositoryCustom {
                             "mediaDetails",
                             new Document(
                                 "$let",
-                                new Document()
-                                    .append(
-                                        "vars",
-                                        new Document(
-                                            "media",
-                                            new Document(
-                                                "$arrayElemAt",
-                                                List.of(
-                                                    new Document(
-                                                        "$filter",
-                                                        new Document()
-                                                            .append("input", "$mediaInfo")
-                                                            .append("as", "media")
-                                                            .append(
-                                                                "cond",
-                                                                new Document(
-                                                                    "$eq",
-                                                                    List.of(
-                                                                        "$$media.mediaId",
-                                                                        "$$item.mediaId")))),
-                                                    0))))
+                                new Document("vars", new Document("index", mediaIndex))
                                     .append(
                                         "in",
-                                        new Document()
-                                            .append("mediaTitle", "$$media.media_title")
-                                            .append("authorName", "$$media.author_name")
-                                            .append("isbnId", "$$media.isbn_id")
-                                            .append(
-                                                "classificationCategory",
-                                                "$$media.classification_category")
-                                            .append(
-                                                "classificationSubcategory",
-                                                "$$media.classification_subcategory")
-                                            .append("mediaType", "$$media.media_type")
-                                            .append("mediaFormat", "$$media.media_format"))))));
-    Document projectFields =
-        new Document("loanId", 1)
-            .append("patronId", 1)
-            .append("patronName", "$patronInfo.patron_name")
-            .append("loanStatus", "$status")
-            .append("items", itemsMapping);
-
-    // Build the $project stage
-    Document projectStage = new Document("$project", projectFields);
-
-    // Create a custom AggregationOperation
-    AggregationOperation projectOperation = context -> projectStage;
-
-    // Add the custom project operation to the pipeline
-    pipeline.add(projectOperation);
-
-    // Execute the aggregation and map results
-    Aggregation aggregation = Aggregation.newAggregation(pipeline);
-    return mongoTemplate
-        .aggregate(aggregation, "loans", ReportLoanPatronMedia.class)
-        .getMappedResults();
+                                        new Document(
+                                            "$cond",
+                                            List.of(
+                                                new Document("$gte", List.of("$$index", 0)),
+                                                new Document(
+                                                    "$arrayElemAt",
+                                                    List.of("$mediaInfo", "$$index")),
+                                                "$$REMOVE")))))));
+
+    Document projectStage =
+        new Document(
+            "$project",
+            new Document("_id", 0)
+                .append("loanId", 1)
+                .append("patronId", 1)
+                .append(
+                    "patronName",
+                    new Document("$arrayElemAt", List.of("$patronInfo.patron_name", 0)))
+                .append("loanStatus", "$status")
+                .append("items", itemsMapping));
+
+    return List.of(context -> patronLookup, context -> mediaLookup, context -> projectStage);
+  }
+
+  /* Marks returned items on each affected loan with one positional update per loan, sent as a
+   * single unordered bulk write; items are matched through an array filter, so the loan documents
+   * are never re-read or rewritten in full. The loans left with nothing checked out are then
+   * completed by the server in one conditional updateMulti. Deciding that from the loans read
+   * before the write would miss a loan whose last items come back at two desks at once: each desk
+   * would still see the other's item out.
+   */
+  @Override
+  public int applyItemReturns(Map<Integer, List<Integer>> mediaIdsByLoanId, LocalDate returnDate) {
+    if (mediaIdsByLoanId.isEmpty()) {
+      return 0;
+    }
+    LocalDateTime now = LocalDateTime.now();
+    BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Loan.class);
+
+    mediaIdsByLoanId.forEach(
+        (loanId, mediaIds) -> {
+          Query query =
+              new Query(
+                  Criteria.where("loanId").is(loanId).and("status").is(LoanStatus.ACTIVE.name()));
+          Update update =
+              new Update()
+                  .set("items.$[returned].status", ItemStatus.RETURNED.name())
+                  .set("items.$[returned].returnDate", returnDate)
+                  .set("lastUpdateDate", now)
+                  .inc("version", 1)
+                  .filterArray(
+                      Criteria.where("returned.mediaId")
+                          .in(mediaIds)
+                          .and("returned.status")
+                          .is(ItemStatus.CHECKED_OUT.name()));
+          bulkOps.updateOne(query, update);
+        });
+    int matched = bulkOps.execute().getMatchedCount();
+
+    mongoTemplate.updateMulti(
+        completedLoansQuery(mediaIdsByLoanId.keySet()),
+        new Update()
+            .set("status", LoanStatus.COMPLETED.name())
+            .set("lastUpdateDate", now)
+            .inc("version", 1),
+        Loan.class);
+    return matched;
+  }
+
+  // Active loans among these with no item still checked out
+  private static Query completedLoansQuery(Collection<Integer> loanIds) {
+    return new Query(
+        Criteria.where("loanId")
+            .in(loanIds)
+            .and("status")
+            .is(LoanStatus.ACTIVE.name())
+            .and("items")
+            .not()
+            .elemMatch(Criteria.where("status").is(ItemStatus.CHECKED_OUT.name())));
+  }
+
+  /* Walks loans with items overdue before the given date on a server-side cursor, ordered by
+   * loanId so a run can resume after the last loan it finished. Only the fields the overdue job
+   * needs are returned; the transaction log in particular is left on the server.
+   */
+  @Override
+  public Stream<Loan> streamLoansWithOverdueItems(
+      LocalDate overdueDate, int afterLoanId, int batchSize) {
+    Query query =
+        new Query(
+                Criteria.where("loanId")
+                    .gt(afterLoanId)
+                    .and("items")
+                    .elemMatch(
+                        Criteria.where("dueDate")
+                            .lt(overdueDate)
+                            .and("status")
+                            .is(ItemStatus.CHECKED_OUT.name())))
+            .with(Sort.by(Sort.Direction.ASC, "loanId"))
+            .cursorBatchSize(batchSize);
+    query.fields().include("loanId", "patronId", "status", "items");
+    return mongoTemplate.stream(query, Loan.class);
+  }
+
+  /* Collects the checked-out items due on any of the given dates into one digest per patron.
+   * Loans are matched on the items index, unwound, and joined with their media titles on the
+   * server; items come out ordered by due date, latest first, and patrons in patronId order.
+   */
+  @Override
+  public Stream<PatronDueItems> streamDueItemsByPatron(Collection<LocalDate> dueDates) {
+    Criteria dueItem =
+        Criteria.where("status").is(ItemStatus.CHECKED_OUT.name()).and("dueDate").in(dueDates);
+
+    // Only the title is needed from each item's media, so the join does not copy whole documents
+    Document mediaLookup =
+        new Document(
+            "$lookup",
+            new Document("from", "media")
+                .append("localField", "items.mediaId")
+                .append("foreignField", "mediaId")
+                .append(
+                    "pipeline",
+                    List.of(
+                        new Document("$project", new Document("_id", 0).append("media_title", 1))))
+                .append("as", "mediaInfo"));
+
+    Document groupStage =
+        new Document(
+            "$group",
+            new Document("_id", "$patronId")
+                .append(
+                    "items",
+                    new Document(
+                        "$push",
+                        new Document("mediaId", "$items.mediaId")
+                            .append(
+                                "mediaTitle",
+                                new Document("$arrayElemAt", List.of("$mediaInfo.media_title", 0)))
+                            .append("dueDate", "$items.dueDate"))));
+    Document sortStage = new Document("$sort", new Document("_id", 1));
+    Document projectStage =
+        new Document(
+            "$project", new Document("_id", 0).append("patronId", "$_id").append("items", 1));
+
+    Aggregation aggregation =
+        Aggregation.newAggregation(
+            Loan.class,
+            Aggregation.match(
+                Criteria.where("status")
+                    .is(LoanStatus.ACTIVE.name())
+                    .and("items")
+                    .elemMatch(dueItem)),
+            Aggregation.unwind("items"),
+            Aggregation.match(
+                Criteria.where("items.status")
+                    .is(ItemStatus.CHECKED_OUT.name())
+                    .and("items.dueDate")
+                    .in(dueDates)),
+            Aggregation.sort(
+                Sort.by(Sort.Direction.ASC, "patronId")
+                    .and(Sort.by(Sort.Direction.DESC, "items.dueDate"))
+                    .and(Sort.by(Sort.Direction.ASC, "items.mediaId"))),
+            context -> mediaLookup,
+            context -> groupStage,
+            context -> sortStage,
+            context -> projectStage);
+
+    return mongoTemplate.aggregateStream(aggregation, "loans", PatronDueItems.class);
   }
 }
@@ -4,15 +4,25 @@ import com.randomlake.library.model.Media;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 import org.bson.types.ObjectId;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.repository.Meta;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface MediaRepository extends MongoRepository<Media, ObjectId> {
+public interface MediaRepository extends MongoRepository<Media, ObjectId>, MediaRepositoryCustom {
 
   Optional<Media> findByMediaId(int mediaId);
 
+  // Keyset pagination: the page that follows the last mediaId already returned
+  List<Media> findByMediaIdGreaterThanOrderByMediaIdAsc(int mediaId, Limit limit);
+
+  // Cursor over the whole collection in mediaId order, read from the server in batches
+  @Meta(cursorBatchSize = 500)
+  Stream<Media> streamAllByOrderByMediaIdAsc();
+
   List<Media> findAllByMediaIdIn(Collection<Integer> mediaIds);
 
   List<Media> findByMediaTitle(String mediaTitle);
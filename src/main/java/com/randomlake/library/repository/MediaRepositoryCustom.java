@@ -0,0 +1,32 @@
+package com.randomlake.library.repository;
+
+import com.mongodb.client.result.UpdateResult;
+import com.randomlake.library.enums.MediaStatus;
+import com.randomlake.library.model.Media;
+import com.randomlake.library.util.Precondition;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+
+public interface MediaRepositoryCustom {
+  Optional<Media> transitionStatus(
+      int mediaId, MediaStatus expectedStatus, MediaStatus newStatus, LocalDateTime lastUpdateDate);
+
+  long revertStatusForMediaIds(
+      Collection<Integer> mediaIds,
+      MediaStatus appliedStatus,
+      MediaStatus previousStatus,
+      LocalDateTime appliedUpdateDate);
+
+  List<Media> findChangedSince(
+      LocalDateTime since, int afterMediaId, LocalDateTime until, int limit);
+
+  Optional<LocalDateTime> findLastUpdateDate(int mediaId);
+
+  Optional<Media> patch(int mediaId, Update update, Precondition precondition);
+
+  UpdateResult patchMatching(Criteria filter, Update update);
+}
@@ -0,0 +1,107 @@
+package com.randomlake.library.repository;
+
+import com.mongodb.client.result.UpdateResult;
+import com.randomlake.library.enums.MediaStatus;
+import com.randomlake.library.model.Media;
+import com.randomlake.library.util.Precondition;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class MediaRepositoryCustomImpl implements MediaRepositoryCustom {
+
+  private final MongoTemplate mongoTemplate;
+
+  public MediaRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  /* Moves one item from the expected status to the new one with a single findAndModify and
+   * returns it as written, or empty if the item does not exist or is in another status. The
+   * version is bumped so a save of a copy read before the transition fails.
+   */
+  @Override
+  public Optional<Media> transitionStatus(
+      int mediaId,
+      MediaStatus expectedStatus,
+      MediaStatus newStatus,
+      LocalDateTime lastUpdateDate) {
+    Query query =
+        new Query(Criteria.where("mediaId").is(mediaId).and("media_status").is(expectedStatus));
+    Update update =
+        new Update()
+            .set("media_status", newStatus)
+            .set("last_update_date", lastUpdateDate)
+            .inc("version", 1);
+    return Optional.ofNullable(
+        mongoTemplate.findAndModify(
+            query, update, FindAndModifyOptions.options().returnNew(true), Media.class));
+  }
+
+  // Undoes a status flip, touching only the documents stamped by that flip
+  @Override
+  public long revertStatusForMediaIds(
+      Collection<Integer> mediaIds,
+      MediaStatus appliedStatus,
+      MediaStatus previousStatus,
+      LocalDateTime appliedUpdateDate) {
+    Query query =
+        new Query(
+            Criteria.where("mediaId")
+                .in(mediaIds)
+                .and("media_status")
+                .is(appliedStatus)
+                .and("last_update_date")
+                .is(appliedUpdateDate));
+    Update update =
+        new Update()
+            .set("media_status", previousStatus)
+            .set("last_update_date", LocalDateTime.now())
+            .inc("version", 1);
+    return mongoTemplate.updateMulti(query, update, Media.class).getModifiedCount();
+  }
+
+  // Items modified after the sync watermark, in (last_update_date, mediaId) order
+  @Override
+  public List<Media> findChangedSince(
+      LocalDateTime since, int afterMediaId, LocalDateTime until, int limit) {
+    return mongoTemplate.find(
+        ChangeFeedCriteria.changedAfter(
+            "last_update_date", "mediaId", since, afterMediaId, until, limit),
+        Media.class);
+  }
+
+  // Applies a PATCH update and returns the document as written, or empty if it does not exist or
+  // no longer meets the If-Match precondition
+  @Override
+  public Optional<Media> patch(int mediaId, Update update, Precondition precondition) {
+    return Optional.ofNullable(
+        mongoTemplate.findAndModify(
+            new Query(precondition.addTo(Criteria.where("mediaId").is(mediaId))),
+            update,
+            FindAndModifyOptions.options().returnNew(true),
+            Media.class));
+  }
+
+  @Override
+  public UpdateResult patchMatching(Criteria filter, Update update) {
+    return mongoTemplate.updateMulti(new Query(filter), update, Media.class);
+  }
+
+  // Reads only the modification time, for answering conditional requests without the document
+  @Override
+  public Optional<LocalDateTime> findLastUpdateDate(int mediaId) {
+    Query query = new Query(Criteria.where("mediaId").is(mediaId));
+    query.fields().include("lastUpdateDate").exclude("_id");
+    return Optional.ofNullable(mongoTemplate.findOne(query, Media.class))
+        .map(Media::getLastUpdateDate);
+  }
+}
@@ -0,0 +1,10 @@
+package com.randomlake.library.repository;
+
+import com.randomlake.library.model.NotificationOutbox;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface NotificationOutboxRepository
+    extends MongoRepository<NotificationOutbox, ObjectId>, NotificationOutboxRepositoryCustom {}
@@ -0,0 +1,19 @@
+package com.randomlake.library.repository;
+
+import com.randomlake.library.model.NotificationOutbox;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface NotificationOutboxRepositoryCustom {
+  int enqueueAll(List<NotificationOutbox> entries);
+
+  Optional<NotificationOutbox> claimNext(LocalDateTime now, LocalDateTime leaseExpiresAt);
+
+  // Record the outcome of a claimed entry; false if its lease was lost to another claim meanwhile
+  boolean markSent(NotificationOutbox claimed, LocalDateTime sentDate);
+
+  boolean scheduleRetry(NotificationOutbox claimed, LocalDateTime nextAttemptAt, String error);
+
+  boolean markFailed(NotificationOutbox claimed, String error);
+}
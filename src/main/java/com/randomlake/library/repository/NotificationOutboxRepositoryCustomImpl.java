@@ -0,0 +1,132 @@
+package com.randomlake.library.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.randomlake.library.enums.OutboxStatus;
+import com.randomlake.library.model.NotificationOutbox;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class NotificationOutboxRepositoryCustomImpl implements NotificationOutboxRepositoryCustom {
+
+  private static final int DUPLICATE_KEY = 11000;
+
+  private final MongoTemplate mongoTemplate;
+
+  public NotificationOutboxRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  /* Inserts the entries in one unordered bulk write. Entries whose idempotency key is already
+   * queued are rejected by the unique index and skipped, so re-running a job does not queue the
+   * same message twice. Returns the number of entries actually inserted.
+   */
+  @Override
+  public int enqueueAll(List<NotificationOutbox> entries) {
+    if (entries.isEmpty()) {
+      return 0;
+    }
+    BulkOperations bulkOps =
+        mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, NotificationOutbox.class);
+    bulkOps.insert(entries);
+    try {
+      return bulkOps.execute().getInsertedCount();
+    } catch (BulkOperationException e) {
+      boolean onlyDuplicates =
+          e.getErrors().stream().allMatch(error -> error.getCode() == DUPLICATE_KEY);
+      if (!onlyDuplicates) {
+        throw e;
+      }
+      return e.getResult().getInsertedCount();
+    } catch (DuplicateKeyException e) {
+      if (e.getCause() instanceof MongoBulkWriteException bulkWriteException
+          && bulkWriteException.getWriteErrors().stream()
+              .allMatch(error -> error.getCode() == DUPLICATE_KEY)) {
+        return bulkWriteException.getWriteResult().getInsertedCount();
+      }
+      throw e;
+    }
+  }
+
+  /* Atomically claims the oldest due entry: a pending entry whose next attempt time has passed,
+   * or one left in SENDING by a worker whose lease expired (e.g. the node was stopped mid-send).
+   */
+  @Override
+  public Optional<NotificationOutbox> claimNext(LocalDateTime now, LocalDateTime leaseExpiresAt) {
+    Criteria due =
+        new Criteria()
+            .orOperator(
+                Criteria.where("status").is(OutboxStatus.PENDING).and("nextAttemptAt").lte(now),
+                Criteria.where("status").is(OutboxStatus.SENDING).and("leaseExpiresAt").lt(now));
+    Query query = new Query(due).with(Sort.by("nextAttemptAt"));
+    Update update =
+        new Update()
+            .set("status", OutboxStatus.SENDING)
+            .set("leaseExpiresAt", leaseExpiresAt)
+            .inc("attempts", 1);
+
+    return Optional.ofNullable(
+        mongoTemplate.findAndModify(
+            query, update, new FindAndModifyOptions().returnNew(true), NotificationOutbox.class));
+  }
+
+  @Override
+  public boolean markSent(NotificationOutbox claimed, LocalDateTime sentDate) {
+    Update update =
+        new Update()
+            .set("status", OutboxStatus.SENT)
+            .set("sentDate", sentDate)
+            .unset("leaseExpiresAt")
+            .unset("lastError");
+    return updateUnderLease(claimed, update);
+  }
+
+  @Override
+  public boolean scheduleRetry(
+      NotificationOutbox claimed, LocalDateTime nextAttemptAt, String error) {
+    Update update =
+        new Update()
+            .set("status", OutboxStatus.PENDING)
+            .set("nextAttemptAt", nextAttemptAt)
+            .set("lastError", error)
+            .unset("leaseExpiresAt");
+    return updateUnderLease(claimed, update);
+  }
+
+  @Override
+  public boolean markFailed(NotificationOutbox claimed, String error) {
+    Update update =
+        new Update()
+            .set("status", OutboxStatus.FAILED)
+            .set("lastError", error)
+            .unset("leaseExpiresAt");
+    return updateUnderLease(claimed, update);
+  }
+
+  /* Updates the entry only while the claim that returned it still holds. Every claim counts an
+   * attempt, so an entry whose lease expired and was claimed again no longer matches the old count.
+   */
+  private boolean updateUnderLease(NotificationOutbox claimed, Update update) {
+    Query underLease =
+        new Query(
+            Criteria.where("_id")
+                .is(claimed.getId())
+                .and("status")
+                .is(OutboxStatus.SENDING)
+                .and("attempts")
+                .is(claimed.getAttempts()));
+    return mongoTemplate.updateFirst(underLease, update, NotificationOutbox.class).getMatchedCount()
+        > 0;
+  }
+}
@@ -0,0 +1,17 @@
+package com.randomlake.library.repository;
+
+import com.randomlake.library.model.PatronImportJob;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PatronImportJobRepository extends MongoRepository<PatronImportJob, ObjectId> {
+
+  Optional<PatronImportJob> findByJobId(String jobId);
+
+  List<PatronImportJob> findByCreatedDateBefore(LocalDateTime cutoff);
+}
@@ -1,19 +1,34 @@
 package com.randomlake.library.repository;
 
+import com.randomlake.library.dto.PatronContact;
 import com.randomlake.library.enums.PatronStatus;
 import com.randomlake.library.model.Patron;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.repository.Meta;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface PatronRepository extends MongoRepository<Patron, String> {
+public interface PatronRepository extends MongoRepository<Patron, String>, PatronRepositoryCustom {
 
   Optional<Patron> findByPatronId(int patronId);
 
+  // Keyset pagination: the page that follows the last patronId already returned
+  List<Patron> findByPatronIdGreaterThanOrderByPatronIdAsc(int patronId, Limit limit);
+
+  // Cursor over the whole collection in patronId order, read from the server in batches
+  @Meta(cursorBatchSize = 500)
+  Stream<Patron> streamAllByOrderByPatronIdAsc();
+
+  // Projected to patronId, email_address and contact_method
+  List<PatronContact> findContactsByPatronIdIn(Collection<Integer> patronIds);
+
   List<Patron> findByPatronName(String patronName);
 
   List<Patron> findByDateOfBirth(LocalDate dateOfBirth);
@@ -0,0 +1,38 @@
+package com.randomlake.library.repository;
+
+import com.mongodb.client.result.UpdateResult;
+import com.randomlake.library.enums.PatronStatus;
+import com.randomlake.library.model.Patron;
+import com.randomlake.library.util.Precondition;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+
+public interface PatronRepositoryCustom {
+  long addCheckedOutItems(int patronId, Collection<Integer> mediaIds, LocalDateTime lastUpdateDate);
+
+  long removeCheckedOutItems(
+      int patronId, Collection<Integer> mediaIds, LocalDateTime lastUpdateDate);
+
+  long transitionStatus(
+      int patronId,
+      Collection<PatronStatus> expectedStatuses,
+      PatronStatus newStatus,
+      LocalDateTime lastUpdateDate);
+
+  List<Patron> findChangedSince(
+      LocalDateTime since, int afterPatronId, LocalDateTime until, int limit);
+
+  Optional<LocalDateTime> findLastUpdateDate(int patronId);
+
+  // Every patron with only patronName and dateOfBirth read
+  Stream<Patron> streamNameAndDateOfBirth(int batchSize);
+
+  Optional<Patron> patch(int patronId, Update update, Precondition precondition);
+
+  UpdateResult patchMatching(Criteria filter, Update update);
+}
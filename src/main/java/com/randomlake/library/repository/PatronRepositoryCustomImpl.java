@@ -0,0 +1,127 @@
+package com.randomlake.library.repository;
+
+import com.mongodb.client.result.UpdateResult;
+import com.randomlake.library.enums.PatronStatus;
+import com.randomlake.library.model.Patron;
+import com.randomlake.library.util.Precondition;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class PatronRepositoryCustomImpl implements PatronRepositoryCustom {
+
+  private final MongoTemplate mongoTemplate;
+
+  public PatronRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  /* Adds the media IDs to checked_out_items with one $addToSet/$each, so a retried checkout
+   * can't list an item twice. Only a patron who is not suspended matches, and since that leaves
+   * ACTIVE or INACTIVE, setting ACTIVE is the INACTIVE -> ACTIVE transition a checkout implies.
+   */
+  @Override
+  public long addCheckedOutItems(
+      int patronId, Collection<Integer> mediaIds, LocalDateTime lastUpdateDate) {
+    Query query =
+        new Query(
+            Criteria.where("patronId")
+                .is(patronId)
+                .and("patron_status")
+                .ne(PatronStatus.SUSPENDED));
+    Update update =
+        new Update()
+            .addToSet("checked_out_items")
+            .each(mediaIds.toArray())
+            .set("patron_status", PatronStatus.ACTIVE)
+            .set("lastUpdateDate", lastUpdateDate)
+            .inc("version", 1);
+    return mongoTemplate.updateFirst(query, update, Patron.class).getMatchedCount();
+  }
+
+  // Removes all returned media IDs from checked_out_items in one $pullAll
+  @Override
+  public long removeCheckedOutItems(
+      int patronId, Collection<Integer> mediaIds, LocalDateTime lastUpdateDate) {
+    Query query = new Query(Criteria.where("patronId").is(patronId));
+    Update update =
+        new Update()
+            .pullAll("checked_out_items", mediaIds.toArray())
+            .set("lastUpdateDate", lastUpdateDate)
+            .inc("version", 1);
+    return mongoTemplate.updateFirst(query, update, Patron.class).getMatchedCount();
+  }
+
+  // Sets a new status on the patron only while it is in one of the expected statuses
+  @Override
+  public long transitionStatus(
+      int patronId,
+      Collection<PatronStatus> expectedStatuses,
+      PatronStatus newStatus,
+      LocalDateTime lastUpdateDate) {
+    Query query =
+        new Query(
+            Criteria.where("patronId").is(patronId).and("patron_status").in(expectedStatuses));
+    Update update =
+        new Update()
+            .set("patron_status", newStatus)
+            .set("lastUpdateDate", lastUpdateDate)
+            .inc("version", 1);
+    return mongoTemplate.updateFirst(query, update, Patron.class).getMatchedCount();
+  }
+
+  // Patrons modified after the sync watermark, in (lastUpdateDate, patronId) order
+  @Override
+  public List<Patron> findChangedSince(
+      LocalDateTime since, int afterPatronId, LocalDateTime until, int limit) {
+    return mongoTemplate.find(
+        ChangeFeedCriteria.changedAfter(
+            "lastUpdateDate", "patronId", since, afterPatronId, until, limit),
+        Patron.class);
+  }
+
+  // Applies a PATCH update and returns the document as written, or empty if it does not exist or
+  // no longer meets the If-Match precondition
+  @Override
+  public Optional<Patron> patch(int patronId, Update update, Precondition precondition) {
+    return Optional.ofNullable(
+        mongoTemplate.findAndModify(
+            new Query(precondition.addTo(Criteria.where("patronId").is(patronId))),
+            update,
+            FindAndModifyOptions.options().returnNew(true),
+            Patron.class));
+  }
+
+  @Override
+  public UpdateResult patchMatching(Criteria filter, Update update) {
+    return mongoTemplate.updateMulti(new Query(filter), update, Patron.class);
+  }
+
+  // Reads only the modification time, for answering conditional requests without the document
+  @Override
+  public Optional<LocalDateTime> findLastUpdateDate(int patronId) {
+    Query query = new Query(Criteria.where("patronId").is(patronId));
+    query.fields().include("lastUpdateDate").exclude("_id");
+    return Optional.ofNullable(mongoTemplate.findOne(query, Patron.class))
+        .map(Patron::getLastUpdateDate);
+  }
+
+  // Sorted on the patronName_dateOfBirth keys so the planner reads the index alone, never a
+  // document
+  @Override
+  public Stream<Patron> streamNameAndDateOfBirth(int batchSize) {
+    Query query = new Query().with(Sort.by("patronName", "dateOfBirth")).cursorBatchSize(batchSize);
+    query.fields().include("patronName", "dateOfBirth").exclude("_id");
+    return mongoTemplate.stream(query, Patron.class);
+  }
+}
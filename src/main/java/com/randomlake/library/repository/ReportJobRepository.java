@@ -0,0 +1,27 @@
+package com.randomlake.library.repository;
+
+import com.randomlake.library.enums.ReportJobStatus;
+import com.randomlake.library.model.ReportJob;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ReportJobRepository extends MongoRepository<ReportJob, ObjectId> {
+
+  Optional<ReportJob> findByJobId(String jobId);
+
+  Optional<ReportJob> findFirstByParamsHashAndSourceVersionAndStatusInOrderByCreatedDateDesc(
+      String paramsHash, String sourceVersion, Collection<ReportJobStatus> statuses);
+
+  long countByRequestedByAndStatusIn(String requestedBy, Collection<ReportJobStatus> statuses);
+
+  List<ReportJob> findByCreatedDateBefore(LocalDateTime cutoff);
+
+  List<ReportJob> findByStatusInAndCreatedDateBefore(
+      Collection<ReportJobStatus> statuses, LocalDateTime cutoff);
+}
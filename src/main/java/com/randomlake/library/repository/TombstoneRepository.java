@@ -0,0 +1,10 @@
+package com.randomlake.library.repository;
+
+import com.randomlake.library.model.Tombstone;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface TombstoneRepository
+    extends MongoRepository<Tombstone, ObjectId>, TombstoneRepositoryCustom {}
@@ -0,0 +1,14 @@
+package com.randomlake.library.repository;
+
+import com.randomlake.library.model.Tombstone;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface TombstoneRepositoryCustom {
+  List<Tombstone> findDeletedSince(
+      String collectionName,
+      LocalDateTime since,
+      int afterEntityId,
+      LocalDateTime until,
+      int limit);
+}
@@ -0,0 +1,34 @@
+package com.randomlake.library.repository;
+
+import com.randomlake.library.model.Tombstone;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class TombstoneRepositoryCustomImpl implements TombstoneRepositoryCustom {
+
+  private final MongoTemplate mongoTemplate;
+
+  public TombstoneRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  // Deletions from one collection after the watermark, in (deletedDate, entityId) order
+  @Override
+  public List<Tombstone> findDeletedSince(
+      String collectionName,
+      LocalDateTime since,
+      int afterEntityId,
+      LocalDateTime until,
+      int limit) {
+    Query query =
+        ChangeFeedCriteria.changedAfter(
+            "deletedDate", "entityId", since, afterEntityId, until, limit);
+    query.addCriteria(Criteria.where("collectionName").is(collectionName));
+    return mongoTemplate.find(query, Tombstone.class);
+  }
+}
@@ -0,0 +1,261 @@
+package com.randomlake.library.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Prefix tree of suggestion texts weighted by how many records carry them. A text is reachable
+ * from the start of each of its words, so "rowl" suggests "J. K. Rowling". Every node caches the
+ * heaviest suggestions below it; a change marks the cached lists on its paths stale and they are
+ * rebuilt from the children on the next lookup that reaches them.
+ *
+ * To keep the tree compact it is only MAX_DEPTH characters deep: each node at that depth keeps
+ * the full keys that pass through it, and a longer prefix is matched by filtering those keys.
+ * Children are held in sorted parallel arrays rather than maps.
+ */
+public class AutocompleteTrie {
+
+  static final int MAX_DEPTH = 8;
+
+  private static final Comparator<Entry> BY_WEIGHT =
+      Comparator.comparingInt((Entry entry) -> entry.weight)
+          .reversed()
+          .thenComparing(entry -> entry.text);
+
+  private final int maxSuggestions;
+  private final Node root = new Node();
+  private final Map<String, Entry> entries = new HashMap<>();
+
+  /** @param maxSuggestions The most suggestions cached per node and returned per lookup. */
+  public AutocompleteTrie(int maxSuggestions) {
+    this.maxSuggestions = maxSuggestions;
+  }
+
+  // Counts one more record carrying the text
+  public synchronized void add(String text) {
+    String folded = TextNormalizer.fold(text).trim();
+    if (folded.isEmpty()) {
+      return;
+    }
+    Entry entry = entries.get(folded);
+    if (entry == null) {
+      entry = new Entry(text.trim());
+      entries.put(folded, entry);
+      for (String key : keysOf(folded)) {
+        insertKey(key, entry);
+      }
+    } else {
+      markStale(folded);
+    }
+    entry.weight++;
+  }
+
+  // Counts one record fewer carrying the text; the suggestion goes once no record has it
+  public synchronized void remove(String text) {
+    String folded = TextNormalizer.fold(text).trim();
+    Entry entry = entries.get(folded);
+    if (entry == null) {
+      return;
+    }
+    markStale(folded);
+    if (--entry.weight > 0) {
+      return;
+    }
+    entries.remove(folded);
+    for (String key : keysOf(folded)) {
+      removeKey(key, entry);
+    }
+  }
+
+  /**
+   * Returns the heaviest suggestions whose text, or one of its words, starts with the prefix.
+   *
+   * @param prefix Text as typed; case and accents are ignored.
+   * @param limit Maximum number of suggestions, capped at the configured maximum.
+   * @return Suggestions, heaviest first.
+   */
+  public synchronized List<Suggestion> suggest(String prefix, int limit) {
+    String folded = TextNormalizer.fold(prefix).stripLeading();
+    if (folded.isEmpty()) {
+      return List.of();
+    }
+    Node node = root;
+    int depth = Math.min(folded.length(), MAX_DEPTH);
+    for (int i = 0; i < depth; i++) {
+      node = node.child(folded.charAt(i));
+      if (node == null) {
+        return List.of();
+      }
+    }
+
+    List<Entry> top;
+    if (folded.length() > MAX_DEPTH) {
+      Set<Entry> matches = new LinkedHashSet<>();
+      for (Tail tail : node.tails) {
+        if (tail.key.startsWith(folded)) {
+          matches.add(tail.entry);
+        }
+      }
+      top = matches.stream().sorted(BY_WEIGHT).limit(maxSuggestions).toList();
+    } else {
+      top = topOf(node);
+    }
+    return top.stream()
+        .limit(Math.max(0, Math.min(limit, maxSuggestions)))
+        .map(entry -> new Suggestion(entry.text, entry.weight))
+        .toList();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  private List<Entry> topOf(Node node) {
+    if (!node.stale) {
+      return node.top;
+    }
+    Set<Entry> candidates = new LinkedHashSet<>(node.terminals);
+    for (Tail tail : node.tails) {
+      candidates.add(tail.entry);
+    }
+    for (int i = 0; i < node.size; i++) {
+      candidates.addAll(topOf(node.children[i]));
+    }
+    node.top = candidates.stream().sorted(BY_WEIGHT).limit(maxSuggestions).toList();
+    node.stale = false;
+    return node.top;
+  }
+
+  private void insertKey(String key, Entry entry) {
+    Node node = root;
+    node.stale = true;
+    int depth = Math.min(key.length(), MAX_DEPTH);
+    for (int i = 0; i < depth; i++) {
+      node = node.childOrCreate(key.charAt(i));
+      node.stale = true;
+    }
+    if (key.length() >= MAX_DEPTH) {
+      node.tails.add(new Tail(key, entry));
+    } else {
+      node.terminals.add(entry);
+    }
+  }
+
+  // Removes the key and prunes the nodes left with nothing below them
+  private void removeKey(String key, Entry entry) {
+    int depth = Math.min(key.length(), MAX_DEPTH);
+    Node[] path = new Node[depth + 1];
+    path[0] = root;
+    for (int i = 0; i < depth; i++) {
+      path[i + 1] = path[i].child(key.charAt(i));
+      if (path[i + 1] == null) {
+        return;
+      }
+    }
+    Node last = path[depth];
+    if (key.length() >= MAX_DEPTH) {
+      last.tails.removeIf(tail -> tail.entry == entry && tail.key.equals(key));
+    } else {
+      last.terminals.remove(entry);
+    }
+    for (int i = depth; i > 0 && path[i].isEmpty(); i--) {
+      path[i - 1].removeChild(key.charAt(i - 1));
+    }
+  }
+
+  private void markStale(String folded) {
+    for (String key : keysOf(folded)) {
+      Node node = root;
+      node.stale = true;
+      int depth = Math.min(key.length(), MAX_DEPTH);
+      for (int i = 0; i < depth && node != null; i++) {
+        node = node.child(key.charAt(i));
+        if (node != null) {
+          node.stale = true;
+        }
+      }
+    }
+  }
+
+  // The whole text and every suffix of it that starts at a word
+  private static List<String> keysOf(String folded) {
+    List<String> keys = new ArrayList<>();
+    keys.add(folded);
+    for (int i = 1; i < folded.length(); i++) {
+      if (!Character.isLetterOrDigit(folded.charAt(i - 1))
+          && Character.isLetterOrDigit(folded.charAt(i))) {
+        keys.add(folded.substring(i));
+      }
+    }
+    return keys;
+  }
+
+  public record Suggestion(String text, int weight) {}
+
+  private static final class Entry {
+
+    private final String text;
+    private int weight;
+
+    private Entry(String text) {
+      this.text = text;
+    }
+  }
+
+  private record Tail(String key, Entry entry) {}
+
+  private static final class Node {
+
+    private char[] labels = new char[0];
+    private Node[] children = new Node[0];
+    private int size;
+    private final List<Entry> terminals = new ArrayList<>(0);
+    private final List<Tail> tails = new ArrayList<>(0);
+    private List<Entry> top = List.of();
+    private boolean stale;
+
+    Node child(char label) {
+      int index = Arrays.binarySearch(labels, 0, size, label);
+      return index >= 0 ? children[index] : null;
+    }
+
+    Node childOrCreate(char label) {
+      int index = Arrays.binarySearch(labels, 0, size, label);
+      if (index >= 0) {
+        return children[index];
+      }
+      int insertAt = -index - 1;
+      if (size == labels.length) {
+        labels = Arrays.copyOf(labels, Math.max(2, size * 2));
+        children = Arrays.copyOf(children, Math.max(2, size * 2));
+      }
+      System.arraycopy(labels, insertAt, labels, insertAt + 1, size - insertAt);
+      System.arraycopy(children, insertAt, children, insertAt + 1, size - insertAt);
+      Node child = new Node();
+      labels[insertAt] = label;
+      children[insertAt] = child;
+      size++;
+      return child;
+    }
+
+    void removeChild(char label) {
+      int index = Arrays.binarySearch(labels, 0, size, label);
+      if (index < 0) {
+        return;
+      }
+      System.arraycopy(labels, index + 1, labels, index, size - index - 1);
+      System.arraycopy(children, index + 1, children, index, size - index - 1);
+      children[--size] = null;
+    }
+
+    boolean isEmpty() {
+      return size == 0 && terminals.isEmpty() && tails.isEmpty();
+    }
+  }
+}
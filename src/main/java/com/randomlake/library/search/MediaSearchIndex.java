@@ -0,0 +1,298 @@
+package com.randomlake.library.search;
+
+import com.randomlake.library.enums.MediaStatus;
+import com.randomlake.library.model.Media;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * In-memory inverted index over the title, author, classification and publisher of every media
+ * item. Terms are case and accent folded and kept in a sorted map, so a query word also matches
+ * every indexed term it is a prefix of ("pot" finds "potter"). All query words must match. Hits
+ * are ranked by the sum, over query words, of the field weight of the best matching term times
+ * the inverse document frequency of the word; prefix matches count for less than whole words.
+ */
+public class MediaSearchIndex {
+
+  static final int TITLE_WEIGHT = 4;
+  static final int AUTHOR_WEIGHT = 3;
+  static final int CLASSIFICATION_WEIGHT = 2;
+  static final int PUBLISHER_WEIGHT = 1;
+
+  private static final double PREFIX_MATCH_FACTOR = 0.5;
+
+  private final int maxPrefixExpansions;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final NavigableMap<String, Posting> postings = new TreeMap<>();
+  private final Map<Integer, IndexedMedia> documents = new HashMap<>();
+
+  /**
+   * @param maxPrefixExpansions The most indexed terms a single query word is expanded to, keeping
+   *     those found in the most items; keeps one- and two-letter words from fanning out over the
+   *     whole vocabulary. The last word of a query with several words is not capped.
+   */
+  public MediaSearchIndex(int maxPrefixExpansions) {
+    this.maxPrefixExpansions = maxPrefixExpansions;
+  }
+
+  // Adds or replaces an item; an update older than the indexed version is ignored
+  public void index(Media media) {
+    lock.writeLock().lock();
+    try {
+      IndexedMedia previous = documents.get(media.getMediaId());
+      if (previous != null && isOlder(media.getLastUpdateDate(), previous.lastUpdateDate)) {
+        return;
+      }
+      if (previous != null) {
+        removePostings(media.getMediaId(), previous);
+      }
+      Map<String, Integer> termWeights = termWeights(media);
+      termWeights.forEach(
+          (term, weight) ->
+              postings.computeIfAbsent(term, t -> new Posting()).put(media.getMediaId(), weight));
+      documents.put(
+          media.getMediaId(),
+          new IndexedMedia(
+              termWeights.keySet().toArray(String[]::new),
+              TextNormalizer.fold(media.getMediaType()),
+              TextNormalizer.fold(media.getMediaFormat()),
+              media.getStatus(),
+              media.getLastUpdateDate()));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void remove(int mediaId) {
+    lock.writeLock().lock();
+    try {
+      IndexedMedia previous = documents.remove(mediaId);
+      if (previous != null) {
+        removePostings(mediaId, previous);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return documents.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Ranks the items matching every word of the query.
+   *
+   * @param query Free text as typed by the user.
+   * @param mediaType Only items of this media type, or null for any; compared folded.
+   * @param mediaFormat Only items of this format, or null for any; compared folded.
+   * @param status Only items in this status, or null for any.
+   * @param offset Number of ranked hits to skip.
+   * @param limit Maximum number of hits to return.
+   * @return The mediaIds of the requested slice of hits, best first, and the total hit count.
+   */
+  public SearchHits search(
+      String query,
+      String mediaType,
+      String mediaFormat,
+      MediaStatus status,
+      int offset,
+      int limit) {
+    List<String> tokens = TextNormalizer.tokenize(query);
+    List<String> words = tokens.stream().distinct().toList();
+    if (words.isEmpty()) {
+      return new SearchHits(List.of(), 0);
+    }
+    // The word still being typed; the other words narrow its candidates, so it is expanded fully
+    String partialWord = words.size() > 1 ? tokens.get(tokens.size() - 1) : null;
+    String typeFilter = mediaType == null ? null : TextNormalizer.fold(mediaType);
+    String formatFilter = mediaFormat == null ? null : TextNormalizer.fold(mediaFormat);
+
+    lock.readLock().lock();
+    try {
+      // Start from the word with the fewest candidates and narrow down with the others
+      List<WordMatches> matches =
+          words.stream()
+              .map(word -> expand(word, word.equals(partialWord)))
+              .sorted(Comparator.comparingLong(WordMatches::candidateCount))
+              .toList();
+
+      Map<Integer, Double> scores = seedScores(matches.get(0));
+      for (int i = 1; i < matches.size() && !scores.isEmpty(); i++) {
+        narrowScores(scores, matches.get(i));
+      }
+      scores.keySet().removeIf(id -> !documents.get(id).matches(typeFilter, formatFilter, status));
+
+      return new SearchHits(topHits(scores, offset, limit), scores.size());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /* The indexed terms a query word matches: the word itself and the terms it is a prefix of.
+   * Past the cap the completions in the most items are kept, so a common one like "potter" is not
+   * crowded out by rarer terms that sort before it.
+   */
+  private WordMatches expand(String word, boolean uncapped) {
+    Map<String, Posting> terms = new LinkedHashMap<>();
+    Posting exact = postings.get(word);
+    if (exact != null) {
+      terms.put(word, exact);
+    }
+    Map<String, Posting> completions =
+        postings.subMap(word, false, word + Character.MAX_VALUE, false);
+    if (uncapped) {
+      terms.putAll(completions);
+      return new WordMatches(word, terms);
+    }
+
+    // Least frequent first, and of equal ones the last alphabetically, so ties keep the earlier
+    Comparator<Map.Entry<String, Posting>> frequency =
+        Comparator.<Map.Entry<String, Posting>>comparingInt(entry -> entry.getValue().size())
+            .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder()));
+    PriorityQueue<Map.Entry<String, Posting>> leastFrequentFirst = new PriorityQueue<>(frequency);
+    int room = maxPrefixExpansions - terms.size();
+    for (Map.Entry<String, Posting> entry : completions.entrySet()) {
+      leastFrequentFirst.add(entry);
+      if (leastFrequentFirst.size() > room) {
+        leastFrequentFirst.poll();
+      }
+    }
+    leastFrequentFirst.forEach(entry -> terms.put(entry.getKey(), entry.getValue()));
+    return new WordMatches(word, terms);
+  }
+
+  private Map<Integer, Double> seedScores(WordMatches matches) {
+    Map<Integer, Double> scores = new HashMap<>();
+    for (Map.Entry<String, Posting> entry : matches.terms().entrySet()) {
+      double factor = termFactor(entry.getKey(), matches);
+      Posting posting = entry.getValue();
+      for (int i = 0; i < posting.size(); i++) {
+        scores.merge(posting.idAt(i), posting.weightAt(i) * factor, Math::max);
+      }
+    }
+    return scores;
+  }
+
+  // Drops candidates the word does not match and adds its best score to the others
+  private void narrowScores(Map<Integer, Double> scores, WordMatches matches) {
+    scores
+        .entrySet()
+        .removeIf(
+            candidate -> {
+              double best = 0;
+              for (Map.Entry<String, Posting> entry : matches.terms().entrySet()) {
+                int weight = entry.getValue().weightOf(candidate.getKey());
+                if (weight > 0) {
+                  best = Math.max(best, weight * termFactor(entry.getKey(), matches));
+                }
+              }
+              if (best == 0) {
+                return true;
+              }
+              candidate.setValue(candidate.getValue() + best);
+              return false;
+            });
+  }
+
+  /* The inverse document frequency is taken over all the terms a word matches, so a partial
+   * word is not ranked by whichever of its completions happens to be rarest.
+   */
+  private double termFactor(String term, WordMatches matches) {
+    double idf = Math.log(1 + (double) documents.size() / matches.candidateCount());
+    return term.equals(matches.word()) ? idf : idf * PREFIX_MATCH_FACTOR;
+  }
+
+  private static List<Integer> topHits(Map<Integer, Double> scores, int offset, int limit) {
+    int wanted = offset + limit;
+    if (wanted <= 0 || offset >= scores.size()) {
+      return List.of();
+    }
+    // Best hits first; equal scores in mediaId order so pages are stable
+    Comparator<Map.Entry<Integer, Double>> ranking =
+        Map.Entry.<Integer, Double>comparingByValue()
+            .reversed()
+            .thenComparing(Map.Entry.comparingByKey());
+    PriorityQueue<Map.Entry<Integer, Double>> worstFirst = new PriorityQueue<>(ranking.reversed());
+    for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+      worstFirst.add(entry);
+      if (worstFirst.size() > wanted) {
+        worstFirst.poll();
+      }
+    }
+    List<Map.Entry<Integer, Double>> ranked = new ArrayList<>(worstFirst);
+    ranked.sort(ranking);
+    return ranked.subList(offset, ranked.size()).stream().map(Map.Entry::getKey).toList();
+  }
+
+  private void removePostings(int mediaId, IndexedMedia indexed) {
+    for (String term : indexed.terms) {
+      Posting posting = postings.get(term);
+      if (posting != null) {
+        posting.remove(mediaId);
+        if (posting.size() == 0) {
+          postings.remove(term);
+        }
+      }
+    }
+  }
+
+  // A term found in several fields keeps the weight of the most significant one
+  private static Map<String, Integer> termWeights(Media media) {
+    Map<String, Integer> weights = new HashMap<>();
+    addTerms(weights, media.getMediaTitle(), TITLE_WEIGHT);
+    addTerms(weights, media.getAuthorName(), AUTHOR_WEIGHT);
+    addTerms(weights, media.getClassificationCategory(), CLASSIFICATION_WEIGHT);
+    addTerms(weights, media.getClassificationSubCategory(), CLASSIFICATION_WEIGHT);
+    addTerms(weights, media.getPublisherName(), PUBLISHER_WEIGHT);
+    return weights;
+  }
+
+  private static void addTerms(Map<String, Integer> weights, String text, int weight) {
+    for (String term : TextNormalizer.tokenize(text)) {
+      weights.merge(term, weight, Math::max);
+    }
+  }
+
+  private static boolean isOlder(LocalDateTime candidate, LocalDateTime indexed) {
+    return candidate != null && indexed != null && candidate.isBefore(indexed);
+  }
+
+  public record SearchHits(List<Integer> mediaIds, int totalHits) {}
+
+  private record WordMatches(String word, Map<String, Posting> terms) {
+
+    long candidateCount() {
+      return terms.values().stream().mapToLong(Posting::size).sum();
+    }
+  }
+
+  private record IndexedMedia(
+      String[] terms,
+      String mediaType,
+      String mediaFormat,
+      MediaStatus status,
+      LocalDateTime lastUpdateDate) {
+
+    boolean matches(String typeFilter, String formatFilter, MediaStatus statusFilter) {
+      return (typeFilter == null || typeFilter.equals(mediaType))
+          && (formatFilter == null || formatFilter.equals(mediaFormat))
+          && (statusFilter == null || statusFilter == status);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package com.randomlake.library.search;
+
+import java.util.Arrays;
+
+/*
+ * The items containing one term, as parallel arrays sorted by mediaId: a sorted int array keeps
+ * a million-entry posting list at a few megabytes, and membership tests are binary searches.
+ * Not thread-safe; MediaSearchIndex guards every posting with its own lock.
+ */
+final class Posting {
+
+  private int[] ids = new int[4];
+  private byte[] weights = new byte[4];
+  private int size;
+
+  int size() {
+    return size;
+  }
+
+  int idAt(int index) {
+    return ids[index];
+  }
+
+  int weightAt(int index) {
+    return weights[index];
+  }
+
+  // Weight of the term in the item, or 0 if the item does not contain it
+  int weightOf(int id) {
+    int index = Arrays.binarySearch(ids, 0, size, id);
+    return index >= 0 ? weights[index] : 0;
+  }
+
+  void put(int id, int weight) {
+    int index = Arrays.binarySearch(ids, 0, size, id);
+    if (index >= 0) {
+      weights[index] = (byte) weight;
+      return;
+    }
+    int insertAt = -index - 1;
+    if (size == ids.length) {
+      ids = Arrays.copyOf(ids, size * 2);
+      weights = Arrays.copyOf(weights, size * 2);
+    }
+    System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+    System.arraycopy(weights, insertAt, weights, insertAt + 1, size - insertAt);
+    ids[insertAt] = id;
+    weights[insertAt] = (byte) weight;
+    size++;
+  }
+
+  void remove(int id) {
+    int index = Arrays.binarySearch(ids, 0, size, id);
+    if (index < 0) {
+      return;
+    }
+    System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+    System.arraycopy(weights, index + 1, weights, index, size - index - 1);
+    size--;
+  }
+}
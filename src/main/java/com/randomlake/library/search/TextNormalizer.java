@@ -0,0 +1,36 @@
+package com.randomlake.library.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// Case and accent folding shared by the search and autocomplete indexes and their queries
+public final class TextNormalizer {
+
+  private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+  private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+  private TextNormalizer() {}
+
+  // "Les Misérables" -> "les miserables"
+  public static String fold(String text) {
+    if (text == null) {
+      return "";
+    }
+    String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+    return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+  }
+
+  // Folded words of the text, in order; punctuation and whitespace only separate words
+  public static List<String> tokenize(String text) {
+    List<String> tokens = new ArrayList<>();
+    for (String token : NON_WORD.split(fold(text))) {
+      if (!token.isEmpty()) {
+        tokens.add(token);
+      }
+    }
+    return tokens;
+  }
+}
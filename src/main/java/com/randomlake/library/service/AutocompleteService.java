@@ -0,0 +1,165 @@
+package com.randomlake.library.service;
+
+import com.randomlake.library.dto.ChangeSetResponse;
+import com.randomlake.library.model.Media;
+import com.randomlake.library.model.Patron;
+import com.randomlake.library.search.AutocompleteTrie;
+import com.randomlake.library.search.AutocompleteTrie.Suggestion;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/*
+ * Type-ahead suggestions for media titles, author names and patron names, served entirely from
+ * memory. Each suggestion is weighted by the number of records carrying it, so an author with
+ * many titles or a title held in many copies ranks first. The tries are loaded from the media
+ * and patron delta feeds on the first refresh after startup and follow the feeds from then on;
+ * writes made through MediaService and PatronService on this node are applied straight away.
+ */
+@Service
+public class AutocompleteService {
+
+  private final SyncService syncService;
+
+  private final AutocompleteTrie titles;
+  private final AutocompleteTrie authors;
+  private final AutocompleteTrie patronNames;
+
+  // Texts each record currently contributes, so an update or delete can take them back out
+  private final Map<Integer, String[]> mediaTexts = new HashMap<>(); // guarded by this
+  private final Map<Integer, String> patronTexts = new HashMap<>(); // guarded by this
+
+  // Held for a whole refresh; the feeds are read under it and only each page is applied under this
+  private final Object refreshLock = new Object();
+  private String mediaSyncToken; // guarded by refreshLock
+  private String patronSyncToken; // guarded by refreshLock
+
+  private static final Logger log = LoggerFactory.getLogger(AutocompleteService.class);
+
+  @Value("${autocomplete.refresh.batch.size:500}")
+  private int refreshBatchSize;
+
+  public AutocompleteService(
+      SyncService syncService, @Value("${autocomplete.max.suggestions:10}") int maxSuggestions) {
+    this.syncService = syncService;
+    this.titles = new AutocompleteTrie(maxSuggestions);
+    this.authors = new AutocompleteTrie(maxSuggestions);
+    this.patronNames = new AutocompleteTrie(maxSuggestions);
+  }
+
+  public List<Suggestion> suggestTitles(String prefix, int limit) {
+    return titles.suggest(prefix, limit);
+  }
+
+  public List<Suggestion> suggestAuthors(String prefix, int limit) {
+    return authors.suggest(prefix, limit);
+  }
+
+  public List<Suggestion> suggestPatronNames(String prefix, int limit) {
+    return patronNames.suggest(prefix, limit);
+  }
+
+  /* Applies every media and patron change since the last refresh. Pages are fetched without
+   * holding the tries, so local writes wait at most for one page to be applied, not for the whole
+   * initial load. A page read before a local write and applied after it is put right by the next
+   * refresh, which sees that write in the feed.
+   */
+  @Scheduled(fixedDelayString = "${autocomplete.refresh.interval.ms:10000}")
+  public void refresh() {
+    synchronized (refreshLock) {
+      try {
+        mediaSyncToken =
+            drain(
+                mediaSyncToken,
+                token -> syncService.getMediaChanges(token, refreshBatchSize),
+                this::indexMedia,
+                this::removeMedia);
+        patronSyncToken =
+            drain(
+                patronSyncToken,
+                token -> syncService.getPatronChanges(token, refreshBatchSize),
+                this::indexPatron,
+                this::removePatron);
+      } catch (RuntimeException e) {
+        log.error("Autocomplete refresh failed; retrying on next run", e);
+      }
+    }
+  }
+
+  public synchronized void indexMedia(Media media) {
+    String[] texts = {media.getMediaTitle(), media.getAuthorName()};
+    String[] previous = mediaTexts.put(media.getMediaId(), texts);
+    if (Arrays.equals(previous, texts)) {
+      return;
+    }
+    if (previous != null) {
+      removeText(titles, previous[0]);
+      removeText(authors, previous[1]);
+    }
+    addText(titles, texts[0]);
+    addText(authors, texts[1]);
+  }
+
+  public synchronized void removeMedia(int mediaId) {
+    String[] previous = mediaTexts.remove(mediaId);
+    if (previous != null) {
+      removeText(titles, previous[0]);
+      removeText(authors, previous[1]);
+    }
+  }
+
+  public synchronized void indexPatron(Patron patron) {
+    String previous = patronTexts.put(patron.getPatronId(), patron.getPatronName());
+    if (Objects.equals(previous, patron.getPatronName())) {
+      return;
+    }
+    removeText(patronNames, previous);
+    addText(patronNames, patron.getPatronName());
+  }
+
+  public synchronized void removePatron(int patronId) {
+    removeText(patronNames, patronTexts.remove(patronId));
+  }
+
+  private <T> String drain(
+      String token,
+      Function<String, ChangeSetResponse<T>> feed,
+      Consumer<T> upsert,
+      IntConsumer delete) {
+    ChangeSetResponse<T> changes;
+    do {
+      changes = feed.apply(token);
+      apply(changes, upsert, delete);
+      token = changes.getNextToken();
+    } while (changes.isHasMore());
+    return token;
+  }
+
+  private synchronized <T> void apply(
+      ChangeSetResponse<T> changes, Consumer<T> upsert, IntConsumer delete) {
+    changes.getChanged().forEach(upsert);
+    changes.getDeletedIds().forEach(delete::accept);
+  }
+
+  private static void addText(AutocompleteTrie trie, String text) {
+    if (text != null) {
+      trie.add(text);
+    }
+  }
+
+  private static void removeText(AutocompleteTrie trie, String text) {
+    if (text != null) {
+      trie.remove(text);
+    }
+  }
+}
@@ -1,6 +1,6 @@
 package com.randomlake.library.service;
 
-import com.randomlake.library.dto.ReportCardPatron;
+import com.randomlake.library.dto.PageResponse;
 import com.randomlake.library.enums.BarcodeType;
 import com.randomlake.library.enums.CardStatus;
 import com.randomlake.library.enums.ExceptionType;
@@ -9,12 +9,16 @@ import com.randomlake.library.exception.GeneralException;
 import com.randomlake.library.model.Card;
 import com.randomlake.library.model.Patron;
 import com.randomlake.library.repository.CardRepository;
+import com.randomlake.library.util.KeysetPaginator;
+import com.randomlake.library.util.Precondition;
 import com.randomlake.library.util.SequenceGenerator;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -25,22 +29,44 @@ public class CardService {
   private final CardRepository cardRepository;
   private final PatronService patronService;
   private final SequenceGenerator sequenceGenerator;
+  private final KeysetPaginator keysetPaginator;
 
   private static final Logger log = LoggerFactory.getLogger(CardService.class);
 
   public CardService(
       CardRepository cardRepository,
       PatronService patronService,
-      SequenceGenerator sequenceGenerator) {
+      SequenceGenerator sequenceGenerator,
+      KeysetPaginator keysetPaginator) {
     this.cardRepository = cardRepository;
     this.patronService = patronService;
     this.sequenceGenerator = sequenceGenerator;
+    this.keysetPaginator = keysetPaginator;
   }
 
   public List<Card> getAllCards() {
     return cardRepository.findAll();
   }
 
+  // One page in cardId order, starting after the cursor; no cursor starts at the beginning
+  public PageResponse<Card> getCardPage(String cursor, Integer size) {
+    int pageSize = keysetPaginator.resolvePageSize(size);
+    int afterCardId = keysetPaginator.decodeCursor(cursor, "cards");
+    List<Card> rows =
+        cardRepository.findByCardIdGreaterThanOrderByCardIdAsc(afterCardId, Limit.of(pageSize + 1));
+    return keysetPaginator.toPage(rows, pageSize, Card::getCardId, "cards");
+  }
+
+  // Backed by an open cursor; the caller must close the stream
+  public Stream<Card> streamAllCards() {
+    return cardRepository.streamAllByOrderByCardIdAsc();
+  }
+
+  // Modification time alone, for conditional requests; empty if the card does not exist
+  public Optional<LocalDateTime> getCardLastUpdateDate(int cardId) {
+    return cardRepository.findLastUpdateDate(cardId);
+  }
+
   public Card getCardById(int cardId) {
     return cardRepository
         .findByCardId(cardId)
@@ -82,7 +108,7 @@ public class CardService {
 
   // Method to update card status
   @Transactional
-  public Card updateCardStatus(int cardId, CardStatus newStatus) {
+  public Card updateCardStatus(int cardId, CardStatus newStatus, Precondition precondition) {
     Card card =
         cardRepository
             .findByCardId(cardId)
@@ -94,6 +120,9 @@ public class CardService {
                       "No card with this ID found",
                       HttpStatus.NOT_FOUND);
                 });
+    if (!precondition.matches(card.getLastUpdateDate())) {
+      throw precondition.failed(card.getLastUpdateDate());
+    }
 
     // Check if the card is lost and trying to reactivate it
     if (card.getStatus() == CardStatus.LOST && newStatus == CardStatus.ACTIVE) {
@@ -105,9 +134,20 @@ public class CardService {
     }
 
     // Update the card status if not trying to reactivate a lost card
-    card.setStatus(newStatus);
-    card.setLastUpdateDate(LocalDateTime.now());
-    Card updatedCard = cardRepository.save(card);
+    Card updatedCard;
+    if (precondition.isRequired()) {
+      // Written only if the card is still the version checked above
+      updatedCard =
+          cardRepository
+              .updateStatus(cardId, card.getLastUpdateDate(), newStatus, LocalDateTime.now())
+              .orElseThrow(
+                  () ->
+                      precondition.failed(cardRepository.findLastUpdateDate(cardId).orElse(null)));
+    } else {
+      card.setStatus(newStatus);
+      card.setLastUpdateDate(LocalDateTime.now());
+      updatedCard = cardRepository.save(card);
+    }
 
     log.info("Updated status of card ID {} to {}", cardId, newStatus);
     return updatedCard;
@@ -164,9 +204,4 @@ public class CardService {
         savedCard.getPatronId());
     return savedCard;
   }
-
-  public List<ReportCardPatron> getReportCardPatron(
-      Optional<Integer> cardIdOpt, Optional<Integer> patronIdOpt) {
-    return cardRepository.getReportCardPatron(cardIdOpt, patronIdOpt);
-  }
 }
@@ -0,0 +1,176 @@
+package com.randomlake.library.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.randomlake.library.dto.PageResponse;
+import com.randomlake.library.enums.ExceptionType;
+import com.randomlake.library.enums.TransactionType;
+import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.model.CirculationEvent;
+import com.randomlake.library.repository.CirculationLedgerRepository;
+import com.randomlake.library.util.KeysetPaginator;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+/*
+ * Writes checkouts and returns to the circulation ledger and pages through a loan's events. The
+ * ledger is insert-only, so recording an event never rewrites the loan or earlier events.
+ */
+@Service
+public class CirculationLedgerService {
+
+  static final String LEDGER_SCOPE = "loan-ledger";
+
+  private static final int DUPLICATE_KEY = 11000;
+
+  private final CirculationLedgerRepository ledgerRepository;
+  private final MongoTemplate mongoTemplate;
+  private final KeysetPaginator keysetPaginator;
+
+  private static final Logger log = LoggerFactory.getLogger(CirculationLedgerService.class);
+
+  public CirculationLedgerService(
+      CirculationLedgerRepository ledgerRepository,
+      MongoTemplate mongoTemplate,
+      KeysetPaginator keysetPaginator) {
+    this.ledgerRepository = ledgerRepository;
+    this.mongoTemplate = mongoTemplate;
+    this.keysetPaginator = keysetPaginator;
+  }
+
+  /* Records one transaction on a loan. The loan documents are the record of current state, so
+   * a ledger write that fails is logged with its content rather than failing a checkout or
+   * return that has already been applied.
+   */
+  public void record(
+      int loanId, int patronId, TransactionType transactionType, List<Integer> mediaIds) {
+    CirculationEvent event =
+        new CirculationEvent(loanId, patronId, transactionType, LocalDateTime.now(), mediaIds);
+    try {
+      ledgerRepository.insert(event);
+    } catch (DataAccessException e) {
+      log.error(
+          "Failed to record {} of mediaIds {} on loan {} in the circulation ledger",
+          transactionType,
+          mediaIds,
+          loanId,
+          e);
+    }
+  }
+
+  /**
+   * Returns one page of a loan's events, oldest first.
+   *
+   * @param cursor The nextCursor of the previous page, or null for the first page.
+   * @param size Requested page size, or null for the default.
+   */
+  public PageResponse<CirculationEvent> getLedgerPage(int loanId, String cursor, Integer size) {
+    int pageSize = keysetPaginator.resolvePageSize(size);
+    String afterKey = keysetPaginator.decodeKeyCursor(cursor, LEDGER_SCOPE);
+    List<CirculationEvent> rows;
+    if (afterKey == null) {
+      rows = ledgerRepository.findByLoanIdOrderByIdAsc(loanId, Limit.of(pageSize + 1));
+    } else {
+      rows =
+          ledgerRepository.findByLoanIdAndIdGreaterThanOrderByIdAsc(
+              loanId, toObjectId(afterKey), Limit.of(pageSize + 1));
+    }
+    return keysetPaginator.toKeyPage(
+        rows, pageSize, event -> event.getId().toHexString(), LEDGER_SCOPE);
+  }
+
+  /* Moves the transaction logs that used to be embedded in loan documents into the ledger and
+   * removes them from the loans. Every node runs this on startup, so it must be safe to run
+   * twice at once or again after a crash between the insert and the unset: each migrated event
+   * gets an _id derived from its loan and position in the log, and an event already in the
+   * ledger is skipped on its duplicate key. Loans already moved no longer match, so this is a
+   * no-op once every loan has been migrated.
+   */
+  public int migrateEmbeddedLogs() {
+    Query query = new Query(Criteria.where("transactionLog").exists(true));
+    query.fields().include("loanId").include("patronId").include("transactionLog");
+
+    int migrated = 0;
+    try (Stream<Document> loans = mongoTemplate.stream(query, Document.class, "loans")) {
+      for (Document loan : (Iterable<Document>) loans::iterator) {
+        int loanId = loan.getInteger("loanId", 0);
+        int patronId = loan.getInteger("patronId", 0);
+        List<Document> log = loan.getList("transactionLog", Document.class, List.of());
+        List<CirculationEvent> events = new ArrayList<>(log.size());
+        for (int position = 0; position < log.size(); position++) {
+          Document entry = log.get(position);
+          CirculationEvent event =
+              new CirculationEvent(
+                  loanId,
+                  patronId,
+                  TransactionType.valueOf(entry.getString("transactionType")),
+                  toLocalDateTime(entry.getDate("transactionDate")),
+                  entry.getList("mediaIds", Integer.class));
+          event.setId(migratedEventId(entry.getDate("transactionDate"), loanId, position));
+          events.add(event);
+        }
+        if (!events.isEmpty()) {
+          insertIgnoringDuplicates(events);
+        }
+        mongoTemplate.updateFirst(
+            new Query(Criteria.where("_id").is(loan.get("_id"))),
+            new Update().unset("transactionLog").inc("version", 1),
+            "loans");
+        migrated++;
+      }
+    }
+    return migrated;
+  }
+
+  private void insertIgnoringDuplicates(List<CirculationEvent> events) {
+    try {
+      mongoTemplate.bulkOps(BulkMode.UNORDERED, CirculationEvent.class).insert(events).execute();
+    } catch (BulkOperationException e) {
+      for (BulkWriteError error : e.getErrors()) {
+        if (error.getCode() != DUPLICATE_KEY) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  /* The same _id every time a given log entry is migrated. The first four bytes hold the
+   * transaction time, as in any ObjectId, so migrated events keep their place in time order
+   * ahead of events recorded since; the rest hold the loan and the entry's position in its log.
+   */
+  static ObjectId migratedEventId(Date transactionDate, int loanId, int position) {
+    int seconds = transactionDate == null ? 0 : (int) (transactionDate.getTime() / 1000);
+    return new ObjectId(
+        ByteBuffer.allocate(12).putInt(seconds).putInt(loanId).putInt(position).array());
+  }
+
+  private static ObjectId toObjectId(String key) {
+    if (!ObjectId.isValid(key)) {
+      throw new GeneralException(
+          ExceptionType.INVALID_INPUT, "Invalid page cursor", HttpStatus.BAD_REQUEST);
+    }
+    return new ObjectId(key);
+  }
+
+  private static LocalDateTime toLocalDateTime(Date date) {
+    return date == null ? null : LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+  }
+}
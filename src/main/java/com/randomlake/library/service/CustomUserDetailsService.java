@@ -1,11 +1,15 @@
 package com.randomlake.library.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.randomlake.library.model.ApplicationUser;
 import com.randomlake.library.repository.UserRepository;
 import jakarta.annotation.PostConstruct;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -18,9 +22,19 @@ public class CustomUserDetailsService implements UserDetailsService {
 
   @Autowired private UserRepository userRepository;
 
+  // Users resolved for JWT-authenticated requests, without their password hash
+  private final Cache<String, UserDetails> authenticatedUsers;
+
   @Autowired
-  public CustomUserDetailsService(UserRepository userRepository) {
+  public CustomUserDetailsService(
+      UserRepository userRepository,
+      @Value("${security.user.cache.ttl.seconds:60}") long userCacheTtlSeconds) {
     this.userRepository = userRepository;
+    this.authenticatedUsers =
+        Caffeine.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(Duration.ofSeconds(userCacheTtlSeconds))
+            .build();
   }
 
   @PostConstruct
@@ -34,16 +48,35 @@ public class CustomUserDetailsService implements UserDetailsService {
     }
   }
 
+  // Used for login, where the password hash is needed; always read from the database
   @Override
   public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-    ApplicationUser applicationUser =
-        userRepository
-            .findByUsername(username)
-            .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+    ApplicationUser applicationUser = findUser(username);
+    return toUserDetails(applicationUser, applicationUser.getPassword());
+  }
+
+  /* Used by the JWT filter on every request, where the token has already proven the identity and
+   * only the authorities are needed. Entries are short-lived and dropped whenever a user is
+   * saved or deleted, so role changes take effect on the next request.
+   */
+  public UserDetails loadAuthenticatedUser(String username) throws UsernameNotFoundException {
+    return authenticatedUsers.get(username, name -> toUserDetails(findUser(name), ""));
+  }
+
+  public void evictAuthenticatedUsers() {
+    authenticatedUsers.invalidateAll();
+  }
+
+  private ApplicationUser findUser(String username) {
+    return userRepository
+        .findByUsername(username)
+        .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+  }
 
+  private UserDetails toUserDetails(ApplicationUser applicationUser, String password) {
     return new org.springframework.security.core.userdetails.User(
         applicationUser.getUsername(),
-        applicationUser.getPassword(),
+        password,
         Arrays.stream(applicationUser.getRole().split(","))
             .map(SimpleGrantedAuthority::new)
             .collect(Collectors.toList()));
@@ -1,5 +1,7 @@
 package com.randomlake.library.service;
 
+import com.randomlake.library.cache.MediaLookupCache;
+import com.randomlake.library.cache.PatronLookupCache;
 import com.randomlake.library.enums.ExceptionType;
 import com.randomlake.library.enums.FineType;
 import com.randomlake.library.enums.MediaStatus;
@@ -12,8 +14,13 @@ import com.randomlake.library.repository.MediaRepository;
 import com.randomlake.library.repository.PatronRepository;
 import com.randomlake.library.util.SequenceGenerator;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -27,6 +34,8 @@ public class FineService {
   private final PatronRepository patronRepository;
   private final MediaRepository mediaRepository;
   private final SequenceGenerator sequenceGenerator;
+  private final MediaLookupCache mediaLookupCache;
+  private final PatronLookupCache patronLookupCache;
 
   private static final Logger log = LoggerFactory.getLogger(FineService.class);
 
@@ -34,11 +43,15 @@ public class FineService {
       FineRepository fineRepository,
       PatronRepository patronRepository,
       MediaRepository mediaRepository,
-      SequenceGenerator sequenceGenerator) {
+      SequenceGenerator sequenceGenerator,
+      MediaLookupCache mediaLookupCache,
+      PatronLookupCache patronLookupCache) {
     this.fineRepository = fineRepository;
     this.patronRepository = patronRepository;
     this.mediaRepository = mediaRepository;
     this.sequenceGenerator = sequenceGenerator;
+    this.mediaLookupCache = mediaLookupCache;
+    this.patronLookupCache = patronLookupCache;
   }
 
   @Transactional
@@ -114,10 +127,44 @@ public class FineService {
     return fineRepository.save(fine);
   }
 
+  /* Inserts a batch of fines with one insertMany. Fine IDs come from a single reserved range
+   * rather than one counter round-trip per fine; callers are responsible for any validation.
+   */
+  @Transactional
+  public List<Fine> createFines(List<Fine> fines) {
+    if (fines.isEmpty()) {
+      return fines;
+    }
+    int nextFineId = sequenceGenerator.reserveSequenceRange("fineId", fines.size());
+    LocalDateTime now = LocalDateTime.now();
+    for (Fine fine : fines) {
+      fine.setFineId(nextFineId++);
+      fine.setDateAssessed(now);
+    }
+    return fineRepository.insert(fines);
+  }
+
+  // Media IDs already fined with the given type, keyed by patron, for a batch of patrons
+  public Map<Integer, Set<Integer>> getFinedMediaIdsByPatron(
+      FineType fineType, Collection<Integer> patronIds) {
+    Map<Integer, Set<Integer>> finedMediaIds = new HashMap<>();
+    for (Fine fine : fineRepository.findByFineTypeAndPatronIdIn(fineType, patronIds)) {
+      finedMediaIds
+          .computeIfAbsent(fine.getPatronId(), id -> new HashSet<>())
+          .add(fine.getMediaId());
+    }
+    return finedMediaIds;
+  }
+
   @Transactional
   protected void updateMediaStatus(Media media, MediaStatus status) {
     media.setStatus(status);
-    mediaRepository.save(media);
+    media.setLastUpdateDate(LocalDateTime.now());
+    try {
+      mediaRepository.save(media);
+    } finally {
+      mediaLookupCache.invalidate(media.getMediaId());
+    }
   }
 
   public List<Fine> getFinesByPatronId(int patronId) {
@@ -135,7 +182,7 @@ public class FineService {
 
   // Helper methods
   private void validatePatronExists(int patronId) {
-    Optional<Patron> patron = patronRepository.findByPatronId(patronId);
+    Optional<Patron> patron = patronLookupCache.get(patronId, patronRepository::findByPatronId);
     if (!patron.isPresent()) {
       throw new GeneralException(
           ExceptionType.PATRON_NOT_FOUND, "Patron not found", HttpStatus.NOT_FOUND);
@@ -143,8 +190,8 @@ public class FineService {
   }
 
   private Media validateMediaExists(int mediaId) {
-    return mediaRepository
-        .findByMediaId(mediaId)
+    return mediaLookupCache
+        .get(mediaId, mediaRepository::findByMediaId)
         .orElseThrow(
             () ->
                 new GeneralException(
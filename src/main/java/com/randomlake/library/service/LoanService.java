@@ -2,7 +2,9 @@ package com.randomlake.library.service;
 
 import com.randomlake.library.dto.LoanActionRequest;
 import com.randomlake.library.dto.LoanResponse;
+import com.randomlake.library.dto.PageResponse;
 import com.randomlake.library.dto.ReportLoanPatronMedia;
+import com.randomlake.library.dto.TransactionLogResponse;
 import com.randomlake.library.dto.TransactionResponse;
 import com.randomlake.library.enums.*;
 import com.randomlake.library.enums.TransactionType;
@@ -12,14 +14,18 @@ import com.randomlake.library.model.Loan;
 import com.randomlake.library.model.Media;
 import com.randomlake.library.model.Patron;
 import com.randomlake.library.repository.LoanRepository;
+import com.randomlake.library.util.KeysetPaginator;
 import com.randomlake.library.util.OutputFormatter;
 import com.randomlake.library.util.SequenceGenerator;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -36,25 +42,35 @@ public class LoanService {
   private final SequenceGenerator sequenceGenerator;
   private final OutputFormatter outputFormatter;
   private final ValidationService validationService;
+  private final KeysetPaginator keysetPaginator;
+  private final CirculationLedgerService circulationLedgerService;
 
   private static final Logger log = LoggerFactory.getLogger(LoanService.class);
 
   @Value("${loan.period.days}")
   private int loanPeriodDays;
 
+  // Loans read per cursor batch by report exports
+  @Value("${report.cursor.batch.size:500}")
+  private int reportBatchSize;
+
   public LoanService(
       MediaService mediaService,
       PatronService patronService,
       LoanRepository loanRepository,
       SequenceGenerator sequenceGenerator,
       OutputFormatter outputFormatter,
-      ValidationService validationService) {
+      ValidationService validationService,
+      KeysetPaginator keysetPaginator,
+      CirculationLedgerService circulationLedgerService) {
     this.mediaService = mediaService;
     this.patronService = patronService;
     this.loanRepository = loanRepository;
     this.sequenceGenerator = sequenceGenerator;
     this.outputFormatter = outputFormatter;
     this.validationService = validationService;
+    this.keysetPaginator = keysetPaginator;
+    this.circulationLedgerService = circulationLedgerService;
   }
 
   public TransactionResponse processLoanAction(LoanActionRequest loanActionRequest) {
@@ -90,26 +106,51 @@ public class LoanService {
     }
     log.info("Attempting to checkout mediaIds {} for patronId {}", mediaIds, patronId);
 
-    Patron patron = patronService.getPatronById(patronId);
-    Loan loan = findOrCreateActiveLoanForPatron(patronId);
-    List<Media> checkedOutMedia = new ArrayList<>();
-
-    for (int mediaId : mediaIds) {
-      Media media = mediaService.getMediaById(mediaId);
+    if (new HashSet<>(mediaIds).size() != mediaIds.size()) {
+      throw new GeneralException(
+          ExceptionType.INVALID_INPUT,
+          "Duplicate media IDs provided for checkout",
+          HttpStatus.BAD_REQUEST);
+    }
 
-      validationService.validateMediaForStatus(media, MediaStatus.AVAILABLE);
-      validationService.validatePatronForCheckout(patron, media);
+    Patron patron = patronService.getPatronById(patronId);
+    validationService.validatePatronEligible(patron);
+
+    /* Each item is claimed with a conditional AVAILABLE -> CHECKED_OUT write instead of being
+     * read, checked and saved, so two desks can't check out the same copy. Once claimed, any
+     * failure puts the items back; a conflicting loan save surfaces as a 409.
+     */
+    List<Media> checkedOutMedia =
+        mediaService.transitionMediaStatuses(
+            mediaIds, MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT);
+    boolean patronUpdated = false;
+    Loan loan;
+    try {
+      for (Media media : checkedOutMedia) {
+        validationService.validatePatronForCheckout(patron, media);
+      }
 
+      loan = createNewLoan(patronId);
       LocalDate dueDate = LocalDate.now().plusDays(loanPeriodDays);
 
-      mediaService.updateMediaStatus(media, MediaStatus.CHECKED_OUT);
-      patronService.updatePatronAfterCheckout(patron, mediaId);
+      patronService.updatePatronAfterCheckout(patron, mediaIds);
+      patronUpdated = true;
 
-      addLoanItemToLoan(loan, mediaId, dueDate);
-      checkedOutMedia.add(media);
-    }
+      for (int mediaId : mediaIds) {
+        addLoanItemToLoan(loan, mediaId, dueDate);
+      }
 
-    loanRepository.save(loan);
+      loanRepository.save(loan);
+    } catch (RuntimeException e) {
+      log.warn("Checkout of mediaIds {} for patronId {} failed, rolling back", mediaIds, patronId);
+      if (patronUpdated) {
+        patronService.updatePatronAfterReturn(patron, mediaIds);
+      }
+      mediaService.revertMediaStatuses(
+          checkedOutMedia, MediaStatus.CHECKED_OUT, MediaStatus.AVAILABLE);
+      throw e;
+    }
+    circulationLedgerService.record(loan.getLoanId(), patronId, TransactionType.CHECKOUT, mediaIds);
     log.info("Checkout successful for mediaIds {} to patronId {}", mediaIds, patronId);
 
     return createTransactionResponse(checkedOutMedia, loan.getLoanId(), true);
@@ -126,23 +167,49 @@ public class LoanService {
     }
     log.info("Attempting to return mediaIds {} from patronId {}", mediaIds, patronId);
 
-    Patron patron = patronService.getPatronById(patronId);
-    List<Media> returnedMedia = new ArrayList<>();
-
-    for (int mediaId : mediaIds) {
-      Media media = mediaService.getMediaById(mediaId);
-
-      validationService.validateMediaForStatus(media, MediaStatus.CHECKED_OUT);
-
-      Loan loan = findActiveLoanWithMediaItem(patronId, mediaId);
-      updateLoanWithReturn(loan, mediaId);
-      loanRepository.save(loan);
+    if (new HashSet<>(mediaIds).size() != mediaIds.size()) {
+      throw new GeneralException(
+          ExceptionType.INVALID_INPUT,
+          "Duplicate media IDs provided for return",
+          HttpStatus.BAD_REQUEST);
+    }
 
-      mediaService.updateMediaStatus(media, MediaStatus.AVAILABLE);
-      patronService.updatePatronAfterReturn(patron, mediaId);
+    Patron patron = patronService.getPatronById(patronId);
 
-      returnedMedia.add(media);
+    // Resolve every affected loan in one query and group the returned items by loan
+    List<Loan> loans =
+        loanRepository.findActiveByPatronIdAndMediaIdIn(
+            patronId, LoanStatus.ACTIVE, mediaIds, ItemStatus.CHECKED_OUT);
+    Map<Integer, List<Integer>> mediaIdsByLoanId = groupReturnedItemsByLoan(loans, mediaIds);
+
+    // Claim the items with conditional CHECKED_OUT -> AVAILABLE writes before touching the loans
+    List<Media> returnedMedia =
+        mediaService.transitionMediaStatuses(
+            mediaIds, MediaStatus.CHECKED_OUT, MediaStatus.AVAILABLE);
+    try {
+      int matched = loanRepository.applyItemReturns(mediaIdsByLoanId, LocalDate.now());
+      if (matched != mediaIdsByLoanId.size()) {
+        log.error(
+            "Return of mediaIds {} matched {} of loans {}",
+            mediaIds,
+            matched,
+            mediaIdsByLoanId.keySet());
+        throw new GeneralException(
+            ExceptionType.CONCURRENT_MODIFICATION,
+            "A loan changed while its items were being returned; reload it and try again",
+            HttpStatus.CONFLICT);
+      }
+    } catch (RuntimeException e) {
+      log.warn("Return of mediaIds {} from patronId {} failed, rolling back", mediaIds, patronId);
+      mediaService.revertMediaStatuses(
+          returnedMedia, MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT);
+      throw e;
     }
+    patronService.updatePatronAfterReturn(patron, mediaIds);
+    mediaIdsByLoanId.forEach(
+        (loanId, loanMediaIds) ->
+            circulationLedgerService.record(
+                loanId, patronId, TransactionType.RETURN, loanMediaIds));
 
     log.info("Return successful for mediaIds {} from patronId {}", mediaIds, patronId);
 
@@ -150,19 +217,17 @@ public class LoanService {
   }
 
   // Helper methods
-  private Loan findOrCreateActiveLoanForPatron(int patronId) {
-    return loanRepository
-        .findFirstByPatronIdAndStatus(patronId, LoanStatus.ACTIVE)
-        .orElseGet(() -> createNewLoan(patronId));
-  }
 
+  /* Every checkout opens its own loan rather than adding to the patron's active one, so a loan
+   * holds only the items of one session and is completed once they are all back, instead of
+   * growing for as long as the patron always has something out.
+   */
   private Loan createNewLoan(int patronId) {
     Loan loan = new Loan();
     loan.setLoanId(sequenceGenerator.getNextSequenceValueForLoan());
     loan.setPatronId(patronId);
     loan.setStatus(LoanStatus.ACTIVE);
     loan.setItems(new ArrayList<>());
-    loan.setTransactionLog(new ArrayList<>());
     return loan;
   }
 
@@ -173,47 +238,34 @@ public class LoanService {
     loanItem.setDueDate(dueDate);
     loanItem.setStatus(ItemStatus.CHECKED_OUT);
     loan.getItems().add(loanItem);
-    loan.getTransactionLog()
-        .add(createTransactionLogEntry(TransactionType.CHECKOUT, List.of(mediaId)));
     log.info("Added loan item for mediaId {} to loanNumber {}", mediaId, loan.getLoanId());
   }
 
-  private Loan findActiveLoanWithMediaItem(int patronId, int mediaId) {
-    return loanRepository
-        .findActiveByPatronIdAndMediaId(
-            patronId, LoanStatus.ACTIVE, mediaId, ItemStatus.CHECKED_OUT)
-        .orElseThrow(
-            () -> {
-              log.error("No active loan found for patronId {} with mediaId {}", patronId, mediaId);
-              return new GeneralException(
-                  ExceptionType.INVALID_LOAN,
-                  "No active loan found with the given media item",
-                  HttpStatus.NOT_FOUND);
-            });
-  }
-
-  private void updateLoanWithReturn(Loan loan, int mediaId) {
-    loan.getItems().stream()
-        .filter(item -> item.getMediaId() == mediaId && item.getStatus() == ItemStatus.CHECKED_OUT)
-        .findFirst()
-        .ifPresentOrElse(
-            item -> {
-              item.setReturnDate(LocalDate.now());
-              item.setStatus(ItemStatus.RETURNED);
-            },
-            () -> {
-              log.error("Loan item not found or already returned for mediaId {}", mediaId);
-              throw new GeneralException(
-                  ExceptionType.INVALID_LOAN,
-                  "Loan item not found or already returned",
-                  HttpStatus.NOT_FOUND);
-            });
-    loan.getTransactionLog()
-        .add(createTransactionLogEntry(TransactionType.RETURN, List.of(mediaId)));
-    if (loan.getItems().stream().allMatch(item -> item.getStatus() == ItemStatus.RETURNED)) {
-      loan.setStatus(LoanStatus.COMPLETED);
+  private Map<Integer, List<Integer>> groupReturnedItemsByLoan(
+      List<Loan> loans, List<Integer> mediaIds) {
+    Map<Integer, List<Integer>> mediaIdsByLoanId = new LinkedHashMap<>();
+    for (int mediaId : mediaIds) {
+      Loan loan =
+          loans.stream()
+              .filter(
+                  candidate ->
+                      candidate.getItems().stream()
+                          .anyMatch(
+                              item ->
+                                  item.getMediaId() == mediaId
+                                      && item.getStatus() == ItemStatus.CHECKED_OUT))
+              .findFirst()
+              .orElseThrow(
+                  () -> {
+                    log.error("No active loan found with mediaId {}", mediaId);
+                    return new GeneralException(
+                        ExceptionType.INVALID_LOAN,
+                        "No active loan found with the given media item",
+                        HttpStatus.NOT_FOUND);
+                  });
+      mediaIdsByLoanId.computeIfAbsent(loan.getLoanId(), id -> new ArrayList<>()).add(mediaId);
     }
-    log.info("Updated loanID {} after return of mediaId {}", loan.getLoanId(), mediaId);
+    return mediaIdsByLoanId;
   }
 
   private TransactionResponse createTransactionResponse(
@@ -235,15 +287,6 @@ public class LoanService {
     return response;
   }
 
-  private Loan.TransactionLog createTransactionLogEntry(
-      TransactionType transactionType, List<Integer> mediaIds) {
-    Loan.TransactionLog log = new Loan.TransactionLog();
-    log.setTransactionType(transactionType);
-    log.setTransactionDate(LocalDateTime.now());
-    log.setMediaIds(mediaIds);
-    return log;
-  }
-
   public List<LoanResponse> findLoansByPatronId(int patronId) {
     List<Loan> loans = loanRepository.findByPatronId(patronId);
     return loans.stream().map(LoanMapper::toLoanResponse).collect(Collectors.toList());
@@ -254,6 +297,19 @@ public class LoanService {
     return loans.stream().map(LoanMapper::toLoanResponse).collect(Collectors.toList());
   }
 
+  // Pages through a loan's checkouts and returns, oldest first
+  public PageResponse<TransactionLogResponse> getLoanLedgerPage(
+      int loanId, String cursor, Integer size) {
+    if (!loanRepository.existsByLoanId(loanId)) {
+      log.error("Loan not found with ID: {}", loanId);
+      throw new GeneralException(
+          ExceptionType.INVALID_LOAN, "Loan not found with ID: " + loanId, HttpStatus.NOT_FOUND);
+    }
+    return circulationLedgerService
+        .getLedgerPage(loanId, cursor, size)
+        .map(LoanMapper::toTransactionLogResponse);
+  }
+
   public void deleteLoanById(int loanId) {
     boolean exists = loanRepository.existsByLoanId(loanId);
     if (!exists) {
@@ -290,6 +346,23 @@ public class LoanService {
     if (patronId.isEmpty()) {
       throw new IllegalArgumentException("Patron ID is required");
     }
-    return loanRepository.getReportLoanPatronMedia(patronId);
+    try (Stream<ReportLoanPatronMedia> rows = streamReportLoanPatronMedia(patronId)) {
+      return rows.toList();
+    }
+  }
+
+  // Circulation report page in loanId order, for one patron or, without a patronId, for all
+  public PageResponse<ReportLoanPatronMedia> getReportLoanPatronMediaPage(
+      Optional<Integer> patronId, String cursor, Integer size) {
+    int pageSize = keysetPaginator.resolvePageSize(size);
+    int afterLoanId = keysetPaginator.decodeCursor(cursor, "loan-report");
+    List<ReportLoanPatronMedia> rows =
+        loanRepository.getReportLoanPatronMedia(patronId, afterLoanId, pageSize + 1);
+    return keysetPaginator.toPage(rows, pageSize, ReportLoanPatronMedia::getLoanId, "loan-report");
+  }
+
+  // The caller must close the stream; it holds an open aggregation cursor
+  public Stream<ReportLoanPatronMedia> streamReportLoanPatronMedia(Optional<Integer> patronId) {
+    return loanRepository.streamReportLoanPatronMedia(patronId, reportBatchSize);
   }
 }
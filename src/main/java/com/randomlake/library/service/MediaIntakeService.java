@@ -0,0 +1,194 @@
+package com.randomlake.library.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.mongodb.bulk.BulkWriteError;
+import com.randomlake.library.dto.MediaIntakeResult;
+import com.randomlake.library.dto.MediaRequest;
+import com.randomlake.library.enums.BarcodeType;
+import com.randomlake.library.mapper.MediaMapper;
+import com.randomlake.library.model.Media;
+import com.randomlake.library.util.SequenceGenerator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+/*
+ * Bulk intake of new acquisitions. Rows are read one at a time from a JSON array or NDJSON body
+ * and inserted in chunks: each chunk reserves its media IDs with one counter update, builds their
+ * barcodes in one pass and is written with one unordered bulk insert. A chunk's results are handed
+ * to the sink before the next chunk is read, so memory use is bounded by the chunk size however
+ * large the upload is.
+ */
+@Service
+public class MediaIntakeService {
+
+  private final MongoTemplate mongoTemplate;
+  private final SequenceGenerator sequenceGenerator;
+  private final MediaSearchService mediaSearchService;
+  private final AutocompleteService autocompleteService;
+  private final ObjectReader rowReader;
+
+  private static final Logger log = LoggerFactory.getLogger(MediaIntakeService.class);
+
+  // Items inserted per bulk write, and per range of media IDs reserved
+  @Value("${media.intake.chunk.size:500}")
+  private int chunkSize;
+
+  public MediaIntakeService(
+      MongoTemplate mongoTemplate,
+      SequenceGenerator sequenceGenerator,
+      MediaSearchService mediaSearchService,
+      AutocompleteService autocompleteService,
+      ObjectMapper objectMapper) {
+    this.mongoTemplate = mongoTemplate;
+    this.sequenceGenerator = sequenceGenerator;
+    this.mediaSearchService = mediaSearchService;
+    this.autocompleteService = autocompleteService;
+    this.rowReader = objectMapper.readerFor(MediaRequest.class);
+  }
+
+  /**
+   * Adds every valid row of the upload as a new item.
+   *
+   * @param body A JSON array of MediaRequest objects, or one object per line.
+   * @param sink Receives one result per row, in row order.
+   */
+  public void ingest(InputStream body, Consumer<MediaIntakeResult> sink) throws IOException {
+    List<Media> chunk = new ArrayList<>(chunkSize);
+    List<Integer> chunkRows = new ArrayList<>(chunkSize);
+    // Failed rows behind the pending chunk, reported with its results
+    List<MediaIntakeResult> rejected = new ArrayList<>();
+    int row = 0;
+    int created = 0;
+
+    try (MappingIterator<MediaRequest> rows = rowReader.readValues(body)) {
+      while (true) {
+        MediaRequest request;
+        try {
+          if (!rows.hasNextValue()) {
+            break;
+          }
+          row++;
+          request = rows.nextValue();
+        } catch (JsonProcessingException e) {
+          // A row that doesn't map is skipped; broken JSON leaves nothing to resume from
+          reject(
+              MediaIntakeResult.failed(row, "Unreadable row: " + e.getOriginalMessage()),
+              chunk,
+              rejected,
+              sink);
+          if (e instanceof JsonParseException) {
+            break;
+          }
+          continue;
+        }
+
+        if (request == null
+            || request.getMediaTitle() == null
+            || request.getMediaTitle().isEmpty()) {
+          reject(
+              MediaIntakeResult.failed(row, "Media title cannot be empty"), chunk, rejected, sink);
+          continue;
+        }
+        chunk.add(MediaMapper.toEntity(request));
+        chunkRows.add(row);
+        if (chunk.size() == chunkSize) {
+          created += insertChunk(chunk, chunkRows, rejected, sink);
+        }
+      }
+    }
+    if (!chunk.isEmpty()) {
+      created += insertChunk(chunk, chunkRows, rejected, sink);
+    }
+    log.info("Media intake finished: {} rows, {} created, {} failed", row, created, row - created);
+  }
+
+  // Reports a failed row now, or holds it for the pending chunk so rows stay in order
+  private static void reject(
+      MediaIntakeResult failure,
+      List<Media> chunk,
+      List<MediaIntakeResult> rejected,
+      Consumer<MediaIntakeResult> sink) {
+    if (chunk.isEmpty()) {
+      sink.accept(failure);
+    } else {
+      rejected.add(failure);
+    }
+  }
+
+  /*
+   * Inserts the chunk and hands the sink its results merged with the rows rejected since the last
+   * chunk, by row number. Returns the number of items inserted; all three lists are emptied for
+   * reuse.
+   */
+  private int insertChunk(
+      List<Media> chunk,
+      List<Integer> chunkRows,
+      List<MediaIntakeResult> rejected,
+      Consumer<MediaIntakeResult> sink) {
+    int count = chunk.size();
+    int firstMediaId =
+        sequenceGenerator.reserveSequenceRange(BarcodeType.MEDIA.getCounterId(), count);
+    String[] barcodes = sequenceGenerator.generateBarcodes(BarcodeType.MEDIA, firstMediaId, count);
+    LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+    for (int i = 0; i < count; i++) {
+      Media media = chunk.get(i);
+      MediaService.initializeNewMedia(media, firstMediaId + i, barcodes[i], now);
+      // Bulk inserts skip the version initialisation a save does
+      media.setVersion(0L);
+    }
+
+    Map<Integer, String> errors = new HashMap<>();
+    try {
+      mongoTemplate.bulkOps(BulkMode.UNORDERED, Media.class).insert(chunk).execute();
+    } catch (BulkOperationException e) {
+      for (BulkWriteError error : e.getErrors()) {
+        errors.put(error.getIndex(), error.getMessage());
+      }
+    }
+
+    int inserted = 0;
+    int next = 0;
+    for (int i = 0; i < count; i++) {
+      int chunkRow = chunkRows.get(i);
+      while (next < rejected.size() && rejected.get(next).getRow() < chunkRow) {
+        sink.accept(rejected.get(next++));
+      }
+      Media media = chunk.get(i);
+      String error = errors.get(i);
+      if (error != null) {
+        sink.accept(MediaIntakeResult.failed(chunkRow, error));
+        continue;
+      }
+      mediaSearchService.indexMedia(media);
+      autocompleteService.indexMedia(media);
+      sink.accept(MediaIntakeResult.created(chunkRow, media.getMediaId(), media.getBarCodeId()));
+      inserted++;
+    }
+    while (next < rejected.size()) {
+      sink.accept(rejected.get(next++));
+    }
+    log.debug("Inserted {} of {} media items from IDs {}", inserted, count, firstMediaId);
+    chunk.clear();
+    chunkRows.clear();
+    rejected.clear();
+    return inserted;
+  }
+}
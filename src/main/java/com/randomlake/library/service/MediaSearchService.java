@@ -0,0 +1,155 @@
+package com.randomlake.library.service;
+
+import com.randomlake.library.dto.ChangeSetResponse;
+import com.randomlake.library.dto.SearchResponse;
+import com.randomlake.library.enums.ExceptionType;
+import com.randomlake.library.enums.MediaStatus;
+import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.model.Media;
+import com.randomlake.library.repository.MediaRepository;
+import com.randomlake.library.search.MediaSearchIndex;
+import com.randomlake.library.util.KeysetPaginator;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/*
+ * Catalog search over an in-memory MediaSearchIndex. The index is built from the media delta
+ * feed on the first refresh after startup and then follows the feed, which picks up writes made
+ * by other nodes and by bulk status updates. Writes made through MediaService on this node are
+ * also applied straight away so they are searchable without waiting for the next refresh.
+ */
+@Service
+public class MediaSearchService {
+
+  private final MediaSearchIndex index;
+  private final SyncService syncService;
+  private final MediaRepository mediaRepository;
+  private final KeysetPaginator keysetPaginator;
+
+  private static final Logger log = LoggerFactory.getLogger(MediaSearchService.class);
+
+  @Value("${search.refresh.batch.size:500}")
+  private int refreshBatchSize;
+
+  private String syncToken; // guarded by this
+  private volatile boolean ready;
+
+  public MediaSearchService(
+      SyncService syncService,
+      MediaRepository mediaRepository,
+      KeysetPaginator keysetPaginator,
+      @Value("${search.prefix.max.expansions:64}") int maxPrefixExpansions) {
+    this.syncService = syncService;
+    this.mediaRepository = mediaRepository;
+    this.keysetPaginator = keysetPaginator;
+    this.index = new MediaSearchIndex(maxPrefixExpansions);
+  }
+
+  // Applies every change since the last refresh; the first run indexes the whole catalog
+  @Scheduled(fixedDelayString = "${search.refresh.interval.ms:10000}")
+  public synchronized void refresh() {
+    int changed = 0;
+    int deleted = 0;
+    ChangeSetResponse<Media> changes;
+    try {
+      do {
+        changes = syncService.getMediaChanges(syncToken, refreshBatchSize);
+        changes.getChanged().forEach(index::index);
+        changes.getDeletedIds().forEach(index::remove);
+        changed += changes.getChanged().size();
+        deleted += changes.getDeletedIds().size();
+        syncToken = changes.getNextToken();
+      } while (changes.isHasMore());
+    } catch (RuntimeException e) {
+      log.error("Search index refresh failed after {} changes; retrying on next run", changed, e);
+      return;
+    }
+
+    if (!ready) {
+      ready = true;
+      log.info("Search index built with {} media items", index.size());
+    } else if (changed + deleted > 0) {
+      log.debug("Search index refreshed: {} changed, {} deleted", changed, deleted);
+    }
+  }
+
+  public void indexMedia(Media media) {
+    index.index(media);
+  }
+
+  public void indexMedia(Collection<Media> mediaItems) {
+    mediaItems.forEach(index::index);
+  }
+
+  public void removeMedia(int mediaId) {
+    index.remove(mediaId);
+  }
+
+  /**
+   * Ranked catalog search over title, author, classification and publisher.
+   *
+   * @param query Free text; the words may be partial, case and accents are ignored.
+   * @param mediaType Optional media type filter.
+   * @param mediaFormat Optional media format filter.
+   * @param status Optional media status filter.
+   * @param page Zero-based page number, 0 when null.
+   * @param size Page size, or null for the default.
+   * @return The requested page of matching items, best first.
+   */
+  public SearchResponse<Media> search(
+      String query,
+      String mediaType,
+      String mediaFormat,
+      MediaStatus status,
+      Integer page,
+      Integer size) {
+    if (query == null || query.isBlank()) {
+      throw new GeneralException(
+          ExceptionType.INVALID_INPUT, "Search query cannot be empty", HttpStatus.BAD_REQUEST);
+    }
+    int pageNumber = page == null ? 0 : page;
+    if (pageNumber < 0) {
+      throw new GeneralException(
+          ExceptionType.INVALID_INPUT, "Page number cannot be negative", HttpStatus.BAD_REQUEST);
+    }
+    if (!ready) {
+      throw new GeneralException(
+          ExceptionType.SEARCH_UNAVAILABLE,
+          "Search index is still being built",
+          HttpStatus.SERVICE_UNAVAILABLE);
+    }
+    int pageSize = keysetPaginator.resolvePageSize(size);
+
+    MediaSearchIndex.SearchHits hits =
+        index.search(
+            query,
+            mediaType,
+            mediaFormat,
+            status,
+            (int) Math.min((long) pageNumber * pageSize, Integer.MAX_VALUE - pageSize),
+            pageSize);
+    return new SearchResponse<>(
+        loadInOrder(hits.mediaIds()), hits.totalHits(), pageNumber, pageSize);
+  }
+
+  // One query for the page; an item deleted since the index saw it is left out
+  private List<Media> loadInOrder(List<Integer> mediaIds) {
+    if (mediaIds.isEmpty()) {
+      return List.of();
+    }
+    Map<Integer, Media> mediaById =
+        mediaRepository.findAllByMediaIdIn(mediaIds).stream()
+            .collect(Collectors.toMap(Media::getMediaId, Function.identity(), (a, b) -> a));
+    return mediaIds.stream().map(mediaById::get).filter(Objects::nonNull).toList();
+  }
+}
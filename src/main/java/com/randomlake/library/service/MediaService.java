@@ -1,20 +1,37 @@
 package com.randomlake.library.service;
 
+import com.mongodb.client.result.UpdateResult;
+import com.randomlake.library.cache.MediaLookupCache;
+import com.randomlake.library.dto.PageResponse;
 import com.randomlake.library.enums.BarcodeType;
 import com.randomlake.library.enums.ExceptionType;
 import com.randomlake.library.enums.MediaStatus;
 import com.randomlake.library.exception.GeneralException;
 import com.randomlake.library.model.Loan;
 import com.randomlake.library.model.Media;
+import com.randomlake.library.model.Tombstone;
 import com.randomlake.library.repository.LoanRepository;
 import com.randomlake.library.repository.MediaRepository;
+import com.randomlake.library.repository.TombstoneRepository;
+import com.randomlake.library.util.KeysetPaginator;
+import com.randomlake.library.util.Precondition;
 import com.randomlake.library.util.SequenceGenerator;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -26,34 +43,83 @@ public class MediaService {
   private final MediaRepository mediaRepository;
   private final MediaUpdateService mediaUpdateService;
   private final SequenceGenerator sequenceGenerator;
+  private final MediaLookupCache mediaLookupCache;
+  private final KeysetPaginator keysetPaginator;
+  private final TombstoneRepository tombstoneRepository;
+  private final MediaSearchService mediaSearchService;
+  private final AutocompleteService autocompleteService;
   private static final Logger log = LoggerFactory.getLogger(MediaService.class);
 
   public MediaService(
       LoanRepository loanRepository,
       MediaRepository mediaRepository,
       MediaUpdateService mediaUpdateService,
-      SequenceGenerator sequenceGenerator) {
+      SequenceGenerator sequenceGenerator,
+      MediaLookupCache mediaLookupCache,
+      KeysetPaginator keysetPaginator,
+      TombstoneRepository tombstoneRepository,
+      MediaSearchService mediaSearchService,
+      AutocompleteService autocompleteService) {
     this.loanRepository = loanRepository;
     this.mediaRepository = mediaRepository;
     this.mediaUpdateService = mediaUpdateService;
     this.sequenceGenerator = sequenceGenerator;
+    this.mediaLookupCache = mediaLookupCache;
+    this.keysetPaginator = keysetPaginator;
+    this.tombstoneRepository = tombstoneRepository;
+    this.mediaSearchService = mediaSearchService;
+    this.autocompleteService = autocompleteService;
   }
 
   public List<Media> getAllMedia() {
     return mediaRepository.findAll();
   }
 
+  // One page in mediaId order, starting after the cursor; no cursor starts at the beginning
+  public PageResponse<Media> getMediaPage(String cursor, Integer size) {
+    int pageSize = keysetPaginator.resolvePageSize(size);
+    int afterMediaId = keysetPaginator.decodeCursor(cursor, "media");
+    List<Media> rows =
+        mediaRepository.findByMediaIdGreaterThanOrderByMediaIdAsc(
+            afterMediaId, Limit.of(pageSize + 1));
+    return keysetPaginator.toPage(rows, pageSize, Media::getMediaId, "media");
+  }
+
+  // Backed by an open cursor; the caller must close the stream
+  public Stream<Media> streamAllMedia() {
+    return mediaRepository.streamAllByOrderByMediaIdAsc();
+  }
+
+  // Modification time alone, for conditional requests; empty if the media does not exist
+  public Optional<LocalDateTime> getMediaLastUpdateDate(int mediaId) {
+    return mediaRepository.findLastUpdateDate(mediaId);
+  }
+
   public Media getMediaById(int mediaId) {
-    return mediaRepository
-        .findByMediaId(mediaId)
-        .orElseThrow(
-            () -> {
-              log.error("No media with ID {} found in collection", mediaId);
-              return new GeneralException(
-                  ExceptionType.MEDIA_NOT_FOUND,
-                  "No item with this ID found in collection",
-                  HttpStatus.NOT_FOUND);
-            });
+    return mediaLookupCache
+        .get(mediaId, mediaRepository::findByMediaId)
+        .orElseThrow(() -> mediaNotFound(mediaId));
+  }
+
+  // Loads all requested items in one query, in request order; any missing ID fails the whole lookup
+  public List<Media> getMediaByIds(Collection<Integer> mediaIds) {
+    Map<Integer, Media> mediaById =
+        mediaRepository.findAllByMediaIdIn(mediaIds).stream()
+            .collect(Collectors.toMap(Media::getMediaId, Function.identity(), (a, b) -> a));
+
+    List<Media> mediaItems = new ArrayList<>(mediaIds.size());
+    for (int mediaId : mediaIds) {
+      Media media = mediaById.get(mediaId);
+      if (media == null) {
+        log.error("No media with ID {} found in collection", mediaId);
+        throw new GeneralException(
+            ExceptionType.MEDIA_NOT_FOUND,
+            "No item with this ID found in collection",
+            HttpStatus.NOT_FOUND);
+      }
+      mediaItems.add(media);
+    }
+    return mediaItems;
   }
 
   public List<Media> getMediaByMediaTitle(String mediaTitle) {
@@ -78,31 +144,98 @@ public class MediaService {
         mediaRepository.findByIsbnId(isbnId), "No item by this ISBN ID found in collection");
   }
 
-  /* This is the entry point for updating a media record. It retrieves the record from the repository, applies the updates
-   * using the MediaUpdateService. It sets the lastUpdate date, saves it back to the database and returns the updated record
+  /* Applies a PATCH with one findAndModify that sets only the given fields and returns the
+   * record as written, instead of loading the whole document and saving it back.
    */
   @Transactional
-  public Media updateMediaPartial(int mediaId, Map<String, Object> updates) {
+  public Media updateMediaPartial(
+      int mediaId, Map<String, Object> updates, Precondition precondition) {
     if (updates == null || updates.isEmpty()) {
       throw new GeneralException(
           ExceptionType.INVALID_OPERATION, "No updates provided", HttpStatus.BAD_REQUEST);
     }
-    Media media = getMediaById(mediaId);
-    mediaUpdateService.applyPartialUpdates(media, updates);
-    media.setLastUpdateDate(LocalDateTime.now());
-    return mediaRepository.save(media);
+    Update update = mediaUpdateService.toPartialUpdate(updates);
+    Optional<Media> patched;
+    try {
+      patched = mediaRepository.patch(mediaId, update, precondition);
+    } finally {
+      mediaLookupCache.invalidate(mediaId);
+    }
+    Media media =
+        patched.orElseThrow(
+            () -> {
+              // Only a failed conditional patch pays for the read that tells missing from changed
+              if (precondition.isRequired()) {
+                Optional<Media> current = mediaRepository.findByMediaId(mediaId);
+                if (current.isPresent()) {
+                  return precondition.failed(current.get().getLastUpdateDate());
+                }
+              }
+              return mediaNotFound(mediaId);
+            });
+    mediaSearchService.indexMedia(media);
+    autocompleteService.indexMedia(media);
+    return media;
   }
 
+  /* Applies the same PATCH to every item matching the filter in one updateMulti. The changed
+   * items are not read back: the lookup cache is cleared, and the search index and autocomplete
+   * pick the changes up from the delta-sync feed.
+   */
+  public UpdateResult updateMediaMatching(Map<String, Object> filter, Map<String, Object> updates) {
+    if (updates == null || updates.isEmpty()) {
+      throw new GeneralException(
+          ExceptionType.INVALID_OPERATION, "No updates provided", HttpStatus.BAD_REQUEST);
+    }
+    Criteria criteria = mediaUpdateService.toPatchFilter(filter);
+    Update update = mediaUpdateService.toBulkUpdate(updates);
+    try {
+      UpdateResult result = mediaRepository.patchMatching(criteria, update);
+      log.info(
+          "Bulk patch matched {} media items, modified {}",
+          result.getMatchedCount(),
+          result.getModifiedCount());
+      return result;
+    } finally {
+      mediaLookupCache.invalidateAll();
+    }
+  }
+
+  /* With If-Match the item is read past the lookup cache, whose copy may be older than the ETag,
+   * and checked against the precondition; the versioned save then fails if it changed after that
+   * read, which is answered with 412 as well.
+   */
   @Transactional
-  public Media updateMediaFull(int mediaId, Media fullUpdate) {
+  public Media updateMediaFull(int mediaId, Media fullUpdate, Precondition precondition) {
     if (fullUpdate == null) {
       throw new GeneralException(
           ExceptionType.INVALID_OPERATION, "No updates provided", HttpStatus.BAD_REQUEST);
     }
-    Media media = getMediaById(mediaId);
+    Media media =
+        precondition.isRequired()
+            ? mediaRepository.findByMediaId(mediaId).orElseThrow(() -> mediaNotFound(mediaId))
+            : getMediaById(mediaId);
+    if (!precondition.matches(media.getLastUpdateDate())) {
+      throw precondition.failed(media.getLastUpdateDate());
+    }
     mediaUpdateService.applyFullUpdate(media, fullUpdate);
     media.setLastUpdateDate(LocalDateTime.now());
-    return mediaRepository.save(media);
+    try {
+      return saveMedia(media);
+    } catch (OptimisticLockingFailureException e) {
+      if (!precondition.isRequired()) {
+        throw e;
+      }
+      throw precondition.failed(mediaRepository.findLastUpdateDate(mediaId).orElse(null));
+    }
+  }
+
+  private GeneralException mediaNotFound(int mediaId) {
+    log.error("No media with ID {} found in collection", mediaId);
+    return new GeneralException(
+        ExceptionType.MEDIA_NOT_FOUND,
+        "No item with this ID found in collection",
+        HttpStatus.NOT_FOUND);
   }
 
   @Transactional
@@ -118,6 +251,10 @@ public class MediaService {
     }
 
     mediaRepository.delete(media);
+    tombstoneRepository.save(new Tombstone(Tombstone.MEDIA, mediaId, LocalDateTime.now()));
+    mediaLookupCache.invalidate(mediaId);
+    mediaSearchService.removeMedia(mediaId);
+    autocompleteService.removeMedia(mediaId);
     log.info("Media with ID {} deleted", mediaId);
   }
 
@@ -137,23 +274,28 @@ public class MediaService {
     validateMedia(media);
 
     int nextMediaNumber = sequenceGenerator.getNextSequenceValue(BarcodeType.MEDIA);
-    media.setMediaId(nextMediaNumber);
-
     String barCode = sequenceGenerator.generateBarcode(BarcodeType.MEDIA, nextMediaNumber);
-    media.setBarCodeId(barCode);
+    initializeNewMedia(media, nextMediaNumber, barCode, LocalDateTime.now());
+    // A version sent by the client would make the save an update of a document that isn't there
+    media.setVersion(null);
 
-    LocalDateTime now = LocalDateTime.now();
+    Media savedMedia = mediaRepository.save(media);
+    mediaSearchService.indexMedia(savedMedia);
+    autocompleteService.indexMedia(savedMedia);
+
+    return savedMedia;
+  }
+
+  // The IDs and defaults every new item gets, whether added singly or through bulk intake
+  static void initializeNewMedia(Media media, int mediaId, String barCode, LocalDateTime now) {
+    media.setMediaId(mediaId);
+    media.setBarCodeId(barCode);
     media.setCreated_date(now);
     media.setLastUpdateDate(now);
     media.setStatus(MediaStatus.AVAILABLE);
-
     if (media.getAcquisitionDate() == null) {
-      media.setAcquisitionDate(LocalDate.now());
+      media.setAcquisitionDate(now.toLocalDate());
     }
-
-    Media savedMedia = mediaRepository.save(media);
-
-    return savedMedia;
   }
 
   private void validateMedia(Media media) {
@@ -175,7 +317,77 @@ public class MediaService {
   public void updateMediaStatus(Media media, MediaStatus status) {
     media.setStatus(status);
     media.setLastUpdateDate(LocalDateTime.now());
-    mediaRepository.save(media);
+    saveMedia(media);
     log.info("Updated media status for mediaId {} to {}", media.getMediaId(), status);
   }
+
+  /* Moves a batch of items from one status to another, each with a single conditional
+   * findAndModify, and returns them as written in request order; nothing is read beforehand. If
+   * an item is missing or no longer in the expected status, the items already moved by this call
+   * are put back and the whole batch is rejected, so callers keep all-or-nothing semantics.
+   */
+  public List<Media> transitionMediaStatuses(
+      List<Integer> mediaIds, MediaStatus expectedStatus, MediaStatus newStatus) {
+    // Mongo stores dates at millisecond precision; the stamp must match exactly for a revert
+    LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+    List<Media> transitioned = new ArrayList<>(mediaIds.size());
+
+    try {
+      for (int mediaId : mediaIds) {
+        Optional<Media> media =
+            mediaRepository.transitionStatus(mediaId, expectedStatus, newStatus, now);
+        if (media.isEmpty()) {
+          revertMediaStatuses(transitioned, newStatus, expectedStatus);
+          // Only a failed transition pays for the lookup that tells missing from unavailable
+          getMediaById(mediaId);
+          log.error("Media item {} is not in status {}", mediaId, expectedStatus);
+          throw new GeneralException(
+              ExceptionType.MEDIA_NOT_AVAILABLE,
+              "Invalid media status for action",
+              HttpStatus.FORBIDDEN);
+        }
+        transitioned.add(media.get());
+      }
+    } finally {
+      mediaLookupCache.invalidateAll(mediaIds);
+    }
+
+    mediaSearchService.indexMedia(transitioned);
+    log.info("Updated media status for mediaIds {} to {}", mediaIds, newStatus);
+    return transitioned;
+  }
+
+  /* Compensates a transitionMediaStatuses call when a later step of the same operation fails.
+   * Only documents still carrying the status and stamp written by that call are put back.
+   */
+  public void revertMediaStatuses(
+      List<Media> transitioned, MediaStatus appliedStatus, MediaStatus previousStatus) {
+    if (transitioned.isEmpty()) {
+      return;
+    }
+    List<Integer> mediaIds = transitioned.stream().map(Media::getMediaId).toList();
+    try {
+      mediaRepository.revertStatusForMediaIds(
+          mediaIds, appliedStatus, previousStatus, transitioned.get(0).getLastUpdateDate());
+    } finally {
+      mediaLookupCache.invalidateAll(mediaIds);
+    }
+    transitioned.forEach(media -> media.setStatus(previousStatus));
+    mediaSearchService.indexMedia(transitioned);
+    log.warn("Reverted media status for mediaIds {} to {}", mediaIds, previousStatus);
+  }
+
+  // Every write to a media record goes through here so the lookup cache never serves it stale
+  // and the search and autocomplete indexes see the new version straight away
+  private Media saveMedia(Media media) {
+    Media savedMedia;
+    try {
+      savedMedia = mediaRepository.save(media);
+    } finally {
+      mediaLookupCache.invalidate(media.getMediaId());
+    }
+    mediaSearchService.indexMedia(savedMedia);
+    autocompleteService.indexMedia(savedMedia);
+    return savedMedia;
+  }
 }
@@ -1,92 +1,67 @@
 package com.randomlake.library.service;
 
-import com.randomlake.library.enums.MediaStatus;
 import com.randomlake.library.model.Media;
-import java.time.LocalDate;
+import com.randomlake.library.util.PatchEngine;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 @Service
 public class MediaUpdateService {
 
-  private static final Logger log = LoggerFactory.getLogger(MediaUpdateService.class);
+  // The properties a PATCH may set; IDs, dates kept by the service and the version are not
+  static final List<String> PATCHABLE_PROPERTIES =
+      List.of(
+          "mediaTitle",
+          "authorName",
+          "isbnId",
+          "barCodeId",
+          "publicationYear",
+          "mediaType",
+          "mediaFormat",
+          "numberPages",
+          "classificationCategory",
+          "classificationSubCategory",
+          "publisherName",
+          "disposalDisposition",
+          "acquisitionDate",
+          "status");
 
-  public void applyPartialUpdates(Media media, Map<String, Object> updates) {
+  /* The properties a bulk PATCH may set. Status only changes through the conditional
+   * transitions of checkout and return, and a barcode belongs to a single item.
+   */
+  static final List<String> BULK_PATCHABLE_PROPERTIES =
+      PATCHABLE_PROPERTIES.stream()
+          .filter(property -> !property.equals("status") && !property.equals("barCodeId"))
+          .toList();
 
-    updates.forEach(
-        (key, value) -> {
-          switch (key) {
-            case "mediaTitle":
-              media.setMediaTitle((String) value);
-              break;
-            case "authorName":
-              media.setAuthorName((String) value);
-              break;
-            case "isbnId":
-              media.setIsbnId((String) value);
-              break;
-            case "barCodeId":
-              media.setBarCodeId((String) value);
-              break;
-            case "publicationYear":
-              media.setPublicationYear((String) value);
-              break;
-            case "mediaType":
-              media.setMediaType((String) value);
-              break;
-            case "mediaFormat":
-              media.setMediaFormat((String) value);
-              break;
-            case "numberPages":
-              if (value instanceof Integer) {
-                media.setNumberPages((Integer) value);
-              } else {
-                throw new IllegalArgumentException(
-                    "Invalid type for numberPages. Expected an Integer.");
-              }
-              break;
-            case "classificationCategory":
-              media.setClassificationCategory((String) value);
-              break;
-            case "classificationSubCategory":
-              media.setClassificationSubCategory((String) value);
-              break;
-            case "publisherName":
-              media.setPublisherName((String) value);
-              break;
-            case "disposalDisposition":
-              media.setDisposalDisposition((String) value);
-              break;
-            case "acquisitionDate":
-              if (value instanceof String) {
-                media.setAcquisitionDate(LocalDate.parse((String) value));
-              } else if (value instanceof LocalDate) {
-                media.setAcquisitionDate((LocalDate) value);
-              } else {
-                throw new IllegalArgumentException(
-                    "Invalid type for acquisitionDate. Expected a String or LocalDate.");
-              }
-              break;
-            case "status":
-              if (value instanceof String) {
-                try {
-                  media.setStatus(MediaStatus.valueOf((String) value));
-                } catch (IllegalArgumentException e) {
-                  throw new IllegalArgumentException("Invalid media status: " + value);
-                }
-              } else {
-                throw new IllegalArgumentException("Invalid type for status. Expected a String.");
-              }
-              break;
-            default:
-              log.error("Attempted to update unknown property '{}' with value '{}'", key, value);
-              throw new IllegalArgumentException("Unknown property: " + key);
-          }
-          media.setLastUpdateDate(LocalDateTime.now());
-        });
+  private final PatchEngine<Media> patchEngine;
+  private final PatchEngine<Media> bulkPatchEngine;
+
+  public MediaUpdateService(MongoMappingContext mappingContext) {
+    this.patchEngine =
+        new PatchEngine<>(mappingContext, Media.class, "mediaId", PATCHABLE_PROPERTIES);
+    this.bulkPatchEngine =
+        new PatchEngine<>(mappingContext, Media.class, "mediaId", BULK_PATCHABLE_PROPERTIES);
+  }
+
+  // A PATCH body as a single update; unknown properties and mistyped values are rejected
+  public Update toPartialUpdate(Map<String, Object> updates) {
+    return patchEngine.toUpdate(updates, LocalDateTime.now());
+  }
+
+  // The updates of a bulk PATCH, limited to BULK_PATCHABLE_PROPERTIES
+  public Update toBulkUpdate(Map<String, Object> updates) {
+    return bulkPatchEngine.toUpdate(updates, LocalDateTime.now());
+  }
+
+  // The filter of a bulk PATCH, matched on patchable properties or mediaId
+  public Criteria toPatchFilter(Map<String, Object> filter) {
+    return patchEngine.toCriteria(filter);
   }
 
   public void applyFullUpdate(Media media, Media fullUpdate) {
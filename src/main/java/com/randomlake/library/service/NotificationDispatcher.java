@@ -0,0 +1,195 @@
+package com.randomlake.library.service;
+
+import com.randomlake.library.model.NotificationOutbox;
+import com.randomlake.library.repository.NotificationOutboxRepository;
+import com.randomlake.library.util.TokenBucket;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/*
+ * Drains the notification outbox with a bounded pool of workers. Entries are claimed one at a
+ * time with a lease, so several nodes can drain the same outbox and an entry abandoned by a
+ * stopped node is picked up again once its lease runs out. Sends through the SMTP host are
+ * throttled by a shared token bucket; failed sends are retried with exponential backoff until
+ * the attempt limit is reached. An entry is only marked SENT after the mail server accepted it,
+ * so a crash between the two can at worst repeat that one message.
+ */
+@Service
+public class NotificationDispatcher {
+
+  private static final String FROM_ADDRESS = "librarian@anytownpubliclibrary.com";
+
+  private final NotificationOutboxRepository outboxRepository;
+  private final EmailService emailService;
+  private final Clock clock;
+
+  private static final Logger log = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+  @Value("${notification.dispatch.workers:8}")
+  private int workers;
+
+  // Entries claimed per tick, so one tick never holds the shared scheduler for long
+  @Value("${notification.dispatch.batch.size:25}")
+  private int batchSize;
+
+  @Value("${notification.dispatch.max.attempts:5}")
+  private int maxAttempts;
+
+  @Value("${notification.dispatch.lease.seconds:120}")
+  private long leaseSeconds;
+
+  // Delay before the first retry; doubled for every further attempt
+  @Value("${notification.dispatch.backoff.seconds:30}")
+  private long backoffSeconds;
+
+  @Value("${spring.mail.host:localhost}")
+  private String smtpHost;
+
+  @Value("${notification.smtp.rate.per.second:5}")
+  private double smtpRatePerSecond;
+
+  private ExecutorService executor;
+  private Semaphore inFlight;
+  private TokenBucket smtpRateLimiter;
+
+  public NotificationDispatcher(
+      NotificationOutboxRepository outboxRepository, EmailService emailService, Clock clock) {
+    this.outboxRepository = outboxRepository;
+    this.emailService = emailService;
+    this.clock = clock;
+  }
+
+  @PostConstruct
+  public void start() {
+    AtomicInteger threadCount = new AtomicInteger();
+    executor =
+        Executors.newFixedThreadPool(
+            workers,
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "notification-dispatch-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    inFlight = new Semaphore(workers);
+    smtpRateLimiter = new TokenBucket(smtpRatePerSecond);
+    log.info(
+        "Notification dispatcher started with {} workers, {} mails/s to {}",
+        workers,
+        smtpRatePerSecond,
+        smtpHost);
+  }
+
+  // Claims up to batchSize due entries, never holding more than one per worker
+  @Scheduled(fixedDelayString = "${notification.dispatch.interval.ms:5000}")
+  public void dispatchPending() {
+    int dispatched = 0;
+    while (dispatched < batchSize && !executor.isShutdown()) {
+      inFlight.acquireUninterruptibly();
+      LocalDateTime now = LocalDateTime.now(clock);
+      Optional<NotificationOutbox> claimed;
+      try {
+        claimed = outboxRepository.claimNext(now, now.plusSeconds(leaseSeconds));
+      } catch (RuntimeException e) {
+        inFlight.release();
+        throw e;
+      }
+      if (claimed.isEmpty()) {
+        inFlight.release();
+        break;
+      }
+
+      NotificationOutbox entry = claimed.get();
+      try {
+        executor.execute(
+            () -> {
+              try {
+                deliver(entry);
+              } finally {
+                inFlight.release();
+              }
+            });
+        dispatched++;
+      } catch (RejectedExecutionException e) {
+        // Shutting down; the lease expires and another node or the next start picks it up
+        inFlight.release();
+      }
+    }
+    if (dispatched > 0) {
+      log.info("Dispatched {} notifications", dispatched);
+    }
+  }
+
+  protected void deliver(NotificationOutbox entry) {
+    try {
+      if (entry.getRecipient() == null) {
+        // Nothing to send to; retrying will not help
+        log.warn("Dropping notification {} without a recipient", entry.getIdempotencyKey());
+        warnIfLeaseLost(entry, outboxRepository.markFailed(entry, "No recipient"));
+        return;
+      }
+      smtpRateLimiter.acquire();
+      emailService.sendEmail(
+          FROM_ADDRESS, entry.getRecipient(), entry.getSubject(), entry.getBody());
+      warnIfLeaseLost(entry, outboxRepository.markSent(entry, LocalDateTime.now(clock)));
+    } catch (RuntimeException e) {
+      handleSendFailure(entry, e);
+    }
+  }
+
+  private void handleSendFailure(NotificationOutbox entry, RuntimeException e) {
+    if (entry.getAttempts() >= maxAttempts) {
+      log.error(
+          "Giving up on notification {} after {} attempts",
+          entry.getIdempotencyKey(),
+          entry.getAttempts(),
+          e);
+      warnIfLeaseLost(entry, outboxRepository.markFailed(entry, e.getMessage()));
+      return;
+    }
+    long delaySeconds = backoffSeconds << Math.min(entry.getAttempts() - 1, 16);
+    log.warn(
+        "Notification {} failed on attempt {}, retrying in {}s",
+        entry.getIdempotencyKey(),
+        entry.getAttempts(),
+        delaySeconds);
+    warnIfLeaseLost(
+        entry,
+        outboxRepository.scheduleRetry(
+            entry, LocalDateTime.now(clock).plusSeconds(delaySeconds), e.getMessage()));
+  }
+
+  /* The lease ran out before the outcome was recorded and the entry was claimed again. The newer
+   * claim decides what happens to it, so the message may go out twice.
+   */
+  private void warnIfLeaseLost(NotificationOutbox entry, boolean recorded) {
+    if (!recorded) {
+      log.warn(
+          "Lease on notification {} (attempt {}) expired before its outcome was recorded",
+          entry.getIdempotencyKey(),
+          entry.getAttempts());
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    executor.shutdown();
+    if (!executor.awaitTermination(leaseSeconds, TimeUnit.SECONDS)) {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -1,47 +1,115 @@
 package com.randomlake.library.service;
 
-import com.randomlake.library.enums.ExceptionType;
-import com.randomlake.library.exception.GeneralException;
-import com.randomlake.library.model.Patron;
+import com.randomlake.library.dto.PatronContact;
+import com.randomlake.library.model.NotificationOutbox;
+import com.randomlake.library.repository.NotificationOutboxRepository;
 import com.randomlake.library.repository.PatronRepository;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
+/*
+ * Queues notifications in the outbox; delivery is done by the NotificationDispatcher. Recipients
+ * are resolved when the notification is queued, with one projected query per batch. Each entry
+ * carries an idempotency key so a job that is re-run, or a status change that is repeated on the
+ * same day, does not queue the same message again.
+ */
 @Service
 public class NotificationSender {
 
-  private final EmailService emailService;
+  static final String SUBJECT = "Library Notification";
+
+  private final NotificationOutboxRepository outboxRepository;
   private final PatronRepository patronRepository;
+  private final Clock clock;
   private static final Logger log = LoggerFactory.getLogger(NotificationSender.class);
 
-  public NotificationSender(EmailService emailService, PatronRepository patronRepository) {
-    this.emailService = emailService;
+  public NotificationSender(
+      NotificationOutboxRepository outboxRepository,
+      PatronRepository patronRepository,
+      Clock clock) {
+    this.outboxRepository = outboxRepository;
     this.patronRepository = patronRepository;
+    this.clock = clock;
+  }
+
+  public void enqueueNotification(int patronId, String idempotencyKey, String message) {
+    String recipient = getEmailForPatron(getContactsForPatrons(List.of(patronId)).get(patronId));
+    if (recipient == null) {
+      log.warn("No email address for patron {}, notification not queued", patronId);
+      return;
+    }
+
+    NotificationOutbox entry =
+        new NotificationOutbox(
+            patronId, idempotencyKey, recipient, SUBJECT, message, LocalDateTime.now(clock));
+    if (outboxRepository.enqueueAll(List.of(entry)) == 0) {
+      log.debug("Notification {} already queued", idempotencyKey);
+    }
   }
 
-  public void sendNotification(int patronId, String message) {
-    // Fetch patron's email address based on patronId
-    String recipientEmail = getEmailForPatron(patronId);
-
-    // Send the email
-    try {
-      emailService.sendEmail(
-          "librarian@anytownpubliclibrary.com", recipientEmail, "Library Notification", message);
-      log.info("Email sent to {} with message length {}", recipientEmail, message.length());
-    } catch (Exception e) {
-      log.error("Failed to send email to " + recipientEmail, e);
+  /**
+   * Queues one notification per patron in a single bulk insert. Patrons without an email address on
+   * file are skipped.
+   *
+   * @param messagesByPatron The message body to send to each patron ID.
+   * @param idempotencyScope Prefix of the idempotency keys; the patron ID is appended to it.
+   * @return The number of notifications queued, excluding ones queued by an earlier run.
+   */
+  public int enqueueNotifications(Map<Integer, String> messagesByPatron, String idempotencyScope) {
+    LocalDateTime now = LocalDateTime.now(clock);
+    Map<Integer, PatronContact> contacts = getContactsForPatrons(messagesByPatron.keySet());
+
+    List<NotificationOutbox> entries = new ArrayList<>(messagesByPatron.size());
+    for (Map.Entry<Integer, String> message : messagesByPatron.entrySet()) {
+      int patronId = message.getKey();
+      String recipient = getEmailForPatron(contacts.get(patronId));
+      if (recipient == null) {
+        log.warn("No email address for patron {}, notification not queued", patronId);
+        continue;
+      }
+      entries.add(
+          new NotificationOutbox(
+              patronId,
+              idempotencyScope + ":" + patronId,
+              recipient,
+              SUBJECT,
+              message.getValue(),
+              now));
+    }
+
+    int queued = outboxRepository.enqueueAll(entries);
+    log.info(
+        "Queued {} notifications for {} ({} already queued)",
+        queued,
+        idempotencyScope,
+        entries.size() - queued);
+    return queued;
+  }
+
+  // Contact details keyed by patron ID; unknown patrons are absent from the map
+  public Map<Integer, PatronContact> getContactsForPatrons(Collection<Integer> patronIds) {
+    if (patronIds.isEmpty()) {
+      return Map.of();
     }
+    return patronRepository.findContactsByPatronIdIn(patronIds).stream()
+        .collect(Collectors.toMap(PatronContact::getPatronId, Function.identity()));
   }
 
-  private String getEmailForPatron(int patronId) {
-    return patronRepository
-        .findByPatronId(patronId)
-        .map(Patron::getEmailAddress)
-        .orElseThrow(
-            () ->
-                new GeneralException(
-                    ExceptionType.PATRON_NOT_FOUND, "Patron not found", HttpStatus.NOT_FOUND));
+  private String getEmailForPatron(PatronContact contact) {
+    if (contact == null
+        || contact.getEmailAddress() == null
+        || contact.getEmailAddress().isBlank()) {
+      return null;
+    }
+    return contact.getEmailAddress();
   }
 }
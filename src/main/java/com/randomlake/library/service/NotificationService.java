@@ -1,18 +1,15 @@
 package com.randomlake.library.service;
 
 import com.randomlake.library.constants.MessageTemplates;
-import com.randomlake.library.enums.ItemStatus;
-import com.randomlake.library.enums.LoanStatus;
+import com.randomlake.library.dto.PatronDueItems;
 import com.randomlake.library.enums.PatronStatus;
-import com.randomlake.library.model.Loan;
-import com.randomlake.library.model.Media;
 import com.randomlake.library.repository.LoanRepository;
-import com.randomlake.library.repository.MediaRepository;
 import java.time.Clock;
 import java.time.LocalDate;
-import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -21,108 +18,79 @@ import org.springframework.stereotype.Service;
 @Service
 public class NotificationService {
 
+  // Days from today of the due dates patrons are notified about
+  private static final int[] NOTIFICATION_OFFSETS = {3, 0, -5, -10, -15, -30};
+
+  // Patron digests queued per outbox bulk insert
+  private static final int ENQUEUE_BATCH_SIZE = 500;
+
   private final LoanRepository loanRepository;
-  private final MediaRepository mediaRepository;
   private final NotificationSender notificationSender;
   private final Clock clock;
   private static final Logger log = LoggerFactory.getLogger(NotificationService.class);
 
   public NotificationService(
-      LoanRepository loanRepository,
-      MediaRepository mediaRepository,
-      NotificationSender notificationSender,
-      Clock clock) {
+      LoanRepository loanRepository, NotificationSender notificationSender, Clock clock) {
     this.loanRepository = loanRepository;
-    this.mediaRepository = mediaRepository;
     this.notificationSender = notificationSender;
     this.clock = clock;
   }
 
+  /* Builds one digest per patron covering every notification window (+3, 0, -5, -10, -15 and
+   * -30 days) from a single streamed aggregation, and queues the digests in batches.
+   */
   @Scheduled(cron = "${item.due.notification.cron}")
   public void checkDueItemsAndNotifyPatron() {
     LocalDate today = LocalDate.now(clock);
+    String idempotencyScope = "items-due:" + today;
 
     try {
-      // Map to accumulate messages per patron across all due dates
-      Map<Integer, StringBuilder> messagesPerPatron = new HashMap<>();
-
       // Map of due dates to their corresponding days offset
-      Map<LocalDate, Integer> dueDates =
-          Map.of(
-              today.plusDays(3),
-              3,
-              today,
-              0,
-              today.minusDays(5),
-              -5,
-              today.minusDays(10),
-              -10,
-              today.minusDays(15),
-              -15,
-              today.minusDays(30),
-              -30);
-
-      // Process each due dates
-      for (Map.Entry<LocalDate, Integer> entry : dueDates.entrySet()) {
-        LocalDate dueDate = entry.getKey();
-        int daysOffset = entry.getValue();
-        notifyForDueDate(dueDate, daysOffset, messagesPerPatron);
+      Map<LocalDate, Integer> dueDates = new HashMap<>();
+      for (int daysOffset : NOTIFICATION_OFFSETS) {
+        dueDates.put(today.plusDays(daysOffset), daysOffset);
       }
 
-      // Send consolidated notifications per patron
-      for (Map.Entry<Integer, StringBuilder> entry : messagesPerPatron.entrySet()) {
-        int patronId = entry.getKey();
-        String message = entry.getValue().toString();
-
-        // Send the consolidated notification
-        notificationSender.sendNotification(patronId, message);
-        log.info("Items due notification sent to patron ID: {}", patronId);
+      Map<Integer, String> batch = new HashMap<>();
+      int patronsNotified = 0;
+      try (Stream<PatronDueItems> digests =
+          loanRepository.streamDueItemsByPatron(dueDates.keySet())) {
+        Iterator<PatronDueItems> cursor = digests.iterator();
+        while (cursor.hasNext()) {
+          PatronDueItems digest = cursor.next();
+          batch.put(digest.getPatronId(), buildMessage(digest, dueDates));
+          if (batch.size() == ENQUEUE_BATCH_SIZE) {
+            patronsNotified += batch.size();
+            notificationSender.enqueueNotifications(batch, idempotencyScope);
+            batch.clear();
+          }
+        }
       }
+      if (!batch.isEmpty()) {
+        patronsNotified += batch.size();
+        notificationSender.enqueueNotifications(batch, idempotencyScope);
+      }
+      log.info("Items due notifications prepared for {} patrons", patronsNotified);
     } catch (Exception e) {
       log.error("An error occurred while sending due items notification", e);
     }
   }
 
-  protected void notifyForDueDate(
-      LocalDate dueDate, int daysOffset, Map<Integer, StringBuilder> messagesPerPatron) {
-    // Fetch loans with items due on the specified date
-    List<Loan> dueLoans =
-        loanRepository.findActiveLoansByDueDateAndItemStatus(
-            dueDate, LoanStatus.ACTIVE, ItemStatus.CHECKED_OUT);
-    sendNotificationsForLoans(dueLoans, daysOffset, dueDate, messagesPerPatron);
-  }
-
-  public void sendNotificationsForLoans(
-      List<Loan> loans,
-      int daysOffset,
-      LocalDate dueDateFilter,
-      Map<Integer, StringBuilder> messagesPerPatron) {
-
-    // Map media IDs to media titles
-    Map<Integer, Media> mediaMap = getMediaMapFromLoans(loans);
-
-    // Select the appropriate message template based on days offset
-    String messageTemplate = getMessageForDaysOffset(daysOffset);
-
-    // Loop through loans and accumulate messages
-    for (Loan loan : loans) {
-      int patronId = loan.getPatronId();
-      for (Loan.LoanItem item : loan.getItems()) {
-        if (item.getDueDate().equals(dueDateFilter) && item.getStatus() == ItemStatus.CHECKED_OUT) {
-
-          int mediaId = item.getMediaId();
-          Media media = mediaMap.get(mediaId);
-          String title = media != null ? media.getMediaTitle() : "Unknown Title";
-          LocalDate dueDate = item.getDueDate();
-
-          // Construct the notification message
-          String message = formatMessage(messageTemplate, daysOffset, mediaId, title, dueDate);
-
-          // Accumulate message per patron across all due dates
-          messagesPerPatron.computeIfAbsent(patronId, k -> new StringBuilder()).append(message);
-        }
-      }
+  // Items arrive latest due date first, so the digest reads from upcoming to most overdue
+  protected String buildMessage(PatronDueItems digest, Map<LocalDate, Integer> dueDates) {
+    StringBuilder message = new StringBuilder();
+    for (PatronDueItems.DueItem item : digest.getItems()) {
+      int daysOffset = dueDates.get(item.getDueDate());
+      String title = item.getMediaTitle() != null ? item.getMediaTitle() : "Unknown Title";
+      message.append(
+          formatMessage(
+              getMessageForDaysOffset(daysOffset),
+              daysOffset,
+              item.getMediaId(),
+              title,
+              item.getDueDate()));
     }
+    return message.toString();
   }
 
   // Helper methods
@@ -153,21 +121,11 @@ public class NotificationService {
     }
   }
 
-  private Map<Integer, Media> getMediaMapFromLoans(List<Loan> loans) {
-    Set<Integer> mediaIds =
-        loans.stream()
-            .flatMap(loan -> loan.getItems().stream())
-            .map(Loan.LoanItem::getMediaId)
-            .collect(Collectors.toSet());
-
-    List<Media> mediaList = mediaRepository.findAllByMediaIdIn(mediaIds);
-
-    return mediaList.stream().collect(Collectors.toMap(Media::getMediaId, Function.identity()));
-  }
-
   public void notifyPatronStatusChange(int patronId, PatronStatus status) {
     String message = "Your account status has been changed to " + status.name() + ".\n";
-    notificationSender.sendNotification(patronId, message);
-    log.info("Notification of status change sent to patron ID: {}", patronId);
+    String idempotencyKey =
+        "status-change:" + patronId + ":" + status.name() + ":" + LocalDate.now(clock);
+    notificationSender.enqueueNotification(patronId, idempotencyKey, message);
+    log.info("Notification of status change queued for patron ID: {}", patronId);
   }
 }
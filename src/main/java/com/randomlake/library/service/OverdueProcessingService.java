@@ -2,14 +2,23 @@ package com.randomlake.library.service;
 
 import static java.time.temporal.ChronoUnit.DAYS;
 
-import com.randomlake.library.enums.ExceptionType;
 import com.randomlake.library.enums.FineType;
 import com.randomlake.library.enums.ItemStatus;
-import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.model.Fine;
+import com.randomlake.library.model.JobCheckpoint;
 import com.randomlake.library.model.Loan;
+import com.randomlake.library.repository.JobCheckpointRepository;
 import com.randomlake.library.repository.LoanRepository;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -19,9 +28,12 @@ import org.springframework.stereotype.Service;
 @Service
 public class OverdueProcessingService {
 
+  static final String JOB_NAME = "overdue-processing";
+
   private final LoanRepository loanRepository;
   private final PatronService patronService;
   private final FineService fineService;
+  private final JobCheckpointRepository checkpointRepository;
 
   private static final Logger log = LoggerFactory.getLogger(OverdueProcessingService.class);
 
@@ -31,11 +43,19 @@ public class OverdueProcessingService {
   @Value("${overdue.threshold.days}")
   private int overdueThresholdDays;
 
+  // Number of loans read from the cursor and processed between checkpoints
+  @Value("${overdue.page.size:500}")
+  private int pageSize;
+
   public OverdueProcessingService(
-      LoanRepository loanRepository, PatronService patronService, FineService fineService) {
+      LoanRepository loanRepository,
+      PatronService patronService,
+      FineService fineService,
+      JobCheckpointRepository checkpointRepository) {
     this.loanRepository = loanRepository;
     this.patronService = patronService;
     this.fineService = fineService;
+    this.checkpointRepository = checkpointRepository;
   }
 
   @Scheduled(cron = "${overdue.cron}")
@@ -43,45 +63,113 @@ public class OverdueProcessingService {
     suspendOverduePatrons();
   }
 
+  /* Streams loans with items overdue past the threshold in pages of loanId order. Each page
+   * preloads the OVERDUE_ITEM fines of its patrons in one query, inserts the missing fines in
+   * one batch and records the last loanId in a checkpoint, so a run that dies part way through
+   * picks up after the last completed page when it is started again on the same day.
+   */
   protected void suspendOverduePatrons() {
-    LocalDate overdueThreshold = LocalDate.now().minusDays(overdueThresholdDays);
+    LocalDate today = LocalDate.now();
+    LocalDate overdueThreshold = today.minusDays(overdueThresholdDays);
+    JobCheckpoint checkpoint = loadCheckpoint(today);
+
+    if (checkpoint.isCompleted()) {
+      log.info("Overdue processing already completed for {}", today);
+      return;
+    }
+    if (checkpoint.getLastProcessedId() > 0) {
+      log.info("Resuming overdue processing after loanId {}", checkpoint.getLastProcessedId());
+    }
+
+    Set<Integer> checkedPatrons = new HashSet<>();
+    int loansProcessed = 0;
+    int patronsSuspended = 0;
+
+    try (Stream<Loan> loans =
+        loanRepository.streamLoansWithOverdueItems(
+            overdueThreshold, checkpoint.getLastProcessedId(), pageSize)) {
+      Iterator<Loan> cursor = loans.iterator();
+      List<Loan> page = new ArrayList<>(pageSize);
+
+      while (cursor.hasNext()) {
+        page.add(cursor.next());
+        if (page.size() == pageSize || !cursor.hasNext()) {
+          patronsSuspended += processPage(page, overdueThreshold, checkedPatrons);
+          loansProcessed += page.size();
+          saveCheckpoint(checkpoint, page.get(page.size() - 1).getLoanId(), false);
+          page.clear();
+        }
+      }
+    }
 
-    // Find loans that have items overdue by 30 days or more
-    List<Loan> overdueLoans = loanRepository.findLoansWithOverdueItems(overdueThreshold);
+    saveCheckpoint(checkpoint, checkpoint.getLastProcessedId(), true);
+    log.info(
+        "Overdue processing finished: {} loans processed, {} patrons suspended",
+        loansProcessed,
+        patronsSuspended);
+  }
+
+  // Returns the number of patrons suspended while processing the page
+  private int processPage(
+      List<Loan> page, LocalDate overdueThreshold, Set<Integer> checkedPatrons) {
+    Set<Integer> patronIds = page.stream().map(Loan::getPatronId).collect(Collectors.toSet());
+    Map<Integer, Set<Integer>> finedMediaIds =
+        fineService.getFinedMediaIdsByPatron(FineType.OVERDUE_ITEM, patronIds);
 
-    for (Loan loan : overdueLoans) {
+    List<Fine> newFines = new ArrayList<>();
+    int patronsSuspended = 0;
+    for (Loan loan : page) {
       int patronId = loan.getPatronId();
 
-      // Suspend patron if not already suspended
-      if (!patronService.isPatronSuspended(patronId)) {
+      // Suspend patron if not already suspended; each patron is checked once per run
+      if (checkedPatrons.add(patronId) && !patronService.isPatronSuspended(patronId)) {
         patronService.suspendPatron(patronId);
+        patronsSuspended++;
         log.info("Patron {} suspended due to overdue items", patronId);
       }
 
-      // Assess fines for overdue items
+      // Assess fines for overdue items not fined yet
+      Set<Integer> alreadyFined = finedMediaIds.computeIfAbsent(patronId, id -> new HashSet<>());
       for (Loan.LoanItem item : loan.getItems()) {
         if (item.getStatus() == ItemStatus.CHECKED_OUT
             && item.getDueDate().isBefore(overdueThreshold)
-            && !fineService.hasFineBeenAssessed(
-                patronId, item.getMediaId(), FineType.OVERDUE_ITEM)) {
-
-          int fineAmount = calculateFineAmount(item);
-
-          try {
-            fineService.assessFine(patronId, item.getMediaId(), FineType.OVERDUE_ITEM, fineAmount);
-          } catch (GeneralException ex) {
-            if (ex.getType() == ExceptionType.FINE_ALREADY_EXISTS) {
-              // Fine already exists; log and continue
-              log.info(
-                  "Fine already exists for patronId: {}, mediaId: {}", patronId, item.getMediaId());
-            } else {
-              // Handle other exceptions or rethrow
-              throw ex;
-            }
-          }
+            && alreadyFined.add(item.getMediaId())) {
+          newFines.add(buildOverdueFine(patronId, item));
         }
       }
     }
+
+    fineService.createFines(newFines);
+    log.debug("Processed {} overdue loans, assessed {} fines", page.size(), newFines.size());
+    return patronsSuspended;
+  }
+
+  private Fine buildOverdueFine(int patronId, Loan.LoanItem item) {
+    Fine fine = new Fine();
+    fine.setPatronId(patronId);
+    fine.setMediaId(item.getMediaId());
+    fine.setFineType(FineType.OVERDUE_ITEM);
+    fine.setAmount(calculateFineAmount(item));
+    return fine;
+  }
+
+  // Reuse today's checkpoint if there is one; any earlier run starts over from the beginning
+  private JobCheckpoint loadCheckpoint(LocalDate today) {
+    return checkpointRepository
+        .findById(JOB_NAME)
+        .filter(checkpoint -> today.equals(checkpoint.getRunDate()))
+        .orElseGet(
+            () -> {
+              LocalDateTime now = LocalDateTime.now();
+              return new JobCheckpoint(JOB_NAME, today, 0, false, now, now);
+            });
+  }
+
+  private void saveCheckpoint(JobCheckpoint checkpoint, int lastProcessedId, boolean completed) {
+    checkpoint.setLastProcessedId(lastProcessedId);
+    checkpoint.setCompleted(completed);
+    checkpoint.setLastUpdateDate(LocalDateTime.now());
+    checkpointRepository.save(checkpoint);
   }
 
   protected int calculateFineAmount(Loan.LoanItem item) {
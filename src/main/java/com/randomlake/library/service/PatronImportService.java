@@ -0,0 +1,509 @@
+package com.randomlake.library.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.mongodb.bulk.BulkWriteError;
+import com.randomlake.library.dto.PatronRequest;
+import com.randomlake.library.enums.ExceptionType;
+import com.randomlake.library.enums.ImportFormat;
+import com.randomlake.library.enums.ImportJobStatus;
+import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.mapper.PatronMapper;
+import com.randomlake.library.model.Patron;
+import com.randomlake.library.model.PatronImportJob;
+import com.randomlake.library.repository.PatronImportJobRepository;
+import com.randomlake.library.repository.PatronRepository;
+import com.randomlake.library.util.CsvReader;
+import com.randomlake.library.util.SequenceGenerator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/*
+ * Imports patrons from a CSV or JSON upload in the background, one import at a time. The name and
+ * date of birth of every existing patron are read up front in one projected query into a hash
+ * set, so duplicates, whether of a stored patron or of an earlier row, are caught in memory
+ * instead of with a lookup per row. The upload is read in chunks of chunkSize rows: the new
+ * patrons of a chunk take their IDs from one counter update and are written with one unordered
+ * bulk insert, and the job is then checkpointed. A resumed import skips the rows already
+ * checkpointed; rows of a chunk written just before a failure are found in the reloaded key set
+ * and counted as duplicates rather than added twice.
+ */
+@Service
+public class PatronImportService {
+
+  private static final Set<ImportJobStatus> ACTIVE =
+      EnumSet.of(ImportJobStatus.QUEUED, ImportJobStatus.RUNNING);
+
+  // Patron keys read from the server per batch when the key set is loaded
+  private static final int KEY_BATCH_SIZE = 5000;
+
+  private final PatronImportJobRepository importJobRepository;
+  private final PatronRepository patronRepository;
+  private final PatronImportUploadStore uploadStore;
+  private final MongoTemplate mongoTemplate;
+  private final SequenceGenerator sequenceGenerator;
+  private final AutocompleteService autocompleteService;
+  private final ObjectMapper objectMapper;
+  private final ObjectReader jsonRowReader;
+  private final Clock clock;
+
+  private static final Logger log = LoggerFactory.getLogger(PatronImportService.class);
+
+  // Rows of the upload per chunk: one bulk insert, one range of patron IDs and one checkpoint
+  @Value("${patron.import.chunk.size:1000}")
+  private int chunkSize;
+
+  @Value("${patron.import.queue.capacity:5}")
+  private int queueCapacity;
+
+  @Value("${patron.import.errors.max:100}")
+  private int maxErrors;
+
+  // An import not checkpointed for this long is assumed lost with a stopped node and may be resumed
+  @Value("${patron.import.stale.minutes:10}")
+  private long staleMinutes;
+
+  @Value("${patron.import.retention.hours:168}")
+  private long retentionHours;
+
+  private ThreadPoolExecutor executor;
+
+  public PatronImportService(
+      PatronImportJobRepository importJobRepository,
+      PatronRepository patronRepository,
+      PatronImportUploadStore uploadStore,
+      MongoTemplate mongoTemplate,
+      SequenceGenerator sequenceGenerator,
+      AutocompleteService autocompleteService,
+      ObjectMapper objectMapper,
+      Clock clock) {
+    this.importJobRepository = importJobRepository;
+    this.patronRepository = patronRepository;
+    this.uploadStore = uploadStore;
+    this.mongoTemplate = mongoTemplate;
+    this.sequenceGenerator = sequenceGenerator;
+    this.autocompleteService = autocompleteService;
+    this.objectMapper = objectMapper;
+    this.jsonRowReader = objectMapper.readerFor(PatronRequest.class);
+    this.clock = clock;
+  }
+
+  @PostConstruct
+  public void start() {
+    executor =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+              Thread thread = new Thread(runnable, "patron-import");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  @PreDestroy
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Stores the upload and queues its import.
+   *
+   * @param format How the upload is encoded.
+   * @param upload CSV with a header row naming PatronRequest properties, or PatronRequest objects
+   *     as a JSON array or one per line.
+   * @param username The user submitting the import.
+   * @throws GeneralException 503 if the import queue is full.
+   */
+  public PatronImportJob submit(ImportFormat format, InputStream upload, String username) {
+    String jobId = UUID.randomUUID().toString();
+    LocalDateTime now = LocalDateTime.now(clock);
+
+    PatronImportJob job = new PatronImportJob();
+    job.setJobId(jobId);
+    job.setFormat(format);
+    job.setUploadFileId(
+        uploadStore.store("patron-import-" + jobId + "." + format.name().toLowerCase(), upload));
+    job.setRequestedBy(username);
+    job.setStatus(ImportJobStatus.QUEUED);
+    job.setCreatedDate(now);
+    job.setLastUpdateDate(now);
+    PatronImportJob saved = importJobRepository.save(job);
+
+    enqueue(saved);
+    log.info("Queued patron import {} for {}", jobId, username);
+    return saved;
+  }
+
+  public PatronImportJob getJob(String jobId) {
+    return importJobRepository
+        .findByJobId(jobId)
+        .orElseThrow(
+            () ->
+                new GeneralException(
+                    ExceptionType.IMPORT_JOB_NOT_FOUND,
+                    "Patron import not found: " + jobId,
+                    HttpStatus.NOT_FOUND));
+  }
+
+  /**
+   * Queues a failed or lost import again; it carries on after the last row checkpointed.
+   *
+   * @throws GeneralException 409 if the import has completed or is still in progress.
+   */
+  public PatronImportJob resume(String jobId) {
+    PatronImportJob job = getJob(jobId);
+    LocalDateTime now = LocalDateTime.now(clock);
+    if (job.getStatus() == ImportJobStatus.COMPLETED) {
+      throw new GeneralException(
+          ExceptionType.INVALID_OPERATION,
+          "Patron import " + jobId + " has already completed",
+          HttpStatus.CONFLICT);
+    }
+    if (ACTIVE.contains(job.getStatus())
+        && job.getLastUpdateDate().isAfter(now.minusMinutes(staleMinutes))) {
+      throw new GeneralException(
+          ExceptionType.INVALID_OPERATION,
+          "Patron import " + jobId + " is still " + job.getStatus(),
+          HttpStatus.CONFLICT);
+    }
+
+    job.setStatus(ImportJobStatus.QUEUED);
+    job.setErrorMessage(null);
+    job.setCompletedDate(null);
+    job.setLastUpdateDate(now);
+    // Versioned: of two concurrent resumes only one is saved, the other gets a 409
+    PatronImportJob saved = importJobRepository.save(job);
+
+    enqueue(saved);
+    log.info("Resuming patron import {} after row {}", jobId, saved.getRowsProcessed());
+    return saved;
+  }
+
+  void run(PatronImportJob job) {
+    try {
+      LocalDateTime now = LocalDateTime.now(clock);
+      job.setStatus(ImportJobStatus.RUNNING);
+      if (job.getStartedDate() == null) {
+        job.setStartedDate(now);
+      }
+      job.setLastUpdateDate(now);
+      job = importJobRepository.save(job);
+
+      job = importRows(job);
+
+      uploadStore.delete(job.getUploadFileId());
+      job.setUploadFileId(null);
+      job.setStatus(ImportJobStatus.COMPLETED);
+      job.setCompletedDate(LocalDateTime.now(clock));
+      importJobRepository.save(job);
+      log.info(
+          "Patron import {} completed: {} rows, {} created, {} duplicates, {} failed",
+          job.getJobId(),
+          job.getRowsProcessed(),
+          job.getCreated(),
+          job.getDuplicates(),
+          job.getFailed());
+    } catch (OptimisticLockingFailureException e) {
+      log.warn("Patron import {} was resumed elsewhere; stopping this run", job.getJobId());
+    } catch (Exception e) {
+      log.error("Patron import {} failed", job.getJobId(), e);
+      // Reloaded so that the saved counts stay those of the last checkpoint
+      importJobRepository.findByJobId(job.getJobId()).ifPresent(saved -> fail(saved, e));
+    }
+  }
+
+  private PatronImportJob importRows(PatronImportJob job) throws IOException {
+    Set<String> keys = loadPatronKeys();
+    int resumeAfter = job.getRowsProcessed();
+    List<Patron> chunk = new ArrayList<>(chunkSize);
+    List<Integer> chunkRows = new ArrayList<>(chunkSize);
+    int lastRow = resumeAfter;
+
+    try (InputStream upload = uploadStore.open(job.getUploadFileId());
+        PatronRows rows = openRows(job.getFormat(), upload)) {
+      PatronRow row;
+      while ((row = rows.next()) != null) {
+        if (row.number() <= resumeAfter) {
+          continue;
+        }
+        lastRow = row.number();
+        PatronRequest request = row.request();
+        if (row.error() != null) {
+          rowFailed(job, row.number(), row.error());
+        } else if (request == null
+            || request.getPatronName() == null
+            || request.getPatronName().isBlank()) {
+          rowFailed(job, row.number(), "Patron name cannot be empty");
+        } else if (!keys.add(keyOf(request.getPatronName(), request.getDateOfBirth()))) {
+          job.setDuplicates(job.getDuplicates() + 1);
+        } else {
+          chunk.add(PatronMapper.toEntity(request));
+          chunkRows.add(row.number());
+        }
+
+        if (lastRow - job.getRowsProcessed() >= chunkSize) {
+          insertChunk(job, chunk, chunkRows, keys);
+          job = checkpoint(job, lastRow);
+        }
+      }
+    }
+    insertChunk(job, chunk, chunkRows, keys);
+    return checkpoint(job, lastRow);
+  }
+
+  // The chunk is emptied for reuse
+  private void insertChunk(
+      PatronImportJob job, List<Patron> chunk, List<Integer> chunkRows, Set<String> keys) {
+    int count = chunk.size();
+    if (count == 0) {
+      return;
+    }
+    int firstPatronId =
+        sequenceGenerator.reserveSequenceRange(SequenceGenerator.PATRON_SEQUENCE, count);
+    LocalDateTime now = LocalDateTime.now(clock).truncatedTo(ChronoUnit.MILLIS);
+    for (int i = 0; i < count; i++) {
+      Patron patron = chunk.get(i);
+      PatronService.initializeNewPatron(patron, firstPatronId + i, now);
+      // Bulk inserts skip the version initialisation a save does
+      patron.setVersion(0L);
+    }
+
+    Map<Integer, String> errors = new HashMap<>();
+    try {
+      mongoTemplate.bulkOps(BulkMode.UNORDERED, Patron.class).insert(chunk).execute();
+    } catch (BulkOperationException e) {
+      for (BulkWriteError error : e.getErrors()) {
+        errors.put(error.getIndex(), error.getMessage());
+      }
+    }
+
+    for (int i = 0; i < count; i++) {
+      Patron patron = chunk.get(i);
+      String error = errors.get(i);
+      if (error != null) {
+        rowFailed(job, chunkRows.get(i), error);
+        keys.remove(keyOf(patron.getPatronName(), patron.getDateOfBirth()));
+        continue;
+      }
+      autocompleteService.indexPatron(patron);
+      job.setCreated(job.getCreated() + 1);
+    }
+    log.debug("Inserted {} of {} patrons from IDs {}", count - errors.size(), count, firstPatronId);
+    chunk.clear();
+    chunkRows.clear();
+  }
+
+  private PatronImportJob checkpoint(PatronImportJob job, int lastRow) {
+    job.setRowsProcessed(lastRow);
+    job.setLastUpdateDate(LocalDateTime.now(clock));
+    return importJobRepository.save(job);
+  }
+
+  private void rowFailed(PatronImportJob job, int row, String error) {
+    job.setFailed(job.getFailed() + 1);
+    if (job.getErrors().size() < maxErrors) {
+      job.getErrors().add(new PatronImportJob.RowError(row, error));
+    }
+  }
+
+  private Set<String> loadPatronKeys() {
+    Set<String> keys = new HashSet<>();
+    try (Stream<Patron> patrons = patronRepository.streamNameAndDateOfBirth(KEY_BATCH_SIZE)) {
+      patrons.forEach(patron -> keys.add(keyOf(patron.getPatronName(), patron.getDateOfBirth())));
+    }
+    log.debug("Loaded {} patron keys for duplicate detection", keys.size());
+    return keys;
+  }
+
+  // The same name and date of birth that addNewPatron refuses to add twice
+  static String keyOf(String patronName, LocalDate dateOfBirth) {
+    return patronName + '\u0000' + dateOfBirth;
+  }
+
+  // Drops old imports that are no longer running, with any upload still kept for them
+  @Scheduled(fixedDelayString = "${patron.import.cleanup.interval.ms:3600000}")
+  public void purgeExpiredJobs() {
+    LocalDateTime now = LocalDateTime.now(clock);
+    List<PatronImportJob> expired =
+        importJobRepository.findByCreatedDateBefore(now.minusHours(retentionHours)).stream()
+            .filter(
+                job ->
+                    !ACTIVE.contains(job.getStatus())
+                        || job.getLastUpdateDate().isBefore(now.minusMinutes(staleMinutes)))
+            .toList();
+    for (PatronImportJob job : expired) {
+      if (job.getUploadFileId() != null) {
+        uploadStore.delete(job.getUploadFileId());
+      }
+    }
+    importJobRepository.deleteAll(expired);
+    if (!expired.isEmpty()) {
+      log.info("Purged {} expired patron imports", expired.size());
+    }
+  }
+
+  private void enqueue(PatronImportJob job) {
+    try {
+      executor.execute(() -> run(job));
+    } catch (RejectedExecutionException e) {
+      job.setStatus(ImportJobStatus.FAILED);
+      job.setErrorMessage("Import queue is full");
+      job.setLastUpdateDate(LocalDateTime.now(clock));
+      importJobRepository.save(job);
+      throw new GeneralException(
+          ExceptionType.IMPORT_JOB_REJECTED,
+          "Import queue is full; resume the import later",
+          HttpStatus.SERVICE_UNAVAILABLE);
+    }
+  }
+
+  private void fail(PatronImportJob job, Exception e) {
+    job.setStatus(ImportJobStatus.FAILED);
+    job.setErrorMessage(e.getMessage());
+    job.setCompletedDate(LocalDateTime.now(clock));
+    job.setLastUpdateDate(job.getCompletedDate());
+    importJobRepository.save(job);
+  }
+
+  private PatronRows openRows(ImportFormat format, InputStream upload) throws IOException {
+    return format == ImportFormat.CSV ? csvRows(upload) : jsonRows(upload);
+  }
+
+  // A row that doesn't map is reported and skipped; broken JSON leaves nothing to resume from
+  private PatronRows jsonRows(InputStream upload) throws IOException {
+    MappingIterator<PatronRequest> values = jsonRowReader.readValues(upload);
+    return new PatronRows() {
+      private int number;
+      private boolean broken;
+
+      @Override
+      public PatronRow next() throws IOException {
+        if (broken) {
+          return null;
+        }
+        PatronRequest request;
+        try {
+          if (!values.hasNextValue()) {
+            return null;
+          }
+          request = values.nextValue();
+        } catch (JsonProcessingException e) {
+          broken = e instanceof JsonParseException;
+          return new PatronRow(++number, null, "Unreadable row: " + e.getOriginalMessage());
+        }
+        return new PatronRow(++number, request, null);
+      }
+
+      @Override
+      public void close() throws IOException {
+        values.close();
+      }
+    };
+  }
+
+  // The header names the PatronRequest property of each column; empty fields are left unset
+  private PatronRows csvRows(InputStream upload) throws IOException {
+    CsvReader csv =
+        new CsvReader(
+            new BufferedReader(new InputStreamReader(upload, StandardCharsets.UTF_8), 64 * 1024));
+    List<String> header = csv.readRecord();
+    if (header == null || !header.stream().map(String::trim).toList().contains("patronName")) {
+      csv.close();
+      throw new GeneralException(
+          ExceptionType.INVALID_INPUT,
+          "The CSV header has no patronName column",
+          HttpStatus.BAD_REQUEST);
+    }
+    List<String> columns = header.stream().map(String::trim).toList();
+    return new PatronRows() {
+      private int number;
+
+      @Override
+      public PatronRow next() throws IOException {
+        List<String> record;
+        do {
+          record = csv.readRecord();
+          if (record == null) {
+            return null;
+          }
+        } while (record.size() == 1 && record.get(0).isBlank());
+        number++;
+
+        if (record.size() != columns.size()) {
+          return new PatronRow(
+              number, null, "Expected " + columns.size() + " fields, found " + record.size());
+        }
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+          if (!record.get(i).isEmpty()) {
+            values.put(columns.get(i), record.get(i));
+          }
+        }
+        try {
+          return new PatronRow(
+              number, objectMapper.convertValue(values, PatronRequest.class), null);
+        } catch (IllegalArgumentException e) {
+          String reason =
+              e.getCause() instanceof JsonProcessingException cause
+                  ? cause.getOriginalMessage()
+                  : e.getMessage();
+          return new PatronRow(number, null, "Unreadable row: " + reason);
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        csv.close();
+      }
+    };
+  }
+
+  // One row of the upload: the request it maps to, or why it could not be read
+  record PatronRow(int number, PatronRequest request, String error) {}
+
+  private interface PatronRows extends Closeable {
+
+    // Null at the end of the upload
+    PatronRow next() throws IOException;
+  }
+}
@@ -0,0 +1,43 @@
+package com.randomlake.library.service;
+
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import java.io.InputStream;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+// Keeps patron import uploads in the patron_import_uploads GridFS bucket until the import is done
+@Component
+public class PatronImportUploadStore {
+
+  static final String BUCKET = "patron_import_uploads";
+
+  private final MongoTemplate mongoTemplate;
+
+  private volatile GridFSBucket bucket;
+
+  public PatronImportUploadStore(MongoTemplate mongoTemplate) {
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  // Copies the upload into a new file as it is read
+  public ObjectId store(String filename, InputStream upload) {
+    return bucket().uploadFromStream(filename, upload);
+  }
+
+  public InputStream open(ObjectId fileId) {
+    return bucket().openDownloadStream(fileId);
+  }
+
+  public void delete(ObjectId fileId) {
+    bucket().delete(fileId);
+  }
+
+  private GridFSBucket bucket() {
+    if (bucket == null) {
+      bucket = GridFSBuckets.create(mongoTemplate.getDb(), BUCKET);
+    }
+    return bucket;
+  }
+}
@@ -1,12 +1,19 @@
 package com.randomlake.library.service;
 
+import com.mongodb.client.result.UpdateResult;
+import com.randomlake.library.cache.PatronLookupCache;
+import com.randomlake.library.dto.PageResponse;
 import com.randomlake.library.enums.ExceptionType;
 import com.randomlake.library.enums.LoanStatus;
 import com.randomlake.library.enums.PatronStatus;
 import com.randomlake.library.exception.GeneralException;
 import com.randomlake.library.model.Patron;
+import com.randomlake.library.model.Tombstone;
 import com.randomlake.library.repository.LoanRepository;
 import com.randomlake.library.repository.PatronRepository;
+import com.randomlake.library.repository.TombstoneRepository;
+import com.randomlake.library.util.KeysetPaginator;
+import com.randomlake.library.util.Precondition;
 import com.randomlake.library.util.SequenceGenerator;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -14,8 +21,13 @@ import java.time.Period;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -28,6 +40,10 @@ public class PatronService {
   private final SequenceGenerator sequenceGenerator;
   private final NotificationService notificationService;
   private final LoanRepository loanRepository;
+  private final PatronLookupCache patronLookupCache;
+  private final KeysetPaginator keysetPaginator;
+  private final TombstoneRepository tombstoneRepository;
+  private final AutocompleteService autocompleteService;
   private static final Logger log = LoggerFactory.getLogger(PatronService.class);
 
   public PatronService(
@@ -35,12 +51,20 @@ public class PatronService {
       PatronUpdateService patronUpdateService,
       SequenceGenerator sequenceGenerator,
       NotificationService notificationService,
-      LoanRepository loanRepository) {
+      LoanRepository loanRepository,
+      PatronLookupCache patronLookupCache,
+      KeysetPaginator keysetPaginator,
+      TombstoneRepository tombstoneRepository,
+      AutocompleteService autocompleteService) {
     this.patronRepository = patronRepository;
     this.patronUpdateService = patronUpdateService;
     this.sequenceGenerator = sequenceGenerator;
     this.notificationService = notificationService;
     this.loanRepository = loanRepository;
+    this.patronLookupCache = patronLookupCache;
+    this.keysetPaginator = keysetPaginator;
+    this.tombstoneRepository = tombstoneRepository;
+    this.autocompleteService = autocompleteService;
   }
 
   public List<Patron> getAllPatrons() {
@@ -53,9 +77,28 @@ public class PatronService {
     return patrons;
   }
 
+  // One page in patronId order, starting after the cursor; no cursor starts at the beginning
+  public PageResponse<Patron> getPatronPage(String cursor, Integer size) {
+    int pageSize = keysetPaginator.resolvePageSize(size);
+    int afterPatronId = keysetPaginator.decodeCursor(cursor, "patrons");
+    List<Patron> rows =
+        patronRepository.findByPatronIdGreaterThanOrderByPatronIdAsc(
+            afterPatronId, Limit.of(pageSize + 1));
+    return keysetPaginator.toPage(rows, pageSize, Patron::getPatronId, "patrons");
+  }
+
+  // Backed by an open cursor; the caller must close the stream
+  public Stream<Patron> streamAllPatrons() {
+    return patronRepository.streamAllByOrderByPatronIdAsc();
+  }
+
+  // Modification time alone, for conditional requests; empty if the patron does not exist
+  public Optional<LocalDateTime> getPatronLastUpdateDate(int patronId) {
+    return patronRepository.findLastUpdateDate(patronId);
+  }
+
   public Patron getPatronById(int patronId) {
-    return patronRepository
-        .findByPatronId(patronId)
+    return findPatron(patronId)
         .orElseThrow(
             () -> {
               String message = "Patron not found with ID: " + patronId;
@@ -89,31 +132,99 @@ public class PatronService {
         "No patrons with email address provided found: " + emailAddress);
   }
 
-  /* This is the entry point for updating a patron record. It retrieves the record from the repository, applies the updates
-   * using the PatronUpdateService. It sets the lastUpdate date, saves it back to the database and returns the updated record
+  /* This is the entry point for updating a patron record. A PATCH (updates) is applied with one
+   * findAndModify that sets only the given fields; a full update (fullUpdate) retrieves the record,
+   * applies it using the PatronUpdateService and saves it back. With If-Match the precondition
+   * goes into the findAndModify filter, or is checked against the record read for the full update
+   * whose versioned save fails if it changed since; either way a mismatch is answered with 412.
    */
   @Transactional
-  public Patron updatePatron(int patronId, Map<String, Object> updates, Patron fullUpdate) {
-    return patronRepository
-        .findByPatronId(patronId)
-        .map(
-            patron -> {
-              if (updates != null) {
-                patronUpdateService.applyPartialUpdates(patron, updates);
-              } else if (fullUpdate != null) {
-                patronUpdateService.applyFullUpdate(patron, fullUpdate);
-              }
-              patron.setLastUpdateDate(LocalDateTime.now());
-              return patronRepository.save(patron);
-            })
-        .orElseThrow(
+  public Patron updatePatron(
+      int patronId, Map<String, Object> updates, Patron fullUpdate, Precondition precondition) {
+    if (updates != null) {
+      return patchPatron(patronId, updates, precondition);
+    }
+    // The cached copy may predate the ETag, so a conditional update reads the stored record
+    Patron patron =
+        (precondition.isRequired()
+                ? patronRepository.findByPatronId(patronId)
+                : findPatron(patronId))
+            .orElseThrow(() -> patronNotFound(patronId));
+    if (!precondition.matches(patron.getLastUpdateDate())) {
+      throw precondition.failed(patron.getLastUpdateDate());
+    }
+    if (fullUpdate != null) {
+      patronUpdateService.applyFullUpdate(patron, fullUpdate);
+    }
+    patron.setLastUpdateDate(LocalDateTime.now());
+    try {
+      return savePatron(patron);
+    } catch (OptimisticLockingFailureException e) {
+      if (!precondition.isRequired()) {
+        throw e;
+      }
+      throw precondition.failed(patronRepository.findLastUpdateDate(patronId).orElse(null));
+    }
+  }
+
+  private Patron patchPatron(int patronId, Map<String, Object> updates, Precondition precondition) {
+    if (updates.isEmpty()) {
+      throw new GeneralException(
+          ExceptionType.INVALID_OPERATION, "No updates provided", HttpStatus.BAD_REQUEST);
+    }
+    Update update = patronUpdateService.toPartialUpdate(updates);
+    Optional<Patron> patched;
+    try {
+      patched = patronRepository.patch(patronId, update, precondition);
+    } finally {
+      patronLookupCache.invalidate(patronId);
+    }
+    Patron patron =
+        patched.orElseThrow(
             () -> {
-              log.error("Patron with ID provided not found: {}", patronId);
-              return new GeneralException(
-                  ExceptionType.PATRON_NOT_FOUND,
-                  "Patron with ID provided not found: " + patronId,
-                  HttpStatus.NOT_FOUND);
+              // Only a failed conditional patch pays for the read that tells missing from changed
+              if (precondition.isRequired()) {
+                Optional<Patron> current = patronRepository.findByPatronId(patronId);
+                if (current.isPresent()) {
+                  return precondition.failed(current.get().getLastUpdateDate());
+                }
+              }
+              return patronNotFound(patronId);
             });
+    autocompleteService.indexPatron(patron);
+    return patron;
+  }
+
+  /* Applies the same PATCH to every patron matching the filter in one updateMulti. The lookup
+   * cache is cleared since the changed patrons are not read back; autocomplete picks the changes
+   * up from the delta-sync feed.
+   */
+  public UpdateResult updatePatronsMatching(
+      Map<String, Object> filter, Map<String, Object> updates) {
+    if (updates == null || updates.isEmpty()) {
+      throw new GeneralException(
+          ExceptionType.INVALID_OPERATION, "No updates provided", HttpStatus.BAD_REQUEST);
+    }
+    Criteria criteria = patronUpdateService.toPatchFilter(filter);
+    Update update = patronUpdateService.toBulkUpdate(updates);
+    try {
+      UpdateResult result = patronRepository.patchMatching(criteria, update);
+      log.info(
+          "Bulk patch matched {} patrons, modified {}",
+          result.getMatchedCount(),
+          result.getModifiedCount());
+      return result;
+    } finally {
+      patronLookupCache.invalidateAll();
+    }
+  }
+
+  private GeneralException patronNotFound(int patronId) {
+    log.error("Patron with ID provided not found: {}", patronId);
+    return new GeneralException(
+        ExceptionType.PATRON_NOT_FOUND,
+        "Patron with ID provided not found: " + patronId,
+        HttpStatus.NOT_FOUND);
   }
 
   @Transactional
@@ -128,6 +239,9 @@ public class PatronService {
     }
 
     patronRepository.delete(patron);
+    tombstoneRepository.save(new Tombstone(Tombstone.PATRONS, patronId, LocalDateTime.now()));
+    patronLookupCache.invalidate(patronId);
+    autocompleteService.removePatron(patronId);
     log.info("Deleted patron with ID {}", patronId);
   }
 
@@ -135,27 +249,38 @@ public class PatronService {
     return loanRepository.existsByPatronIdAndStatus(patronId, LoanStatus.ACTIVE);
   }
 
+  /* Suspends with a conditional status write rather than a read and a full save, so a patron
+   * edit or checkout racing with the overdue job can neither undo the suspension nor be lost.
+   */
   @Transactional
   public void suspendPatron(int patronId) {
-    Optional<Patron> patron = patronRepository.findByPatronId(patronId);
-    if (patron.isPresent()) {
-      if (patron.get().getStatus() == PatronStatus.SUSPENDED) {
+    long matched;
+    try {
+      matched =
+          patronRepository.transitionStatus(
+              patronId,
+              List.of(PatronStatus.ACTIVE, PatronStatus.INACTIVE),
+              PatronStatus.SUSPENDED,
+              LocalDateTime.now());
+    } finally {
+      patronLookupCache.invalidate(patronId);
+    }
+
+    if (matched == 0) {
+      if (findPatron(patronId).isPresent()) {
         log.error("Patron with ID provided is already suspended: {}", patronId);
         throw new GeneralException(
             ExceptionType.INVALID_OPERATION,
             "Patron with ID provided is already suspended: " + patronId,
             HttpStatus.FORBIDDEN);
       }
-      patron.get().setStatus(PatronStatus.SUSPENDED);
-      patronRepository.save(patron.get());
-      notificationService.notifyPatronStatusChange(patronId, PatronStatus.SUSPENDED);
-    } else {
       log.warn("Patron with ID provided not found: {}", patronId);
       throw new GeneralException(
           ExceptionType.PATRON_NOT_FOUND,
           "Patron with ID provided not found: " + patronId,
           HttpStatus.NOT_FOUND);
     }
+    notificationService.notifyPatronStatusChange(patronId, PatronStatus.SUSPENDED);
   }
 
   @Transactional
@@ -181,21 +306,25 @@ public class PatronService {
 
     // Get the next sequence value for the patron ID
     int nextPatronNumber = sequenceGenerator.getNextSequenceValueForPatron();
-    patron.setPatronId(nextPatronNumber);
-
-    // Set both the created_date and last_update_date to the current timestamp
-    LocalDateTime now = LocalDateTime.now();
-    patron.setCreated_date(now);
-    patron.setLastUpdateDate(now);
-    patron.setStatus(PatronStatus.ACTIVE);
+    initializeNewPatron(patron, nextPatronNumber, LocalDateTime.now());
+    patron.setVersion(null);
 
     // Save the patron to the database
     Patron savedPatron = patronRepository.save(patron);
+    autocompleteService.indexPatron(savedPatron);
 
     // Return a ReponseEntity with the status CREATE and the saved patron
     return savedPatron;
   }
 
+  // The ID and defaults every new patron gets, whether added singly or through an import
+  static void initializeNewPatron(Patron patron, int patronId, LocalDateTime now) {
+    patron.setPatronId(patronId);
+    patron.setCreated_date(now);
+    patron.setLastUpdateDate(now);
+    patron.setStatus(PatronStatus.ACTIVE);
+  }
+
   // Helper Methods
 
   // Determine if the patron is a minor
@@ -204,12 +333,29 @@ public class PatronService {
   }
 
   public boolean isPatronSuspended(int patronId) {
-    return patronRepository
-        .findByPatronId(patronId)
+    return findPatron(patronId)
         .map(patron -> patron.getStatus() == PatronStatus.SUSPENDED)
         .orElse(false);
   }
 
+  // Single-patron lookups are served from the lookup cache
+  private Optional<Patron> findPatron(int patronId) {
+    return patronLookupCache.get(patronId, patronRepository::findByPatronId);
+  }
+
+  // Every write to a patron record goes through here so the lookup cache never serves it stale
+  // and name changes reach the autocomplete index straight away
+  private Patron savePatron(Patron patron) {
+    Patron savedPatron;
+    try {
+      savedPatron = patronRepository.save(patron);
+    } finally {
+      patronLookupCache.invalidate(patron.getPatronId());
+    }
+    autocompleteService.indexPatron(savedPatron);
+    return savedPatron;
+  }
+
   // Eliminate repetitive exception handling
   private List<Patron> handleNotFound(List<Patron> patrons, String message) {
     if (patrons.isEmpty()) {
@@ -219,24 +365,48 @@ public class PatronService {
     return patrons;
   }
 
-  // Helper method to update the patron record after a media item is checked out
+  /* Records checked out items with a single $addToSet/$each instead of saving the patron. The
+   * write only applies to a patron who is not suspended, so a suspension that lands after the
+   * checkout was validated still stops it; it also moves an INACTIVE patron to ACTIVE.
+   */
   @Transactional
-  public void updatePatronAfterCheckout(Patron patron, int mediaId) {
-    patron.getCheckedOutItems().add(mediaId);
-    if (patron.getStatus() == PatronStatus.INACTIVE) {
-      patron.setStatus(PatronStatus.ACTIVE);
+  public void updatePatronAfterCheckout(Patron patron, List<Integer> mediaIds) {
+    LocalDateTime now = LocalDateTime.now();
+
+    long matched;
+    try {
+      matched = patronRepository.addCheckedOutItems(patron.getPatronId(), mediaIds, now);
+    } finally {
+      patronLookupCache.invalidate(patron.getPatronId());
     }
-    patron.setLastUpdateDate(LocalDateTime.now());
-    patronRepository.save(patron);
-    log.info("Updated patron {} after checkout of mediaId {}", patron.getPatronId(), mediaId);
+    if (matched == 0) {
+      log.error("Patron {} is suspended or missing, checkout not recorded", patron.getPatronId());
+      throw new GeneralException(
+          ExceptionType.PATRON_INELIGIBLE,
+          "Patron is suspended and not eligible for checkout",
+          HttpStatus.FORBIDDEN);
+    }
+
+    mediaIds.stream()
+        .filter(mediaId -> !patron.getCheckedOutItems().contains(mediaId))
+        .forEach(patron.getCheckedOutItems()::add);
+    patron.setStatus(PatronStatus.ACTIVE);
+    patron.setLastUpdateDate(now);
+    log.info("Updated patron {} after checkout of mediaIds {}", patron.getPatronId(), mediaIds);
   }
 
-  // Helper method to update the patron record after a media item is returned
+  // Removes a batch of returned items with a single $pullAll instead of saving the patron
   @Transactional
-  public void updatePatronAfterReturn(Patron patron, int mediaId) {
-    patron.getCheckedOutItems().remove(Integer.valueOf(mediaId));
-    patron.setLastUpdateDate(LocalDateTime.now());
-    patronRepository.save(patron);
-    log.info("Updated patron {} after return of mediaId {}", patron.getPatronId(), mediaId);
+  public void updatePatronAfterReturn(Patron patron, List<Integer> mediaIds) {
+    LocalDateTime now = LocalDateTime.now();
+    try {
+      patronRepository.removeCheckedOutItems(patron.getPatronId(), mediaIds, now);
+    } finally {
+      patronLookupCache.invalidate(patron.getPatronId());
+    }
+
+    patron.getCheckedOutItems().removeAll(mediaIds);
+    patron.setLastUpdateDate(now);
+    log.info("Updated patron {} after return of mediaIds {}", patron.getPatronId(), mediaIds);
   }
 }
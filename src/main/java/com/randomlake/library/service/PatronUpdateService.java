@@ -1,74 +1,69 @@
 package com.randomlake.library.service;
 
-import com.randomlake.library.enums.ExceptionType;
-import com.randomlake.library.enums.PatronStatus;
-import com.randomlake.library.exception.GeneralException;
 import com.randomlake.library.model.Patron;
-import java.time.LocalDate;
+import com.randomlake.library.util.PatchEngine;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpStatus;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class PatronUpdateService {
 
-  private static final Logger log = LoggerFactory.getLogger(PatronUpdateService.class);
+  // The properties a PATCH may set; IDs, dates kept by the service and the version are not
+  static final List<String> PATCHABLE_PROPERTIES =
+      List.of(
+          "patronName",
+          "dateOfBirth",
+          "streetAddress",
+          "cityName",
+          "stateName",
+          "zipCode",
+          "telephoneHome",
+          "telephoneMobile",
+          "emailAddress",
+          "contactMethod",
+          "status");
 
-  @Transactional
-  public void applyPartialUpdates(Patron patron, Map<String, Object> updates) {
-    updates.forEach(
-        (key, value) -> {
-          switch (key) {
-            case "patronName":
-              patron.setPatronName((String) value);
-              break;
-            case "dateOfBirth":
-              patron.setDateOfBirth((LocalDate) value);
-              break;
-            case "streetAddress":
-              patron.setStreetAddress((String) value);
-              break;
-            case "cityName":
-              patron.setCityName((String) value);
-              break;
-            case "stateName":
-              patron.setStateName((String) value);
-              break;
-            case "zipCode":
-              patron.setZipCode((String) value);
-              break;
-            case "telephoneHome":
-              patron.setTelephoneHome((String) value);
-              break;
-            case "telephoneMobile":
-              patron.setTelephoneMobile((String) value);
-              break;
-            case "emailAddress":
-              patron.setEmailAddress((String) value);
-              break;
-            case "contactMethod":
-              patron.setContactMethod((String) value);
-              break;
-            case "status":
-              try {
-                patron.setStatus(PatronStatus.valueOf((String) value));
-              } catch (IllegalArgumentException e) {
-                throw new GeneralException(
-                    ExceptionType.INVALID_INPUT,
-                    "Invalid patron status: " + value,
-                    HttpStatus.BAD_REQUEST);
-              }
-              break;
-            default:
-              log.error("Attempted to update unknown property '{}' with value '{}'", key, value);
-              throw new IllegalArgumentException("Unknown property: " + key);
-          }
-          patron.setLastUpdateDate(LocalDateTime.now());
-        });
+  /* The properties a bulk PATCH may set. Status only changes through the patron status
+   * transitions and suspension, and a name or date of birth belongs to a single patron.
+   */
+  static final List<String> BULK_PATCHABLE_PROPERTIES =
+      PATCHABLE_PROPERTIES.stream()
+          .filter(
+              property ->
+                  !property.equals("status")
+                      && !property.equals("patronName")
+                      && !property.equals("dateOfBirth"))
+          .toList();
+
+  private final PatchEngine<Patron> patchEngine;
+  private final PatchEngine<Patron> bulkPatchEngine;
+
+  public PatronUpdateService(MongoMappingContext mappingContext) {
+    this.patchEngine =
+        new PatchEngine<>(mappingContext, Patron.class, "patronId", PATCHABLE_PROPERTIES);
+    this.bulkPatchEngine =
+        new PatchEngine<>(mappingContext, Patron.class, "patronId", BULK_PATCHABLE_PROPERTIES);
+  }
+
+  // A PATCH body as a single update; unknown properties and mistyped values are rejected
+  public Update toPartialUpdate(Map<String, Object> updates) {
+    return patchEngine.toUpdate(updates, LocalDateTime.now());
+  }
+
+  // The updates of a bulk PATCH, limited to BULK_PATCHABLE_PROPERTIES
+  public Update toBulkUpdate(Map<String, Object> updates) {
+    return bulkPatchEngine.toUpdate(updates, LocalDateTime.now());
+  }
+
+  // The filter of a bulk PATCH, matched on patchable properties or patronId
+  public Criteria toPatchFilter(Map<String, Object> filter) {
+    return patchEngine.toCriteria(filter);
   }
 
   @Transactional
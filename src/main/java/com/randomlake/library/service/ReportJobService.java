@@ -0,0 +1,286 @@
+package com.randomlake.library.service;
+
+import com.randomlake.library.enums.ExceptionType;
+import com.randomlake.library.enums.ReportJobStatus;
+import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.model.ReportJob;
+import com.randomlake.library.report.ReportDefinition;
+import com.randomlake.library.report.ReportEngine;
+import com.randomlake.library.report.ReportFormat;
+import com.randomlake.library.report.ReportResultStore;
+import com.randomlake.library.report.ReportSourceVersions;
+import com.randomlake.library.repository.ReportJobRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/*
+ * Runs reports in the background on a small fixed pool with a bounded queue, so report load
+ * never takes more than a few threads away from request handling. Each user may only have a
+ * few jobs queued or running at a time. A request matching a queued, running or finished job
+ * for the same parameters is answered with that job as long as the report's source collections
+ * have not changed since it was submitted.
+ */
+@Service
+public class ReportJobService {
+
+  private static final Set<ReportJobStatus> ACTIVE =
+      EnumSet.of(ReportJobStatus.QUEUED, ReportJobStatus.RUNNING);
+  private static final Set<ReportJobStatus> REUSABLE =
+      EnumSet.of(ReportJobStatus.QUEUED, ReportJobStatus.RUNNING, ReportJobStatus.COMPLETED);
+
+  private final ReportJobRepository reportJobRepository;
+  private final ReportEngine reportEngine;
+  private final ReportResultStore resultStore;
+  private final ReportSourceVersions sourceVersions;
+  private final Clock clock;
+
+  private static final Logger log = LoggerFactory.getLogger(ReportJobService.class);
+
+  @Value("${report.jobs.workers:2}")
+  private int workers;
+
+  @Value("${report.jobs.queue.capacity:20}")
+  private int queueCapacity;
+
+  @Value("${report.jobs.per.user.max:2}")
+  private int maxJobsPerUser;
+
+  @Value("${report.jobs.retention.hours:24}")
+  private long retentionHours;
+
+  // Jobs still queued or running after this long are assumed lost with a stopped node
+  @Value("${report.jobs.timeout.minutes:120}")
+  private long timeoutMinutes;
+
+  private ThreadPoolExecutor executor;
+
+  public ReportJobService(
+      ReportJobRepository reportJobRepository,
+      ReportEngine reportEngine,
+      ReportResultStore resultStore,
+      ReportSourceVersions sourceVersions,
+      Clock clock) {
+    this.reportJobRepository = reportJobRepository;
+    this.reportEngine = reportEngine;
+    this.resultStore = resultStore;
+    this.sourceVersions = sourceVersions;
+    this.clock = clock;
+  }
+
+  @PostConstruct
+  public void start() {
+    AtomicInteger threadCount = new AtomicInteger();
+    executor =
+        new ThreadPoolExecutor(
+            workers,
+            workers,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+              Thread thread = new Thread(runnable, "report-job-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  @PreDestroy
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Queues a report, or returns the job that already covers the same request.
+   *
+   * @param report The report to run.
+   * @param params Filter parameters; anything that is not a filter of the report is ignored.
+   * @param columns Columns to return, or null or empty for all of them.
+   * @param format Output format.
+   * @param username The user submitting the job.
+   * @return The new or reused job.
+   * @throws GeneralException 429 if the user has too many jobs in progress, 503 if the queue is
+   *     full.
+   */
+  public ReportJob submit(
+      ReportDefinition report,
+      Map<String, String> params,
+      List<String> columns,
+      ReportFormat format,
+      String username) {
+    // Validates filters and columns before anything is queued
+    StreamingResponseBody body = reportEngine.export(report, params, columns, format);
+
+    Map<String, String> filters = new TreeMap<>();
+    for (ReportDefinition.Filter filter : report.filters()) {
+      String value = params.get(filter.param());
+      if (value != null && !value.isBlank()) {
+        filters.put(filter.param(), value.trim());
+      }
+    }
+    List<String> selectedColumns = columns == null ? List.of() : List.copyOf(columns);
+    String paramsHash = paramsHash(report.name(), format, filters, selectedColumns);
+    String sourceVersion = sourceVersions.versionOf(report);
+
+    Optional<ReportJob> existing =
+        reportJobRepository.findFirstByParamsHashAndSourceVersionAndStatusInOrderByCreatedDateDesc(
+            paramsHash, sourceVersion, REUSABLE);
+    if (existing.isPresent()) {
+      log.debug("Reusing report job {} for {}", existing.get().getJobId(), report.name());
+      return existing.get();
+    }
+
+    if (reportJobRepository.countByRequestedByAndStatusIn(username, ACTIVE) >= maxJobsPerUser) {
+      throw new GeneralException(
+          ExceptionType.REPORT_JOB_REJECTED,
+          "Too many report jobs in progress; wait for one to finish",
+          HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    ReportJob job = new ReportJob();
+    job.setJobId(UUID.randomUUID().toString());
+    job.setReportName(report.name());
+    job.setFormat(format);
+    job.setFilters(filters);
+    job.setColumns(selectedColumns);
+    job.setParamsHash(paramsHash);
+    job.setSourceVersion(sourceVersion);
+    job.setRequestedBy(username);
+    job.setStatus(ReportJobStatus.QUEUED);
+    job.setCreatedDate(LocalDateTime.now(clock));
+    ReportJob saved = reportJobRepository.save(job);
+
+    try {
+      executor.execute(() -> run(saved, body));
+    } catch (RejectedExecutionException e) {
+      fail(saved, "Report queue is full");
+      throw new GeneralException(
+          ExceptionType.REPORT_JOB_REJECTED,
+          "Report queue is full; try again later",
+          HttpStatus.SERVICE_UNAVAILABLE);
+    }
+    log.info("Queued report job {} ({}) for {}", saved.getJobId(), report.name(), username);
+    return saved;
+  }
+
+  public ReportJob getJob(String jobId) {
+    return reportJobRepository
+        .findByJobId(jobId)
+        .orElseThrow(
+            () ->
+                new GeneralException(
+                    ExceptionType.REPORT_JOB_NOT_FOUND,
+                    "Report job not found: " + jobId,
+                    HttpStatus.NOT_FOUND));
+  }
+
+  /**
+   * Opens the result of a finished job.
+   *
+   * @param compressed Whether to hand out the stored gzip bytes as they are.
+   * @throws GeneralException 409 if the job has not completed.
+   */
+  public StreamingResponseBody openResult(ReportJob job, boolean compressed) {
+    if (job.getStatus() != ReportJobStatus.COMPLETED) {
+      throw new GeneralException(
+          ExceptionType.INVALID_OPERATION,
+          "Report job " + job.getJobId() + " is " + job.getStatus(),
+          HttpStatus.CONFLICT);
+    }
+    return outputStream -> {
+      try (InputStream stored = resultStore.open(job.getResultFileId());
+          InputStream in = compressed ? stored : new GZIPInputStream(stored, 64 * 1024)) {
+        in.transferTo(outputStream);
+      }
+    };
+  }
+
+  void run(ReportJob job, StreamingResponseBody body) {
+    job.setStatus(ReportJobStatus.RUNNING);
+    job.setStartedDate(LocalDateTime.now(clock));
+    reportJobRepository.save(job);
+    try {
+      ReportResultStore.StoredResult result =
+          resultStore.store(
+              job.getReportName() + "-" + job.getJobId() + "." + job.getFormat().getExtension(),
+              body);
+      job.setResultFileId(result.fileId());
+      job.setResultSize(result.size());
+      job.setStatus(ReportJobStatus.COMPLETED);
+      job.setCompletedDate(LocalDateTime.now(clock));
+      reportJobRepository.save(job);
+      log.info("Report job {} completed, {} bytes stored", job.getJobId(), result.size());
+    } catch (Exception e) {
+      log.error("Report job {} failed", job.getJobId(), e);
+      fail(job, e.getMessage());
+    }
+  }
+
+  // Drops expired jobs with their results and fails jobs that were lost with a stopped node
+  @Scheduled(fixedDelayString = "${report.jobs.cleanup.interval.ms:3600000}")
+  public void purgeExpiredJobs() {
+    LocalDateTime now = LocalDateTime.now(clock);
+    for (ReportJob job :
+        reportJobRepository.findByStatusInAndCreatedDateBefore(
+            ACTIVE, now.minusMinutes(timeoutMinutes))) {
+      fail(job, "Report job timed out");
+    }
+    List<ReportJob> expired =
+        reportJobRepository.findByCreatedDateBefore(now.minusHours(retentionHours));
+    for (ReportJob job : expired) {
+      if (job.getResultFileId() != null) {
+        resultStore.delete(job.getResultFileId());
+      }
+    }
+    reportJobRepository.deleteAll(expired);
+    if (!expired.isEmpty()) {
+      log.info("Purged {} expired report jobs", expired.size());
+    }
+  }
+
+  private void fail(ReportJob job, String message) {
+    job.setStatus(ReportJobStatus.FAILED);
+    job.setErrorMessage(message);
+    job.setCompletedDate(LocalDateTime.now(clock));
+    reportJobRepository.save(job);
+  }
+
+  // Filters are sorted and only the filters of the report count, so equal requests hash equally
+  static String paramsHash(
+      String reportName, ReportFormat format, Map<String, String> filters, List<String> columns) {
+    String request =
+        reportName + '|' + format + '|' + new TreeMap<>(filters) + '|' + String.join(",", columns);
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(request.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+}
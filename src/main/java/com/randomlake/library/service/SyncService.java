@@ -0,0 +1,194 @@
+package com.randomlake.library.service;
+
+import com.randomlake.library.dto.ChangeSetResponse;
+import com.randomlake.library.enums.ExceptionType;
+import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.model.Card;
+import com.randomlake.library.model.Media;
+import com.randomlake.library.model.Patron;
+import com.randomlake.library.model.Tombstone;
+import com.randomlake.library.repository.CardRepository;
+import com.randomlake.library.repository.MediaRepository;
+import com.randomlake.library.repository.PatronRepository;
+import com.randomlake.library.repository.TombstoneRepository;
+import com.randomlake.library.util.KeysetPaginator;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+/*
+ * Delta-sync feeds for media, patrons and cards. A sync token carries two watermarks, one over
+ * the update timestamp of the collection and one over its tombstones; each is a (timestamp, id)
+ * pair so documents sharing a timestamp are neither skipped nor repeated across pages. Both
+ * advance independently, which is safe because IDs come from sequences and are never reused.
+ */
+@Service
+public class SyncService {
+
+  private static final String SEPARATOR = "|";
+
+  private final MediaRepository mediaRepository;
+  private final PatronRepository patronRepository;
+  private final CardRepository cardRepository;
+  private final TombstoneRepository tombstoneRepository;
+  private final KeysetPaginator keysetPaginator;
+  private final Clock clock;
+
+  // Changes younger than this are held back until the next poll, so a write that was stamped
+  // before the read but committed after it is not skipped by a watermark that already passed it
+  @Value("${sync.settle.seconds:5}")
+  private long settleSeconds;
+
+  public SyncService(
+      MediaRepository mediaRepository,
+      PatronRepository patronRepository,
+      CardRepository cardRepository,
+      TombstoneRepository tombstoneRepository,
+      KeysetPaginator keysetPaginator,
+      Clock clock) {
+    this.mediaRepository = mediaRepository;
+    this.patronRepository = patronRepository;
+    this.cardRepository = cardRepository;
+    this.tombstoneRepository = tombstoneRepository;
+    this.keysetPaginator = keysetPaginator;
+    this.clock = clock;
+  }
+
+  public ChangeSetResponse<Media> getMediaChanges(String token, Integer size) {
+    return getChanges(
+        Tombstone.MEDIA,
+        token,
+        size,
+        mediaRepository::findChangedSince,
+        Media::getMediaId,
+        Media::getLastUpdateDate);
+  }
+
+  public ChangeSetResponse<Patron> getPatronChanges(String token, Integer size) {
+    return getChanges(
+        Tombstone.PATRONS,
+        token,
+        size,
+        patronRepository::findChangedSince,
+        Patron::getPatronId,
+        Patron::getLastUpdateDate);
+  }
+
+  public ChangeSetResponse<Card> getCardChanges(String token, Integer size) {
+    return getChanges(
+        Tombstone.CARDS,
+        token,
+        size,
+        cardRepository::findChangedSince,
+        Card::getCardId,
+        Card::getLastUpdateDate);
+  }
+
+  private <T> ChangeSetResponse<T> getChanges(
+      String scope,
+      String token,
+      Integer size,
+      ChangeQuery<T> changeQuery,
+      ToIntFunction<T> idOf,
+      Function<T, LocalDateTime> timestampOf) {
+    int pageSize = keysetPaginator.resolvePageSize(size);
+    Watermark watermark = decodeToken(token, scope);
+    LocalDateTime until = LocalDateTime.now(clock).minusSeconds(settleSeconds);
+
+    // One extra row of each kind tells whether another batch is waiting
+    List<T> changed =
+        changeQuery.find(watermark.changedSince(), watermark.changedAfterId(), until, pageSize + 1);
+    List<Tombstone> deleted =
+        tombstoneRepository.findDeletedSince(
+            scope, watermark.deletedSince(), watermark.deletedAfterId(), until, pageSize + 1);
+    boolean hasMore = changed.size() > pageSize || deleted.size() > pageSize;
+    changed = changed.subList(0, Math.min(pageSize, changed.size()));
+    deleted = deleted.subList(0, Math.min(pageSize, deleted.size()));
+
+    Watermark next = watermark;
+    if (!changed.isEmpty()) {
+      T last = changed.get(changed.size() - 1);
+      next = next.withChanged(timestampOf.apply(last), idOf.applyAsInt(last));
+    }
+    if (!deleted.isEmpty()) {
+      Tombstone last = deleted.get(deleted.size() - 1);
+      next = next.withDeleted(last.getDeletedDate(), last.getEntityId());
+    }
+
+    List<Integer> deletedIds = deleted.stream().map(Tombstone::getEntityId).toList();
+    return new ChangeSetResponse<>(changed, deletedIds, encodeToken(scope, next), hasMore);
+  }
+
+  // Tokens are base64url of "scope|changedSince|changedAfterId|deletedSince|deletedAfterId"
+  String encodeToken(String scope, Watermark watermark) {
+    String raw =
+        String.join(
+            SEPARATOR,
+            scope,
+            formatTimestamp(watermark.changedSince()),
+            String.valueOf(watermark.changedAfterId()),
+            formatTimestamp(watermark.deletedSince()),
+            String.valueOf(watermark.deletedAfterId()));
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  // An absent token starts a full sync from the beginning of the collection
+  Watermark decodeToken(String token, String scope) {
+    if (token == null || token.isBlank()) {
+      return new Watermark(null, 0, null, 0);
+    }
+    try {
+      String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+      String[] parts = raw.split("\\" + SEPARATOR, -1);
+      if (parts.length == 5 && parts[0].equals(scope)) {
+        return new Watermark(
+            parseTimestamp(parts[1]),
+            Integer.parseInt(parts[2]),
+            parseTimestamp(parts[3]),
+            Integer.parseInt(parts[4]));
+      }
+    } catch (IllegalArgumentException | DateTimeParseException e) {
+      // Falls through to the error below
+    }
+    throw new GeneralException(
+        ExceptionType.INVALID_INPUT, "Invalid sync token", HttpStatus.BAD_REQUEST);
+  }
+
+  private static String formatTimestamp(LocalDateTime timestamp) {
+    return timestamp == null ? "" : timestamp.toString();
+  }
+
+  private static LocalDateTime parseTimestamp(String value) {
+    return value.isEmpty() ? null : LocalDateTime.parse(value);
+  }
+
+  @FunctionalInterface
+  private interface ChangeQuery<T> {
+    List<T> find(LocalDateTime since, int afterId, LocalDateTime until, int limit);
+  }
+
+  record Watermark(
+      LocalDateTime changedSince,
+      int changedAfterId,
+      LocalDateTime deletedSince,
+      int deletedAfterId) {
+
+    Watermark withChanged(LocalDateTime since, int afterId) {
+      return new Watermark(since, afterId, deletedSince, deletedAfterId);
+    }
+
+    Watermark withDeleted(LocalDateTime since, int afterId) {
+      return new Watermark(changedSince, changedAfterId, since, afterId);
+    }
+  }
+}
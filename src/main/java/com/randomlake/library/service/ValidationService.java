@@ -37,7 +37,8 @@ public class ValidationService {
     }
   }
 
-  public void validatePatronForCheckout(Patron patron, Media media) {
+  // Checks the patron alone, before any item is claimed for the checkout
+  public void validatePatronEligible(Patron patron) {
     if (patron.getStatus().equals(PatronStatus.SUSPENDED)) {
       log.error("Patron {} is suspended and cannot checkout items", patron.getPatronId());
       throw new GeneralException(
@@ -45,6 +46,10 @@ public class ValidationService {
           "Patron is suspended and not eligible for checkout",
           HttpStatus.FORBIDDEN);
     }
+  }
+
+  public void validatePatronForCheckout(Patron patron, Media media) {
+    validatePatronEligible(patron);
     if (patronService.isMinor(patron.getDateOfBirth()) && media.isSensitive()) {
       log.error(
           "Minor patron {} cannot checkout sensitive media {}",
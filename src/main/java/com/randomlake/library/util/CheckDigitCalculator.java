@@ -11,7 +11,7 @@ public class CheckDigitCalculator {
    * @param number The number to calculate the check digit for.
    * @return The check digit.
    */
-  public int calculateCheckDigit(String number) {
+  public int calculateCheckDigit(CharSequence number) {
     int sum = 0;
     int weight = 2;
 
@@ -0,0 +1,163 @@
+package com.randomlake.library.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/*
+ * HTTP validators for single-resource endpoints. The strong ETag and Last-Modified of a resource
+ * are both derived from its lastUpdateDate, truncated to the millisecond precision Mongo stores,
+ * so they can be computed from a projection of that one field without loading the document.
+ */
+public final class ConditionalRequests {
+
+  private ConditionalRequests() {}
+
+  /**
+   * Answers a GET whose validators show the client's copy is current. Only the modification time is
+   * read, and only when the request has validators.
+   *
+   * @param lastUpdateDate Reads the resource's modification time; empty if there is none.
+   * @return A 304 response, or empty if the resource has to be loaded and sent.
+   */
+  public static <T> Optional<ResponseEntity<T>> checkNotModified(
+      HttpServletRequest request,
+      String scope,
+      int id,
+      Supplier<Optional<LocalDateTime>> lastUpdateDate) {
+    if (!hasCacheValidators(request)) {
+      return Optional.empty();
+    }
+    return lastUpdateDate
+        .get()
+        .filter(updated -> isNotModified(request, etag(scope, id, updated), updated))
+        .map(updated -> notModified(etag(scope, id, updated), updated));
+  }
+
+  /**
+   * Reads the If-Match header of a PUT or PATCH as a precondition for the service to make part of
+   * its write, so a client cannot overwrite changes it has not seen. Only strong tags for this
+   * resource count; "*" accepts any stamped version.
+   *
+   * @return The precondition, or {@link Precondition#NONE} without If-Match.
+   */
+  public static Precondition ifMatch(HttpServletRequest request, String scope, int id) {
+    if (!hasPrecondition(request)) {
+      return Precondition.NONE;
+    }
+    String prefix = "\"" + scope + "-" + id + "-";
+    boolean anyVersion = false;
+    Set<Long> lastModified = new HashSet<>();
+    for (String candidate : request.getHeader(HttpHeaders.IF_MATCH).split(",")) {
+      String tag = candidate.trim();
+      if (tag.equals("*")) {
+        anyVersion = true;
+      } else if (tag.startsWith(prefix) && tag.endsWith("\"") && tag.length() > prefix.length()) {
+        try {
+          lastModified.add(
+              Long.parseUnsignedLong(tag.substring(prefix.length(), tag.length() - 1), 16));
+        } catch (NumberFormatException e) {
+          // Not a tag this service issued; it matches nothing
+        }
+      }
+    }
+    return new Precondition(scope, id, anyVersion, lastModified);
+  }
+
+  public static String etag(String scope, int id, LocalDateTime lastUpdateDate) {
+    return "\"" + scope + "-" + id + "-" + Long.toHexString(lastModified(lastUpdateDate)) + "\"";
+  }
+
+  public static long lastModified(LocalDateTime lastUpdateDate) {
+    return lastUpdateDate
+        .truncatedTo(ChronoUnit.MILLIS)
+        .atZone(ZoneId.systemDefault())
+        .toInstant()
+        .toEpochMilli();
+  }
+
+  // Whether the request carries validators a GET could be answered with 304 for
+  public static boolean hasCacheValidators(HttpServletRequest request) {
+    return request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+        || request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null;
+  }
+
+  /**
+   * Whether the client's copy is current. If-None-Match takes precedence; If-Modified-Since is only
+   * consulted without it, and at the one-second resolution of HTTP dates.
+   */
+  public static boolean isNotModified(
+      HttpServletRequest request, String etag, LocalDateTime lastUpdateDate) {
+    String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch != null) {
+      return matches(ifNoneMatch, etag, false);
+    }
+    long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+    return ifModifiedSince >= 0 && lastModified(lastUpdateDate) / 1000 <= ifModifiedSince / 1000;
+  }
+
+  // Whether an If-Match header is present that the current ETag does not satisfy
+  public static boolean isPreconditionFailed(HttpServletRequest request, String etag) {
+    String ifMatch = request.getHeader(HttpHeaders.IF_MATCH);
+    return ifMatch != null && !matches(ifMatch, etag, true);
+  }
+
+  public static boolean hasPrecondition(HttpServletRequest request) {
+    return request.getHeader(HttpHeaders.IF_MATCH) != null;
+  }
+
+  public static <T> ResponseEntity<T> notModified(String etag, LocalDateTime lastUpdateDate) {
+    return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+        .eTag(etag)
+        .lastModified(lastModified(lastUpdateDate))
+        .build();
+  }
+
+  // 200 with validators, or without them for documents that were never stamped
+  public static <T> ResponseEntity<T> ok(T body, String scope, int id, LocalDateTime updated) {
+    if (updated == null) {
+      return ResponseEntity.ok(body);
+    }
+    return ResponseEntity.ok()
+        .eTag(etag(scope, id, updated))
+        .lastModified(lastModified(updated))
+        .body(body);
+  }
+
+  // If-Match compares strongly, so weak tags never match it; If-None-Match compares weakly
+  private static boolean matches(String header, String etag, boolean strong) {
+    for (String candidate : header.split(",")) {
+      String tag = candidate.trim();
+      if (tag.equals("*")) {
+        return true;
+      }
+      if (tag.startsWith("W/")) {
+        if (strong) {
+          continue;
+        }
+        tag = tag.substring(2);
+      }
+      if (tag.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long dateHeader(HttpServletRequest request, String name) {
+    try {
+      return request.getDateHeader(name);
+    } catch (IllegalArgumentException e) {
+      // Unparseable dates are ignored, as if the header were absent
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.randomlake.library.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Reads CSV one record at a time, the counterpart of CsvWriter: RFC 4180 quoting, CRLF or LF line
+ * ends, and line breaks inside quoted fields. Only the current record is held in memory, so an
+ * upload of any size can be read straight from its stream. A leading byte order mark is skipped.
+ */
+public class CsvReader implements Closeable {
+
+  private final Reader reader;
+  private boolean started;
+  private int pending = -2; // a character read ahead, -1 at the end, -2 if none
+
+  // The reader is wrapped as given; pass a buffered one
+  public CsvReader(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Reads the next record.
+   *
+   * @return Its fields, or null at the end of the input. A blank line is a single empty field.
+   */
+  public List<String> readRecord() throws IOException {
+    int c = read();
+    if (!started) {
+      started = true;
+      if (c == '\uFEFF') {
+        c = read();
+      }
+    }
+    if (c == -1) {
+      return null;
+    }
+
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    while (true) {
+      if (quoted) {
+        if (c == -1) {
+          // Unterminated quote: keep what was read
+          fields.add(field.toString());
+          return fields;
+        }
+        if (c == '"') {
+          int next = read();
+          if (next == '"') {
+            field.append('"');
+          } else {
+            quoted = false;
+            c = next;
+            continue;
+          }
+        } else {
+          field.append((char) c);
+        }
+      } else if (c == '"' && field.isEmpty()) {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else if (c == '\r' || c == '\n' || c == -1) {
+        if (c == '\r') {
+          int next = read();
+          if (next != '\n') {
+            pending = next;
+          }
+        }
+        fields.add(field.toString());
+        return fields;
+      } else {
+        field.append((char) c);
+      }
+      c = read();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  private int read() throws IOException {
+    if (pending != -2) {
+      int c = pending;
+      pending = -2;
+      return c;
+    }
+    return reader.read();
+  }
+}
@@ -0,0 +1,66 @@
+package com.randomlake.library.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/*
+ * Writes a stream of records as CSV straight to the response, header first. Like NdjsonWriter the
+ * source is opened on the response thread and closed when writing ends, so a Mongo cursor behind
+ * it is read one batch at a time. A record may expand to any number of rows.
+ */
+public final class CsvWriter {
+
+  private CsvWriter() {}
+
+  public static <T> StreamingResponseBody write(
+      Supplier<Stream<T>> source, List<String> header, Function<T, Stream<List<?>>> rowsOf) {
+    return outputStream -> {
+      try (Stream<T> records = source.get();
+          Writer writer =
+              new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+        writeRow(writer, header);
+        Iterator<T> cursor = records.iterator();
+        while (cursor.hasNext()) {
+          Iterator<List<?>> rows = rowsOf.apply(cursor.next()).iterator();
+          while (rows.hasNext()) {
+            writeRow(writer, rows.next());
+          }
+        }
+      }
+    };
+  }
+
+  static void writeRow(Writer writer, List<?> values) throws IOException {
+    for (int i = 0; i < values.size(); i++) {
+      if (i > 0) {
+        writer.write(',');
+      }
+      writer.write(escape(values.get(i)));
+    }
+    writer.write("\r\n");
+  }
+
+  // RFC 4180 quoting; null is written as an empty field
+  static String escape(Object value) {
+    if (value == null) {
+      return "";
+    }
+    String text = value.toString();
+    if (text.indexOf(',') < 0
+        && text.indexOf('"') < 0
+        && text.indexOf('\n') < 0
+        && text.indexOf('\r') < 0) {
+      return text;
+    }
+    return '"' + text.replace("\"", "\"\"") + '"';
+  }
+}
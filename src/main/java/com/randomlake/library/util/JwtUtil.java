@@ -1,14 +1,27 @@
 package com.randomlake.library.util;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
-import io.jsonwebtoken.security.SignatureException;
 import jakarta.annotation.PostConstruct;
-import java.security.Key;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Base64;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.Optional;
+import javax.crypto.SecretKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
@@ -18,17 +31,35 @@ public class JwtUtil {
   @Value("${jwt.secret.key:}")
   private String base64KeyFromProperties;
 
-  private Key key;
+  // Upper bound on the number of verified tokens remembered between requests
+  @Value("${jwt.token.cache.maximum.size:10000}")
+  private long tokenCacheMaximumSize;
+
+  private static final Logger log = LoggerFactory.getLogger(JwtUtil.class);
+
+  private SecretKey key;
+  private JwtParser parser;
+  private Cache<String, VerifiedToken> verifiedTokens;
   private final long expirationMs = 86400000;
 
+  // Subject and expiry of a token whose signature has already been checked
+  private record VerifiedToken(String username, Instant expiresAt) {}
+
   @PostConstruct
   public void init() {
     if (base64KeyFromProperties.isBlank()) {
-      System.out.println("JWT_SECRET_KEY not found. Generating a temporary key for development.");
+      log.warn("JWT_SECRET_KEY not found. Generating a temporary key for development.");
       key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
     } else {
       key = Keys.hmacShaKeyFor(Base64.getDecoder().decode(base64KeyFromProperties));
     }
+    // The parser is immutable and thread-safe, so one instance serves every request
+    parser = Jwts.parser().verifyWith(key).build();
+    verifiedTokens =
+        Caffeine.newBuilder()
+            .maximumSize(tokenCacheMaximumSize)
+            .expireAfter(new UntilTokenExpires())
+            .build();
   }
 
   public String generateToken(String username) {
@@ -40,20 +71,72 @@ public class JwtUtil {
         .compact();
   }
 
-  public boolean validateToken(String token) {
+  /**
+   * Verifies the token and returns its subject. A token that verified before is recognised by its
+   * SHA-256 hash until it expires, so the signature is only checked on first use.
+   *
+   * @param token The compact JWT from the Authorization header.
+   * @return The username, or an empty Optional if the token is invalid or expired.
+   */
+  public Optional<String> verifyAndExtractUsername(String token) {
+    String tokenHash = hash(token);
+    VerifiedToken cached = verifiedTokens.getIfPresent(tokenHash);
+    if (cached != null && cached.expiresAt().isAfter(Instant.now())) {
+      return Optional.of(cached.username());
+    }
+
     try {
-      Jwts.parser().setSigningKey(key).build().parseClaimsJws(token);
-      return true;
-    } catch (SignatureException e) {
-      System.out.println("Invalid JWT signature: " + e.getMessage());
-    } catch (Exception e) {
-      System.out.println("Invalid JWT token: " + e.getMessage());
+      Claims claims = parser.parseSignedClaims(token).getPayload();
+      if (claims.getSubject() == null) {
+        return Optional.empty();
+      }
+      // Tokens without an expiry are accepted but not remembered
+      if (claims.getExpiration() != null) {
+        verifiedTokens.put(
+            tokenHash, new VerifiedToken(claims.getSubject(), claims.getExpiration().toInstant()));
+      }
+      return Optional.of(claims.getSubject());
+    } catch (JwtException | IllegalArgumentException e) {
+      log.debug("Invalid JWT token: {}", e.getMessage());
+      return Optional.empty();
     }
-    return false;
+  }
+
+  public boolean validateToken(String token) {
+    return verifyAndExtractUsername(token).isPresent();
   }
 
   public String extractUsername(String token) {
-    Claims claims = Jwts.parser().setSigningKey(key).build().parseClaimsJws(token).getBody();
-    return claims.getSubject(); // The subject field is the username
+    return verifyAndExtractUsername(token).orElseThrow(() -> new JwtException("Invalid JWT token"));
+  }
+
+  private static String hash(String token) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  // Keeps each verified token exactly as long as the token itself is valid
+  private static final class UntilTokenExpires implements Expiry<String, VerifiedToken> {
+
+    @Override
+    public long expireAfterCreate(String tokenHash, VerifiedToken token, long currentTime) {
+      return Math.max(0, Duration.between(Instant.now(), token.expiresAt()).toNanos());
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        String tokenHash, VerifiedToken token, long currentTime, long currentDuration) {
+      return expireAfterCreate(tokenHash, token, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(
+        String tokenHash, VerifiedToken token, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
   }
 }
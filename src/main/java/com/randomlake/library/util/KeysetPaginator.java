@@ -0,0 +1,124 @@
+package com.randomlake.library.util;
+
+import com.randomlake.library.dto.PageResponse;
+import com.randomlake.library.enums.ExceptionType;
+import com.randomlake.library.exception.GeneralException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+/*
+ * Shared rules for keyset-paginated listings. Pages are read in ascending order of a numeric
+ * business ID, starting after the last ID of the previous page, so every page costs one index
+ * range scan however deep the client has paged. The last ID is handed to the client as an
+ * opaque cursor token tied to the listing it came from.
+ */
+@Component
+public class KeysetPaginator {
+
+  @Value("${api.page.size.default:50}")
+  private int defaultPageSize;
+
+  @Value("${api.page.size.max:500}")
+  private int maxPageSize;
+
+  // Requested sizes above the maximum are capped rather than rejected
+  public int resolvePageSize(Integer requestedSize) {
+    if (requestedSize == null) {
+      return defaultPageSize;
+    }
+    if (requestedSize < 1) {
+      throw new GeneralException(
+          ExceptionType.INVALID_INPUT, "Page size must be at least 1", HttpStatus.BAD_REQUEST);
+    }
+    return Math.min(requestedSize, maxPageSize);
+  }
+
+  /**
+   * Decodes a cursor token issued for the given listing.
+   *
+   * @param cursor The token from a previous page, or null for the first page.
+   * @param scope The listing the token must belong to, e.g. "media".
+   * @return The last ID of the previous page, or 0 for the first page.
+   */
+  public int decodeCursor(String cursor, String scope) {
+    if (cursor == null || cursor.isBlank()) {
+      return 0;
+    }
+    try {
+      return Integer.parseInt(decodePayload(cursor, scope));
+    } catch (NumberFormatException e) {
+      throw invalidCursor();
+    }
+  }
+
+  /**
+   * Decodes a cursor token whose key is not numeric, such as an ObjectId.
+   *
+   * @return The last key of the previous page, or null for the first page.
+   */
+  public String decodeKeyCursor(String cursor, String scope) {
+    if (cursor == null || cursor.isBlank()) {
+      return null;
+    }
+    return decodePayload(cursor, scope);
+  }
+
+  public String encodeCursor(String scope, int lastId) {
+    return encodeKeyCursor(scope, String.valueOf(lastId));
+  }
+
+  public String encodeKeyCursor(String scope, String lastKey) {
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString((scope + ":" + lastKey).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Builds a page from rows fetched with a limit of one more than the page size; the extra row only
+   * signals that another page follows.
+   */
+  public <T> PageResponse<T> toPage(
+      List<T> rows, int pageSize, ToIntFunction<T> idOf, String scope) {
+    if (rows.size() <= pageSize) {
+      return new PageResponse<>(rows, null);
+    }
+    List<T> items = rows.subList(0, pageSize);
+    return new PageResponse<>(
+        items, encodeCursor(scope, idOf.applyAsInt(items.get(items.size() - 1))));
+  }
+
+  // As toPage, for listings keyed by a string such as an ObjectId
+  public <T> PageResponse<T> toKeyPage(
+      List<T> rows, int pageSize, Function<T, String> keyOf, String scope) {
+    if (rows.size() <= pageSize) {
+      return new PageResponse<>(rows, null);
+    }
+    List<T> items = rows.subList(0, pageSize);
+    return new PageResponse<>(
+        items, encodeKeyCursor(scope, keyOf.apply(items.get(items.size() - 1))));
+  }
+
+  private String decodePayload(String cursor, String scope) {
+    try {
+      String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      String prefix = scope + ":";
+      if (decoded.startsWith(prefix) && decoded.length() > prefix.length()) {
+        return decoded.substring(prefix.length());
+      }
+    } catch (IllegalArgumentException e) {
+      // Falls through to the error below
+    }
+    throw invalidCursor();
+  }
+
+  private static GeneralException invalidCursor() {
+    return new GeneralException(
+        ExceptionType.INVALID_INPUT, "Invalid page cursor", HttpStatus.BAD_REQUEST);
+  }
+}
@@ -0,0 +1,73 @@
+package com.randomlake.library.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/*
+ * Writes a stream of records as newline-delimited JSON straight to the response. The source is
+ * opened on the response thread and closed when writing ends, so a repository stream backed by
+ * a Mongo cursor is read one batch at a time and memory use does not grow with the result.
+ */
+public final class NdjsonWriter {
+
+  private NdjsonWriter() {}
+
+  public static <T, R> StreamingResponseBody write(
+      Supplier<Stream<T>> source, Function<T, R> mapper, ObjectMapper objectMapper) {
+    ObjectWriter writer =
+        objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    return outputStream -> {
+      try (Stream<T> rows = source.get();
+          JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+        generator.setRootValueSeparator(null);
+        Iterator<T> cursor = rows.iterator();
+        while (cursor.hasNext()) {
+          writer.writeValue(generator, mapper.apply(cursor.next()));
+          generator.writeRaw('\n');
+        }
+      }
+    };
+  }
+
+  /**
+   * Writes records as the producer hands them over, for results made while the request is being
+   * processed rather than read from a source.
+   *
+   * @param producer Called on the response thread with a sink that writes one record per line.
+   */
+  public static <R> StreamingResponseBody produce(
+      RecordProducer<R> producer, ObjectMapper objectMapper) {
+    ObjectWriter writer =
+        objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    return outputStream -> {
+      try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+        generator.setRootValueSeparator(null);
+        producer.produce(
+            record -> {
+              try {
+                writer.writeValue(generator, record);
+                generator.writeRaw('\n');
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+      }
+    };
+  }
+
+  @FunctionalInterface
+  public interface RecordProducer<R> {
+
+    void produce(Consumer<R> sink) throws IOException;
+  }
+}
@@ -0,0 +1,203 @@
+package com.randomlake.library.util;
+
+import com.randomlake.library.enums.ExceptionType;
+import com.randomlake.library.exception.GeneralException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.ClassUtils;
+
+/*
+ * Turns a PATCH body into one Mongo update, so a record can be changed with a single
+ * findAndModify instead of being loaded, modified and saved whole. The stored field name and Java
+ * type of every patchable property are read from the mapping context when the engine is built.
+ * Values are checked against those types and coerced (ISO dates, enum names, whole numbers).
+ * Every update also stamps the modification time and bumps the version, as a save would.
+ */
+public class PatchEngine<T> {
+
+  private static final Set<Class<?>> SUPPORTED_TYPES =
+      Set.of(String.class, Integer.class, Long.class, Boolean.class, LocalDate.class);
+
+  private final Map<String, PatchField> patchFields = new LinkedHashMap<>();
+  private final Map<String, PatchField> filterFields = new LinkedHashMap<>();
+  private final String lastUpdateField;
+  private final String versionField;
+
+  /**
+   * @param keyProperty The business ID property; it can be filtered on but not patched.
+   * @param patchableProperties The properties a PATCH body may set.
+   */
+  public PatchEngine(
+      MongoMappingContext mappingContext,
+      Class<T> type,
+      String keyProperty,
+      Collection<String> patchableProperties) {
+    MongoPersistentEntity<?> entity = mappingContext.getRequiredPersistentEntity(type);
+    for (String property : patchableProperties) {
+      patchFields.put(property, fieldOf(entity, property));
+    }
+    filterFields.put(keyProperty, fieldOf(entity, keyProperty));
+    filterFields.putAll(patchFields);
+    this.lastUpdateField = entity.getRequiredPersistentProperty("lastUpdateDate").getFieldName();
+    this.versionField = entity.getRequiredVersionProperty().getFieldName();
+  }
+
+  /**
+   * Builds the update for a PATCH body.
+   *
+   * @param updates Property names and their new values; a null value clears the field.
+   * @param now The modification time to stamp.
+   * @return A $set of every given field plus the modification time, and a $inc of the version.
+   */
+  public Update toUpdate(Map<String, Object> updates, LocalDateTime now) {
+    Update update = new Update();
+    updates.forEach(
+        (property, value) -> {
+          PatchField field = patchFields.get(property);
+          if (field == null) {
+            throw unknownProperty(property);
+          }
+          update.set(field.fieldName(), coerce(property, field, value));
+        });
+    return update.set(lastUpdateField, now).inc(versionField, 1);
+  }
+
+  /**
+   * Builds the filter of a bulk patch. Every entry must match; a list value matches any of its
+   * elements.
+   *
+   * @param filter Property names, which may include the business ID, and the values to match.
+   */
+  public Criteria toCriteria(Map<String, Object> filter) {
+    if (filter == null || filter.isEmpty()) {
+      throw new GeneralException(
+          ExceptionType.INVALID_INPUT, "A filter is required", HttpStatus.BAD_REQUEST);
+    }
+    Criteria criteria = new Criteria();
+    filter.forEach(
+        (property, value) -> {
+          PatchField field = filterFields.get(property);
+          if (field == null) {
+            throw unknownProperty(property);
+          }
+          if (value instanceof List<?> values) {
+            criteria
+                .and(field.fieldName())
+                .in(values.stream().map(element -> coerce(property, field, element)).toList());
+          } else {
+            criteria.and(field.fieldName()).is(coerce(property, field, value));
+          }
+        });
+    return criteria;
+  }
+
+  private Object coerce(String property, PatchField field, Object value) {
+    Class<?> target = field.type();
+    if (value == null) {
+      if (target.isEnum() || field.primitive()) {
+        throw invalidValue(property, value, "must not be null");
+      }
+      return null;
+    }
+    if (target == String.class && value instanceof String) {
+      return value;
+    }
+    if (target == Boolean.class && value instanceof Boolean) {
+      return value;
+    }
+    if (target == Integer.class || target == Long.class) {
+      return coerceWholeNumber(property, target, value);
+    }
+    if (target == LocalDate.class) {
+      return coerceDate(property, value);
+    }
+    if (target.isEnum() && value instanceof String name) {
+      return coerceEnum(property, target, name);
+    }
+    throw invalidValue(property, value, "expected " + describe(target));
+  }
+
+  private static Object coerceWholeNumber(String property, Class<?> target, Object value) {
+    if (!(value instanceof Integer || value instanceof Long || value instanceof Short)) {
+      throw invalidValue(property, value, "expected a whole number");
+    }
+    long number = ((Number) value).longValue();
+    if (target == Long.class) {
+      return number;
+    }
+    if (number < Integer.MIN_VALUE || number > Integer.MAX_VALUE) {
+      throw invalidValue(property, value, "out of range");
+    }
+    return (int) number;
+  }
+
+  private static LocalDate coerceDate(String property, Object value) {
+    if (value instanceof LocalDate date) {
+      return date;
+    }
+    if (value instanceof String text) {
+      try {
+        return LocalDate.parse(text);
+      } catch (DateTimeParseException e) {
+        throw invalidValue(property, value, "expected a date as yyyy-MM-dd");
+      }
+    }
+    throw invalidValue(property, value, "expected a date as yyyy-MM-dd");
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Object coerceEnum(String property, Class<?> target, String name) {
+    try {
+      return Enum.valueOf((Class<? extends Enum>) target, name);
+    } catch (IllegalArgumentException e) {
+      throw invalidValue(property, name, "not a valid " + target.getSimpleName());
+    }
+  }
+
+  private static String describe(Class<?> target) {
+    if (target == String.class) {
+      return "a string";
+    }
+    if (target == Boolean.class) {
+      return "true or false";
+    }
+    return "one of the " + target.getSimpleName() + " names";
+  }
+
+  private static GeneralException unknownProperty(String property) {
+    return new GeneralException(
+        ExceptionType.INVALID_INPUT, "Unknown property: " + property, HttpStatus.BAD_REQUEST);
+  }
+
+  private static GeneralException invalidValue(String property, Object value, String reason) {
+    return new GeneralException(
+        ExceptionType.INVALID_INPUT,
+        "Invalid value for " + property + ": " + value + " (" + reason + ")",
+        HttpStatus.BAD_REQUEST);
+  }
+
+  private static PatchField fieldOf(MongoPersistentEntity<?> entity, String property) {
+    MongoPersistentProperty persistentProperty = entity.getRequiredPersistentProperty(property);
+    Class<?> rawType = persistentProperty.getType();
+    Class<?> type = ClassUtils.resolvePrimitiveIfNecessary(rawType);
+    if (!type.isEnum() && !SUPPORTED_TYPES.contains(type)) {
+      throw new IllegalStateException(
+          "Property " + property + " of type " + type.getSimpleName() + " cannot be patched");
+    }
+    return new PatchField(persistentProperty.getFieldName(), type, rawType.isPrimitive());
+  }
+
+  private record PatchField(String fieldName, Class<?> type, boolean primitive) {}
+}
@@ -0,0 +1,73 @@
+package com.randomlake.library.util;
+
+import com.randomlake.library.exception.PreconditionFailedException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Set;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+/*
+ * The If-Match condition of a PUT or PATCH, as the lastUpdateDate values it accepts. The service
+ * puts it into the filter of the write it guards, so no other update can land between the check
+ * and the change; a write that matches nothing is answered with 412.
+ */
+public final class Precondition {
+
+  // No If-Match: the write goes ahead whatever the current version
+  public static final Precondition NONE = new Precondition(null, 0, false, Set.of());
+
+  private final String scope;
+  private final int id;
+  private final boolean anyVersion;
+  private final Set<Long> lastModified;
+
+  Precondition(String scope, int id, boolean anyVersion, Set<Long> lastModified) {
+    this.scope = scope;
+    this.id = id;
+    this.anyVersion = anyVersion;
+    this.lastModified = lastModified;
+  }
+
+  public boolean isRequired() {
+    return scope != null;
+  }
+
+  // Whether a document stamped with this time satisfies the condition; an unstamped one never does
+  public boolean matches(LocalDateTime lastUpdateDate) {
+    if (!isRequired()) {
+      return true;
+    }
+    return lastUpdateDate != null
+        && (anyVersion || lastModified.contains(ConditionalRequests.lastModified(lastUpdateDate)));
+  }
+
+  // The condition on the lastUpdateDate property, added to the write's filter
+  public Criteria addTo(Criteria criteria) {
+    if (!isRequired()) {
+      return criteria;
+    }
+    if (anyVersion) {
+      return criteria.and("lastUpdateDate").ne(null);
+    }
+    return criteria
+        .and("lastUpdateDate")
+        .in(
+            lastModified.stream()
+                .map(
+                    millis ->
+                        LocalDateTime.ofInstant(
+                            Instant.ofEpochMilli(millis), ZoneId.systemDefault()))
+                .toList());
+  }
+
+  /**
+   * The 412 for a write this condition stopped.
+   *
+   * @param current The resource's modification time now, sent back as its ETag; null if unstamped.
+   */
+  public PreconditionFailedException failed(LocalDateTime current) {
+    return new PreconditionFailedException(
+        current == null ? null : ConditionalRequests.etag(scope, id, current));
+  }
+}
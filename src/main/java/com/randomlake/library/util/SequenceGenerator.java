@@ -5,9 +5,17 @@ import com.randomlake.library.enums.BarcodeType;
 import com.randomlake.library.enums.ExceptionType;
 import com.randomlake.library.exception.GeneralException;
 import com.randomlake.library.model.Counter;
+import jakarta.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
@@ -19,12 +27,31 @@ import org.springframework.stereotype.Component;
 @Component
 public class SequenceGenerator {
 
+  public static final String PATRON_SEQUENCE = "patronId";
+
   private final LibraryConfig libraryConfig;
   private final CheckDigitCalculator digitCalculator;
   private final MongoTemplate mongoTemplate;
 
   private static final Logger log = LoggerFactory.getLogger(SequenceGenerator.class);
 
+  // Number of IDs leased from the counters collection per round-trip; 1 disables leasing
+  @Value("${sequence.block.size:1}")
+  private int blockSize;
+
+  // Fraction of a leased block left over when the next block is fetched in the background
+  @Value("${sequence.block.refill.threshold:0.2}")
+  private double refillThreshold;
+
+  private final Map<String, LeasedSequence> leasedSequences = new ConcurrentHashMap<>();
+  private final ExecutorService refillExecutor =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "sequence-block-refill");
+            thread.setDaemon(true);
+            return thread;
+          });
+
   @Autowired
   public SequenceGenerator(
       LibraryConfig libraryConfig,
@@ -43,6 +70,27 @@ public class SequenceGenerator {
     return barcodeWithoutCheckDigit + checkDigit;
   }
 
+  /**
+   * Builds the barcodes of a contiguous range of sequence values, as generateBarcode does for one
+   * value, with the prefix resolved once and a single buffer reused across the range.
+   *
+   * @param firstValue The first sequence value of the range.
+   * @param count The number of barcodes to build.
+   * @return The barcode of {@code firstValue + i} at index {@code i}.
+   */
+  public String[] generateBarcodes(BarcodeType type, int firstValue, int count) {
+    String prefix = getPrefixForType(type) + libraryConfig.getLibraryIdCode();
+    StringBuilder buffer = new StringBuilder(prefix.length() + 12);
+    String[] barcodes = new String[count];
+    for (int i = 0; i < count; i++) {
+      buffer.setLength(0);
+      buffer.append(prefix).append(firstValue + i);
+      buffer.append(digitCalculator.calculateCheckDigit(buffer));
+      barcodes[i] = buffer.toString();
+    }
+    return barcodes;
+  }
+
   // Prefix for library cards and media items as per configuration
   private String getPrefixForType(BarcodeType type) {
     return switch (type) {
@@ -56,8 +104,26 @@ public class SequenceGenerator {
   }
 
   public int getNextSequenceValue(String sequenceName) {
+    if (blockSize <= 1) {
+      return reserveSequenceRange(sequenceName, 1);
+    }
+    return leasedSequences.computeIfAbsent(sequenceName, LeasedSequence::new).next();
+  }
+
+  /**
+   * Reserves a contiguous range of sequence values with a single update on the counters collection.
+   * Values handed out this way bypass any leased block held by this node.
+   *
+   * @param sequenceName The counter to advance.
+   * @param count The number of values to reserve.
+   * @return The first value of the reserved range; the range ends at {@code first + count - 1}.
+   */
+  public int reserveSequenceRange(String sequenceName, int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("Sequence range size must be at least 1");
+    }
     Query query = new Query(Criteria.where("_id").is(sequenceName));
-    Update update = new Update().inc("sequence_value", 1);
+    Update update = new Update().inc("sequence_value", count);
     FindAndModifyOptions options = new FindAndModifyOptions().returnNew(true).upsert(true);
 
     Counter counter = mongoTemplate.findAndModify(query, update, options, Counter.class);
@@ -69,7 +135,7 @@ public class SequenceGenerator {
           "Failed to generate sequence value for: " + sequenceName,
           HttpStatus.INTERNAL_SERVER_ERROR);
     }
-    return counter.getSequenceValue();
+    return counter.getSequenceValue() - count + 1;
   }
 
   public int getNextSequenceValue(BarcodeType type) {
@@ -80,7 +146,7 @@ public class SequenceGenerator {
   // Patrons and loans have their own sequence names and no barcode is generated
 
   public int getNextSequenceValueForPatron() {
-    return getNextSequenceValue("patronId");
+    return getNextSequenceValue(PATRON_SEQUENCE);
   }
 
   public int getNextSequenceValueForLoan() {
@@ -94,4 +160,114 @@ public class SequenceGenerator {
   public int getNextSequenceValueForInvoice() {
     return getNextSequenceValue("invoiceId");
   }
+
+  // IDs still held in memory are lost when the node stops; log them so gaps can be explained
+  @PreDestroy
+  public void releaseLeasedBlocks() {
+    refillExecutor.shutdownNow();
+    leasedSequences.values().forEach(LeasedSequence::reportUnused);
+  }
+
+  // A contiguous block of IDs leased from the counters collection
+  private static final class IdBlock {
+
+    private final int end;
+    private final AtomicInteger cursor;
+
+    private IdBlock(int start, int end) {
+      this.end = end;
+      this.cursor = new AtomicInteger(start);
+    }
+  }
+
+  /*
+   * Hands out IDs for one sequence from an in-memory block. The fast path is a single atomic
+   * increment; the counters collection is only touched when a block is leased, which normally
+   * happens in the background once the current block falls below the refill threshold.
+   */
+  private final class LeasedSequence {
+
+    private final String sequenceName;
+    private final AtomicBoolean refillInFlight = new AtomicBoolean(false);
+    private volatile IdBlock current;
+    private IdBlock prefetched; // guarded by this
+
+    private LeasedSequence(String sequenceName) {
+      this.sequenceName = sequenceName;
+    }
+
+    int next() {
+      while (true) {
+        IdBlock block = current;
+        if (block != null) {
+          int value = block.cursor.getAndIncrement();
+          if (value <= block.end) {
+            if (block.end - value == refillMark()) {
+              requestRefill();
+            }
+            return value;
+          }
+        }
+        advance(block);
+      }
+    }
+
+    private synchronized void advance(IdBlock exhausted) {
+      if (current != exhausted) {
+        return; // another thread already moved on to a fresh block
+      }
+      IdBlock next = prefetched;
+      prefetched = null;
+      current = next != null ? next : lease();
+    }
+
+    private void requestRefill() {
+      if (!refillInFlight.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        refillExecutor.execute(
+            () -> {
+              try {
+                IdBlock block = lease();
+                synchronized (this) {
+                  prefetched = block;
+                }
+              } catch (RuntimeException e) {
+                log.error("Background refill failed for sequence: {}", sequenceName, e);
+              } finally {
+                refillInFlight.set(false);
+              }
+            });
+      } catch (RuntimeException e) {
+        // Executor is shutting down; the next exhausted block is leased synchronously
+        refillInFlight.set(false);
+      }
+    }
+
+    private IdBlock lease() {
+      int start = reserveSequenceRange(sequenceName, blockSize);
+      log.debug("Leased IDs {}-{} for sequence {}", start, start + blockSize - 1, sequenceName);
+      return new IdBlock(start, start + blockSize - 1);
+    }
+
+    private int refillMark() {
+      return Math.max(1, (int) (blockSize * refillThreshold));
+    }
+
+    private synchronized void reportUnused() {
+      IdBlock block = current;
+      if (block != null && block.cursor.get() <= block.end) {
+        log.warn(
+            "Sequence {} released unused IDs {}-{}", sequenceName, block.cursor.get(), block.end);
+      }
+      if (prefetched != null && prefetched.cursor.get() <= prefetched.end) {
+        log.warn(
+            "Sequence {} released unused IDs {}-{}",
+            sequenceName,
+            prefetched.cursor.get(),
+            prefetched.end);
+      }
+    }
+  }
 }
@@ -0,0 +1,50 @@
+package com.randomlake.library.util;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Blocking token-bucket rate limiter. Up to permitsPerSecond calls pass straight through as a
+ * burst; after that each caller reserves the next free slot and sleeps until it comes up, so the
+ * long-run rate never exceeds the configured limit however many threads share the bucket.
+ */
+public class TokenBucket {
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final double capacity;
+  private final double nanosPerPermit;
+  private double availablePermits;
+  private long lastRefillNanos;
+
+  public TokenBucket(double permitsPerSecond) {
+    if (permitsPerSecond <= 0) {
+      throw new IllegalArgumentException("Rate must be greater than zero");
+    }
+    this.capacity = Math.max(1, permitsPerSecond);
+    this.nanosPerPermit = NANOS_PER_SECOND / permitsPerSecond;
+    this.availablePermits = capacity;
+    this.lastRefillNanos = System.nanoTime();
+  }
+
+  // Blocks until a permit is available; returns early if the thread is interrupted
+  public void acquire() {
+    long waitNanos = reserve();
+    if (waitNanos > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  // Takes a permit, possibly one not yet refilled, and returns how long to wait before using it
+  synchronized long reserve() {
+    long now = System.nanoTime();
+    availablePermits =
+        Math.min(capacity, availablePermits + (now - lastRefillNanos) / nanosPerPermit);
+    lastRefillNanos = now;
+    availablePermits -= 1;
+    return availablePermits >= 0 ? 0 : (long) (-availablePermits * nanosPerPermit);
+  }
+}
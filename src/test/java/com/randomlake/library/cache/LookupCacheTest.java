@@ -0,0 +1,91 @@
+package com.randomlake.library.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.randomlake.library.enums.MediaStatus;
+import com.randomlake.library.model.Media;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+public class LookupCacheTest {
+
+  private MediaLookupCache cache;
+  private AtomicInteger loads;
+
+  @BeforeEach
+  public void setup() {
+    MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+    MongoMappingContext mappingContext = new MongoMappingContext();
+    mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+    MappingMongoConverter converter =
+        new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+    converter.setCustomConversions(conversions);
+    converter.afterPropertiesSet();
+    cache = new MediaLookupCache(converter, 100, 300);
+    loads = new AtomicInteger();
+  }
+
+  @Test
+  public void testGet_HitReturnsIndependentCopy() {
+    Optional<Media> first = cache.get(1, this::load);
+    first.get().setStatus(MediaStatus.CHECKED_OUT);
+
+    Optional<Media> second = cache.get(1, this::load);
+
+    assertEquals(1, loads.get());
+    assertEquals(MediaStatus.AVAILABLE, second.get().getStatus());
+    assertNotSame(first.get(), second.get());
+    assertEquals(1, cache.stats().hitCount());
+    assertEquals(1, cache.stats().missCount());
+  }
+
+  @Test
+  public void testGet_AbsentEntityIsNotCached() {
+    assertTrue(cache.get(2, id -> Optional.empty()).isEmpty());
+    assertTrue(cache.get(2, this::load).isPresent());
+
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void testInvalidate_NextGetReloads() {
+    cache.get(1, this::load);
+    cache.get(3, this::load);
+
+    cache.invalidate(1);
+    cache.get(1, this::load);
+    cache.invalidateAll(List.of(1, 3));
+    cache.get(3, this::load);
+
+    assertEquals(4, loads.get());
+  }
+
+  @Test
+  public void testMaximumSize_EvictsEntries() {
+    MediaLookupCache small = new MediaLookupCache(2, Duration.ofMinutes(5), media -> media);
+    for (int id = 1; id <= 10; id++) {
+      small.get(id, this::load);
+    }
+    small.cleanUp();
+
+    assertTrue(small.estimatedSize() <= 2);
+    assertTrue(small.stats().evictionCount() >= 8);
+  }
+
+  private Optional<Media> load(int mediaId) {
+    loads.incrementAndGet();
+    Media media = new Media();
+    media.setMediaId(mediaId);
+    media.setMediaTitle("Title " + mediaId);
+    media.setStatus(MediaStatus.AVAILABLE);
+    return Optional.of(media);
+  }
+}
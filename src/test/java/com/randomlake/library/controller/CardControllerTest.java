@@ -16,6 +16,7 @@ import com.randomlake.library.dto.CardStatusUpdateRequest;
 import com.randomlake.library.enums.CardStatus;
 import com.randomlake.library.model.Card;
 import com.randomlake.library.service.CardService;
+import com.randomlake.library.util.Precondition;
 import java.time.LocalDateTime;
 import java.util.*;
 import org.bson.types.ObjectId;
@@ -142,7 +143,7 @@ public class CardControllerTest {
     CardStatus newStatus = CardStatus.LOST;
     card1.setStatus(newStatus);
 
-    when(cardService.updateCardStatus(1, newStatus)).thenReturn(card1);
+    when(cardService.updateCardStatus(1, newStatus, Precondition.NONE)).thenReturn(card1);
 
     CardStatusUpdateRequest request = new CardStatusUpdateRequest();
     request.setNewStatus(newStatus);
@@ -155,6 +156,6 @@ public class CardControllerTest {
         .andExpect(status().isOk())
         .andExpect(jsonPath("$.status").value("LOST"));
 
-    verify(cardService).updateCardStatus(1, newStatus);
+    verify(cardService).updateCardStatus(1, newStatus, Precondition.NONE);
   }
 }
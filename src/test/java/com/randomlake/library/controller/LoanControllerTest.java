@@ -8,6 +8,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.randomlake.library.config.TestSecurityConfig;
 import com.randomlake.library.dto.LoanActionRequest;
 import com.randomlake.library.dto.LoanResponse;
+import com.randomlake.library.dto.PageResponse;
+import com.randomlake.library.dto.TransactionLogResponse;
 import com.randomlake.library.dto.TransactionResponse;
 import com.randomlake.library.enums.ExceptionType;
 import com.randomlake.library.enums.ItemStatus;
@@ -67,13 +69,6 @@ public class LoanControllerTest {
     loanItem.setStatus(ItemStatus.CHECKED_OUT);
 
     loan.setItems(List.of(loanItem));
-
-    Loan.TransactionLog transactionLog = new Loan.TransactionLog();
-    transactionLog.setTransactionType(TransactionType.CHECKOUT);
-    transactionLog.setTransactionDate(LocalDateTime.now());
-    transactionLog.setMediaIds(List.of(mediaId));
-
-    loan.setTransactionLog(List.of(transactionLog));
   }
 
   @Test
@@ -352,4 +347,25 @@ public class LoanControllerTest {
 
     verify(loanService, times(1)).deleteLoanById(nonExistentLoanId);
   }
+
+  @Test
+  public void testGetLoanTransactions_ReturnsPage() throws Exception {
+    TransactionLogResponse checkout = new TransactionLogResponse();
+    checkout.setTransactionType(TransactionType.CHECKOUT);
+    checkout.setTransactionDate(LocalDateTime.of(2024, 10, 1, 12, 0));
+    checkout.setMediaIds(List.of(mediaId));
+
+    when(loanService.getLoanLedgerPage(loanId, "abc", 10))
+        .thenReturn(new PageResponse<>(List.of(checkout), "def"));
+
+    mockMvc
+        .perform(
+            get("/api/loans/{loanId}/transactions", loanId)
+                .param("cursor", "abc")
+                .param("size", "10"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items[0].transactionType").value("CHECKOUT"))
+        .andExpect(jsonPath("$.items[0].mediaIds[0]").value(mediaId))
+        .andExpect(jsonPath("$.nextCursor").value("def"));
+  }
 }
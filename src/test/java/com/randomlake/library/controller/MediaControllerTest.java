@@ -3,38 +3,62 @@ package com.randomlake.library.controller;
 import static com.randomlake.library.enums.MediaStatus.AVAILABLE;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.result.UpdateResult;
 import com.randomlake.library.config.TestSecurityConfig;
+import com.randomlake.library.dto.MediaIntakeResult;
+import com.randomlake.library.dto.PageResponse;
+import com.randomlake.library.dto.SearchResponse;
 import com.randomlake.library.enums.MediaStatus;
+import com.randomlake.library.exception.PreconditionFailedException;
 import com.randomlake.library.model.Media;
+import com.randomlake.library.service.MediaIntakeService;
+import com.randomlake.library.service.MediaSearchService;
 import com.randomlake.library.service.MediaService;
+import com.randomlake.library.util.ConditionalRequests;
+import com.randomlake.library.util.Precondition;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import org.bson.types.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 @ContextConfiguration(classes = {TestSecurityConfig.class})
 @WebMvcTest(MediaController.class)
 public class MediaControllerTest {
 
   @Autowired private MockMvc mockMvc;
+  @Autowired private ObjectMapper objectMapper;
 
   @MockitoBean private MediaService mediaService;
+  @MockitoBean private MediaSearchService mediaSearchService;
+  @MockitoBean private MediaIntakeService mediaIntakeService;
 
   // Declare reusable media instances
   private Media media1;
@@ -63,7 +87,8 @@ public class MediaControllerTest {
             LocalDate.now(),
             LocalDateTime.now(),
             AVAILABLE,
-            false);
+            false,
+            0L);
     media2 =
         new Media(
             new ObjectId(),
@@ -84,7 +109,8 @@ public class MediaControllerTest {
             LocalDate.now(),
             LocalDateTime.now(),
             MediaStatus.CHECKED_OUT,
-            true);
+            true,
+            0L);
   }
 
   @Test
@@ -103,6 +129,102 @@ public class MediaControllerTest {
         .andExpect(jsonPath("$[1].authorName").value("Author2"));
   }
 
+  @Test
+  public void testGetMediaPage_ReturnsItemsAndCursor() throws Exception {
+    when(mediaService.getMediaPage("abc", 2))
+        .thenReturn(new PageResponse<>(List.of(media1, media2), "next"));
+
+    mockMvc
+        .perform(get("/api/collection/media/page").param("cursor", "abc").param("size", "2"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items", hasSize(2)))
+        .andExpect(jsonPath("$.items[1].mediaId", is(2)))
+        .andExpect(jsonPath("$.nextCursor", is("next")));
+  }
+
+  @Test
+  public void testAddMediaBulk_WritesOneResultLinePerRow() throws Exception {
+    doAnswer(
+            invocation -> {
+              Consumer<MediaIntakeResult> sink = invocation.getArgument(1);
+              sink.accept(MediaIntakeResult.created(1, 1001, "39900100010011"));
+              sink.accept(MediaIntakeResult.failed(2, "Media title cannot be empty"));
+              return null;
+            })
+        .when(mediaIntakeService)
+        .ingest(any(), any());
+
+    MvcResult result =
+        mockMvc
+            .perform(
+                post("/api/collection/media/bulk")
+                    .contentType("application/x-ndjson")
+                    .content("{\"mediaTitle\":\"Shogun\"}\n{\"authorName\":\"Clavell\"}\n"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    result.getAsyncResult();
+
+    String body =
+        mockMvc
+            .perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/x-ndjson"))
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+    String[] lines = body.split("\n");
+    assertEquals(2, lines.length);
+    assertEquals(1001, objectMapper.readTree(lines[0]).get("mediaId").asInt());
+    assertEquals("FAILED", objectMapper.readTree(lines[1]).get("status").asText());
+  }
+
+  @Test
+  public void testStreamMedia_WritesOneJsonLinePerItem() throws Exception {
+    when(mediaService.streamAllMedia()).thenReturn(Stream.of(media1, media2));
+
+    MvcResult result =
+        mockMvc
+            .perform(get("/api/collection/media/stream"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    // Wait for the body to be written before dispatching, or the two race on the response
+    result.getAsyncResult();
+
+    String body =
+        mockMvc
+            .perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/x-ndjson"))
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+    String[] lines = body.split("\n");
+    assertEquals(2, lines.length);
+    assertEquals("Title1", objectMapper.readTree(lines[0]).get("mediaTitle").asText());
+    assertEquals(2, objectMapper.readTree(lines[1]).get("mediaId").asInt());
+  }
+
+  @Test
+  public void testSearchMedia_PassesFiltersAndReturnsRankedPage() throws Exception {
+    when(mediaSearchService.search("harry pot", "Book", null, MediaStatus.AVAILABLE, 0, 20))
+        .thenReturn(new SearchResponse<>(List.of(media2, media1), 2, 0, 20));
+
+    mockMvc
+        .perform(
+            get("/api/collection/media/search")
+                .param("q", "harry pot")
+                .param("mediaType", "Book")
+                .param("status", "AVAILABLE")
+                .param("page", "0")
+                .param("size", "20"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalHits", is(2)))
+        .andExpect(jsonPath("$.items[0].mediaId", is(2)))
+        .andExpect(jsonPath("$.items[1].mediaId", is(1)));
+  }
+
   @Test
   public void testGetMediaById_Success() throws Exception {
 
@@ -127,6 +249,67 @@ public class MediaControllerTest {
         .andExpect(jsonPath("$.status", is("AVAILABLE")));
   }
 
+  @Test
+  public void testGetMediaById_SendsValidatorsAndAnswers304WithoutLoading() throws Exception {
+    when(mediaService.getMediaById(1)).thenReturn(media1);
+
+    String etag =
+        mockMvc
+            .perform(get("/api/collection/media/{mediaId}", 1))
+            .andExpect(status().isOk())
+            .andExpect(header().exists("Last-Modified"))
+            .andReturn()
+            .getResponse()
+            .getHeader("ETag");
+    assertEquals(ConditionalRequests.etag("media", 1, media1.getLastUpdateDate()), etag);
+
+    when(mediaService.getMediaLastUpdateDate(1))
+        .thenReturn(Optional.of(media1.getLastUpdateDate()));
+
+    mockMvc
+        .perform(get("/api/collection/media/{mediaId}", 1).header("If-None-Match", etag))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string("ETag", etag))
+        .andExpect(content().string(""));
+
+    verify(mediaService, times(1)).getMediaById(1);
+  }
+
+  @Test
+  public void testGetMediaById_ChangedSinceETagReturnsBody() throws Exception {
+    when(mediaService.getMediaLastUpdateDate(1))
+        .thenReturn(Optional.of(media1.getLastUpdateDate()));
+    when(mediaService.getMediaById(1)).thenReturn(media1);
+
+    mockMvc
+        .perform(get("/api/collection/media/{mediaId}", 1).header("If-None-Match", "\"stale\""))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.mediaId", is(1)));
+  }
+
+  @Test
+  public void testPatchUpdateMedia_StaleIfMatchRejected() throws Exception {
+    LocalDateTime seen = media2.getLastUpdateDate().minusMinutes(5);
+    String current = ConditionalRequests.etag("media", 2, media2.getLastUpdateDate());
+    when(mediaService.updateMediaPartial(eq(2), anyMap(), any(Precondition.class)))
+        .thenThrow(new PreconditionFailedException(current));
+
+    mockMvc
+        .perform(
+            patch("/api/collection/media/{mediaId}", 2)
+                .header("If-Match", ConditionalRequests.etag("media", 2, seen))
+                .contentType("application/json")
+                .content("{ \"publisherName\": \"Random Lake Communications\" }"))
+        .andExpect(status().isPreconditionFailed())
+        .andExpect(header().string("ETag", current));
+
+    // The precondition goes to the service, which makes it part of the write
+    ArgumentCaptor<Precondition> captor = ArgumentCaptor.forClass(Precondition.class);
+    verify(mediaService).updateMediaPartial(eq(2), anyMap(), captor.capture());
+    assertTrue(captor.getValue().matches(seen));
+    assertFalse(captor.getValue().matches(media2.getLastUpdateDate()));
+  }
+
   @Test
   public void testGetMediaById_NotFound() throws Exception {
     when(mediaService.getMediaById(1)).thenReturn(null);
@@ -265,9 +448,11 @@ public class MediaControllerTest {
             media2.getAcquisitionDate(),
             media2.getLastUpdateDate(),
             media2.getStatus(),
-            media2.isSensitive());
+            media2.isSensitive(),
+            media2.getVersion());
 
-    when(mediaService.updateMediaFull(eq(2), any(Media.class))).thenReturn(updatedMedia);
+    when(mediaService.updateMediaFull(eq(2), any(Media.class), eq(Precondition.NONE)))
+        .thenReturn(updatedMedia);
 
     mockMvc
         .perform(
@@ -307,10 +492,12 @@ public class MediaControllerTest {
             media2.getAcquisitionDate(),
             media2.getLastUpdateDate(),
             media2.getStatus(),
-            media2.isSensitive());
+            media2.isSensitive(),
+            media2.getVersion());
 
     // Mock the MediaService to return the patched media object
-    when(mediaService.updateMediaPartial(eq(2), anyMap())).thenReturn(patchUpdatedMedia);
+    when(mediaService.updateMediaPartial(eq(2), anyMap(), eq(Precondition.NONE)))
+        .thenReturn(patchUpdatedMedia);
 
     // Perform the PATCH request and assert the response
     mockMvc
@@ -322,6 +509,37 @@ public class MediaControllerTest {
         .andExpect(jsonPath("$.publisherName", is("Random Lake Communications")));
   }
 
+  @Test
+  public void testPatchUpdateMediaMatching_ReturnsCounts() throws Exception {
+    when(mediaService.updateMediaMatching(
+            Map.of("publisherName", "Random House"),
+            Map.of("publisherName", "Penguin Random House")))
+        .thenReturn(UpdateResult.acknowledged(3, 3L, null));
+
+    mockMvc
+        .perform(
+            patch("/api/collection/media")
+                .contentType("application/json")
+                .content(
+                    "{ \"filter\": { \"publisherName\": \"Random House\" },"
+                        + " \"updates\": { \"publisherName\": \"Penguin Random House\" } }"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.matchedCount", is(3)))
+        .andExpect(jsonPath("$.modifiedCount", is(3)));
+  }
+
+  @Test
+  public void testPatchUpdateMediaMatching_MissingFilter() throws Exception {
+    mockMvc
+        .perform(
+            patch("/api/collection/media")
+                .contentType("application/json")
+                .content("{ \"updates\": { \"publisherName\": \"Penguin Random House\" } }"))
+        .andExpect(status().isBadRequest());
+
+    verify(mediaService, never()).updateMediaMatching(any(), any());
+  }
+
   @Test
   public void testDeleteMedia_Success() throws Exception {
 
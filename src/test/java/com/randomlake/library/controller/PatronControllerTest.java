@@ -10,8 +10,13 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.randomlake.library.config.TestSecurityConfig;
+import com.randomlake.library.enums.ImportFormat;
+import com.randomlake.library.enums.ImportJobStatus;
 import com.randomlake.library.model.Patron;
+import com.randomlake.library.model.PatronImportJob;
+import com.randomlake.library.service.PatronImportService;
 import com.randomlake.library.service.PatronService;
+import com.randomlake.library.util.Precondition;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
@@ -31,6 +36,7 @@ public class PatronControllerTest {
   @Autowired private MockMvc mockMvc;
 
   @MockitoBean private PatronService patronService;
+  @MockitoBean private PatronImportService patronImportService;
 
   // Declare reusable patron instances
   private Patron patron1;
@@ -55,7 +61,8 @@ public class PatronControllerTest {
             "john.public@example.com",
             "email",
             ACTIVE,
-            Collections.singletonList(0));
+            Collections.singletonList(0),
+            0L);
     patron2 =
         new Patron(
             new ObjectId(),
@@ -72,7 +79,8 @@ public class PatronControllerTest {
             "jane.public@example.com",
             "email",
             ACTIVE,
-            Collections.singletonList(0));
+            Collections.singletonList(0),
+            0L);
   }
 
   @Test
@@ -253,9 +261,11 @@ public class PatronControllerTest {
             patron2.getEmailAddress(),
             patron2.getContactMethod(),
             patron2.getStatus(),
-            Collections.singletonList(0));
+            Collections.singletonList(0),
+            0L);
 
-    when(patronService.updatePatron(eq(2), isNull(), any(Patron.class))).thenReturn(updatedPatron);
+    when(patronService.updatePatron(eq(2), isNull(), any(Patron.class), eq(Precondition.NONE)))
+        .thenReturn(updatedPatron);
 
     mockMvc
         .perform(
@@ -291,10 +301,12 @@ public class PatronControllerTest {
             patron2.getEmailAddress(),
             patron2.getContactMethod(),
             patron2.getStatus(),
-            Collections.singletonList(0));
+            Collections.singletonList(0),
+            0L);
 
     // Mock the PatronService to return the patched patron object
-    when(patronService.updatePatron(eq(2), anyMap(), isNull())).thenReturn(patchUpdatedPatron);
+    when(patronService.updatePatron(eq(2), anyMap(), isNull(), eq(Precondition.NONE)))
+        .thenReturn(patchUpdatedPatron);
 
     // Perform the PATCH request and assert the response
     mockMvc
@@ -305,4 +317,41 @@ public class PatronControllerTest {
         .andExpect(status().isOk())
         .andExpect(jsonPath("$.telephoneMobile", is("9991112222")));
   }
+
+  @Test
+  public void testImportPatrons_CsvQueuesJob() throws Exception {
+    PatronImportJob job = new PatronImportJob();
+    job.setJobId("job-1");
+    job.setFormat(ImportFormat.CSV);
+    job.setStatus(ImportJobStatus.QUEUED);
+    when(patronImportService.submit(eq(ImportFormat.CSV), any(), anyString())).thenReturn(job);
+
+    mockMvc
+        .perform(
+            post("/api/patrons/import")
+                .contentType("text/csv")
+                .content("patronName,dateOfBirth\r\nJohn Q. Public,1969-07-20\r\n"))
+        .andExpect(status().isAccepted())
+        .andExpect(jsonPath("$.jobId", is("job-1")))
+        .andExpect(jsonPath("$.status", is("QUEUED")));
+  }
+
+  @Test
+  public void testGetImportJob_ReportsProgress() throws Exception {
+    PatronImportJob job = new PatronImportJob();
+    job.setJobId("job-1");
+    job.setFormat(ImportFormat.JSON);
+    job.setStatus(ImportJobStatus.RUNNING);
+    job.setRowsProcessed(2000);
+    job.setCreated(1990);
+    job.setDuplicates(10);
+    when(patronImportService.getJob("job-1")).thenReturn(job);
+
+    mockMvc
+        .perform(get("/api/patrons/import/{jobId}", "job-1"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.status", is("RUNNING")))
+        .andExpect(jsonPath("$.rowsProcessed", is(2000)))
+        .andExpect(jsonPath("$.duplicates", is(10)));
+  }
 }
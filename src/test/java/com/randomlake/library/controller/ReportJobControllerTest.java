@@ -0,0 +1,74 @@
+package com.randomlake.library.controller;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.randomlake.library.config.TestSecurityConfig;
+import com.randomlake.library.model.ReportJob;
+import com.randomlake.library.report.ReportFormat;
+import com.randomlake.library.service.ReportJobService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+@ContextConfiguration(classes = {TestSecurityConfig.class})
+@WebMvcTest(ReportJobController.class)
+public class ReportJobControllerTest {
+
+  @MockitoBean private ReportJobService reportJobService;
+
+  @Autowired private MockMvc mockMvc;
+
+  @BeforeEach
+  void setup() {
+    ReportJob job = new ReportJob();
+    job.setJobId("job-1");
+    job.setReportName("overdue-loans");
+    job.setFormat(ReportFormat.CSV);
+    job.setResultSize(42);
+    when(reportJobService.getJob("job-1")).thenReturn(job);
+  }
+
+  @Test
+  void testGetResult_GzipWhenAccepted() throws Exception {
+    mockMvc
+        .perform(get("/api/reports/jobs/job-1/result").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+        .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING));
+
+    verify(reportJobService).openResult(any(ReportJob.class), eq(true));
+  }
+
+  @Test
+  void testGetResult_GzipWithZeroQualityIsRefused() throws Exception {
+    mockMvc
+        .perform(
+            get("/api/reports/jobs/job-1/result")
+                .header(HttpHeaders.ACCEPT_ENCODING, "br, gzip;q=0, *;q=0.5"))
+        .andExpect(status().isOk())
+        .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+        .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING));
+
+    verify(reportJobService).openResult(any(ReportJob.class), eq(false));
+  }
+
+  @Test
+  void testGetResult_WildcardAcceptsGzip() throws Exception {
+    mockMvc
+        .perform(
+            get("/api/reports/jobs/job-1/result")
+                .header(HttpHeaders.ACCEPT_ENCODING, "identity;q=0.5, *;q=0.1"))
+        .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+  }
+}
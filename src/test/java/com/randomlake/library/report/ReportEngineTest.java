@@ -0,0 +1,144 @@
+package com.randomlake.library.report;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.randomlake.library.exception.GeneralException;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+@ExtendWith(MockitoExtension.class)
+public class ReportEngineTest {
+
+  @Mock private MongoTemplate mongoTemplate;
+
+  private ReportEngine reportEngine;
+
+  @BeforeEach
+  public void setUp() {
+    ObjectMapper objectMapper =
+        new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    reportEngine = new ReportEngine(mongoTemplate, objectMapper);
+    ReflectionTestUtils.setField(reportEngine, "batchSize", 100);
+  }
+
+  @Test
+  public void testBuildAggregation_FiltersFirstAndProjectsSelectedColumns() {
+    ReportDefinition report = ReportCatalog.CARDS_PATRONS;
+    List<ReportDefinition.Column> columns =
+        report.columns().stream()
+            .filter(column -> column.name().equals("cardId") || column.name().equals("patronName"))
+            .toList();
+
+    Aggregation aggregation =
+        reportEngine.buildAggregation(
+            report, Map.of("patronId", "7", "cardStatus", "ACTIVE", "format", "csv"), columns);
+    List<Document> pipeline = aggregation.toPipeline(Aggregation.DEFAULT_CONTEXT);
+
+    Document match = pipeline.get(0).get("$match", Document.class);
+    assertEquals(7, match.get("patron_id"));
+    assertEquals("ACTIVE", match.get("card_status"));
+    assertFalse(match.containsKey("format"));
+    assertEquals(
+        new Document("_id", 0).append("cardId", "$cardId").append("patronName", "$p.patron_name"),
+        pipeline.get(pipeline.size() - 1).get("$project", Document.class));
+    assertTrue(aggregation.getOptions().isAllowDiskUse());
+  }
+
+  @Test
+  public void testBuildAggregation_NoFiltersStartsWithSort() {
+    Aggregation aggregation =
+        reportEngine.buildAggregation(
+            ReportCatalog.LOAN_ITEMS, Map.of(), ReportCatalog.LOAN_ITEMS.columns());
+
+    assertTrue(aggregation.toPipeline(Aggregation.DEFAULT_CONTEXT).get(0).containsKey("$sort"));
+  }
+
+  @Test
+  public void testExport_CsvWritesSelectedColumnsAndClosesCursor() throws Exception {
+    AtomicBoolean closed = new AtomicBoolean();
+    Date dueDate =
+        Date.from(LocalDate.of(2024, 10, 15).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    when(mongoTemplate.aggregateStream(any(Aggregation.class), eq("loans"), eq(Document.class)))
+        .thenReturn(
+            Stream.of(
+                    new Document("mediaTitle", "Dune, Messiah").append("dueDate", dueDate),
+                    new Document("mediaTitle", "Emma"))
+                .onClose(() -> closed.set(true)));
+
+    String csv =
+        write(
+            reportEngine.export(
+                ReportCatalog.LOAN_ITEMS,
+                Map.of(),
+                List.of("mediaTitle", "dueDate"),
+                ReportFormat.CSV));
+
+    assertEquals("mediaTitle,dueDate\r\n\"Dune, Messiah\",2024-10-15\r\nEmma,\r\n", csv);
+    assertTrue(closed.get());
+  }
+
+  @Test
+  public void testExport_JsonWritesArray() throws Exception {
+    when(mongoTemplate.aggregateStream(any(Aggregation.class), eq("cards"), eq(Document.class)))
+        .thenReturn(Stream.of(new Document("cardId", 1), new Document("cardId", 2)));
+
+    String json =
+        write(
+            reportEngine.export(
+                ReportCatalog.CARDS_PATRONS, Map.of(), List.of("cardId"), ReportFormat.JSON));
+
+    assertEquals("[{\"cardId\":1},{\"cardId\":2}]", json);
+  }
+
+  @Test
+  public void testExport_UnknownColumnRejected() {
+    GeneralException exception =
+        assertThrows(
+            GeneralException.class,
+            () ->
+                reportEngine.export(
+                    ReportCatalog.CARDS_PATRONS, Map.of(), List.of("password"), ReportFormat.CSV));
+
+    assertEquals(HttpStatus.BAD_REQUEST, exception.getHttpStatus());
+    verifyNoInteractions(mongoTemplate);
+  }
+
+  @Test
+  public void testExport_NonNumericFilterRejected() {
+    assertThrows(
+        GeneralException.class,
+        () ->
+            reportEngine.export(
+                ReportCatalog.CARDS_PATRONS, Map.of("cardId", "abc"), null, ReportFormat.NDJSON));
+  }
+
+  private static String write(StreamingResponseBody body) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    body.writeTo(out);
+    return out.toString(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,68 @@
+package com.randomlake.library.search;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.randomlake.library.search.AutocompleteTrie.Suggestion;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class AutocompleteTrieTest {
+
+  private AutocompleteTrie trie;
+
+  @BeforeEach
+  public void setup() {
+    trie = new AutocompleteTrie(3);
+    trie.add("J. K. Rowling");
+    trie.add("J. K. Rowling");
+    trie.add("J. K. Rowling");
+    trie.add("Jane Austen");
+    trie.add("Jane Austen");
+    trie.add("José Saramago");
+  }
+
+  @Test
+  public void testSuggest_RanksByWeight() {
+    assertEquals(
+        List.of(
+            new Suggestion("J. K. Rowling", 3),
+            new Suggestion("Jane Austen", 2),
+            new Suggestion("José Saramago", 1)),
+        trie.suggest("j", 10));
+    assertEquals(List.of(new Suggestion("J. K. Rowling", 3)), trie.suggest("J", 1));
+  }
+
+  @Test
+  public void testSuggest_MatchesStartOfAnyWordIgnoringAccents() {
+    assertEquals(List.of(new Suggestion("J. K. Rowling", 3)), trie.suggest("ROWL", 10));
+    assertEquals(List.of(new Suggestion("José Saramago", 1)), trie.suggest("jose s", 10));
+    assertTrue(trie.suggest("owling", 10).isEmpty());
+  }
+
+  @Test
+  public void testSuggest_MatchesPrefixLongerThanTreeDepth() {
+    trie.add("Jane Austen Society");
+
+    assertEquals(
+        List.of(new Suggestion("Jane Austen", 2), new Suggestion("Jane Austen Society", 1)),
+        trie.suggest("jane austen", 10));
+    assertEquals(
+        List.of(new Suggestion("Jane Austen Society", 1)), trie.suggest("austen societ", 10));
+  }
+
+  @Test
+  public void testAddAndRemove_ReorderCachedSuggestions() {
+    assertEquals("J. K. Rowling", trie.suggest("j", 1).get(0).text());
+
+    trie.remove("J. K. Rowling");
+    trie.remove("J. K. Rowling");
+
+    assertEquals(new Suggestion("Jane Austen", 2), trie.suggest("j", 1).get(0));
+
+    trie.remove("J. K. Rowling");
+
+    assertTrue(trie.suggest("rowling", 10).isEmpty());
+    assertEquals(2, trie.size());
+  }
+}
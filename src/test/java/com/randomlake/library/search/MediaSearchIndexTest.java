@@ -0,0 +1,116 @@
+package com.randomlake.library.search;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.randomlake.library.enums.MediaStatus;
+import com.randomlake.library.model.Media;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MediaSearchIndexTest {
+
+  private static final LocalDateTime UPDATED = LocalDateTime.of(2024, 6, 1, 12, 0);
+
+  private MediaSearchIndex index;
+
+  @BeforeEach
+  public void setup() {
+    index = new MediaSearchIndex(64);
+    index.index(media(1, "Harry Potter and the Philosopher's Stone", "J. K. Rowling", "Book"));
+    index.index(media(2, "Harry Potter and the Chamber of Secrets", "J. K. Rowling", "Book"));
+    index.index(media(3, "Les Misérables", "Victor Hugo", "Book"));
+    index.index(media(4, "The Pottery Handbook", "Harry Davis", "Magazine"));
+  }
+
+  @Test
+  public void testSearch_MatchesPartialLastWordCaseInsensitively() {
+    MediaSearchIndex.SearchHits hits = index.search("HARRY pot", null, null, null, 0, 10);
+
+    assertEquals(3, hits.totalHits());
+    // Title matches outrank the author match on "Harry"
+    assertEquals(List.of(1, 2, 4), hits.mediaIds());
+  }
+
+  @Test
+  public void testSearch_FoldsAccentsInQueryAndIndex() {
+    assertEquals(List.of(3), index.search("miserables", null, null, null, 0, 10).mediaIds());
+    assertEquals(List.of(3), index.search("Misérables", null, null, null, 0, 10).mediaIds());
+  }
+
+  @Test
+  public void testSearch_AllWordsMustMatch() {
+    assertEquals(0, index.search("harry hugo", null, null, null, 0, 10).totalHits());
+  }
+
+  @Test
+  public void testSearch_AppliesFiltersAndPaging() {
+    MediaSearchIndex.SearchHits magazines = index.search("harry", "magazine", null, null, 0, 10);
+    assertEquals(List.of(4), magazines.mediaIds());
+
+    MediaSearchIndex.SearchHits secondPage = index.search("harry", null, null, null, 1, 1);
+    assertEquals(3, secondPage.totalHits());
+    assertEquals(List.of(2), secondPage.mediaIds());
+
+    assertEquals(0, index.search("harry", null, null, MediaStatus.CHECKED_OUT, 0, 10).totalHits());
+  }
+
+  @Test
+  public void testSearch_PrefixCapKeepsMostFrequentCompletions() {
+    MediaSearchIndex capped = new MediaSearchIndex(2);
+    capped.index(media(1, "Harry Potter and the Philosopher's Stone", "J. K. Rowling", "Book"));
+    capped.index(media(2, "The Potter's Field", "Ellis Peters", "Book"));
+    capped.index(media(3, "Potash Mining", "Ann Lee", "Magazine"));
+    capped.index(media(4, "Potato Growing", "Ann Lee", "Magazine"));
+    capped.index(media(5, "The Potboiler", "Harry Crews", "Book"));
+
+    // "potash" and "potato" sort first, but "potter" is in the most items; "potash" wins the tie
+    assertEquals(List.of(1, 2, 3), capped.search("pot", null, null, null, 0, 10).mediaIds());
+    // Not the last word, so capped: "potboiler" is one of the rarer completions
+    assertEquals(List.of(1), capped.search("pot harry", null, null, null, 0, 10).mediaIds());
+    // The last word is expanded to every completion
+    MediaSearchIndex.SearchHits hits = capped.search("harry pot", null, null, null, 0, 10);
+    assertEquals(2, hits.totalHits());
+    assertEquals(List.of(1, 5), hits.mediaIds());
+  }
+
+  @Test
+  public void testIndex_ReplacesTermsOfUpdatedItem() {
+    Media renamed = media(4, "Ceramics Today", "Harry Davis", "Magazine");
+    renamed.setLastUpdateDate(UPDATED.plusMinutes(1));
+    index.index(renamed);
+
+    assertEquals(List.of(1, 2), index.search("pott", null, null, null, 0, 10).mediaIds());
+    assertEquals(List.of(4), index.search("ceramics", null, null, null, 0, 10).mediaIds());
+  }
+
+  @Test
+  public void testIndex_IgnoresOlderVersion() {
+    Media stale = media(3, "Notre-Dame de Paris", "Victor Hugo", "Book");
+    stale.setLastUpdateDate(UPDATED.minusDays(1));
+    index.index(stale);
+
+    assertEquals(List.of(3), index.search("miserables", null, null, null, 0, 10).mediaIds());
+  }
+
+  @Test
+  public void testRemove_DropsItemFromResults() {
+    index.remove(1);
+
+    assertEquals(0, index.search("philosopher", null, null, null, 0, 10).totalHits());
+    assertEquals(List.of(2), index.search("rowling", null, null, null, 0, 10).mediaIds());
+    assertEquals(3, index.size());
+  }
+
+  private static Media media(int mediaId, String title, String author, String mediaType) {
+    Media media = new Media();
+    media.setMediaId(mediaId);
+    media.setMediaTitle(title);
+    media.setAuthorName(author);
+    media.setMediaType(mediaType);
+    media.setStatus(MediaStatus.AVAILABLE);
+    media.setLastUpdateDate(UPDATED);
+    return media;
+  }
+}
@@ -0,0 +1,85 @@
+package com.randomlake.library.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.randomlake.library.dto.ChangeSetResponse;
+import com.randomlake.library.model.Media;
+import com.randomlake.library.model.Patron;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@ExtendWith(MockitoExtension.class)
+public class AutocompleteServiceTest {
+
+  @Mock private SyncService syncService;
+
+  private AutocompleteService autocompleteService;
+
+  @BeforeEach
+  public void setUp() {
+    autocompleteService = new AutocompleteService(syncService, 10);
+    ReflectionTestUtils.setField(autocompleteService, "refreshBatchSize", 500);
+  }
+
+  @Test
+  public void testRefresh_AppliesMediaAndPatronFeeds() {
+    when(syncService.getMediaChanges(isNull(), eq(500)))
+        .thenReturn(new ChangeSetResponse<>(List.of(media(1, "Shogun")), List.of(), "m1", false));
+    when(syncService.getPatronChanges(isNull(), eq(500)))
+        .thenReturn(new ChangeSetResponse<>(List.of(patron(7, "Jane")), List.of(), "p1", false));
+
+    autocompleteService.refresh();
+
+    assertEquals(1, autocompleteService.suggestTitles("sho", 5).size());
+    assertEquals(1, autocompleteService.suggestPatronNames("ja", 5).size());
+  }
+
+  @Test
+  public void testIndexMedia_NotBlockedWhileRefreshReadsTheFeed() throws Exception {
+    CountDownLatch reading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(syncService.getMediaChanges(isNull(), eq(500)))
+        .thenAnswer(
+            invocation -> {
+              reading.countDown();
+              release.await(5, TimeUnit.SECONDS);
+              return new ChangeSetResponse<>(List.of(), List.of(), "m1", false);
+            });
+    when(syncService.getPatronChanges(isNull(), eq(500)))
+        .thenReturn(new ChangeSetResponse<Patron>(List.of(), List.of(), "p1", false));
+
+    CompletableFuture<Void> refresh = CompletableFuture.runAsync(autocompleteService::refresh);
+    assertTrue(reading.await(5, TimeUnit.SECONDS));
+
+    CompletableFuture.runAsync(() -> autocompleteService.indexMedia(media(2, "Tai-Pan")))
+        .get(1, TimeUnit.SECONDS);
+    assertEquals(1, autocompleteService.suggestTitles("tai", 5).size());
+
+    release.countDown();
+    refresh.get(5, TimeUnit.SECONDS);
+  }
+
+  private static Media media(int mediaId, String title) {
+    Media media = new Media();
+    media.setMediaId(mediaId);
+    media.setMediaTitle(title);
+    return media;
+  }
+
+  private static Patron patron(int patronId, String name) {
+    Patron patron = new Patron();
+    patron.setPatronId(patronId);
+    patron.setPatronName(name);
+    return patron;
+  }
+}
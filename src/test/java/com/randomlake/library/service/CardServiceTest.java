@@ -8,10 +8,14 @@ import com.randomlake.library.enums.CardStatus;
 import com.randomlake.library.enums.ExceptionType;
 import com.randomlake.library.enums.PatronStatus;
 import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.exception.PreconditionFailedException;
 import com.randomlake.library.model.Card;
 import com.randomlake.library.model.Patron;
 import com.randomlake.library.repository.CardRepository;
+import com.randomlake.library.util.ConditionalRequests;
+import com.randomlake.library.util.Precondition;
 import com.randomlake.library.util.SequenceGenerator;
+import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -22,6 +26,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
 
 @ExtendWith(MockitoExtension.class)
 public class CardServiceTest {
@@ -151,7 +156,7 @@ public class CardServiceTest {
     when(cardRepository.save(any(Card.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
     // Act
-    Card updatedCard = cardService.updateCardStatus(1, CardStatus.INACTIVE);
+    Card updatedCard = cardService.updateCardStatus(1, CardStatus.INACTIVE, Precondition.NONE);
 
     // Assert
     assertNotNull(updatedCard);
@@ -160,6 +165,49 @@ public class CardServiceTest {
     verify(cardRepository, times(1)).save(existingCard);
   }
 
+  @Test
+  public void testUpdateCardStatus_IfMatchWritesOnlyTheCheckedVersion() {
+    LocalDateTime seen = LocalDateTime.of(2024, 10, 1, 12, 0);
+    Card existingCard = new Card();
+    existingCard.setCardId(1);
+    existingCard.setStatus(CardStatus.ACTIVE);
+    existingCard.setLastUpdateDate(seen);
+    Card writtenCard = new Card();
+    writtenCard.setCardId(1);
+    writtenCard.setStatus(CardStatus.INACTIVE);
+
+    when(cardRepository.findByCardId(1)).thenReturn(Optional.of(existingCard));
+    when(cardRepository.updateStatus(
+            eq(1), eq(seen), eq(CardStatus.INACTIVE), any(LocalDateTime.class)))
+        .thenReturn(Optional.of(writtenCard));
+
+    assertSame(writtenCard, cardService.updateCardStatus(1, CardStatus.INACTIVE, ifMatch(seen)));
+    verify(cardRepository, never()).save(any(Card.class));
+  }
+
+  @Test
+  public void testUpdateCardStatus_ChangedAfterIfMatchChecked() {
+    LocalDateTime seen = LocalDateTime.of(2024, 10, 1, 12, 0);
+    Card existingCard = new Card();
+    existingCard.setCardId(1);
+    existingCard.setStatus(CardStatus.ACTIVE);
+    existingCard.setLastUpdateDate(seen);
+
+    when(cardRepository.findByCardId(1)).thenReturn(Optional.of(existingCard));
+    when(cardRepository.updateStatus(
+            eq(1), eq(seen), eq(CardStatus.INACTIVE), any(LocalDateTime.class)))
+        .thenReturn(Optional.empty());
+    when(cardRepository.findLastUpdateDate(1)).thenReturn(Optional.of(seen.plusSeconds(1)));
+
+    PreconditionFailedException exception =
+        assertThrows(
+            PreconditionFailedException.class,
+            () -> cardService.updateCardStatus(1, CardStatus.INACTIVE, ifMatch(seen)));
+
+    assertEquals(HttpStatus.PRECONDITION_FAILED, exception.getHttpStatus());
+    assertEquals(ConditionalRequests.etag("card", 1, seen.plusSeconds(1)), exception.getEtag());
+  }
+
   @Test
   public void testUpdateCardStatus_LostCardReactivation() {
     // Arrange
@@ -172,7 +220,8 @@ public class CardServiceTest {
     // Act & Assert
     GeneralException exception =
         assertThrows(
-            GeneralException.class, () -> cardService.updateCardStatus(1, CardStatus.ACTIVE));
+            GeneralException.class,
+            () -> cardService.updateCardStatus(1, CardStatus.ACTIVE, Precondition.NONE));
 
     assertEquals(ExceptionType.CARD_LOST, exception.getType());
     assertEquals(
@@ -189,7 +238,8 @@ public class CardServiceTest {
     // Act & Assert
     GeneralException exception =
         assertThrows(
-            GeneralException.class, () -> cardService.updateCardStatus(1, CardStatus.ACTIVE));
+            GeneralException.class,
+            () -> cardService.updateCardStatus(1, CardStatus.ACTIVE, Precondition.NONE));
 
     assertEquals(ExceptionType.CARD_NOT_FOUND, exception.getType());
     assertEquals("No card with this ID found", exception.getMessage());
@@ -296,4 +346,10 @@ public class CardServiceTest {
     verify(patronService, times(1)).getPatronById(patronId);
     verify(cardRepository, never()).save(any(Card.class));
   }
+
+  private static Precondition ifMatch(LocalDateTime seen) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader("If-Match", ConditionalRequests.etag("card", 1, seen));
+    return ConditionalRequests.ifMatch(request, "card", 1);
+  }
 }
@@ -0,0 +1,209 @@
+package com.randomlake.library.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.randomlake.library.dto.PageResponse;
+import com.randomlake.library.enums.TransactionType;
+import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.model.CirculationEvent;
+import com.randomlake.library.repository.CirculationLedgerRepository;
+import com.randomlake.library.util.KeysetPaginator;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@ExtendWith(MockitoExtension.class)
+public class CirculationLedgerServiceTest {
+
+  @Mock private CirculationLedgerRepository ledgerRepository;
+  @Mock private MongoTemplate mongoTemplate;
+  @Mock private BulkOperations bulkOperations;
+
+  private KeysetPaginator keysetPaginator;
+  private CirculationLedgerService ledgerService;
+
+  @BeforeEach
+  public void setUp() {
+    keysetPaginator = new KeysetPaginator();
+    ReflectionTestUtils.setField(keysetPaginator, "defaultPageSize", 2);
+    ReflectionTestUtils.setField(keysetPaginator, "maxPageSize", 10);
+    ledgerService = new CirculationLedgerService(ledgerRepository, mongoTemplate, keysetPaginator);
+  }
+
+  @Test
+  public void testRecord_InsertsOneEvent() {
+    ledgerService.record(1001, 1, TransactionType.CHECKOUT, List.of(2, 3));
+
+    ArgumentCaptor<CirculationEvent> captor = ArgumentCaptor.forClass(CirculationEvent.class);
+    verify(ledgerRepository, times(1)).insert(captor.capture());
+    assertEquals(1001, captor.getValue().getLoanId());
+    assertEquals(TransactionType.CHECKOUT, captor.getValue().getTransactionType());
+    assertEquals(List.of(2, 3), captor.getValue().getMediaIds());
+    verify(ledgerRepository, never()).save(any());
+  }
+
+  @Test
+  public void testRecord_FailureDoesNotPropagate() {
+    when(ledgerRepository.insert(any(CirculationEvent.class)))
+        .thenThrow(new DataAccessResourceFailureException("Connection reset"));
+
+    assertDoesNotThrow(() -> ledgerService.record(1001, 1, TransactionType.RETURN, List.of(2)));
+  }
+
+  @Test
+  public void testGetLedgerPage_ResumesAfterCursor() {
+    CirculationEvent first = event(TransactionType.CHECKOUT);
+    CirculationEvent second = event(TransactionType.RETURN);
+    CirculationEvent third = event(TransactionType.CHECKOUT);
+    when(ledgerRepository.findByLoanIdOrderByIdAsc(1001, Limit.of(3)))
+        .thenReturn(List.of(first, second, third));
+
+    PageResponse<CirculationEvent> page = ledgerService.getLedgerPage(1001, null, null);
+
+    assertEquals(List.of(first, second), page.getItems());
+    assertNotNull(page.getNextCursor());
+
+    when(ledgerRepository.findByLoanIdAndIdGreaterThanOrderByIdAsc(
+            1001, second.getId(), Limit.of(3)))
+        .thenReturn(List.of(third));
+
+    PageResponse<CirculationEvent> next =
+        ledgerService.getLedgerPage(1001, page.getNextCursor(), null);
+
+    assertEquals(List.of(third), next.getItems());
+    assertNull(next.getNextCursor());
+  }
+
+  @Test
+  public void testGetLedgerPage_RejectsMalformedKey() {
+    String cursor = keysetPaginator.encodeKeyCursor(CirculationLedgerService.LEDGER_SCOPE, "xyz");
+
+    assertThrows(GeneralException.class, () -> ledgerService.getLedgerPage(1001, cursor, null));
+    verifyNoInteractions(ledgerRepository);
+  }
+
+  @Test
+  public void testMigrateEmbeddedLogs_RerunSkipsEventsAlreadyMoved() {
+    Date checkout = Date.from(Instant.parse("2024-10-01T12:00:00Z"));
+    Document loan =
+        new Document("_id", new ObjectId())
+            .append("loanId", 1001)
+            .append("patronId", 1)
+            .append(
+                "transactionLog",
+                List.of(
+                    new Document("transactionType", "CHECKOUT")
+                        .append("transactionDate", checkout)
+                        .append("mediaIds", List.of(2, 3)),
+                    new Document("transactionType", "RETURN")
+                        .append("transactionDate", checkout)
+                        .append("mediaIds", List.of(2))));
+    when(mongoTemplate.stream(any(Query.class), eq(Document.class), eq("loans")))
+        .thenReturn(Stream.of(loan));
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, CirculationEvent.class))
+        .thenReturn(bulkOperations);
+    List<CirculationEvent> inserted = new ArrayList<>();
+    when(bulkOperations.insert(anyList()))
+        .thenAnswer(
+            invocation -> {
+              inserted.addAll(invocation.getArgument(0));
+              return bulkOperations;
+            });
+    // A crash after the insert left both events in the ledger
+    when(bulkOperations.execute()).thenThrow(bulkFailure(11000, 11000));
+
+    assertEquals(1, ledgerService.migrateEmbeddedLogs());
+
+    assertEquals(
+        List.of(
+            CirculationLedgerService.migratedEventId(checkout, 1001, 0),
+            CirculationLedgerService.migratedEventId(checkout, 1001, 1)),
+        inserted.stream().map(CirculationEvent::getId).toList());
+    assertEquals(checkout, inserted.get(0).getId().getDate());
+    verify(mongoTemplate).updateFirst(any(Query.class), any(Update.class), eq("loans"));
+  }
+
+  @Test
+  public void testMigrateEmbeddedLogs_OtherWriteErrorKeepsTheLog() {
+    Document loan =
+        new Document("_id", new ObjectId())
+            .append("loanId", 1001)
+            .append("patronId", 1)
+            .append(
+                "transactionLog",
+                List.of(
+                    new Document("transactionType", "CHECKOUT")
+                        .append("transactionDate", new Date())
+                        .append("mediaIds", List.of(2))));
+    when(mongoTemplate.stream(any(Query.class), eq(Document.class), eq("loans")))
+        .thenReturn(Stream.of(loan));
+    when(mongoTemplate.bulkOps(BulkMode.UNORDERED, CirculationEvent.class))
+        .thenReturn(bulkOperations);
+    when(bulkOperations.insert(anyList())).thenReturn(bulkOperations);
+    when(bulkOperations.execute()).thenThrow(bulkFailure(121));
+
+    assertThrows(BulkOperationException.class, () -> ledgerService.migrateEmbeddedLogs());
+    verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), anyString());
+  }
+
+  @Test
+  public void testMigratedEventId_SameEntrySameId() {
+    Date date = new Date();
+
+    assertEquals(
+        CirculationLedgerService.migratedEventId(date, 1001, 0),
+        CirculationLedgerService.migratedEventId(date, 1001, 0));
+    assertNotEquals(
+        CirculationLedgerService.migratedEventId(date, 1001, 0),
+        CirculationLedgerService.migratedEventId(date, 1001, 1));
+    assertNotEquals(
+        CirculationLedgerService.migratedEventId(date, 1001, 0),
+        CirculationLedgerService.migratedEventId(date, 1002, 0));
+  }
+
+  private static BulkOperationException bulkFailure(int... codes) {
+    List<BulkWriteError> errors = new ArrayList<>();
+    for (int i = 0; i < codes.length; i++) {
+      errors.add(new BulkWriteError(codes[i], "write failed", new BsonDocument(), i));
+    }
+    return new BulkOperationException(
+        "Bulk write failed",
+        new MongoBulkWriteException(
+            BulkWriteResult.unacknowledged(), errors, null, new ServerAddress(), Set.of()));
+  }
+
+  private static CirculationEvent event(TransactionType type) {
+    CirculationEvent event =
+        new CirculationEvent(1001, 1, type, LocalDateTime.of(2024, 10, 1, 12, 0), List.of(2));
+    event.setId(new ObjectId());
+    return event;
+  }
+}
@@ -0,0 +1,81 @@
+package com.randomlake.library.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.randomlake.library.model.ApplicationUser;
+import com.randomlake.library.repository.UserRepository;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+@ExtendWith(MockitoExtension.class)
+public class CustomUserDetailsServiceTest {
+
+  @Mock private UserRepository userRepository;
+
+  private CustomUserDetailsService userDetailsService;
+
+  private ApplicationUser user;
+
+  @BeforeEach
+  public void setup() {
+    userDetailsService = new CustomUserDetailsService(userRepository, 60);
+
+    user = new ApplicationUser();
+    user.setUsername("librarian");
+    user.setPassword("$2a$10$hash");
+    user.setRole("ROLE_USER,ROLE_STAFF");
+  }
+
+  @Test
+  public void testLoadUserByUsername_IncludesPassword() {
+    when(userRepository.findByUsername("librarian")).thenReturn(Optional.of(user));
+
+    UserDetails details = userDetailsService.loadUserByUsername("librarian");
+
+    assertEquals("$2a$10$hash", details.getPassword());
+    assertEquals(2, details.getAuthorities().size());
+  }
+
+  @Test
+  public void testLoadAuthenticatedUser_CachedWithoutPassword() {
+    when(userRepository.findByUsername("librarian")).thenReturn(Optional.of(user));
+
+    userDetailsService.loadAuthenticatedUser("librarian");
+    UserDetails details = userDetailsService.loadAuthenticatedUser("librarian");
+
+    assertEquals("", details.getPassword());
+    assertEquals(2, details.getAuthorities().size());
+    verify(userRepository, times(1)).findByUsername("librarian");
+  }
+
+  @Test
+  public void testEvictAuthenticatedUsers_ReloadsChangedRole() {
+    when(userRepository.findByUsername("librarian")).thenReturn(Optional.of(user));
+    userDetailsService.loadAuthenticatedUser("librarian");
+
+    user.setRole("ROLE_ADMIN");
+    userDetailsService.evictAuthenticatedUsers();
+    UserDetails details = userDetailsService.loadAuthenticatedUser("librarian");
+
+    assertEquals("ROLE_ADMIN", details.getAuthorities().iterator().next().getAuthority());
+    verify(userRepository, times(2)).findByUsername("librarian");
+  }
+
+  @Test
+  public void testLoadAuthenticatedUser_UnknownUserNotCached() {
+    when(userRepository.findByUsername("ghost")).thenReturn(Optional.empty());
+
+    assertThrows(
+        UsernameNotFoundException.class, () -> userDetailsService.loadAuthenticatedUser("ghost"));
+    assertThrows(
+        UsernameNotFoundException.class, () -> userDetailsService.loadAuthenticatedUser("ghost"));
+    verify(userRepository, times(2)).findByUsername("ghost");
+  }
+}
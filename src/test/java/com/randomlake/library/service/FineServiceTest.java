@@ -3,6 +3,8 @@ package com.randomlake.library.service;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import com.randomlake.library.cache.MediaLookupCache;
+import com.randomlake.library.cache.PatronLookupCache;
 import com.randomlake.library.enums.ExceptionType;
 import com.randomlake.library.enums.FineType;
 import com.randomlake.library.exception.GeneralException;
@@ -13,13 +15,18 @@ import com.randomlake.library.repository.FineRepository;
 import com.randomlake.library.repository.MediaRepository;
 import com.randomlake.library.repository.PatronRepository;
 import com.randomlake.library.util.SequenceGenerator;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.UnaryOperator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 
 public class FineServiceTest {
 
@@ -31,6 +38,14 @@ public class FineServiceTest {
 
   @Mock private SequenceGenerator sequenceGenerator;
 
+  @Spy
+  private MediaLookupCache mediaLookupCache =
+      new MediaLookupCache(100, Duration.ofMinutes(5), UnaryOperator.identity());
+
+  @Spy
+  private PatronLookupCache patronLookupCache =
+      new PatronLookupCache(100, Duration.ofMinutes(5), UnaryOperator.identity());
+
   @InjectMocks private FineService fineService;
 
   @BeforeEach
@@ -275,4 +290,43 @@ public class FineServiceTest {
     // Verify interaction with repository
     verify(fineRepository, times(1)).findByPatronId(patronId);
   }
+
+  @Test
+  public void testCreateFines_ReservesIdRangeAndInsertsOnce() {
+    Fine first = new Fine();
+    first.setPatronId(1);
+    Fine second = new Fine();
+    second.setPatronId(2);
+    List<Fine> fines = List.of(first, second);
+
+    when(sequenceGenerator.reserveSequenceRange("fineId", 2)).thenReturn(500);
+    when(fineRepository.insert(fines)).thenReturn(fines);
+
+    fineService.createFines(fines);
+
+    assertEquals(500, first.getFineId());
+    assertEquals(501, second.getFineId());
+    assertNotNull(first.getDateAssessed());
+    verify(fineRepository, times(1)).insert(fines);
+    verify(sequenceGenerator, never()).getNextSequenceValueForFine();
+  }
+
+  @Test
+  public void testGetFinedMediaIdsByPatron() {
+    Fine first = new Fine();
+    first.setPatronId(1);
+    first.setMediaId(10);
+    Fine second = new Fine();
+    second.setPatronId(1);
+    second.setMediaId(11);
+
+    when(fineRepository.findByFineTypeAndPatronIdIn(FineType.OVERDUE_ITEM, List.of(1, 2)))
+        .thenReturn(List.of(first, second));
+
+    Map<Integer, Set<Integer>> result =
+        fineService.getFinedMediaIdsByPatron(FineType.OVERDUE_ITEM, List.of(1, 2));
+
+    assertEquals(Set.of(10, 11), result.get(1));
+    assertNull(result.get(2));
+  }
 }
@@ -5,6 +5,9 @@ import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 import com.randomlake.library.dto.LoanActionRequest;
+import com.randomlake.library.dto.LoanResponse;
+import com.randomlake.library.dto.PageResponse;
+import com.randomlake.library.dto.ReportLoanPatronMedia;
 import com.randomlake.library.dto.TransactionResponse;
 import com.randomlake.library.enums.*;
 import com.randomlake.library.exception.GeneralException;
@@ -12,6 +15,7 @@ import com.randomlake.library.model.Loan;
 import com.randomlake.library.model.Media;
 import com.randomlake.library.model.Patron;
 import com.randomlake.library.repository.LoanRepository;
+import com.randomlake.library.util.KeysetPaginator;
 import com.randomlake.library.util.OutputFormatter;
 import com.randomlake.library.util.SequenceGenerator;
 import java.time.LocalDate;
@@ -20,9 +24,13 @@ import java.util.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
 
 @ExtendWith(MockitoExtension.class)
 public class LoanServiceTest {
@@ -33,7 +41,9 @@ public class LoanServiceTest {
   @Mock private SequenceGenerator sequenceGenerator;
   @Mock private OutputFormatter outputFormatter;
   @Mock private ValidationService validationService;
+  @Mock private CirculationLedgerService circulationLedgerService;
 
+  private KeysetPaginator keysetPaginator;
   private LoanService loanService;
 
   private Media media;
@@ -43,6 +53,10 @@ public class LoanServiceTest {
 
   @BeforeEach
   public void setUp() {
+    keysetPaginator = new KeysetPaginator();
+    ReflectionTestUtils.setField(keysetPaginator, "defaultPageSize", 2);
+    ReflectionTestUtils.setField(keysetPaginator, "maxPageSize", 10);
+
     // Initialize LoanService with constructor injection
     loanService =
         new LoanService(
@@ -51,7 +65,9 @@ public class LoanServiceTest {
             loanRepository,
             sequenceGenerator,
             outputFormatter,
-            validationService);
+            validationService,
+            keysetPaginator,
+            circulationLedgerService);
 
     // Setup common test data
     now = LocalDateTime.of(2024, 10, 1, 12, 0);
@@ -80,7 +96,6 @@ public class LoanServiceTest {
     loan.setPatronId(patron.getPatronId());
     loan.setStatus(LoanStatus.ACTIVE);
     loan.setItems(new ArrayList<>(List.of(loanItem)));
-    loan.setTransactionLog(new ArrayList<>());
   }
 
   @Test
@@ -90,27 +105,11 @@ public class LoanServiceTest {
     loanActionRequest.setMediaIds(List.of(2));
     loanActionRequest.setTransactionType(TransactionType.CHECKOUT);
 
-    when(mediaService.getMediaById(2)).thenReturn(media);
+    stubTransition(List.of(2), MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT, List.of(media));
     when(patronService.getPatronById(1)).thenReturn(patron);
-    when(loanRepository.findFirstByPatronIdAndStatus(1, LoanStatus.ACTIVE))
-        .thenReturn(Optional.empty());
     when(sequenceGenerator.getNextSequenceValueForLoan()).thenReturn(1001);
     when(outputFormatter.formatBarcodeId("39900100000022")).thenReturn("3-9900-10000002-2");
 
-    doNothing().when(validationService).validateMediaForStatus(media, MediaStatus.AVAILABLE);
-    doNothing().when(validationService).validatePatronForCheckout(patron, media);
-
-    // Simlulate media status update
-    doAnswer(
-            invocation -> {
-              Media mediaToUpdate = invocation.getArgument(0);
-              MediaStatus newStatus = invocation.getArgument(1);
-              mediaToUpdate.setStatus(newStatus);
-              return null;
-            })
-        .when(mediaService)
-        .updateMediaStatus(any(Media.class), eq(MediaStatus.CHECKED_OUT));
-
     TransactionResponse response = loanService.processLoanAction(loanActionRequest);
 
     assertNotNull(response);
@@ -124,11 +123,14 @@ public class LoanServiceTest {
     assertEquals("CHECKED_OUT", mediaItem.getMediaStatus());
     assertEquals("3-9900-10000002-2", mediaItem.getFormattedBarcodeId());
 
-    verify(validationService, times(1)).validateMediaForStatus(media, MediaStatus.AVAILABLE);
+    verify(validationService, times(1)).validatePatronEligible(patron);
     verify(validationService, times(1)).validatePatronForCheckout(patron, media);
-    verify(mediaService, times(1)).updateMediaStatus(media, MediaStatus.CHECKED_OUT);
-    verify(patronService, times(1)).updatePatronAfterCheckout(patron, 2);
+    verify(mediaService, never()).getMediaByIds(anyList());
+    verify(mediaService, never()).revertMediaStatuses(anyList(), any(), any());
+    verify(patronService, times(1)).updatePatronAfterCheckout(patron, List.of(2));
     verify(loanRepository, times(1)).save(any(Loan.class));
+    verify(circulationLedgerService, times(1))
+        .record(1001, 1, TransactionType.CHECKOUT, List.of(2));
   }
 
   @Test
@@ -138,17 +140,14 @@ public class LoanServiceTest {
     loanActionRequest.setMediaIds(List.of(2));
     loanActionRequest.setTransactionType(TransactionType.CHECKOUT);
 
-    media.setStatus(MediaStatus.CHECKED_OUT);
-    when(mediaService.getMediaById(2)).thenReturn(media);
     when(patronService.getPatronById(1)).thenReturn(patron);
-
-    doThrow(
+    when(mediaService.transitionMediaStatuses(
+            List.of(2), MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT))
+        .thenThrow(
             new GeneralException(
                 ExceptionType.MEDIA_NOT_AVAILABLE,
                 "Invalid media status for action",
-                HttpStatus.FORBIDDEN))
-        .when(validationService)
-        .validateMediaForStatus(media, MediaStatus.AVAILABLE);
+                HttpStatus.FORBIDDEN));
 
     GeneralException exception =
         assertThrows(
@@ -156,8 +155,8 @@ public class LoanServiceTest {
     assertEquals(ExceptionType.MEDIA_NOT_AVAILABLE, exception.getType());
     assertEquals("Invalid media status for action", exception.getMessage());
 
-    verify(mediaService, never()).updateMediaStatus(any(), any());
-    verify(patronService, never()).updatePatronAfterCheckout(any(), anyInt());
+    verify(mediaService, never()).revertMediaStatuses(anyList(), any(), any());
+    verify(patronService, never()).updatePatronAfterCheckout(any(), anyList());
     verify(loanRepository, never()).save(any(Loan.class));
   }
 
@@ -179,21 +178,19 @@ public class LoanServiceTest {
     assertEquals(ExceptionType.PATRON_NOT_FOUND, exception.getType());
     assertEquals("Patron not found", exception.getMessage());
 
-    verify(mediaService, never()).getMediaById(anyInt());
+    verifyNoInteractions(mediaService);
     verify(loanRepository, never()).save(any(Loan.class));
-    verify(validationService, never()).validateMediaForStatus(any(), any());
     verify(validationService, never()).validatePatronForCheckout(any(), any());
   }
 
   @Test
-  public void testCheckoutItems_PatronSuspended() {
+  public void testCheckoutItems_PatronSuspended_NoItemClaimed() {
     LoanActionRequest loanActionRequest = new LoanActionRequest();
     loanActionRequest.setPatronId(1);
     loanActionRequest.setMediaIds(List.of(2));
     loanActionRequest.setTransactionType(TransactionType.CHECKOUT);
 
     patron.setStatus(PatronStatus.SUSPENDED);
-    when(mediaService.getMediaById(2)).thenReturn(media);
     when(patronService.getPatronById(1)).thenReturn(patron);
 
     doThrow(
@@ -202,7 +199,7 @@ public class LoanServiceTest {
                 "Patron is suspended and not eligible for checkout",
                 HttpStatus.FORBIDDEN))
         .when(validationService)
-        .validatePatronForCheckout(patron, media);
+        .validatePatronEligible(patron);
 
     GeneralException exception =
         assertThrows(
@@ -210,13 +207,13 @@ public class LoanServiceTest {
     assertEquals(ExceptionType.PATRON_INELIGIBLE, exception.getType());
     assertEquals("Patron is suspended and not eligible for checkout", exception.getMessage());
 
-    verify(mediaService, never()).updateMediaStatus(any(), any());
-    verify(patronService, never()).updatePatronAfterCheckout(any(), anyInt());
+    verifyNoInteractions(mediaService);
+    verify(patronService, never()).updatePatronAfterCheckout(any(), anyList());
     verify(loanRepository, never()).save(any(Loan.class));
   }
 
   @Test
-  public void testCheckoutItems_MinorCheckingOutSensitiveMedia() {
+  public void testCheckoutItems_MinorCheckingOutSensitiveMedia_RevertsItems() {
     LoanActionRequest loanActionRequest = new LoanActionRequest();
     loanActionRequest.setPatronId(1);
     loanActionRequest.setMediaIds(List.of(2));
@@ -224,7 +221,7 @@ public class LoanServiceTest {
 
     media.setSensitive(true);
     patron.setDateOfBirth(LocalDate.now().minusYears(15));
-    when(mediaService.getMediaById(2)).thenReturn(media);
+    stubTransition(List.of(2), MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT, List.of(media));
     when(patronService.getPatronById(1)).thenReturn(patron);
 
     doThrow(
@@ -241,8 +238,10 @@ public class LoanServiceTest {
     assertEquals(ExceptionType.PATRON_INELIGIBLE, exception.getType());
     assertEquals("Minor patrons cannot checkout sensitive media", exception.getMessage());
 
-    verify(mediaService, never()).updateMediaStatus(any(), any());
-    verify(patronService, never()).updatePatronAfterCheckout(any(), anyInt());
+    verify(mediaService, times(1))
+        .revertMediaStatuses(List.of(media), MediaStatus.CHECKED_OUT, MediaStatus.AVAILABLE);
+    verify(patronService, never()).updatePatronAfterCheckout(any(), anyList());
+    verify(patronService, never()).updatePatronAfterReturn(any(), anyList());
     verify(loanRepository, never()).save(any(Loan.class));
   }
 
@@ -254,7 +253,8 @@ public class LoanServiceTest {
     loanActionRequest.setTransactionType(TransactionType.CHECKOUT);
 
     when(patronService.getPatronById(1)).thenReturn(patron);
-    when(mediaService.getMediaById(2))
+    when(mediaService.transitionMediaStatuses(
+            List.of(2), MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT))
         .thenThrow(
             new GeneralException(
                 ExceptionType.MEDIA_NOT_FOUND, "Media not found", HttpStatus.NOT_FOUND));
@@ -265,112 +265,76 @@ public class LoanServiceTest {
     assertEquals("Media not found", exception.getMessage());
     assertEquals(ExceptionType.MEDIA_NOT_FOUND, exception.getType());
 
-    verify(mediaService, never()).updateMediaStatus(any(), any());
-    verify(patronService, never()).updatePatronAfterCheckout(any(), anyInt());
+    verify(patronService, never()).updatePatronAfterCheckout(any(), anyList());
     verify(loanRepository, never()).save(any(Loan.class));
-    verify(validationService, never()).validateMediaForStatus(any(), any());
+    verify(validationService, never()).validatePatronForCheckout(any(), any());
   }
 
   @Test
-  public void testCheckoutItems_MediaAlreadyCheckedOutBySamePatron() {
+  public void testCheckoutItems_CreatesNewLoanIfNoneExists() {
     LoanActionRequest loanActionRequest = new LoanActionRequest();
     loanActionRequest.setPatronId(1);
     loanActionRequest.setMediaIds(List.of(2));
     loanActionRequest.setTransactionType(TransactionType.CHECKOUT);
 
-    media.setStatus(MediaStatus.CHECKED_OUT);
-    when(mediaService.getMediaById(2)).thenReturn(media);
+    stubTransition(List.of(2), MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT, List.of(media));
     when(patronService.getPatronById(1)).thenReturn(patron);
+    when(sequenceGenerator.getNextSequenceValueForLoan()).thenReturn(1001);
+    when(outputFormatter.formatBarcodeId(anyString())).thenReturn("3-9900-10000002-2");
 
-    // Assuming that the patron has already checked out the media
-    patron.getCheckedOutItems().add(2);
-
-    doThrow(
-            new GeneralException(
-                ExceptionType.MEDIA_NOT_AVAILABLE,
-                "Item is not available for checkout",
-                HttpStatus.FORBIDDEN))
-        .when(validationService)
-        .validateMediaForStatus(media, MediaStatus.AVAILABLE);
-
-    GeneralException exception =
-        assertThrows(
-            GeneralException.class, () -> loanService.processLoanAction(loanActionRequest));
-    assertEquals("Item is not available for checkout", exception.getMessage());
-    assertEquals(ExceptionType.MEDIA_NOT_AVAILABLE, exception.getType());
+    TransactionResponse response = loanService.processLoanAction(loanActionRequest);
 
-    verify(mediaService, never()).updateMediaStatus(any(), any());
-    verify(patronService, never()).updatePatronAfterCheckout(any(), anyInt());
-    verify(loanRepository, never()).save(any(Loan.class));
+    assertNotNull(response);
+    assertEquals(1001, response.getLoanId());
+    verify(loanRepository, times(1)).save(any(Loan.class));
   }
 
   @Test
-  public void testCheckoutItems_CreatesNewLoanIfNoneExists() {
+  public void testCheckoutItems_OpensNewLoanPerCheckout() {
     LoanActionRequest loanActionRequest = new LoanActionRequest();
     loanActionRequest.setPatronId(1);
-    loanActionRequest.setMediaIds(List.of(2));
+    loanActionRequest.setMediaIds(List.of(3));
     loanActionRequest.setTransactionType(TransactionType.CHECKOUT);
 
-    when(mediaService.getMediaById(2)).thenReturn(media);
+    // The patron already has an active loan holding mediaId 2
+    stubTransition(List.of(3), MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT, List.of(media));
     when(patronService.getPatronById(1)).thenReturn(patron);
-    when(loanRepository.findFirstByPatronIdAndStatus(1, LoanStatus.ACTIVE))
-        .thenReturn(Optional.empty());
-    when(sequenceGenerator.getNextSequenceValueForLoan()).thenReturn(1001);
+    when(sequenceGenerator.getNextSequenceValueForLoan()).thenReturn(1002);
     when(outputFormatter.formatBarcodeId(anyString())).thenReturn("3-9900-10000002-2");
 
-    doNothing().when(validationService).validateMediaForStatus(media, MediaStatus.AVAILABLE);
-    doNothing().when(validationService).validatePatronForCheckout(patron, media);
-
-    doAnswer(
-            invocation -> {
-              Media mediaToUpdate = invocation.getArgument(0);
-              MediaStatus newStatus = invocation.getArgument(1);
-              mediaToUpdate.setStatus(newStatus);
-              return null;
-            })
-        .when(mediaService)
-        .updateMediaStatus(any(Media.class), eq(MediaStatus.CHECKED_OUT));
-
     TransactionResponse response = loanService.processLoanAction(loanActionRequest);
 
-    assertNotNull(response);
-    assertEquals(1001, response.getLoanId());
-    verify(loanRepository, times(1)).save(any(Loan.class));
+    assertEquals(1002, response.getLoanId());
+    ArgumentCaptor<Loan> captor = ArgumentCaptor.forClass(Loan.class);
+    verify(loanRepository, times(1)).save(captor.capture());
+    assertEquals(1002, captor.getValue().getLoanId());
+    assertEquals(LoanStatus.ACTIVE, captor.getValue().getStatus());
+    assertEquals(1, captor.getValue().getItems().size());
+    assertEquals(3, captor.getValue().getItems().get(0).getMediaId());
+    assertEquals(1, loan.getItems().size());
   }
 
   @Test
-  public void testCheckoutItems_UsesExistingActiveLoan() {
+  public void testCheckoutItems_LoanSaveFails_RollsBack() {
     LoanActionRequest loanActionRequest = new LoanActionRequest();
     loanActionRequest.setPatronId(1);
     loanActionRequest.setMediaIds(List.of(2));
     loanActionRequest.setTransactionType(TransactionType.CHECKOUT);
 
-    when(mediaService.getMediaById(2)).thenReturn(media);
+    stubTransition(List.of(2), MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT, List.of(media));
     when(patronService.getPatronById(1)).thenReturn(patron);
-    when(loanRepository.findFirstByPatronIdAndStatus(1, LoanStatus.ACTIVE))
-        .thenReturn(Optional.of(loan));
-    when(outputFormatter.formatBarcodeId(anyString())).thenReturn("3-9900-10000002-2");
-
-    doNothing().when(validationService).validateMediaForStatus(media, MediaStatus.AVAILABLE);
-    doNothing().when(validationService).validatePatronForCheckout(patron, media);
-
-    doAnswer(
-            invocation -> {
-              Media mediaToUpdate = invocation.getArgument(0);
-              MediaStatus newStatus = invocation.getArgument(1);
-              mediaToUpdate.setStatus(newStatus);
-              return null;
-            })
-        .when(mediaService)
-        .updateMediaStatus(any(Media.class), eq(MediaStatus.CHECKED_OUT));
+    when(sequenceGenerator.getNextSequenceValueForLoan()).thenReturn(1001);
+    when(loanRepository.save(any(Loan.class)))
+        .thenThrow(new DuplicateKeyException("Duplicate loanId 1001"));
 
-    TransactionResponse response = loanService.processLoanAction(loanActionRequest);
+    assertThrows(
+        DuplicateKeyException.class, () -> loanService.processLoanAction(loanActionRequest));
 
-    assertNotNull(response);
-    assertEquals(1001, response.getLoanId());
-    verify(loanRepository, times(1)).save(any(Loan.class));
-    // Ensure that a new loan was not created
-    verify(sequenceGenerator, times(0)).getNextSequenceValueForLoan();
+    verify(patronService, times(1)).updatePatronAfterCheckout(patron, List.of(2));
+    verify(patronService, times(1)).updatePatronAfterReturn(patron, List.of(2));
+    verify(mediaService, times(1))
+        .revertMediaStatuses(List.of(media), MediaStatus.CHECKED_OUT, MediaStatus.AVAILABLE);
+    verifyNoInteractions(circulationLedgerService);
   }
 
   @Test
@@ -388,34 +352,13 @@ public class LoanServiceTest {
     media1.setMediaTitle("Another Sample Book");
     media1.setLastUpdateDate(now);
 
-    when(mediaService.getMediaById(2)).thenReturn(media);
-    when(mediaService.getMediaById(3)).thenReturn(media1);
+    stubTransition(
+        List.of(2, 3), MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT, List.of(media, media1));
     when(patronService.getPatronById(1)).thenReturn(patron);
-    when(loanRepository.findFirstByPatronIdAndStatus(1, LoanStatus.ACTIVE))
-        .thenReturn(Optional.empty());
     when(sequenceGenerator.getNextSequenceValueForLoan()).thenReturn(1001);
     when(outputFormatter.formatBarcodeId("39900100000022")).thenReturn("3-9900-10000002-2");
     when(outputFormatter.formatBarcodeId("39900100000023")).thenReturn("3-9900-10000003-3");
 
-    // Mock validation service
-    doNothing()
-        .when(validationService)
-        .validateMediaForStatus(any(Media.class), eq(MediaStatus.AVAILABLE));
-    doNothing()
-        .when(validationService)
-        .validatePatronForCheckout(any(Patron.class), any(Media.class));
-
-    // Simulate media status update
-    doAnswer(
-            invocation -> {
-              Media mediaToUpdate = invocation.getArgument(0);
-              MediaStatus newStatus = invocation.getArgument(1);
-              mediaToUpdate.setStatus(newStatus);
-              return null;
-            })
-        .when(mediaService)
-        .updateMediaStatus(any(Media.class), any(MediaStatus.class));
-
     TransactionResponse response = loanService.processLoanAction(loanActionRequest);
 
     assertNotNull(response);
@@ -436,13 +379,8 @@ public class LoanServiceTest {
     assertEquals("CHECKED_OUT", mediaItem2.getMediaStatus());
     assertEquals("3-9900-10000003-3", mediaItem2.getFormattedBarcodeId());
 
-    verify(mediaService, times(1)).updateMediaStatus(media, MediaStatus.CHECKED_OUT);
-    verify(mediaService, times(1)).updateMediaStatus(media1, MediaStatus.CHECKED_OUT);
     verify(loanRepository, times(1)).save(any(Loan.class));
-    verify(patronService, times(1)).updatePatronAfterCheckout(patron, 2);
-    verify(patronService, times(1)).updatePatronAfterCheckout(patron, 3);
-    verify(validationService, times(2))
-        .validateMediaForStatus(any(Media.class), eq(MediaStatus.AVAILABLE));
+    verify(patronService, times(1)).updatePatronAfterCheckout(patron, List.of(2, 3));
     verify(validationService, times(2)).validatePatronForCheckout(eq(patron), any(Media.class));
   }
 
@@ -456,38 +394,23 @@ public class LoanServiceTest {
     patron.setStatus(PatronStatus.INACTIVE);
 
     when(patronService.getPatronById(1)).thenReturn(patron);
-    when(mediaService.getMediaById(2)).thenReturn(media);
-    when(loanRepository.findFirstByPatronIdAndStatus(1, LoanStatus.ACTIVE))
-        .thenReturn(Optional.empty());
+    stubTransition(List.of(2), MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT, List.of(media));
     when(sequenceGenerator.getNextSequenceValueForLoan()).thenReturn(1010);
     when(outputFormatter.formatBarcodeId(anyString())).thenReturn("3-9900-10000002-2");
 
-    doNothing().when(validationService).validateMediaForStatus(media, MediaStatus.AVAILABLE);
-
-    // Simluate media status update
-    doAnswer(
-            invocation -> {
-              Media mediaToUpdate = invocation.getArgument(0);
-              MediaStatus newStatus = invocation.getArgument(1);
-              mediaToUpdate.setStatus(newStatus);
-              return null;
-            })
-        .when(mediaService)
-        .updateMediaStatus(any(Media.class), any(MediaStatus.class));
-
     // Simulate patron update after checkout
     doAnswer(
             invocation -> {
               Patron patronToUpdate = invocation.getArgument(0);
-              int mediaId = invocation.getArgument(1);
+              List<Integer> mediaIds = invocation.getArgument(1);
               if (patronToUpdate.getStatus() == PatronStatus.INACTIVE) {
                 patronToUpdate.setStatus(PatronStatus.ACTIVE);
               }
-              patronToUpdate.getCheckedOutItems().add(mediaId);
+              patronToUpdate.getCheckedOutItems().addAll(mediaIds);
               return null;
             })
         .when(patronService)
-        .updatePatronAfterCheckout(any(Patron.class), anyInt());
+        .updatePatronAfterCheckout(any(Patron.class), anyList());
 
     TransactionResponse response = loanService.processLoanAction(loanActionRequest);
 
@@ -504,9 +427,24 @@ public class LoanServiceTest {
     assertEquals(PatronStatus.ACTIVE, patron.getStatus());
     assertTrue(patron.getCheckedOutItems().contains(2));
 
-    verify(mediaService, times(1)).updateMediaStatus(media, MediaStatus.CHECKED_OUT);
     verify(loanRepository, times(1)).save(any(Loan.class));
-    verify(patronService, times(1)).updatePatronAfterCheckout(patron, 2);
+    verify(patronService, times(1)).updatePatronAfterCheckout(patron, List.of(2));
+  }
+
+  @Test
+  public void testCheckoutItems_DuplicateMediaIds() {
+    LoanActionRequest loanActionRequest = new LoanActionRequest();
+    loanActionRequest.setPatronId(1);
+    loanActionRequest.setMediaIds(List.of(2, 2));
+    loanActionRequest.setTransactionType(TransactionType.CHECKOUT);
+
+    GeneralException exception =
+        assertThrows(
+            GeneralException.class, () -> loanService.processLoanAction(loanActionRequest));
+    assertEquals(ExceptionType.INVALID_INPUT, exception.getType());
+
+    verifyNoInteractions(mediaService);
+    verifyNoInteractions(loanRepository);
   }
 
   @Test
@@ -519,26 +457,15 @@ public class LoanServiceTest {
     media.setStatus(MediaStatus.CHECKED_OUT);
     patron.getCheckedOutItems().add(2);
 
-    when(mediaService.getMediaById(2)).thenReturn(media);
+    stubTransition(List.of(2), MediaStatus.CHECKED_OUT, MediaStatus.AVAILABLE, List.of(media));
     when(patronService.getPatronById(1)).thenReturn(patron);
-    when(loanRepository.findActiveByPatronIdAndMediaId(
-            1, LoanStatus.ACTIVE, 2, ItemStatus.CHECKED_OUT))
-        .thenReturn(Optional.of(loan));
+    when(loanRepository.findActiveByPatronIdAndMediaIdIn(
+            1, LoanStatus.ACTIVE, List.of(2), ItemStatus.CHECKED_OUT))
+        .thenReturn(List.of(loan));
+    when(loanRepository.applyItemReturns(eq(Map.of(1001, List.of(2))), any(LocalDate.class)))
+        .thenReturn(1);
     when(outputFormatter.formatBarcodeId(anyString())).thenReturn("3-9900-10000002-2");
 
-    doNothing().when(validationService).validateMediaForStatus(media, MediaStatus.CHECKED_OUT);
-
-    // Simluate media status update
-    doAnswer(
-            invocation -> {
-              Media mediaToUpdate = invocation.getArgument(0);
-              MediaStatus newStatus = invocation.getArgument(1);
-              mediaToUpdate.setStatus(newStatus);
-              return null;
-            })
-        .when(mediaService)
-        .updateMediaStatus(any(Media.class), any(MediaStatus.class));
-
     TransactionResponse response = loanService.processLoanAction(loanActionRequest);
 
     assertNotNull(response);
@@ -552,30 +479,158 @@ public class LoanServiceTest {
     assertEquals("AVAILABLE", mediaItem.getMediaStatus());
     assertEquals("3-9900-10000002-2", mediaItem.getFormattedBarcodeId());
 
-    verify(validationService, times(1)).validateMediaForStatus(media, MediaStatus.CHECKED_OUT);
-    verify(mediaService, times(1)).updateMediaStatus(media, MediaStatus.AVAILABLE);
-    verify(patronService, times(1)).updatePatronAfterReturn(patron, 2);
-    verify(loanRepository, times(1)).save(loan);
+    verify(mediaService, never()).getMediaByIds(anyList());
+    verify(patronService, times(1)).updatePatronAfterReturn(patron, List.of(2));
+    verify(loanRepository, never()).save(any(Loan.class));
   }
 
   @Test
-  public void testReturnItems_ItemNotCheckedOut() {
+  public void testReturnItems_GroupsItemsByLoan() {
+    LoanActionRequest loanActionRequest = new LoanActionRequest();
+    loanActionRequest.setPatronId(1);
+    loanActionRequest.setMediaIds(List.of(2, 3, 4));
+    loanActionRequest.setTransactionType(TransactionType.RETURN);
+
+    // Loan 1001 holds items 2 and 5; item 5 stays out so the loan remains active
+    Loan.LoanItem stillOut = new Loan.LoanItem();
+    stillOut.setMediaId(5);
+    stillOut.setStatus(ItemStatus.CHECKED_OUT);
+    loan.getItems().add(stillOut);
+
+    Loan.LoanItem item3 = new Loan.LoanItem();
+    item3.setMediaId(3);
+    item3.setStatus(ItemStatus.CHECKED_OUT);
+    Loan.LoanItem item4 = new Loan.LoanItem();
+    item4.setMediaId(4);
+    item4.setStatus(ItemStatus.CHECKED_OUT);
+    Loan otherLoan = new Loan();
+    otherLoan.setLoanId(1002);
+    otherLoan.setPatronId(1);
+    otherLoan.setStatus(LoanStatus.ACTIVE);
+    otherLoan.setItems(new ArrayList<>(List.of(item3, item4)));
+
+    List<Media> returned = new ArrayList<>();
+    for (int mediaId : List.of(2, 3, 4)) {
+      Media item = new Media();
+      item.setMediaId(mediaId);
+      item.setStatus(MediaStatus.CHECKED_OUT);
+      returned.add(item);
+    }
+
+    when(patronService.getPatronById(1)).thenReturn(patron);
+    stubTransition(List.of(2, 3, 4), MediaStatus.CHECKED_OUT, MediaStatus.AVAILABLE, returned);
+    when(loanRepository.findActiveByPatronIdAndMediaIdIn(
+            1, LoanStatus.ACTIVE, List.of(2, 3, 4), ItemStatus.CHECKED_OUT))
+        .thenReturn(List.of(loan, otherLoan));
+    when(loanRepository.applyItemReturns(
+            eq(Map.of(1001, List.of(2), 1002, List.of(3, 4))), any(LocalDate.class)))
+        .thenReturn(2);
+
+    loanService.processLoanAction(loanActionRequest);
+
+    verify(patronService, times(1)).updatePatronAfterReturn(patron, List.of(2, 3, 4));
+    verify(circulationLedgerService, times(1)).record(1001, 1, TransactionType.RETURN, List.of(2));
+    verify(circulationLedgerService, times(1))
+        .record(1002, 1, TransactionType.RETURN, List.of(3, 4));
+    verify(loanRepository, never()).save(any(Loan.class));
+  }
+
+  @Test
+  public void testReturnItems_StaleSnapshotLeavesCompletionToTheServer() {
     LoanActionRequest loanActionRequest = new LoanActionRequest();
     loanActionRequest.setPatronId(1);
     loanActionRequest.setMediaIds(List.of(2));
     loanActionRequest.setTransactionType(TransactionType.RETURN);
 
-    media.setStatus(MediaStatus.AVAILABLE);
-    when(mediaService.getMediaById(2)).thenReturn(media);
+    // Read before another desk returned item 5, so it still looks checked out
+    Loan.LoanItem returnedElsewhere = new Loan.LoanItem();
+    returnedElsewhere.setMediaId(5);
+    returnedElsewhere.setStatus(ItemStatus.CHECKED_OUT);
+    loan.getItems().add(returnedElsewhere);
+
     when(patronService.getPatronById(1)).thenReturn(patron);
+    stubTransition(List.of(2), MediaStatus.CHECKED_OUT, MediaStatus.AVAILABLE, List.of(media));
+    when(loanRepository.findActiveByPatronIdAndMediaIdIn(
+            1, LoanStatus.ACTIVE, List.of(2), ItemStatus.CHECKED_OUT))
+        .thenReturn(List.of(loan));
+    when(loanRepository.applyItemReturns(eq(Map.of(1001, List.of(2))), any(LocalDate.class)))
+        .thenReturn(1);
+
+    loanService.processLoanAction(loanActionRequest);
+
+    // Only the returned items are sent; whether the loan is complete is decided by the write
+    verify(loanRepository, times(1))
+        .applyItemReturns(eq(Map.of(1001, List.of(2))), any(LocalDate.class));
+    verify(loanRepository, never()).save(any(Loan.class));
+  }
 
-    doThrow(
+  @Test
+  public void testReturnItems_LoanNotMatchedRevertsItems() {
+    LoanActionRequest loanActionRequest = new LoanActionRequest();
+    loanActionRequest.setPatronId(1);
+    loanActionRequest.setMediaIds(List.of(2));
+    loanActionRequest.setTransactionType(TransactionType.RETURN);
+
+    when(patronService.getPatronById(1)).thenReturn(patron);
+    stubTransition(List.of(2), MediaStatus.CHECKED_OUT, MediaStatus.AVAILABLE, List.of(media));
+    when(loanRepository.findActiveByPatronIdAndMediaIdIn(
+            1, LoanStatus.ACTIVE, List.of(2), ItemStatus.CHECKED_OUT))
+        .thenReturn(List.of(loan));
+    when(loanRepository.applyItemReturns(any(), any())).thenReturn(0);
+
+    GeneralException exception =
+        assertThrows(
+            GeneralException.class, () -> loanService.processLoanAction(loanActionRequest));
+
+    assertEquals(ExceptionType.CONCURRENT_MODIFICATION, exception.getType());
+    assertEquals(HttpStatus.CONFLICT, exception.getHttpStatus());
+    verify(mediaService, times(1))
+        .revertMediaStatuses(List.of(media), MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT);
+    verify(patronService, never()).updatePatronAfterReturn(any(), anyList());
+    verify(circulationLedgerService, never())
+        .record(anyInt(), anyInt(), eq(TransactionType.RETURN), anyList());
+  }
+
+  @Test
+  public void testReturnItems_NoActiveLoanForItem() {
+    LoanActionRequest loanActionRequest = new LoanActionRequest();
+    loanActionRequest.setPatronId(1);
+    loanActionRequest.setMediaIds(List.of(2));
+    loanActionRequest.setTransactionType(TransactionType.RETURN);
+
+    when(patronService.getPatronById(1)).thenReturn(patron);
+    when(loanRepository.findActiveByPatronIdAndMediaIdIn(
+            1, LoanStatus.ACTIVE, List.of(2), ItemStatus.CHECKED_OUT))
+        .thenReturn(List.of());
+
+    GeneralException exception =
+        assertThrows(
+            GeneralException.class, () -> loanService.processLoanAction(loanActionRequest));
+    assertEquals(ExceptionType.INVALID_LOAN, exception.getType());
+
+    verify(loanRepository, never()).applyItemReturns(any(), any());
+    verifyNoInteractions(mediaService);
+    verify(patronService, never()).updatePatronAfterReturn(any(), anyList());
+  }
+
+  @Test
+  public void testReturnItems_ItemNotCheckedOut() {
+    LoanActionRequest loanActionRequest = new LoanActionRequest();
+    loanActionRequest.setPatronId(1);
+    loanActionRequest.setMediaIds(List.of(2));
+    loanActionRequest.setTransactionType(TransactionType.RETURN);
+
+    when(patronService.getPatronById(1)).thenReturn(patron);
+    when(loanRepository.findActiveByPatronIdAndMediaIdIn(
+            1, LoanStatus.ACTIVE, List.of(2), ItemStatus.CHECKED_OUT))
+        .thenReturn(List.of(loan));
+    when(mediaService.transitionMediaStatuses(
+            List.of(2), MediaStatus.CHECKED_OUT, MediaStatus.AVAILABLE))
+        .thenThrow(
             new GeneralException(
                 ExceptionType.MEDIA_NOT_AVAILABLE,
                 "Invalid media status for action",
-                HttpStatus.FORBIDDEN))
-        .when(validationService)
-        .validateMediaForStatus(media, MediaStatus.CHECKED_OUT);
+                HttpStatus.FORBIDDEN));
 
     GeneralException exception =
         assertThrows(
@@ -583,9 +638,32 @@ public class LoanServiceTest {
     assertEquals(ExceptionType.MEDIA_NOT_AVAILABLE, exception.getType());
     assertEquals("Invalid media status for action", exception.getMessage());
 
-    verify(mediaService, never()).updateMediaStatus(any(), any());
-    verify(patronService, never()).updatePatronAfterReturn(any(), anyInt());
-    verify(loanRepository, never()).save(any(Loan.class));
+    verify(patronService, never()).updatePatronAfterReturn(any(), anyList());
+    verify(loanRepository, never()).applyItemReturns(any(), any());
+  }
+
+  @Test
+  public void testReturnItems_LoanWriteFails_RevertsItems() {
+    LoanActionRequest loanActionRequest = new LoanActionRequest();
+    loanActionRequest.setPatronId(1);
+    loanActionRequest.setMediaIds(List.of(2));
+    loanActionRequest.setTransactionType(TransactionType.RETURN);
+
+    when(patronService.getPatronById(1)).thenReturn(patron);
+    when(loanRepository.findActiveByPatronIdAndMediaIdIn(
+            1, LoanStatus.ACTIVE, List.of(2), ItemStatus.CHECKED_OUT))
+        .thenReturn(List.of(loan));
+    stubTransition(List.of(2), MediaStatus.CHECKED_OUT, MediaStatus.AVAILABLE, List.of(media));
+    when(loanRepository.applyItemReturns(any(), any()))
+        .thenThrow(new DataAccessResourceFailureException("Connection reset"));
+
+    assertThrows(
+        DataAccessResourceFailureException.class,
+        () -> loanService.processLoanAction(loanActionRequest));
+
+    verify(mediaService, times(1))
+        .revertMediaStatuses(List.of(media), MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT);
+    verify(patronService, never()).updatePatronAfterReturn(any(), anyList());
   }
 
   @Test
@@ -680,4 +758,88 @@ public class LoanServiceTest {
 
     verify(loanRepository, times(1)).findByMediaId(mediaId);
   }
+
+  @Test
+  public void testGetReportLoanPatronMediaPage_AllPatrons() {
+    List<ReportLoanPatronMedia> rows =
+        List.of(reportRow(1001, 1), reportRow(1002, 2), reportRow(1003, 3));
+    when(loanRepository.getReportLoanPatronMedia(Optional.empty(), 0, 3)).thenReturn(rows);
+
+    PageResponse<ReportLoanPatronMedia> page =
+        loanService.getReportLoanPatronMediaPage(Optional.empty(), null, null);
+
+    assertEquals(2, page.getItems().size());
+    assertNotNull(page.getNextCursor());
+
+    // The cursor resumes after the last loan of the page
+    when(loanRepository.getReportLoanPatronMedia(Optional.empty(), 1002, 3))
+        .thenReturn(List.of(reportRow(1003, 3)));
+
+    PageResponse<ReportLoanPatronMedia> next =
+        loanService.getReportLoanPatronMediaPage(Optional.empty(), page.getNextCursor(), null);
+
+    assertEquals(1, next.getItems().size());
+    assertNull(next.getNextCursor());
+  }
+
+  @Test
+  public void testGetReportLoanPatronMediaPage_RejectsCursorFromAnotherListing() {
+    String mediaCursor = keysetPaginator.encodeCursor("media", 5);
+
+    GeneralException exception =
+        assertThrows(
+            GeneralException.class,
+            () -> loanService.getReportLoanPatronMediaPage(Optional.of(1), mediaCursor, null));
+
+    assertEquals(HttpStatus.BAD_REQUEST, exception.getHttpStatus());
+    verifyNoInteractions(loanRepository);
+  }
+
+  @Test
+  public void testGetReportLoanPatronMedia_RequiresPatronId() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> loanService.getReportLoanPatronMedia(Optional.empty()));
+    verifyNoInteractions(loanRepository);
+  }
+
+  @Test
+  public void testFindLoansByPatronId_LinksLedgerWithoutReadingIt() {
+    when(loanRepository.findByPatronId(1)).thenReturn(List.of(loan));
+
+    List<LoanResponse> responses = loanService.findLoansByPatronId(1);
+
+    assertEquals(1, responses.size());
+    assertEquals("/api/loans/1001/transactions", responses.get(0).getTransactionsPath());
+    verifyNoInteractions(circulationLedgerService);
+  }
+
+  @Test
+  public void testGetLoanLedgerPage_UnknownLoan() {
+    when(loanRepository.existsByLoanId(42)).thenReturn(false);
+
+    GeneralException exception =
+        assertThrows(GeneralException.class, () -> loanService.getLoanLedgerPage(42, null, null));
+
+    assertEquals(HttpStatus.NOT_FOUND, exception.getHttpStatus());
+    verifyNoInteractions(circulationLedgerService);
+  }
+
+  private ReportLoanPatronMedia reportRow(int loanId, int patronId) {
+    ReportLoanPatronMedia row = new ReportLoanPatronMedia();
+    row.setLoanId(loanId);
+    row.setPatronId(patronId);
+    return row;
+  }
+
+  // The conditional transition returns the items as written, in the new status
+  private void stubTransition(
+      List<Integer> mediaIds, MediaStatus from, MediaStatus to, List<Media> items) {
+    when(mediaService.transitionMediaStatuses(mediaIds, from, to))
+        .thenAnswer(
+            invocation -> {
+              items.forEach(item -> item.setStatus(to));
+              return items;
+            });
+  }
 }
@@ -0,0 +1,201 @@
+package com.randomlake.library.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.randomlake.library.dto.MediaIntakeResult;
+import com.randomlake.library.enums.BarcodeType;
+import com.randomlake.library.enums.MediaStatus;
+import com.randomlake.library.model.Media;
+import com.randomlake.library.util.SequenceGenerator;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@ExtendWith(MockitoExtension.class)
+public class MediaIntakeServiceTest {
+
+  @Mock private MongoTemplate mongoTemplate;
+  @Mock private BulkOperations bulkOperations;
+  @Mock private SequenceGenerator sequenceGenerator;
+  @Mock private MediaSearchService mediaSearchService;
+  @Mock private AutocompleteService autocompleteService;
+
+  private MediaIntakeService mediaIntakeService;
+  private final List<List<Media>> insertedChunks = new ArrayList<>();
+
+  @BeforeEach
+  public void setUp() {
+    mediaIntakeService =
+        new MediaIntakeService(
+            mongoTemplate,
+            sequenceGenerator,
+            mediaSearchService,
+            autocompleteService,
+            new ObjectMapper().findAndRegisterModules());
+    ReflectionTestUtils.setField(mediaIntakeService, "chunkSize", 2);
+
+    lenient()
+        .when(mongoTemplate.bulkOps(BulkMode.UNORDERED, Media.class))
+        .thenReturn(bulkOperations);
+    lenient()
+        .when(bulkOperations.insert(anyList()))
+        .thenAnswer(
+            invocation -> {
+              // The service reuses its chunk list, so keep a copy of what was inserted
+              insertedChunks.add(new ArrayList<>(invocation.<List<Media>>getArgument(0)));
+              return bulkOperations;
+            });
+    lenient()
+        .when(sequenceGenerator.generateBarcodes(eq(BarcodeType.MEDIA), anyInt(), anyInt()))
+        .thenAnswer(
+            invocation -> {
+              int first = invocation.getArgument(1);
+              String[] barcodes = new String[invocation.<Integer>getArgument(2)];
+              for (int i = 0; i < barcodes.length; i++) {
+                barcodes[i] = "3990010" + (first + i);
+              }
+              return barcodes;
+            });
+  }
+
+  @Test
+  public void testIngest_NdjsonInChunksWithOneIdRangeEach() throws Exception {
+    when(sequenceGenerator.reserveSequenceRange("mediaId", 2)).thenReturn(1001);
+    when(sequenceGenerator.reserveSequenceRange("mediaId", 1)).thenReturn(1003);
+
+    List<MediaIntakeResult> results =
+        ingest(
+            """
+            {"mediaTitle":"Shogun","numberPages":1152}
+            {"mediaTitle":"Tai-Pan","acquisitionDate":"2024-09-30"}
+            {"mediaTitle":"Noble House"}
+            """);
+
+    assertEquals(3, results.size());
+    assertEquals(
+        List.of(1001, 1002, 1003), results.stream().map(MediaIntakeResult::getMediaId).toList());
+    assertEquals("39900101002", results.get(1).getBarCodeId());
+    assertTrue(
+        results.stream().allMatch(result -> MediaIntakeResult.CREATED.equals(result.getStatus())));
+
+    assertEquals(2, insertedChunks.size());
+    Media first = insertedChunks.get(0).get(0);
+    assertEquals(MediaStatus.AVAILABLE, first.getStatus());
+    assertEquals(0L, first.getVersion());
+    assertNotNull(first.getAcquisitionDate());
+    verify(bulkOperations, times(2)).execute();
+    verify(mediaSearchService, times(3)).indexMedia(any(Media.class));
+  }
+
+  @Test
+  public void testIngest_JsonArraySkipsInvalidRows() throws Exception {
+    when(sequenceGenerator.reserveSequenceRange("mediaId", 2)).thenReturn(2001);
+
+    List<MediaIntakeResult> results =
+        ingest(
+            """
+            [ {"mediaTitle":"Shogun"},
+              {"authorName":"James Clavell"},
+              {"mediaTitle":"Whirlwind","numberPages":"many"},
+              {"mediaTitle":"Gai-Jin"} ]
+            """);
+
+    assertEquals(
+        List.of(1, 2, 3, 4), results.stream().map(MediaIntakeResult::getRow).sorted().toList());
+    assertEquals(MediaIntakeResult.FAILED, resultFor(results, 2).getStatus());
+    assertEquals("Media title cannot be empty", resultFor(results, 2).getError());
+    assertEquals(MediaIntakeResult.FAILED, resultFor(results, 3).getStatus());
+    assertEquals(2001, resultFor(results, 1).getMediaId());
+    assertEquals(2002, resultFor(results, 4).getMediaId());
+    verify(sequenceGenerator, never()).reserveSequenceRange(anyString(), eq(1));
+  }
+
+  @Test
+  public void testIngest_ResultsFollowRowOrderAroundInvalidRows() throws Exception {
+    when(sequenceGenerator.reserveSequenceRange("mediaId", 2)).thenReturn(4001);
+    when(sequenceGenerator.reserveSequenceRange("mediaId", 1)).thenReturn(4003);
+
+    List<MediaIntakeResult> results =
+        ingest(
+            """
+            {"mediaTitle":"Shogun"}
+            {"authorName":"James Clavell"}
+            {"mediaTitle":"Tai-Pan","numberPages":"many"}
+            {"mediaTitle":"Gai-Jin"}
+            {"mediaTitle":""}
+            {"mediaTitle":"Whirlwind"}
+            {"mediaTitle":""}
+            """);
+
+    assertEquals(
+        List.of(1, 2, 3, 4, 5, 6, 7), results.stream().map(MediaIntakeResult::getRow).toList());
+    assertEquals(
+        List.of(
+            MediaIntakeResult.CREATED,
+            MediaIntakeResult.FAILED,
+            MediaIntakeResult.FAILED,
+            MediaIntakeResult.CREATED,
+            MediaIntakeResult.FAILED,
+            MediaIntakeResult.CREATED,
+            MediaIntakeResult.FAILED),
+        results.stream().map(MediaIntakeResult::getStatus).toList());
+    assertEquals(4002, results.get(3).getMediaId());
+    assertEquals(4003, results.get(5).getMediaId());
+    verify(bulkOperations, times(2)).execute();
+  }
+
+  @Test
+  public void testIngest_RowRejectedByBulkWriteIsReportedFailed() throws Exception {
+    when(sequenceGenerator.reserveSequenceRange("mediaId", 2)).thenReturn(3001);
+    when(bulkOperations.execute())
+        .thenThrow(
+            new BulkOperationException(
+                "Bulk write failed",
+                new MongoBulkWriteException(
+                    BulkWriteResult.unacknowledged(),
+                    List.of(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1)),
+                    null,
+                    new ServerAddress(),
+                    Set.of())));
+
+    List<MediaIntakeResult> results =
+        ingest("{\"mediaTitle\":\"Shogun\"}\n{\"mediaTitle\":\"Tai-Pan\"}\n");
+
+    assertEquals(MediaIntakeResult.CREATED, results.get(0).getStatus());
+    assertEquals(MediaIntakeResult.FAILED, results.get(1).getStatus());
+    assertEquals("duplicate key", results.get(1).getError());
+    verify(mediaSearchService, times(1)).indexMedia(any(Media.class));
+  }
+
+  private List<MediaIntakeResult> ingest(String body) throws Exception {
+    List<MediaIntakeResult> results = new ArrayList<>();
+    InputStream in = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    mediaIntakeService.ingest(in, results::add);
+    return results;
+  }
+
+  private static MediaIntakeResult resultFor(List<MediaIntakeResult> results, int row) {
+    return results.stream().filter(result -> result.getRow() == row).findFirst().orElseThrow();
+  }
+}
@@ -1,25 +1,44 @@
 package com.randomlake.library.service;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
+import com.mongodb.client.result.UpdateResult;
+import com.randomlake.library.cache.MediaLookupCache;
+import com.randomlake.library.dto.PageResponse;
 import com.randomlake.library.enums.*;
 import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.exception.PreconditionFailedException;
 import com.randomlake.library.model.Loan;
 import com.randomlake.library.model.Media;
+import com.randomlake.library.model.Tombstone;
 import com.randomlake.library.repository.LoanRepository;
 import com.randomlake.library.repository.MediaRepository;
+import com.randomlake.library.repository.TombstoneRepository;
+import com.randomlake.library.util.ConditionalRequests;
+import com.randomlake.library.util.KeysetPaginator;
+import com.randomlake.library.util.Precondition;
 import com.randomlake.library.util.SequenceGenerator;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.UnaryOperator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
 
 @ExtendWith(MockitoExtension.class)
 public class MediaServiceTest {
@@ -28,6 +47,15 @@ public class MediaServiceTest {
   @Mock private MediaRepository mediaRepository;
   @Mock private MediaUpdateService mediaUpdateService;
   @Mock private SequenceGenerator sequenceGenerator;
+  @Mock private TombstoneRepository tombstoneRepository;
+  @Mock private MediaSearchService mediaSearchService;
+  @Mock private AutocompleteService autocompleteService;
+
+  @Spy
+  private MediaLookupCache mediaLookupCache =
+      new MediaLookupCache(100, Duration.ofMinutes(5), UnaryOperator.identity());
+
+  @Spy private KeysetPaginator keysetPaginator = new KeysetPaginator();
 
   @InjectMocks private MediaService mediaService;
 
@@ -54,6 +82,9 @@ public class MediaServiceTest {
     media.setCreated_date(LocalDateTime.now());
     media.setLastUpdateDate(LocalDateTime.now());
     media.setAcquisitionDate(LocalDate.now());
+
+    ReflectionTestUtils.setField(keysetPaginator, "defaultPageSize", 2);
+    ReflectionTestUtils.setField(keysetPaginator, "maxPageSize", 10);
   }
 
   @Test
@@ -67,6 +98,35 @@ public class MediaServiceTest {
     verify(mediaRepository, times(1)).findAll();
   }
 
+  @Test
+  public void testGetMediaPage_FirstPageFetchesOneExtraRow() {
+    Media second = new Media();
+    second.setMediaId(2);
+    Media third = new Media();
+    third.setMediaId(3);
+    when(mediaRepository.findByMediaIdGreaterThanOrderByMediaIdAsc(0, Limit.of(3)))
+        .thenReturn(List.of(media, second, third));
+
+    PageResponse<Media> page = mediaService.getMediaPage(null, null);
+
+    assertEquals(2, page.getItems().size());
+    assertEquals(2, keysetPaginator.decodeCursor(page.getNextCursor(), "media"));
+  }
+
+  @Test
+  public void testGetMediaPage_ResumesAfterCursor() {
+    String cursor = keysetPaginator.encodeCursor("media", 2);
+    Media third = new Media();
+    third.setMediaId(3);
+    when(mediaRepository.findByMediaIdGreaterThanOrderByMediaIdAsc(2, Limit.of(3)))
+        .thenReturn(List.of(third));
+
+    PageResponse<Media> page = mediaService.getMediaPage(cursor, null);
+
+    assertEquals(List.of(third), page.getItems());
+    assertNull(page.getNextCursor());
+  }
+
   @Test
   public void testGetAllMedia_NoMedia() {
     when(mediaRepository.findAll()).thenReturn(Collections.emptyList());
@@ -92,6 +152,28 @@ public class MediaServiceTest {
     verify(mediaRepository, times(1)).findByMediaId(1);
   }
 
+  @Test
+  public void testGetMediaById_RepeatedLookupServedFromCache() {
+    when(mediaRepository.findByMediaId(1)).thenReturn(Optional.of(media));
+
+    mediaService.getMediaById(1);
+    Media cached = mediaService.getMediaById(1);
+
+    assertEquals(mediaTitle, cached.getMediaTitle());
+    verify(mediaRepository, times(1)).findByMediaId(1);
+  }
+
+  @Test
+  public void testUpdateMediaStatus_InvalidatesCachedMedia() {
+    when(mediaRepository.findByMediaId(1)).thenReturn(Optional.of(media));
+
+    mediaService.updateMediaStatus(mediaService.getMediaById(1), MediaStatus.CHECKED_OUT);
+    mediaService.getMediaById(1);
+
+    verify(mediaLookupCache, times(1)).invalidate(1);
+    verify(mediaRepository, times(2)).findByMediaId(1);
+  }
+
   @Test
   public void testGetMediaById_NotFound() {
     when(mediaRepository.findByMediaId(1)).thenReturn(Optional.empty());
@@ -221,32 +303,23 @@ public class MediaServiceTest {
     updates.put("mediaTitle", "Updated Title");
     updates.put("numberPages", 350);
 
-    when(mediaRepository.findByMediaId(1)).thenReturn(Optional.of(media));
-    doAnswer(
-            invocation -> {
-              Media mediaToUpdate = invocation.getArgument(0);
-              Map<String, Object> updatesMap = invocation.getArgument(1);
-              if (updatesMap.containsKey("mediaTitle")) {
-                mediaToUpdate.setMediaTitle((String) updatesMap.get("mediaTitle"));
-              }
-              if (updatesMap.containsKey("numberPages")) {
-                mediaToUpdate.setNumberPages((Integer) updatesMap.get("numberPages"));
-              }
-              return null;
-            })
-        .when(mediaUpdateService)
-        .applyPartialUpdates(any(Media.class), anyMap());
-    when(mediaRepository.save(media)).thenReturn(media);
+    Update update = new Update().set("media_title", "Updated Title").set("number_pages", 350);
+    media.setMediaTitle("Updated Title");
+    media.setNumberPages(350);
+    when(mediaUpdateService.toPartialUpdate(updates)).thenReturn(update);
+    when(mediaRepository.patch(1, update, Precondition.NONE)).thenReturn(Optional.of(media));
 
-    Media media = mediaService.updateMediaPartial(1, updates);
+    Media result = mediaService.updateMediaPartial(1, updates, Precondition.NONE);
 
-    assertNotNull(media);
-    assertEquals("Updated Title", media.getMediaTitle());
-    assertEquals(350, media.getNumberPages());
+    assertEquals("Updated Title", result.getMediaTitle());
+    assertEquals(350, result.getNumberPages());
 
-    verify(mediaRepository, times(1)).findByMediaId(1);
-    verify(mediaUpdateService, times(1)).applyPartialUpdates(media, updates);
-    verify(mediaRepository, times(1)).save(media);
+    // One findAndModify; the document is neither read first nor saved whole
+    verify(mediaRepository, never()).findByMediaId(anyInt());
+    verify(mediaRepository, never()).save(any(Media.class));
+    verify(mediaLookupCache, times(1)).invalidate(1);
+    verify(mediaSearchService, times(1)).indexMedia(media);
+    verify(autocompleteService, times(1)).indexMedia(media);
   }
 
   @Test
@@ -254,32 +327,53 @@ public class MediaServiceTest {
     Map<String, Object> updates = new HashMap<>();
 
     GeneralException exception =
-        assertThrows(GeneralException.class, () -> mediaService.updateMediaPartial(1, updates));
+        assertThrows(
+            GeneralException.class,
+            () -> mediaService.updateMediaPartial(1, updates, Precondition.NONE));
 
     assertEquals(ExceptionType.INVALID_OPERATION, exception.getType());
     assertEquals("No updates provided", exception.getMessage());
     assertEquals(HttpStatus.BAD_REQUEST, exception.getHttpStatus());
 
-    verify(mediaRepository, times(0)).findByMediaId(1);
-    verify(mediaUpdateService, times(0)).applyPartialUpdates(media, updates);
-    verify(mediaRepository, times(0)).save(media);
+    verify(mediaUpdateService, never()).toPartialUpdate(anyMap());
+    verify(mediaRepository, never()).patch(anyInt(), any(), any());
   }
 
   @Test
   public void testUpdatePartialMedia_MediaNotFound() {
     Map<String, Object> updates = Map.of("mediaTitle", "Updated Title");
-    when(mediaRepository.findByMediaId(1)).thenReturn(Optional.empty());
+    Update update = new Update().set("media_title", "Updated Title");
+    when(mediaUpdateService.toPartialUpdate(updates)).thenReturn(update);
+    when(mediaRepository.patch(1, update, Precondition.NONE)).thenReturn(Optional.empty());
 
     GeneralException exception =
-        assertThrows(GeneralException.class, () -> mediaService.updateMediaPartial(1, updates));
+        assertThrows(
+            GeneralException.class,
+            () -> mediaService.updateMediaPartial(1, updates, Precondition.NONE));
 
     assertEquals(ExceptionType.MEDIA_NOT_FOUND, exception.getType());
     assertEquals("No item with this ID found in collection", exception.getMessage());
     assertEquals(HttpStatus.NOT_FOUND, exception.getHttpStatus());
 
-    verify(mediaRepository, times(1)).findByMediaId(1);
-    verify(mediaUpdateService, times(0)).applyPartialUpdates(media, updates);
-    verify(mediaRepository, times(0)).save(media);
+    verify(mediaSearchService, never()).indexMedia(any(Media.class));
+  }
+
+  @Test
+  public void testUpdateMediaMatching_PatchesAllMatchesAndClearsCache() {
+    Map<String, Object> filter = Map.of("publisherName", "Random House");
+    Map<String, Object> updates = Map.of("publisherName", "Penguin Random House");
+    Criteria criteria = Criteria.where("publisher_name").is("Random House");
+    Update update = new Update().set("publisher_name", "Penguin Random House");
+    when(mediaUpdateService.toPatchFilter(filter)).thenReturn(criteria);
+    when(mediaUpdateService.toBulkUpdate(updates)).thenReturn(update);
+    when(mediaRepository.patchMatching(criteria, update))
+        .thenReturn(UpdateResult.acknowledged(12, 11L, null));
+
+    UpdateResult result = mediaService.updateMediaMatching(filter, updates);
+
+    assertEquals(12, result.getMatchedCount());
+    assertEquals(11, result.getModifiedCount());
+    verify(mediaLookupCache, times(1)).invalidateAll();
   }
 
   @Test
@@ -319,7 +413,7 @@ public class MediaServiceTest {
         .applyFullUpdate(any(Media.class), any(Media.class));
     when(mediaRepository.save(media)).thenReturn(media);
 
-    Media media = mediaService.updateMediaFull(1, fullUpdate);
+    Media media = mediaService.updateMediaFull(1, fullUpdate, Precondition.NONE);
 
     assertNotNull(media);
     assertEquals("Full Updated Title", media.getMediaTitle());
@@ -342,7 +436,8 @@ public class MediaServiceTest {
   @Test
   public void testUpdateMediaFull_NullUpdate() {
     GeneralException exception =
-        assertThrows(GeneralException.class, () -> mediaService.updateMediaFull(1, null));
+        assertThrows(
+            GeneralException.class, () -> mediaService.updateMediaFull(1, null, Precondition.NONE));
 
     assertEquals(ExceptionType.INVALID_OPERATION, exception.getType());
     assertEquals("No updates provided", exception.getMessage());
@@ -359,7 +454,9 @@ public class MediaServiceTest {
     when(mediaRepository.findByMediaId(1)).thenReturn(Optional.empty());
 
     GeneralException exception =
-        assertThrows(GeneralException.class, () -> mediaService.updateMediaFull(1, fullUpdate));
+        assertThrows(
+            GeneralException.class,
+            () -> mediaService.updateMediaFull(1, fullUpdate, Precondition.NONE));
 
     assertEquals(ExceptionType.MEDIA_NOT_FOUND, exception.getType());
     assertEquals("No item with this ID found in collection", exception.getMessage());
@@ -370,6 +467,60 @@ public class MediaServiceTest {
     verify(mediaRepository, times(0)).save(any());
   }
 
+  @Test
+  public void testUpdateMediaPartial_ChangedSinceIfMatch() {
+    Map<String, Object> updates = Map.of("mediaTitle", "Updated Title");
+    Update update = new Update().set("media_title", "Updated Title");
+    Precondition precondition = ifMatch(media.getLastUpdateDate().minusMinutes(5));
+    when(mediaUpdateService.toPartialUpdate(updates)).thenReturn(update);
+    when(mediaRepository.patch(1, update, precondition)).thenReturn(Optional.empty());
+    when(mediaRepository.findByMediaId(1)).thenReturn(Optional.of(media));
+
+    PreconditionFailedException exception =
+        assertThrows(
+            PreconditionFailedException.class,
+            () -> mediaService.updateMediaPartial(1, updates, precondition));
+
+    assertEquals(HttpStatus.PRECONDITION_FAILED, exception.getHttpStatus());
+    assertEquals(
+        ConditionalRequests.etag("media", 1, media.getLastUpdateDate()), exception.getEtag());
+    verify(mediaSearchService, never()).indexMedia(any(Media.class));
+  }
+
+  @Test
+  public void testUpdateMediaFull_ChangedSinceIfMatch() {
+    Precondition precondition = ifMatch(media.getLastUpdateDate().minusMinutes(5));
+    when(mediaRepository.findByMediaId(1)).thenReturn(Optional.of(media));
+
+    assertThrows(
+        PreconditionFailedException.class,
+        () -> mediaService.updateMediaFull(1, new Media(), precondition));
+
+    verify(mediaUpdateService, never()).applyFullUpdate(any(), any());
+    verify(mediaRepository, never()).save(any());
+  }
+
+  @Test
+  public void testUpdateMediaFull_ChangedAfterIfMatchChecked() {
+    LocalDateTime seen = media.getLastUpdateDate();
+    LocalDateTime current = seen.plusSeconds(1);
+    Precondition precondition = ifMatch(seen);
+    when(mediaRepository.findByMediaId(1)).thenReturn(Optional.of(media));
+    when(mediaRepository.save(media))
+        .thenThrow(new OptimisticLockingFailureException("Version mismatch"));
+    when(mediaRepository.findLastUpdateDate(1)).thenReturn(Optional.of(current));
+
+    PreconditionFailedException exception =
+        assertThrows(
+            PreconditionFailedException.class,
+            () -> mediaService.updateMediaFull(1, new Media(), precondition));
+
+    assertEquals(ConditionalRequests.etag("media", 1, current), exception.getEtag());
+    // Read past the lookup cache, whose copy may predate the ETag
+    verify(mediaRepository, times(1)).findByMediaId(1);
+    verify(mediaSearchService, never()).indexMedia(any(Media.class));
+  }
+
   @Test
   public void testDeleteMedia_Success() {
     when(mediaRepository.findByMediaId(1)).thenReturn(Optional.of(media));
@@ -378,6 +529,13 @@ public class MediaServiceTest {
 
     verify(mediaRepository, times(1)).findByMediaId(1);
     verify(mediaRepository, times(1)).delete(media);
+
+    verify(tombstoneRepository)
+        .save(
+            argThat(
+                (Tombstone tombstone) ->
+                    Tombstone.MEDIA.equals(tombstone.getCollectionName())
+                        && tombstone.getEntityId() == 1));
   }
 
   @Test
@@ -534,4 +692,118 @@ public class MediaServiceTest {
 
     verify(mediaRepository, times(1)).save(media);
   }
+
+  @Test
+  public void testGetMediaByIds_ReturnsItemsInRequestOrder() {
+    Media other = new Media();
+    other.setMediaId(2);
+
+    when(mediaRepository.findAllByMediaIdIn(List.of(2, 1))).thenReturn(List.of(media, other));
+
+    List<Media> result = mediaService.getMediaByIds(List.of(2, 1));
+
+    assertEquals(List.of(other, media), result);
+    verify(mediaRepository, times(1)).findAllByMediaIdIn(List.of(2, 1));
+  }
+
+  @Test
+  public void testGetMediaByIds_MissingItem() {
+    when(mediaRepository.findAllByMediaIdIn(List.of(1, 2))).thenReturn(List.of(media));
+
+    GeneralException exception =
+        assertThrows(GeneralException.class, () -> mediaService.getMediaByIds(List.of(1, 2)));
+
+    assertEquals(ExceptionType.MEDIA_NOT_FOUND, exception.getType());
+    assertEquals(HttpStatus.NOT_FOUND, exception.getHttpStatus());
+  }
+
+  @Test
+  public void testTransitionMediaStatuses_Success() {
+    Media written = new Media();
+    written.setMediaId(1);
+    written.setStatus(MediaStatus.CHECKED_OUT);
+
+    when(mediaRepository.transitionStatus(
+            eq(1),
+            eq(MediaStatus.AVAILABLE),
+            eq(MediaStatus.CHECKED_OUT),
+            any(LocalDateTime.class)))
+        .thenReturn(Optional.of(written));
+
+    List<Media> result =
+        mediaService.transitionMediaStatuses(
+            List.of(1), MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT);
+
+    assertEquals(List.of(written), result);
+    verify(mediaRepository, never()).findAllByMediaIdIn(any());
+    verify(mediaRepository, never()).save(any());
+    verify(mediaRepository, never()).revertStatusForMediaIds(any(), any(), any(), any());
+    verify(mediaSearchService, times(1)).indexMedia(List.of(written));
+  }
+
+  @Test
+  public void testTransitionMediaStatuses_ConcurrentChange_RevertsBatch() {
+    LocalDateTime stamp = LocalDateTime.of(2024, 10, 1, 12, 0);
+    Media written = new Media();
+    written.setMediaId(1);
+    written.setStatus(MediaStatus.CHECKED_OUT);
+    written.setLastUpdateDate(stamp);
+    Media other = new Media();
+    other.setMediaId(2);
+    other.setStatus(MediaStatus.CHECKED_OUT);
+
+    when(mediaRepository.transitionStatus(
+            eq(1),
+            eq(MediaStatus.AVAILABLE),
+            eq(MediaStatus.CHECKED_OUT),
+            any(LocalDateTime.class)))
+        .thenReturn(Optional.of(written));
+    when(mediaRepository.transitionStatus(
+            eq(2),
+            eq(MediaStatus.AVAILABLE),
+            eq(MediaStatus.CHECKED_OUT),
+            any(LocalDateTime.class)))
+        .thenReturn(Optional.empty());
+    when(mediaRepository.findByMediaId(2)).thenReturn(Optional.of(other));
+
+    GeneralException exception =
+        assertThrows(
+            GeneralException.class,
+            () ->
+                mediaService.transitionMediaStatuses(
+                    List.of(1, 2), MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT));
+
+    assertEquals(ExceptionType.MEDIA_NOT_AVAILABLE, exception.getType());
+    assertEquals(HttpStatus.FORBIDDEN, exception.getHttpStatus());
+    assertEquals(MediaStatus.AVAILABLE, written.getStatus());
+    verify(mediaRepository, times(1))
+        .revertStatusForMediaIds(List.of(1), MediaStatus.CHECKED_OUT, MediaStatus.AVAILABLE, stamp);
+  }
+
+  @Test
+  public void testTransitionMediaStatuses_MissingItem() {
+    when(mediaRepository.transitionStatus(
+            eq(1),
+            eq(MediaStatus.AVAILABLE),
+            eq(MediaStatus.CHECKED_OUT),
+            any(LocalDateTime.class)))
+        .thenReturn(Optional.empty());
+    when(mediaRepository.findByMediaId(1)).thenReturn(Optional.empty());
+
+    GeneralException exception =
+        assertThrows(
+            GeneralException.class,
+            () ->
+                mediaService.transitionMediaStatuses(
+                    List.of(1), MediaStatus.AVAILABLE, MediaStatus.CHECKED_OUT));
+
+    assertEquals(ExceptionType.MEDIA_NOT_FOUND, exception.getType());
+    verify(mediaRepository, never()).revertStatusForMediaIds(any(), any(), any(), any());
+  }
+
+  private static Precondition ifMatch(LocalDateTime seen) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader("If-Match", ConditionalRequests.etag("media", 1, seen));
+    return ConditionalRequests.ifMatch(request, "media", 1);
+  }
 }
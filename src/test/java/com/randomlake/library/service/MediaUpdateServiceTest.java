@@ -2,14 +2,21 @@ package com.randomlake.library.service;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.randomlake.library.enums.ExceptionType;
 import com.randomlake.library.enums.MediaStatus;
+import com.randomlake.library.exception.GeneralException;
 import com.randomlake.library.model.Media;
 import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 @ExtendWith(SpringExtension.class)
@@ -20,59 +27,88 @@ public class MediaUpdateServiceTest {
 
   @BeforeEach
   void setup() {
-    mediaUpdateService = new MediaUpdateService();
+    MongoMappingContext mappingContext = new MongoMappingContext();
+    mappingContext.setSimpleTypeHolder(new MongoCustomConversions(List.of()).getSimpleTypeHolder());
+    mediaUpdateService = new MediaUpdateService(mappingContext);
     media = new Media();
   }
 
   @Test
-  public void testApplyPartialUpdate_ValidFields() {
+  public void testToPartialUpdate_ValidFields() {
     Map<String, Object> updates = new HashMap<>();
     updates.put("mediaTitle", "Updated Title");
     updates.put("authorName", "Updated Author");
     updates.put("isbnId", "1234567890");
     updates.put("numberPages", 300);
-    updates.put("acquisitionDate", LocalDate.of(2021, 10, 1));
+    updates.put("acquisitionDate", "2021-10-01");
     updates.put("status", "AVAILABLE");
 
-    mediaUpdateService.applyPartialUpdates(media, updates);
+    Document set = setOf(mediaUpdateService.toPartialUpdate(updates));
 
-    assertEquals("Updated Title", media.getMediaTitle());
-    assertEquals("Updated Author", media.getAuthorName());
-    assertEquals("1234567890", media.getIsbnId());
-    assertEquals(300, media.getNumberPages());
-    assertEquals(LocalDate.of(2021, 10, 1), media.getAcquisitionDate());
-    assertEquals(MediaStatus.AVAILABLE, media.getStatus());
-    assertNotNull(media.getLastUpdateDate());
+    assertEquals("Updated Title", set.get("media_title"));
+    assertEquals("Updated Author", set.get("author_name"));
+    assertEquals("1234567890", set.get("isbn_id"));
+    assertEquals(300, set.get("number_pages"));
+    assertEquals(LocalDate.of(2021, 10, 1), set.get("acquisition_date"));
+    assertEquals(MediaStatus.AVAILABLE, set.get("media_status"));
+    assertNotNull(set.get("last_update_date"));
   }
 
   @Test
-  void testApplyPartialUpdates_InvalidNumberPages_ThrowsException() {
+  void testToPartialUpdate_InvalidNumberPages_ThrowsException() {
     Map<String, Object> updates = new HashMap<>();
     updates.put("numberPages", "invalid");
 
-    IllegalArgumentException exception =
-        assertThrows(
-            IllegalArgumentException.class,
-            () -> {
-              mediaUpdateService.applyPartialUpdates(media, updates);
-            });
+    GeneralException exception =
+        assertThrows(GeneralException.class, () -> mediaUpdateService.toPartialUpdate(updates));
 
-    assertEquals("Invalid type for numberPages. Expected an Integer.", exception.getMessage());
+    assertEquals(ExceptionType.INVALID_INPUT, exception.getType());
+    assertEquals(
+        "Invalid value for numberPages: invalid (expected a whole number)", exception.getMessage());
   }
 
   @Test
-  void testApplyPartialUpdates_InvalidStatus_ThrowsException() {
+  void testToPartialUpdate_InvalidStatus_ThrowsException() {
     Map<String, Object> updates = new HashMap<>();
     updates.put("status", "INVALID_STATUS");
 
-    RuntimeException exception =
+    GeneralException exception =
+        assertThrows(GeneralException.class, () -> mediaUpdateService.toPartialUpdate(updates));
+
+    assertEquals(
+        "Invalid value for status: INVALID_STATUS (not a valid MediaStatus)",
+        exception.getMessage());
+  }
+
+  @Test
+  void testToPartialUpdate_MediaIdIsNotPatchable() {
+    GeneralException exception =
         assertThrows(
-            RuntimeException.class,
-            () -> {
-              mediaUpdateService.applyPartialUpdates(media, updates);
-            });
+            GeneralException.class, () -> mediaUpdateService.toPartialUpdate(Map.of("mediaId", 7)));
+
+    assertEquals("Unknown property: mediaId", exception.getMessage());
+  }
 
-    assertEquals("Invalid media status: INVALID_STATUS", exception.getMessage());
+  @Test
+  void testToBulkUpdate_StatusAndBarcodeAreNotPatchable() {
+    for (String property : List.of("status", "barCodeId")) {
+      Map<String, Object> updates = new HashMap<>();
+      updates.put(property, "AVAILABLE");
+
+      GeneralException exception =
+          assertThrows(GeneralException.class, () -> mediaUpdateService.toBulkUpdate(updates));
+
+      assertEquals("Unknown property: " + property, exception.getMessage());
+    }
+    assertEquals(
+        "Penguin",
+        setOf(mediaUpdateService.toBulkUpdate(Map.of("publisherName", "Penguin")))
+            .get("publisher_name"));
+  }
+
+  @Test
+  void testToPatchFilter_MayStillMatchOnStatus() {
+    assertNotNull(mediaUpdateService.toPatchFilter(Map.of("status", "AVAILABLE")));
   }
 
   @Test
@@ -93,4 +129,8 @@ public class MediaUpdateServiceTest {
     assertEquals(LocalDate.of(2022, 5, 10), media.getAcquisitionDate());
     assertNotNull(media.getLastUpdateDate());
   }
+
+  private static Document setOf(Update update) {
+    return update.getUpdateObject().get("$set", Document.class);
+  }
 }
@@ -0,0 +1,152 @@
+package com.randomlake.library.service;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.randomlake.library.exception.EmailException;
+import com.randomlake.library.model.NotificationOutbox;
+import com.randomlake.library.repository.NotificationOutboxRepository;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Optional;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@ExtendWith(MockitoExtension.class)
+public class NotificationDispatcherTest {
+
+  @Mock private NotificationOutboxRepository outboxRepository;
+  @Mock private EmailService emailService;
+
+  private NotificationDispatcher dispatcher;
+
+  private final LocalDateTime now = LocalDateTime.of(2023, 10, 1, 8, 0);
+
+  @BeforeEach
+  public void setUp() {
+    Clock clock =
+        Clock.fixed(now.atZone(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault());
+    dispatcher = new NotificationDispatcher(outboxRepository, emailService, clock);
+    ReflectionTestUtils.setField(dispatcher, "workers", 2);
+    ReflectionTestUtils.setField(dispatcher, "batchSize", 10);
+    ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+    ReflectionTestUtils.setField(dispatcher, "leaseSeconds", 5L);
+    ReflectionTestUtils.setField(dispatcher, "backoffSeconds", 30L);
+    ReflectionTestUtils.setField(dispatcher, "smtpHost", "localhost");
+    ReflectionTestUtils.setField(dispatcher, "smtpRatePerSecond", 100.0);
+    dispatcher.start();
+  }
+
+  @AfterEach
+  public void tearDown() throws InterruptedException {
+    dispatcher.shutdown();
+  }
+
+  @Test
+  public void testDeliver_MarksSentAfterEmailAccepted() {
+    NotificationOutbox entry = claimedEntry(1);
+
+    dispatcher.deliver(entry);
+
+    verify(emailService)
+        .sendEmail(anyString(), eq("pat@example.com"), eq("Library Notification"), eq("body"));
+    verify(outboxRepository).markSent(entry, now);
+  }
+
+  @Test
+  public void testDeliver_SchedulesRetryWithBackoff() {
+    NotificationOutbox entry = claimedEntry(2);
+    doThrow(new EmailException("SMTP unavailable"))
+        .when(emailService)
+        .sendEmail(anyString(), anyString(), anyString(), anyString());
+
+    dispatcher.deliver(entry);
+
+    // Second attempt waits twice the base backoff
+    verify(outboxRepository).scheduleRetry(entry, now.plusSeconds(60), "SMTP unavailable");
+    verify(outboxRepository, never()).markSent(any(), any());
+  }
+
+  @Test
+  public void testDeliver_MarksFailedAfterMaxAttempts() {
+    NotificationOutbox entry = claimedEntry(3);
+    doThrow(new EmailException("SMTP unavailable"))
+        .when(emailService)
+        .sendEmail(anyString(), anyString(), anyString(), anyString());
+
+    dispatcher.deliver(entry);
+
+    verify(outboxRepository).markFailed(entry, "SMTP unavailable");
+    verify(outboxRepository, never()).scheduleRetry(any(), any(), any());
+  }
+
+  @Test
+  public void testDeliver_EntryWithoutRecipientIsNotRetried() {
+    NotificationOutbox entry = claimedEntry(1);
+    entry.setRecipient(null);
+
+    dispatcher.deliver(entry);
+
+    verify(outboxRepository).markFailed(entry, "No recipient");
+    verifyNoInteractions(emailService);
+  }
+
+  @Test
+  public void testDeliver_LostLeaseIsNotRetried() {
+    NotificationOutbox entry = claimedEntry(1);
+    when(outboxRepository.markSent(entry, now)).thenReturn(false);
+
+    dispatcher.deliver(entry);
+
+    verify(outboxRepository).markSent(entry, now);
+    verify(outboxRepository, never()).scheduleRetry(any(), any(), any());
+    verify(outboxRepository, never()).markFailed(any(), any());
+  }
+
+  @Test
+  public void testDispatchPending_ClaimsUntilOutboxIsEmpty() {
+    NotificationOutbox first = claimedEntry(1);
+    NotificationOutbox second = claimedEntry(1);
+    when(outboxRepository.claimNext(now, now.plusSeconds(5)))
+        .thenReturn(Optional.of(first))
+        .thenReturn(Optional.of(second))
+        .thenReturn(Optional.empty());
+
+    dispatcher.dispatchPending();
+
+    verify(outboxRepository, timeout(1000)).markSent(first, now);
+    verify(outboxRepository, timeout(1000)).markSent(second, now);
+    verify(outboxRepository, times(3)).claimNext(any(), any());
+  }
+
+  @Test
+  public void testDispatchPending_StopsAfterOneBatch() {
+    ReflectionTestUtils.setField(dispatcher, "batchSize", 2);
+    NotificationOutbox first = claimedEntry(1);
+    NotificationOutbox second = claimedEntry(1);
+    when(outboxRepository.claimNext(now, now.plusSeconds(5)))
+        .thenReturn(Optional.of(first))
+        .thenReturn(Optional.of(second));
+
+    dispatcher.dispatchPending();
+
+    verify(outboxRepository, timeout(1000)).markSent(second, now);
+    verify(outboxRepository, times(2)).claimNext(any(), any());
+  }
+
+  private NotificationOutbox claimedEntry(int attempts) {
+    NotificationOutbox entry =
+        new NotificationOutbox(
+            1, "items-due:2023-10-01:1", "pat@example.com", "Library Notification", "body", now);
+    entry.setId(new ObjectId());
+    entry.setAttempts(attempts);
+    return entry;
+  }
+}
@@ -0,0 +1,94 @@
+package com.randomlake.library.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.randomlake.library.dto.PatronContact;
+import com.randomlake.library.model.NotificationOutbox;
+import com.randomlake.library.repository.NotificationOutboxRepository;
+import com.randomlake.library.repository.PatronRepository;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class NotificationSenderTest {
+
+  @Mock private NotificationOutboxRepository outboxRepository;
+  @Mock private PatronRepository patronRepository;
+
+  @Captor private ArgumentCaptor<List<NotificationOutbox>> entriesCaptor;
+
+  private NotificationSender notificationSender;
+
+  @BeforeEach
+  public void setUp() {
+    Clock clock =
+        Clock.fixed(
+            LocalDate.of(2023, 10, 1).atStartOfDay(ZoneId.systemDefault()).toInstant(),
+            ZoneId.systemDefault());
+    notificationSender = new NotificationSender(outboxRepository, patronRepository, clock);
+  }
+
+  @Test
+  public void testEnqueueNotifications_ResolvesRecipientsInOneQuery() {
+    when(patronRepository.findContactsByPatronIdIn(Set.of(1, 2, 3)))
+        .thenReturn(List.of(contact(1, "one@example.com"), contact(2, null)));
+    when(outboxRepository.enqueueAll(anyList())).thenReturn(1);
+
+    int queued =
+        notificationSender.enqueueNotifications(
+            Map.of(1, "message one", 2, "message two", 3, "message three"), "items-due:2023-10-01");
+
+    assertEquals(1, queued);
+    verify(patronRepository, times(1)).findContactsByPatronIdIn(anyCollection());
+    verify(patronRepository, never()).findByPatronId(anyInt());
+    verify(outboxRepository).enqueueAll(entriesCaptor.capture());
+
+    // Patron 2 has no email address and patron 3 does not exist
+    List<NotificationOutbox> entries = entriesCaptor.getValue();
+    assertEquals(1, entries.size());
+    assertEquals("one@example.com", entries.get(0).getRecipient());
+    assertEquals("items-due:2023-10-01:1", entries.get(0).getIdempotencyKey());
+    assertEquals("message one", entries.get(0).getBody());
+  }
+
+  @Test
+  public void testEnqueueNotification_SkipsPatronWithoutEmail() {
+    when(patronRepository.findContactsByPatronIdIn(List.of(5))).thenReturn(List.of());
+
+    notificationSender.enqueueNotification(5, "status-change:5:SUSPENDED:2023-10-01", "message");
+
+    verifyNoInteractions(outboxRepository);
+  }
+
+  private PatronContact contact(int patronId, String emailAddress) {
+    return new PatronContact() {
+      @Override
+      public int getPatronId() {
+        return patronId;
+      }
+
+      @Override
+      public String getEmailAddress() {
+        return emailAddress;
+      }
+
+      @Override
+      public String getContactMethod() {
+        return "email";
+      }
+    };
+  }
+}
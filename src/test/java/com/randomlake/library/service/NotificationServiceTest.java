@@ -1,22 +1,20 @@
 package com.randomlake.library.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.*;
 
-import com.randomlake.library.enums.ItemStatus;
-import com.randomlake.library.enums.LoanStatus;
-import com.randomlake.library.model.Loan;
-import com.randomlake.library.model.Media;
+import com.randomlake.library.dto.PatronDueItems;
+import com.randomlake.library.enums.PatronStatus;
 import com.randomlake.library.repository.LoanRepository;
-import com.randomlake.library.repository.MediaRepository;
 import java.time.Clock;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -24,169 +22,177 @@ public class NotificationServiceTest {
 
   @Mock private LoanRepository loanRepository;
 
-  @Mock private MediaRepository mediaRepository;
-
   @Mock private NotificationSender notificationSender;
 
+  @Captor private ArgumentCaptor<Map<Integer, String>> messagesCaptor;
+
+  @Captor private ArgumentCaptor<Collection<LocalDate>> dueDatesCaptor;
+
   private NotificationService notificationService;
 
   private Clock clock;
 
+  private final LocalDate fixedDate = LocalDate.of(2023, 10, 1);
+
   @BeforeEach
   void setup() {
     MockitoAnnotations.openMocks(this);
-    LocalDate fixedDate = LocalDate.of(2023, 10, 1);
     clock =
         Clock.fixed(
             fixedDate.atStartOfDay(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault());
-    notificationService =
-        new NotificationService(loanRepository, mediaRepository, notificationSender, clock);
+    notificationService = new NotificationService(loanRepository, notificationSender, clock);
   }
 
   @Test
-  public void testCheckDueItemsAndNotifyPatron_dueSoon() {
+  public void testCheckDueItemsAndNotifyPatron_queriesAllWindowsOnce() {
     // Arrange
-    LocalDate fixedDate = LocalDate.of(2023, 10, 1);
-    LocalDate dueDate = fixedDate.plusDays(3); // 2023-10-04
+    when(loanRepository.streamDueItemsByPatron(anyCollection())).thenReturn(Stream.empty());
 
-    Loan loan = new Loan();
-    loan.setPatronId(1);
-    loan.setStatus(LoanStatus.ACTIVE);
-
-    Loan.LoanItem loanItem = new Loan.LoanItem();
-    loanItem.setMediaId(100);
-    loanItem.setDueDate(dueDate);
-    loanItem.setStatus(ItemStatus.CHECKED_OUT);
-
-    loan.setItems(List.of(loanItem));
+    // Act
+    notificationService.checkDueItemsAndNotifyPatron();
 
-    Media media = new Media();
-    media.setMediaId(100);
-    media.setMediaTitle("Hit the Sky");
+    // Assert
+    verify(loanRepository, times(1)).streamDueItemsByPatron(dueDatesCaptor.capture());
+    assertEquals(
+        Set.of(
+            fixedDate.plusDays(3),
+            fixedDate,
+            fixedDate.minusDays(5),
+            fixedDate.minusDays(10),
+            fixedDate.minusDays(15),
+            fixedDate.minusDays(30)),
+        new HashSet<>(dueDatesCaptor.getValue()));
+  }
 
-    // Mock the repository methods
-    when(loanRepository.findActiveLoansByDueDateAndItemStatus(
-            any(LocalDate.class), eq(LoanStatus.ACTIVE), eq(ItemStatus.CHECKED_OUT)))
-        .thenReturn(Collections.emptyList());
-    when(loanRepository.findActiveLoansByDueDateAndItemStatus(
-            dueDate, LoanStatus.ACTIVE, ItemStatus.CHECKED_OUT))
-        .thenReturn(List.of(loan));
-    when(mediaRepository.findAllByMediaIdIn(Set.of(100))).thenReturn(List.of(media));
+  @Test
+  public void testCheckDueItemsAndNotifyPatron_dueSoon() {
+    // Arrange
+    LocalDate dueDate = fixedDate.plusDays(3); // 2023-10-04
+    when(loanRepository.streamDueItemsByPatron(anyCollection()))
+        .thenReturn(Stream.of(digest(1, dueItem(100, "Hit the Sky", dueDate))));
 
     // Act
     notificationService.checkDueItemsAndNotifyPatron();
 
     // Assert
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
-    verify(notificationSender, times(1)).sendNotification(eq(1), messageCaptor.capture());
+    verify(notificationSender, times(1))
+        .enqueueNotifications(messagesCaptor.capture(), eq("items-due:2023-10-01"));
+    assertEquals(Set.of(1), messagesCaptor.getValue().keySet());
 
     String expectedMessage =
         String.format(
             "The following items are due in %d days:\nMedia ID: %s Title: %s Due Date: %s.\n",
             3, 100, "Hit the Sky", dueDate);
-    assertEquals(expectedMessage, messageCaptor.getValue());
+    assertEquals(expectedMessage, messagesCaptor.getValue().get(1));
   }
 
   @Test
   public void testCheckDueItemsAndNotifyPatron_noLoansDue() {
     // Arrange
-    when(loanRepository.findActiveLoansByDueDateAndItemStatus(
-            any(LocalDate.class), eq(LoanStatus.ACTIVE), eq(ItemStatus.CHECKED_OUT)))
-        .thenReturn(Collections.emptyList());
+    when(loanRepository.streamDueItemsByPatron(anyCollection())).thenReturn(Stream.empty());
 
     // Act
     notificationService.checkDueItemsAndNotifyPatron();
 
     // Assert
-    verify(notificationSender, times(0)).sendNotification(anyInt(), anyString());
+    verify(notificationSender, never()).enqueueNotifications(anyMap(), anyString());
   }
 
   @Test
   public void testCheckDueItemsAndNotifyPatron_pastDueNotification() {
     // Arrange
-    LocalDate fixedDate = LocalDate.of(2023, 10, 1);
     LocalDate pastDueDate = fixedDate.minusDays(5); // 2023-09-26
-
-    Loan loan = new Loan();
-    loan.setPatronId(2);
-    loan.setStatus(LoanStatus.ACTIVE);
-
-    Loan.LoanItem loanItem = new Loan.LoanItem();
-    loanItem.setMediaId(101);
-    loanItem.setDueDate(pastDueDate);
-    loanItem.setStatus(ItemStatus.CHECKED_OUT);
-
-    loan.setItems(List.of(loanItem));
-
-    Media media = new Media();
-    media.setMediaId(101);
-    media.setMediaTitle("1984");
-
-    // Mock the repository methods
-    when(loanRepository.findActiveLoansByDueDateAndItemStatus(
-            any(LocalDate.class), eq(LoanStatus.ACTIVE), eq(ItemStatus.CHECKED_OUT)))
-        .thenReturn(Collections.emptyList());
-    when(loanRepository.findActiveLoansByDueDateAndItemStatus(
-            pastDueDate, LoanStatus.ACTIVE, ItemStatus.CHECKED_OUT))
-        .thenReturn(List.of(loan));
-    when(mediaRepository.findAllByMediaIdIn(Set.of(101))).thenReturn(List.of(media));
+    when(loanRepository.streamDueItemsByPatron(anyCollection()))
+        .thenReturn(Stream.of(digest(2, dueItem(101, "1984", pastDueDate))));
 
     // Act
     notificationService.checkDueItemsAndNotifyPatron();
 
     // Assert
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
-    verify(notificationSender, times(1)).sendNotification(eq(2), messageCaptor.capture());
+    verify(notificationSender, times(1))
+        .enqueueNotifications(messagesCaptor.capture(), eq("items-due:2023-10-01"));
+    assertEquals(Set.of(2), messagesCaptor.getValue().keySet());
 
     String expectedMessage =
         String.format(
             "The following items are %d days past due:\nMedia ID: %s Title: %s Due Date: %s.\n",
             5, 101, "1984", pastDueDate);
-    assertEquals(expectedMessage, messageCaptor.getValue());
+    assertEquals(expectedMessage, messagesCaptor.getValue().get(2));
   }
 
   @Test
   public void testCheckDueItemsAndNotifyPatron_pastDueAccountSuspendedNotification() {
     // Arrange
-    LocalDate fixedDate = LocalDate.of(2023, 10, 1);
     LocalDate pastDueDate = fixedDate.minusDays(30); // 2023-09-01
+    when(loanRepository.streamDueItemsByPatron(anyCollection()))
+        .thenReturn(Stream.of(digest(3, dueItem(102, "Bright Flows the River", pastDueDate))));
 
-    Loan loan = new Loan();
-    loan.setPatronId(3);
-    loan.setStatus(LoanStatus.ACTIVE);
-
-    Loan.LoanItem loanItem = new Loan.LoanItem();
-    loanItem.setMediaId(102);
-    loanItem.setDueDate(pastDueDate);
-    loanItem.setStatus(ItemStatus.CHECKED_OUT);
+    // Act
+    notificationService.checkDueItemsAndNotifyPatron();
 
-    loan.setItems(List.of(loanItem));
+    // Assert
+    verify(notificationSender, times(1))
+        .enqueueNotifications(messagesCaptor.capture(), eq("items-due:2023-10-01"));
+    assertEquals(Set.of(3), messagesCaptor.getValue().keySet());
 
-    Media media = new Media();
-    media.setMediaId(102);
-    media.setMediaTitle("Bright Flows the River");
+    String expectedMessage =
+        String.format(
+            "Important Alert.\nThe following items are %d days past due:\nMedia ID: %s Title: %s Due Date: %s.\n"
+                + "Your account is suspended, and your borrowing privileges are revoked. Please contact the library.\n",
+            30, 102, "Bright Flows the River", pastDueDate);
+    assertEquals(expectedMessage, messagesCaptor.getValue().get(3));
+  }
 
-    // Mock the repository methods
-    when(loanRepository.findActiveLoansByDueDateAndItemStatus(
-            any(LocalDate.class), eq(LoanStatus.ACTIVE), eq(ItemStatus.CHECKED_OUT)))
-        .thenReturn(Collections.emptyList());
-    when(loanRepository.findActiveLoansByDueDateAndItemStatus(
-            pastDueDate, LoanStatus.ACTIVE, ItemStatus.CHECKED_OUT))
-        .thenReturn(List.of(loan));
-    when(mediaRepository.findAllByMediaIdIn(Set.of(102))).thenReturn(List.of(media));
+  @Test
+  public void testCheckDueItemsAndNotifyPatron_digestSpansSeveralWindows() {
+    // Arrange
+    LocalDate dueToday = fixedDate;
+    LocalDate pastDueDate = fixedDate.minusDays(10);
+    when(loanRepository.streamDueItemsByPatron(anyCollection()))
+        .thenReturn(
+            Stream.of(
+                digest(4, dueItem(103, "Today Title", dueToday), dueItem(104, null, pastDueDate))));
 
     // Act
     notificationService.checkDueItemsAndNotifyPatron();
 
     // Assert
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
-    verify(notificationSender, times(1)).sendNotification(eq(3), messageCaptor.capture());
+    verify(notificationSender, times(1))
+        .enqueueNotifications(messagesCaptor.capture(), eq("items-due:2023-10-01"));
 
     String expectedMessage =
         String.format(
-            "Important Alert.\nThe following items are %d days past due:\nMedia ID: %s Title: %s Due Date: %s.\n"
-                + "Your account is suspended, and your borrowing privileges are revoked. Please contact the library.\n",
-            30, 102, "Bright Flows the River", pastDueDate);
-    assertEquals(expectedMessage, messageCaptor.getValue());
+                "The following items are due today:\nMedia ID: %s Title: %s Due Date: %s.\n",
+                103, "Today Title", dueToday)
+            + String.format(
+                "The following items are %d days past due:\nMedia ID: %s Title: %s Due Date: %s.\n",
+                10, 104, "Unknown Title", pastDueDate);
+    assertEquals(expectedMessage, messagesCaptor.getValue().get(4));
+  }
+
+  @Test
+  public void testNotifyPatronStatusChange_queuesWithDailyKey() {
+    notificationService.notifyPatronStatusChange(7, PatronStatus.SUSPENDED);
+
+    verify(notificationSender, times(1))
+        .enqueueNotification(
+            7,
+            "status-change:7:SUSPENDED:2023-10-01",
+            "Your account status has been changed to SUSPENDED.\n");
+  }
+
+  private PatronDueItems digest(int patronId, PatronDueItems.DueItem... items) {
+    PatronDueItems digest = new PatronDueItems();
+    digest.setPatronId(patronId);
+    digest.setItems(List.of(items));
+    return digest;
+  }
+
+  private PatronDueItems.DueItem dueItem(int mediaId, String title, LocalDate dueDate) {
+    PatronDueItems.DueItem item = new PatronDueItems.DueItem();
+    item.setMediaId(mediaId);
+    item.setMediaTitle(title);
+    item.setDueDate(dueDate);
+    return item;
   }
 }
@@ -1,3 +1,174 @@
 package com.randomlake.library.service;
 
-public class OverdueProcessingServiceTest {}
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.randomlake.library.enums.FineType;
+import com.randomlake.library.enums.ItemStatus;
+import com.randomlake.library.model.Fine;
+import com.randomlake.library.model.JobCheckpoint;
+import com.randomlake.library.model.Loan;
+import com.randomlake.library.repository.JobCheckpointRepository;
+import com.randomlake.library.repository.LoanRepository;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@ExtendWith(MockitoExtension.class)
+public class OverdueProcessingServiceTest {
+
+  @Mock private LoanRepository loanRepository;
+  @Mock private PatronService patronService;
+  @Mock private FineService fineService;
+  @Mock private JobCheckpointRepository checkpointRepository;
+
+  private OverdueProcessingService overdueProcessingService;
+
+  private LocalDate overdueThreshold;
+
+  @BeforeEach
+  public void setUp() {
+    overdueProcessingService =
+        new OverdueProcessingService(
+            loanRepository, patronService, fineService, checkpointRepository);
+    ReflectionTestUtils.setField(overdueProcessingService, "finePerDay", 1);
+    ReflectionTestUtils.setField(overdueProcessingService, "overdueThresholdDays", 30);
+    ReflectionTestUtils.setField(overdueProcessingService, "pageSize", 2);
+
+    overdueThreshold = LocalDate.now().minusDays(30);
+  }
+
+  @Test
+  public void testSuspendOverduePatrons_AssessesMissingFinesPerPage() {
+    Loan loan1 = overdueLoan(101, 1, 11, 12);
+    Loan loan2 = overdueLoan(102, 2, 21);
+    Loan loan3 = overdueLoan(103, 1, 13);
+
+    when(checkpointRepository.findById(OverdueProcessingService.JOB_NAME))
+        .thenReturn(Optional.empty());
+    when(loanRepository.streamLoansWithOverdueItems(overdueThreshold, 0, 2))
+        .thenReturn(Stream.of(loan1, loan2, loan3));
+    // Patron 1 was already fined for media 11 on an earlier night
+    when(fineService.getFinedMediaIdsByPatron(FineType.OVERDUE_ITEM, Set.of(1, 2)))
+        .thenReturn(new HashMap<>(Map.of(1, new HashSet<>(Set.of(11)))));
+    when(fineService.getFinedMediaIdsByPatron(FineType.OVERDUE_ITEM, Set.of(1)))
+        .thenReturn(new HashMap<>());
+    when(patronService.isPatronSuspended(1)).thenReturn(false);
+    when(patronService.isPatronSuspended(2)).thenReturn(true);
+
+    overdueProcessingService.suspendOverduePatrons();
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<Fine>> fines = ArgumentCaptor.forClass(List.class);
+    verify(fineService, times(2)).createFines(fines.capture());
+    assertEquals(
+        List.of(12, 21), fines.getAllValues().get(0).stream().map(Fine::getMediaId).toList());
+    assertEquals(List.of(13), fines.getAllValues().get(1).stream().map(Fine::getMediaId).toList());
+    assertEquals(FineType.OVERDUE_ITEM, fines.getAllValues().get(0).get(0).getFineType());
+
+    // Patron 1 appears on both pages but is only checked and suspended once
+    verify(patronService, times(1)).isPatronSuspended(1);
+    verify(patronService, times(1)).suspendPatron(1);
+    verify(patronService, never()).suspendPatron(2);
+    verify(fineService, never()).hasFineBeenAssessed(anyInt(), anyInt(), any());
+
+    ArgumentCaptor<JobCheckpoint> checkpoints = ArgumentCaptor.forClass(JobCheckpoint.class);
+    verify(checkpointRepository, times(3)).save(checkpoints.capture());
+    JobCheckpoint last = checkpoints.getValue();
+    assertEquals(103, last.getLastProcessedId());
+    assertTrue(last.isCompleted());
+  }
+
+  @Test
+  public void testSuspendOverduePatrons_ResumesFromTodaysCheckpoint() {
+    JobCheckpoint checkpoint =
+        new JobCheckpoint(
+            OverdueProcessingService.JOB_NAME,
+            LocalDate.now(),
+            250,
+            false,
+            LocalDateTime.now(),
+            LocalDateTime.now());
+    when(checkpointRepository.findById(OverdueProcessingService.JOB_NAME))
+        .thenReturn(Optional.of(checkpoint));
+    when(loanRepository.streamLoansWithOverdueItems(overdueThreshold, 250, 2))
+        .thenReturn(Stream.empty());
+
+    overdueProcessingService.suspendOverduePatrons();
+
+    verify(loanRepository, times(1)).streamLoansWithOverdueItems(overdueThreshold, 250, 2);
+    verify(checkpointRepository, times(1)).save(checkpoint);
+    assertTrue(checkpoint.isCompleted());
+    assertEquals(250, checkpoint.getLastProcessedId());
+  }
+
+  @Test
+  public void testSuspendOverduePatrons_StaleCheckpointStartsOver() {
+    JobCheckpoint checkpoint =
+        new JobCheckpoint(
+            OverdueProcessingService.JOB_NAME,
+            LocalDate.now().minusDays(1),
+            250,
+            true,
+            LocalDateTime.now(),
+            LocalDateTime.now());
+    when(checkpointRepository.findById(OverdueProcessingService.JOB_NAME))
+        .thenReturn(Optional.of(checkpoint));
+    when(loanRepository.streamLoansWithOverdueItems(overdueThreshold, 0, 2))
+        .thenReturn(Stream.empty());
+
+    overdueProcessingService.suspendOverduePatrons();
+
+    verify(loanRepository, times(1)).streamLoansWithOverdueItems(overdueThreshold, 0, 2);
+  }
+
+  @Test
+  public void testSuspendOverduePatrons_AlreadyCompletedToday() {
+    JobCheckpoint checkpoint =
+        new JobCheckpoint(
+            OverdueProcessingService.JOB_NAME,
+            LocalDate.now(),
+            400,
+            true,
+            LocalDateTime.now(),
+            LocalDateTime.now());
+    when(checkpointRepository.findById(OverdueProcessingService.JOB_NAME))
+        .thenReturn(Optional.of(checkpoint));
+
+    overdueProcessingService.suspendOverduePatrons();
+
+    verifyNoInteractions(loanRepository, fineService, patronService);
+    verify(checkpointRepository, never()).save(any());
+  }
+
+  private Loan overdueLoan(int loanId, int patronId, int... mediaIds) {
+    List<Loan.LoanItem> items = new ArrayList<>();
+    for (int mediaId : mediaIds) {
+      Loan.LoanItem item = new Loan.LoanItem();
+      item.setMediaId(mediaId);
+      item.setStatus(ItemStatus.CHECKED_OUT);
+      item.setDueDate(overdueThreshold.minusDays(5));
+      items.add(item);
+    }
+    Loan loan = new Loan();
+    loan.setLoanId(loanId);
+    loan.setPatronId(patronId);
+    loan.setItems(items);
+    return loan;
+  }
+}
@@ -0,0 +1,285 @@
+package com.randomlake.library.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.randomlake.library.enums.ImportFormat;
+import com.randomlake.library.enums.ImportJobStatus;
+import com.randomlake.library.enums.PatronStatus;
+import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.model.Patron;
+import com.randomlake.library.model.PatronImportJob;
+import com.randomlake.library.repository.PatronImportJobRepository;
+import com.randomlake.library.repository.PatronRepository;
+import com.randomlake.library.util.SequenceGenerator;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Stream;
+import org.bson.BsonDocument;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@ExtendWith(MockitoExtension.class)
+public class PatronImportServiceTest {
+
+  private static final LocalDateTime NOW = LocalDateTime.of(2024, 10, 1, 12, 0);
+
+  @Mock private PatronImportJobRepository importJobRepository;
+  @Mock private PatronRepository patronRepository;
+  @Mock private PatronImportUploadStore uploadStore;
+  @Mock private MongoTemplate mongoTemplate;
+  @Mock private BulkOperations bulkOperations;
+  @Mock private SequenceGenerator sequenceGenerator;
+  @Mock private AutocompleteService autocompleteService;
+  @Mock private ThreadPoolExecutor executor;
+
+  private PatronImportService patronImportService;
+  private final List<List<Patron>> insertedChunks = new ArrayList<>();
+  private final List<Integer> checkpoints = new ArrayList<>();
+  private final ObjectId uploadId = new ObjectId();
+
+  @BeforeEach
+  public void setUp() {
+    Clock clock = Clock.fixed(Instant.parse("2024-10-01T12:00:00Z"), ZoneId.of("UTC"));
+    patronImportService =
+        new PatronImportService(
+            importJobRepository,
+            patronRepository,
+            uploadStore,
+            mongoTemplate,
+            sequenceGenerator,
+            autocompleteService,
+            new ObjectMapper().findAndRegisterModules(),
+            clock);
+    ReflectionTestUtils.setField(patronImportService, "chunkSize", 3);
+    ReflectionTestUtils.setField(patronImportService, "maxErrors", 10);
+    ReflectionTestUtils.setField(patronImportService, "staleMinutes", 10L);
+    ReflectionTestUtils.setField(patronImportService, "executor", executor);
+
+    lenient()
+        .when(importJobRepository.save(any(PatronImportJob.class)))
+        .thenAnswer(
+            invocation -> {
+              PatronImportJob job = invocation.getArgument(0);
+              checkpoints.add(job.getRowsProcessed());
+              return job;
+            });
+    lenient()
+        .when(mongoTemplate.bulkOps(BulkMode.UNORDERED, Patron.class))
+        .thenReturn(bulkOperations);
+    lenient()
+        .when(bulkOperations.insert(anyList()))
+        .thenAnswer(
+            invocation -> {
+              // The service reuses its chunk list, so keep a copy of what was inserted
+              insertedChunks.add(new ArrayList<>(invocation.<List<Patron>>getArgument(0)));
+              return bulkOperations;
+            });
+  }
+
+  @Test
+  public void testRun_CsvDedupesInMemoryAndInsertsOneIdRangePerChunk() {
+    Patron existing = new Patron();
+    existing.setPatronName("John Q. Public");
+    existing.setDateOfBirth(LocalDate.of(1969, 7, 20));
+    when(patronRepository.streamNameAndDateOfBirth(anyInt())).thenReturn(Stream.of(existing));
+    when(sequenceGenerator.reserveSequenceRange("patronId", 2)).thenReturn(101);
+    when(sequenceGenerator.reserveSequenceRange("patronId", 1)).thenReturn(103);
+    PatronImportJob job =
+        job(
+            ImportFormat.CSV,
+            """
+            patronName,dateOfBirth,cityName
+            Jane M. Public,1975-06-26,Anytown
+            John Q. Public,1969-07-20,Anytown
+            "Doe, Jane",1980-01-01,
+            Jane M. Public,1975-06-26,Elsewhere
+            ,1990-01-01,Anytown
+            Richard Roe,1985-02-30,Anytown
+            Mary Major,,Anytown
+            """);
+
+    patronImportService.run(job);
+
+    assertEquals(ImportJobStatus.COMPLETED, job.getStatus());
+    assertEquals(7, job.getRowsProcessed());
+    assertEquals(3, job.getCreated());
+    assertEquals(2, job.getDuplicates());
+    assertEquals(2, job.getFailed());
+    assertEquals(
+        List.of(5, 6), job.getErrors().stream().map(PatronImportJob.RowError::getRow).toList());
+    assertEquals("Patron name cannot be empty", job.getErrors().get(0).getError());
+
+    assertEquals(2, insertedChunks.size());
+    Patron first = insertedChunks.get(0).get(0);
+    assertEquals(101, first.getPatronId());
+    assertEquals("Anytown", first.getCityName());
+    assertEquals(PatronStatus.ACTIVE, first.getStatus());
+    assertEquals(0L, first.getVersion());
+    assertEquals("Doe, Jane", insertedChunks.get(0).get(1).getPatronName());
+    assertEquals(103, insertedChunks.get(1).get(0).getPatronId());
+    assertNull(insertedChunks.get(1).get(0).getDateOfBirth());
+
+    // Checkpointed every three rows of the upload, then once at the end
+    assertTrue(checkpoints.containsAll(List.of(3, 6, 7)));
+    verify(autocompleteService, times(3)).indexPatron(any(Patron.class));
+    verify(uploadStore).delete(uploadId);
+    assertNull(job.getUploadFileId());
+  }
+
+  @Test
+  public void testRun_ResumedJobSkipsCheckpointedRows() {
+    Patron imported = new Patron();
+    imported.setPatronName("Shogun Reader");
+    when(patronRepository.streamNameAndDateOfBirth(anyInt())).thenReturn(Stream.of(imported));
+    when(sequenceGenerator.reserveSequenceRange("patronId", 1)).thenReturn(201);
+    PatronImportJob job =
+        job(
+            ImportFormat.JSON,
+            """
+            {"patronName":"Tai-Pan Reader"}
+            {"patronName":"Noble House Reader"}
+            {"patronName":"Shogun Reader"}
+            {"patronName":"Gai-Jin Reader"}
+            """);
+    job.setRowsProcessed(2);
+    job.setCreated(2);
+    job.setStatus(ImportJobStatus.FAILED);
+
+    patronImportService.run(job);
+
+    assertEquals(ImportJobStatus.COMPLETED, job.getStatus());
+    assertEquals(4, job.getRowsProcessed());
+    assertEquals(3, job.getCreated());
+    // Written before the failure but not checkpointed: found in the key set, not added again
+    assertEquals(1, job.getDuplicates());
+    assertEquals(1, insertedChunks.size());
+    assertEquals("Gai-Jin Reader", insertedChunks.get(0).get(0).getPatronName());
+  }
+
+  @Test
+  public void testRun_RowRejectedByBulkWriteIsCountedFailed() {
+    when(patronRepository.streamNameAndDateOfBirth(anyInt())).thenReturn(Stream.empty());
+    when(sequenceGenerator.reserveSequenceRange("patronId", 2)).thenReturn(301);
+    when(bulkOperations.execute())
+        .thenThrow(
+            new BulkOperationException(
+                "Bulk write failed",
+                new MongoBulkWriteException(
+                    BulkWriteResult.unacknowledged(),
+                    List.of(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1)),
+                    null,
+                    new ServerAddress(),
+                    Set.of())));
+    PatronImportJob job =
+        job(ImportFormat.JSON, "[{\"patronName\":\"Shogun\"},{\"patronName\":\"Tai-Pan\"}]");
+
+    patronImportService.run(job);
+
+    assertEquals(ImportJobStatus.COMPLETED, job.getStatus());
+    assertEquals(1, job.getCreated());
+    assertEquals(1, job.getFailed());
+    assertEquals(2, job.getErrors().get(0).getRow());
+    assertEquals("duplicate key", job.getErrors().get(0).getError());
+    verify(autocompleteService, times(1)).indexPatron(any(Patron.class));
+  }
+
+  @Test
+  public void testRun_FailureKeepsLastCheckpoint() {
+    when(patronRepository.streamNameAndDateOfBirth(anyInt())).thenReturn(Stream.empty());
+    PatronImportJob job = job(ImportFormat.CSV, "name,dateOfBirth\nShogun,1975-06-26\n");
+    PatronImportJob saved = new PatronImportJob();
+    saved.setJobId("job-1");
+    saved.setStatus(ImportJobStatus.RUNNING);
+    when(importJobRepository.findByJobId("job-1")).thenReturn(Optional.of(saved));
+
+    patronImportService.run(job);
+
+    assertEquals(ImportJobStatus.FAILED, saved.getStatus());
+    assertEquals("The CSV header has no patronName column", saved.getErrorMessage());
+    assertEquals(0, saved.getRowsProcessed());
+    verify(bulkOperations, never()).execute();
+    verify(uploadStore, never()).delete(any());
+  }
+
+  @Test
+  public void testResume_RequeuesFailedImport() {
+    PatronImportJob job = job(ImportFormat.CSV, "");
+    job.setStatus(ImportJobStatus.FAILED);
+    job.setErrorMessage("Connection refused");
+    job.setRowsProcessed(3000);
+    when(importJobRepository.findByJobId("job-1")).thenReturn(Optional.of(job));
+
+    PatronImportJob resumed = patronImportService.resume("job-1");
+
+    assertEquals(ImportJobStatus.QUEUED, resumed.getStatus());
+    assertNull(resumed.getErrorMessage());
+    assertEquals(3000, resumed.getRowsProcessed());
+    verify(executor).execute(any(Runnable.class));
+  }
+
+  @Test
+  public void testResume_RejectsImportStillRunning() {
+    PatronImportJob job = job(ImportFormat.CSV, "");
+    job.setStatus(ImportJobStatus.RUNNING);
+    job.setLastUpdateDate(NOW.minusMinutes(2));
+    when(importJobRepository.findByJobId("job-1")).thenReturn(Optional.of(job));
+
+    GeneralException exception =
+        assertThrows(GeneralException.class, () -> patronImportService.resume("job-1"));
+
+    assertEquals(HttpStatus.CONFLICT, exception.getHttpStatus());
+    verify(executor, never()).execute(any(Runnable.class));
+  }
+
+  @Test
+  public void testResume_LostImportIsRequeued() {
+    PatronImportJob job = job(ImportFormat.CSV, "");
+    job.setStatus(ImportJobStatus.RUNNING);
+    job.setLastUpdateDate(NOW.minusMinutes(30));
+    when(importJobRepository.findByJobId("job-1")).thenReturn(Optional.of(job));
+
+    assertEquals(ImportJobStatus.QUEUED, patronImportService.resume("job-1").getStatus());
+    verify(executor).execute(any(Runnable.class));
+  }
+
+  private PatronImportJob job(ImportFormat format, String upload) {
+    PatronImportJob job = new PatronImportJob();
+    job.setJobId("job-1");
+    job.setFormat(format);
+    job.setUploadFileId(uploadId);
+    job.setStatus(ImportJobStatus.QUEUED);
+    job.setCreatedDate(NOW);
+    job.setLastUpdateDate(NOW);
+    lenient()
+        .when(uploadStore.open(uploadId))
+        .thenReturn(new ByteArrayInputStream(upload.getBytes(StandardCharsets.UTF_8)));
+    return job;
+  }
+}
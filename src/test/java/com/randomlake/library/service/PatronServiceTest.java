@@ -1,27 +1,44 @@
 package com.randomlake.library.service;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
+import com.mongodb.client.result.UpdateResult;
+import com.randomlake.library.cache.PatronLookupCache;
 import com.randomlake.library.enums.ExceptionType;
 import com.randomlake.library.enums.LoanStatus;
 import com.randomlake.library.enums.PatronStatus;
 import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.exception.PreconditionFailedException;
 import com.randomlake.library.model.Patron;
+import com.randomlake.library.model.Tombstone;
 import com.randomlake.library.repository.LoanRepository;
 import com.randomlake.library.repository.PatronRepository;
+import com.randomlake.library.repository.TombstoneRepository;
+import com.randomlake.library.util.ConditionalRequests;
+import com.randomlake.library.util.Precondition;
 import com.randomlake.library.util.SequenceGenerator;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.UnaryOperator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
 
 public class PatronServiceTest {
 
@@ -30,6 +47,12 @@ public class PatronServiceTest {
   @Mock private SequenceGenerator sequenceGenerator;
   @Mock private NotificationService notificationService;
   @Mock private LoanRepository loanRepository;
+  @Mock private TombstoneRepository tombstoneRepository;
+  @Mock private AutocompleteService autocompleteService;
+
+  @Spy
+  private PatronLookupCache patronLookupCache =
+      new PatronLookupCache(100, Duration.ofMinutes(5), UnaryOperator.identity());
 
   @InjectMocks private PatronService patronService;
 
@@ -220,10 +243,13 @@ public class PatronServiceTest {
     updatedPatron.setTelephoneMobile("0987654321");
     updatedPatron.setStatus(PatronStatus.ACTIVE);
 
-    when(patronRepository.findByPatronId(anyInt())).thenReturn(Optional.of(patron));
-    when(patronRepository.save(patron)).thenReturn(updatedPatron);
+    Map<String, Object> updates = Map.of("patronName", "John Q. Doe");
+    Update update = new Update().set("patron_name", "John Q. Doe");
+    when(patronUpdateService.toPartialUpdate(updates)).thenReturn(update);
+    when(patronRepository.patch(1, update, Precondition.NONE))
+        .thenReturn(Optional.of(updatedPatron));
 
-    Patron result = patronService.updatePatron(1, Map.of("patronName", "John Q. Doe"), null);
+    Patron result = patronService.updatePatron(1, updates, null, Precondition.NONE);
 
     assertNotNull(result);
     assertEquals("John Q. Doe", result.getPatronName());
@@ -233,22 +259,88 @@ public class PatronServiceTest {
     assertEquals("0987654321", result.getTelephoneMobile());
     assertEquals(PatronStatus.ACTIVE, result.getStatus());
 
-    verify(patronRepository, times(1)).findByPatronId(1);
-    verify(patronRepository, times(1)).save(any(Patron.class));
+    verify(patronRepository, never()).findByPatronId(anyInt());
+    verify(patronRepository, never()).save(any(Patron.class));
+    verify(autocompleteService, times(1)).indexPatron(updatedPatron);
   }
 
   @Test
   public void testUpdatePatron_NotFound() {
-    when(patronRepository.findByPatronId(1)).thenReturn(Optional.empty());
+    when(patronUpdateService.toPartialUpdate(anyMap())).thenReturn(new Update());
+    when(patronRepository.patch(eq(1), any(Update.class), eq(Precondition.NONE)))
+        .thenReturn(Optional.empty());
 
     GeneralException exception =
         assertThrows(
             GeneralException.class,
-            () -> patronService.updatePatron(1, Map.of("patronName", "John Q. Doe"), null));
+            () ->
+                patronService.updatePatron(
+                    1, Map.of("patronName", "John Q. Doe"), null, Precondition.NONE));
 
     assertEquals(ExceptionType.PATRON_NOT_FOUND, exception.getType());
     assertEquals("Patron with ID provided not found: 1", exception.getMessage());
-    verify(patronRepository, times(1)).findByPatronId(1);
+    verify(patronRepository, times(1)).patch(eq(1), any(Update.class), eq(Precondition.NONE));
+  }
+
+  @Test
+  public void testUpdatePatron_PatchChangedSinceIfMatch() {
+    LocalDateTime current = LocalDateTime.of(2024, 10, 1, 12, 0);
+    Patron patron = new Patron();
+    patron.setPatronId(1);
+    patron.setLastUpdateDate(current);
+    Precondition precondition = ifMatch(current.minusMinutes(5));
+    when(patronUpdateService.toPartialUpdate(anyMap())).thenReturn(new Update());
+    when(patronRepository.patch(eq(1), any(Update.class), eq(precondition)))
+        .thenReturn(Optional.empty());
+    when(patronRepository.findByPatronId(1)).thenReturn(Optional.of(patron));
+
+    PreconditionFailedException exception =
+        assertThrows(
+            PreconditionFailedException.class,
+            () ->
+                patronService.updatePatron(
+                    1, Map.of("patronName", "John Q. Doe"), null, precondition));
+
+    assertEquals(HttpStatus.PRECONDITION_FAILED, exception.getHttpStatus());
+    assertEquals(ConditionalRequests.etag("patron", 1, current), exception.getEtag());
+    verify(autocompleteService, never()).indexPatron(any(Patron.class));
+  }
+
+  @Test
+  public void testUpdatePatron_FullUpdateChangedAfterIfMatchChecked() {
+    LocalDateTime seen = LocalDateTime.of(2024, 10, 1, 12, 0);
+    Patron patron = new Patron();
+    patron.setPatronId(1);
+    patron.setLastUpdateDate(seen);
+    when(patronRepository.findByPatronId(1)).thenReturn(Optional.of(patron));
+    when(patronRepository.save(patron))
+        .thenThrow(new OptimisticLockingFailureException("Version mismatch"));
+    when(patronRepository.findLastUpdateDate(1)).thenReturn(Optional.of(seen.plusSeconds(1)));
+
+    PreconditionFailedException exception =
+        assertThrows(
+            PreconditionFailedException.class,
+            () -> patronService.updatePatron(1, null, new Patron(), ifMatch(seen)));
+
+    assertEquals(ConditionalRequests.etag("patron", 1, seen.plusSeconds(1)), exception.getEtag());
+    verify(autocompleteService, never()).indexPatron(any(Patron.class));
+  }
+
+  @Test
+  public void testUpdatePatronsMatching_UsesBulkUpdate() {
+    Map<String, Object> filter = Map.of("cityName", "Anytown");
+    Map<String, Object> updates = Map.of("zipCode", "44445");
+    Criteria criteria = Criteria.where("city_name").is("Anytown");
+    Update update = new Update().set("zip_code", "44445");
+    when(patronUpdateService.toPatchFilter(filter)).thenReturn(criteria);
+    when(patronUpdateService.toBulkUpdate(updates)).thenReturn(update);
+    when(patronRepository.patchMatching(criteria, update))
+        .thenReturn(UpdateResult.acknowledged(3, 3L, null));
+
+    UpdateResult result = patronService.updatePatronsMatching(filter, updates);
+
+    assertEquals(3, result.getModifiedCount());
+    verify(patronUpdateService, never()).toPartialUpdate(anyMap());
   }
 
   @Test
@@ -268,6 +360,13 @@ public class PatronServiceTest {
 
     verify(patronRepository, times(1)).findByPatronId(1);
     verify(patronRepository, times(1)).delete(patron);
+
+    verify(tombstoneRepository)
+        .save(
+            argThat(
+                (Tombstone tombstone) ->
+                    Tombstone.PATRONS.equals(tombstone.getCollectionName())
+                        && tombstone.getEntityId() == 1));
   }
 
   @Test
@@ -312,16 +411,17 @@ public class PatronServiceTest {
 
   @Test
   public void testSuspendPatron_Success() {
-    Patron patron = new Patron();
-    patron.setPatronId(1);
-    patron.setStatus(PatronStatus.ACTIVE);
-
-    when(patronRepository.findByPatronId(1)).thenReturn(Optional.of(patron));
+    when(patronRepository.transitionStatus(
+            eq(1),
+            eq(List.of(PatronStatus.ACTIVE, PatronStatus.INACTIVE)),
+            eq(PatronStatus.SUSPENDED),
+            any(LocalDateTime.class)))
+        .thenReturn(1L);
 
     patronService.suspendPatron(1);
 
-    assertEquals(PatronStatus.SUSPENDED, patron.getStatus());
-    verify(patronRepository, times(1)).save(patron);
+    verify(patronRepository, never()).findByPatronId(anyInt());
+    verify(patronRepository, never()).save(any());
     verify(notificationService, times(1)).notifyPatronStatusChange(1, PatronStatus.SUSPENDED);
   }
 
@@ -331,6 +431,7 @@ public class PatronServiceTest {
     patron.setPatronId(1);
     patron.setStatus(PatronStatus.SUSPENDED);
 
+    when(patronRepository.transitionStatus(eq(1), anyCollection(), any(), any())).thenReturn(0L);
     when(patronRepository.findByPatronId(1)).thenReturn(Optional.of(patron));
 
     GeneralException exception =
@@ -344,6 +445,7 @@ public class PatronServiceTest {
 
   @Test
   public void testSuspendPatron_NotFound() {
+    when(patronRepository.transitionStatus(eq(1), anyCollection(), any(), any())).thenReturn(0L);
     when(patronRepository.findByPatronId(1)).thenReturn(Optional.empty());
 
     GeneralException exception =
@@ -445,4 +547,56 @@ public class PatronServiceTest {
     assertFalse(isSuspended);
     verify(patronRepository, times(1)).findByPatronId(1);
   }
+
+  @Test
+  public void testUpdatePatronAfterCheckout_AddsAllItemsAndActivates() {
+    Patron patron = new Patron();
+    patron.setPatronId(1);
+    patron.setStatus(PatronStatus.INACTIVE);
+    patron.setCheckedOutItems(new ArrayList<>(List.of(2)));
+
+    when(patronRepository.addCheckedOutItems(eq(1), eq(List.of(2, 3)), any())).thenReturn(1L);
+
+    patronService.updatePatronAfterCheckout(patron, List.of(2, 3));
+
+    assertEquals(List.of(2, 3), patron.getCheckedOutItems());
+    assertEquals(PatronStatus.ACTIVE, patron.getStatus());
+    verify(patronRepository, never()).save(any());
+  }
+
+  @Test
+  public void testUpdatePatronAfterCheckout_SuspendedMeanwhile() {
+    Patron patron = new Patron();
+    patron.setPatronId(1);
+    patron.setStatus(PatronStatus.ACTIVE);
+
+    when(patronRepository.addCheckedOutItems(eq(1), eq(List.of(2)), any())).thenReturn(0L);
+
+    GeneralException exception =
+        assertThrows(
+            GeneralException.class,
+            () -> patronService.updatePatronAfterCheckout(patron, List.of(2)));
+
+    assertEquals(ExceptionType.PATRON_INELIGIBLE, exception.getType());
+    assertTrue(patron.getCheckedOutItems().isEmpty());
+  }
+
+  @Test
+  public void testUpdatePatronAfterReturn_PullsAllItems() {
+    Patron patron = new Patron();
+    patron.setPatronId(1);
+    patron.setCheckedOutItems(new ArrayList<>(List.of(2, 3, 4)));
+
+    patronService.updatePatronAfterReturn(patron, List.of(2, 4));
+
+    assertEquals(List.of(3), patron.getCheckedOutItems());
+    verify(patronRepository, times(1)).removeCheckedOutItems(eq(1), eq(List.of(2, 4)), any());
+    verify(patronRepository, never()).save(any());
+  }
+
+  private static Precondition ifMatch(LocalDateTime seen) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader("If-Match", ConditionalRequests.etag("patron", 1, seen));
+    return ConditionalRequests.ifMatch(request, "patron", 1);
+  }
 }
@@ -4,13 +4,19 @@ import static com.randomlake.library.enums.ContactMethodType.EMAIL;
 import static org.junit.jupiter.api.Assertions.*;
 
 import com.randomlake.library.enums.PatronStatus;
+import com.randomlake.library.exception.GeneralException;
 import com.randomlake.library.model.Patron;
 import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 @ExtendWith(SpringExtension.class)
@@ -21,42 +27,74 @@ public class PatronUpdateServiceTest {
 
   @BeforeEach
   void setup() {
-    patronUpdateService = new PatronUpdateService();
+    MongoMappingContext mappingContext = new MongoMappingContext();
+    mappingContext.setSimpleTypeHolder(new MongoCustomConversions(List.of()).getSimpleTypeHolder());
+    patronUpdateService = new PatronUpdateService(mappingContext);
     patron = new Patron();
   }
 
   @Test
-  public void testApplyPartialUpdate_ValidFields() {
+  public void testToPartialUpdate_ValidFields() {
     Map<String, Object> updates = new HashMap<>();
     updates.put("patronName", "Updated Name");
     updates.put("streetAddress", "Updated Street Address");
     updates.put("telephoneHome", "3115552368");
     updates.put("contactMethod", String.valueOf(EMAIL));
-    updates.put("dateOfBirth", LocalDate.of(2021, 10, 1));
+    updates.put("dateOfBirth", "2021-10-01");
 
-    patronUpdateService.applyPartialUpdates(patron, updates);
+    Update update = patronUpdateService.toPartialUpdate(updates);
 
-    assertEquals("Updated Name", patron.getPatronName());
-    assertEquals("Updated Street Address", patron.getStreetAddress());
-    assertEquals("3115552368", patron.getTelephoneHome());
-    assertEquals(String.valueOf(EMAIL), patron.getContactMethod());
-    assertEquals(LocalDate.of(2021, 10, 1), patron.getDateOfBirth());
-    assertNotNull(patron.getLastUpdateDate());
+    Document set = update.getUpdateObject().get("$set", Document.class);
+    assertEquals("Updated Name", set.get("patron_name"));
+    assertEquals("Updated Street Address", set.get("street_address"));
+    assertEquals("3115552368", set.get("telephone_home"));
+    assertEquals(String.valueOf(EMAIL), set.get("contact_method"));
+    assertEquals(LocalDate.of(2021, 10, 1), set.get("date_of_birth"));
+    assertNotNull(set.get("lastUpdateDate"));
+    assertEquals(1, update.getUpdateObject().get("$inc", Document.class).get("version"));
   }
 
   @Test
-  void testApplyPartialUpdates_InvalidStatus_ThrowsException() {
+  void testToPartialUpdate_InvalidStatus_ThrowsException() {
     Map<String, Object> updates = new HashMap<>();
     updates.put("status", "INVALID_STATUS");
 
-    RuntimeException exception =
+    GeneralException exception =
+        assertThrows(GeneralException.class, () -> patronUpdateService.toPartialUpdate(updates));
+
+    assertEquals(
+        "Invalid value for status: INVALID_STATUS (not a valid PatronStatus)",
+        exception.getMessage());
+  }
+
+  @Test
+  void testToPartialUpdate_CheckedOutItemsAreNotPatchable() {
+    GeneralException exception =
         assertThrows(
-            RuntimeException.class,
-            () -> {
-              patronUpdateService.applyPartialUpdates(patron, updates);
-            });
+            GeneralException.class,
+            () -> patronUpdateService.toPartialUpdate(Map.of("checkedOutItems", List.of(1))));
 
-    assertEquals("Invalid patron status: INVALID_STATUS", exception.getMessage());
+    assertEquals("Unknown property: checkedOutItems", exception.getMessage());
+  }
+
+  @Test
+  void testToBulkUpdate_StatusNameAndDateOfBirthAreNotPatchable() {
+    for (String property : List.of("status", "patronName", "dateOfBirth")) {
+      Map<String, Object> updates = new HashMap<>();
+      updates.put(property, "SUSPENDED");
+
+      GeneralException exception =
+          assertThrows(GeneralException.class, () -> patronUpdateService.toBulkUpdate(updates));
+
+      assertEquals("Unknown property: " + property, exception.getMessage());
+    }
+    Update update = patronUpdateService.toBulkUpdate(Map.of("cityName", "Anytown"));
+    assertEquals("Anytown", update.getUpdateObject().get("$set", Document.class).get("city_name"));
+  }
+
+  @Test
+  void testToPatchFilter_MayStillMatchOnStatus() {
+    assertNotNull(patronUpdateService.toPatchFilter(Map.of("status", "ACTIVE")));
   }
 
   @Test
@@ -0,0 +1,198 @@
+package com.randomlake.library.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.randomlake.library.enums.ReportJobStatus;
+import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.model.ReportJob;
+import com.randomlake.library.report.ReportCatalog;
+import com.randomlake.library.report.ReportEngine;
+import com.randomlake.library.report.ReportFormat;
+import com.randomlake.library.report.ReportResultStore;
+import com.randomlake.library.report.ReportSourceVersions;
+import com.randomlake.library.repository.ReportJobRepository;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+@ExtendWith(MockitoExtension.class)
+public class ReportJobServiceTest {
+
+  @Mock private ReportJobRepository reportJobRepository;
+  @Mock private ReportEngine reportEngine;
+  @Mock private ReportResultStore resultStore;
+  @Mock private ReportSourceVersions sourceVersions;
+
+  private final StreamingResponseBody body =
+      out -> out.write("cardId\r\n1\r\n".getBytes(StandardCharsets.UTF_8));
+
+  private ReportJobService reportJobService;
+
+  @BeforeEach
+  public void setUp() {
+    Clock clock = Clock.fixed(Instant.parse("2024-10-01T12:00:00Z"), ZoneId.of("UTC"));
+    reportJobService =
+        new ReportJobService(reportJobRepository, reportEngine, resultStore, sourceVersions, clock);
+    ReflectionTestUtils.setField(reportJobService, "workers", 1);
+    ReflectionTestUtils.setField(reportJobService, "queueCapacity", 1);
+    ReflectionTestUtils.setField(reportJobService, "maxJobsPerUser", 2);
+    reportJobService.start();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    reportJobService.stop();
+  }
+
+  @Test
+  public void testSubmit_ReusesJobForSameRequestAndSourceVersion() {
+    ReportJob completed = new ReportJob();
+    completed.setJobId("done");
+    completed.setStatus(ReportJobStatus.COMPLETED);
+    when(reportEngine.export(any(), any(), any(), any())).thenReturn(body);
+    when(sourceVersions.versionOf(ReportCatalog.CARDS_PATRONS)).thenReturn("v1");
+    when(reportJobRepository.findFirstByParamsHashAndSourceVersionAndStatusInOrderByCreatedDateDesc(
+            eq(
+                ReportJobService.paramsHash(
+                    "cards-patrons", ReportFormat.CSV, Map.of("patronId", "7"), List.of())),
+            eq("v1"),
+            any()))
+        .thenReturn(Optional.of(completed));
+
+    // Parameters that are not filters of the report do not make the request different
+    ReportJob job =
+        reportJobService.submit(
+            ReportCatalog.CARDS_PATRONS,
+            Map.of("patronId", " 7 ", "format", "csv"),
+            null,
+            ReportFormat.CSV,
+            "staff");
+
+    assertSame(completed, job);
+    verify(reportJobRepository, never()).save(any());
+    verifyNoInteractions(resultStore);
+  }
+
+  @Test
+  public void testSubmit_RejectsUserOverLimit() {
+    when(reportEngine.export(any(), any(), any(), any())).thenReturn(body);
+    when(sourceVersions.versionOf(any())).thenReturn("v1");
+    when(reportJobRepository.findFirstByParamsHashAndSourceVersionAndStatusInOrderByCreatedDateDesc(
+            any(), any(), any()))
+        .thenReturn(Optional.empty());
+    when(reportJobRepository.countByRequestedByAndStatusIn(eq("staff"), any())).thenReturn(2L);
+
+    GeneralException exception =
+        assertThrows(
+            GeneralException.class,
+            () ->
+                reportJobService.submit(
+                    ReportCatalog.LOAN_ITEMS, Map.of(), null, ReportFormat.NDJSON, "staff"));
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getHttpStatus());
+    verify(reportJobRepository, never()).save(any());
+  }
+
+  @Test
+  public void testSubmit_QueuesAndRunsNewJob() throws IOException {
+    when(reportEngine.export(any(), any(), any(), any())).thenReturn(body);
+    when(sourceVersions.versionOf(any())).thenReturn("v1");
+    when(reportJobRepository.findFirstByParamsHashAndSourceVersionAndStatusInOrderByCreatedDateDesc(
+            any(), any(), any()))
+        .thenReturn(Optional.empty());
+    when(reportJobRepository.save(any(ReportJob.class))).thenAnswer(i -> i.getArgument(0));
+    ObjectId fileId = new ObjectId();
+    when(resultStore.store(anyString(), same(body)))
+        .thenReturn(new ReportResultStore.StoredResult(fileId, 42));
+
+    ReportJob job =
+        reportJobService.submit(
+            ReportCatalog.LOAN_ITEMS, Map.of(), List.of("loanId"), ReportFormat.CSV, "staff");
+
+    assertNotNull(job.getJobId());
+    assertEquals("staff", job.getRequestedBy());
+    assertEquals("v1", job.getSourceVersion());
+    verify(reportJobRepository, timeout(5000).times(3)).save(job);
+    assertEquals(ReportJobStatus.COMPLETED, job.getStatus());
+    assertEquals(fileId, job.getResultFileId());
+    assertEquals(42, job.getResultSize());
+  }
+
+  @Test
+  public void testRun_FailureMarksJobFailed() throws IOException {
+    ReportJob job = new ReportJob();
+    job.setJobId("job-1");
+    job.setReportName("loan-items");
+    job.setFormat(ReportFormat.CSV);
+    when(resultStore.store(anyString(), any())).thenThrow(new IOException("disk full"));
+
+    reportJobService.run(job, body);
+
+    assertEquals(ReportJobStatus.FAILED, job.getStatus());
+    assertEquals("disk full", job.getErrorMessage());
+  }
+
+  @Test
+  public void testOpenResult_DecompressesUnlessAskedForGzip() throws Exception {
+    ReportJob job = new ReportJob();
+    job.setJobId("job-1");
+    job.setStatus(ReportJobStatus.COMPLETED);
+    job.setResultFileId(new ObjectId());
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+      gzip.write("cardId\r\n1\r\n".getBytes(StandardCharsets.UTF_8));
+    }
+    when(resultStore.open(job.getResultFileId()))
+        .thenAnswer(i -> new ByteArrayInputStream(gzipped.toByteArray()));
+
+    ByteArrayOutputStream plain = new ByteArrayOutputStream();
+    reportJobService.openResult(job, false).writeTo(plain);
+    ByteArrayOutputStream raw = new ByteArrayOutputStream();
+    reportJobService.openResult(job, true).writeTo(raw);
+
+    assertEquals("cardId\r\n1\r\n", plain.toString(StandardCharsets.UTF_8));
+    assertArrayEquals(gzipped.toByteArray(), raw.toByteArray());
+  }
+
+  @Test
+  public void testOpenResult_NotCompleted() {
+    ReportJob job = new ReportJob();
+    job.setJobId("job-1");
+    job.setStatus(ReportJobStatus.RUNNING);
+
+    GeneralException exception =
+        assertThrows(GeneralException.class, () -> reportJobService.openResult(job, false));
+
+    assertEquals(HttpStatus.CONFLICT, exception.getHttpStatus());
+  }
+
+  @Test
+  public void testGetJob_NotFound() {
+    when(reportJobRepository.findByJobId("missing")).thenReturn(Optional.empty());
+
+    GeneralException exception =
+        assertThrows(GeneralException.class, () -> reportJobService.getJob("missing"));
+
+    assertEquals(HttpStatus.NOT_FOUND, exception.getHttpStatus());
+  }
+}
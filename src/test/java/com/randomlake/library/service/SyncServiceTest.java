@@ -0,0 +1,114 @@
+package com.randomlake.library.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.randomlake.library.dto.ChangeSetResponse;
+import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.model.Media;
+import com.randomlake.library.model.Tombstone;
+import com.randomlake.library.repository.CardRepository;
+import com.randomlake.library.repository.MediaRepository;
+import com.randomlake.library.repository.PatronRepository;
+import com.randomlake.library.repository.TombstoneRepository;
+import com.randomlake.library.util.KeysetPaginator;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@ExtendWith(MockitoExtension.class)
+public class SyncServiceTest {
+
+  private static final ZoneId ZONE = ZoneId.of("UTC");
+  private static final LocalDateTime NOW = LocalDateTime.of(2024, 6, 1, 12, 0, 0);
+  private static final LocalDateTime SETTLED = NOW.minusSeconds(5);
+
+  @Mock private MediaRepository mediaRepository;
+  @Mock private PatronRepository patronRepository;
+  @Mock private CardRepository cardRepository;
+  @Mock private TombstoneRepository tombstoneRepository;
+
+  private SyncService syncService;
+
+  @BeforeEach
+  public void setup() {
+    KeysetPaginator keysetPaginator = new KeysetPaginator();
+    ReflectionTestUtils.setField(keysetPaginator, "defaultPageSize", 2);
+    ReflectionTestUtils.setField(keysetPaginator, "maxPageSize", 10);
+
+    Clock clock = Clock.fixed(NOW.atZone(ZONE).toInstant(), ZONE);
+    syncService =
+        new SyncService(
+            mediaRepository,
+            patronRepository,
+            cardRepository,
+            tombstoneRepository,
+            keysetPaginator,
+            clock);
+    ReflectionTestUtils.setField(syncService, "settleSeconds", 5L);
+  }
+
+  @Test
+  public void testGetMediaChanges_FirstPollAdvancesBothWatermarks() {
+    LocalDateTime updated = NOW.minusHours(1);
+    LocalDateTime deleted = NOW.minusMinutes(30);
+    when(mediaRepository.findChangedSince(null, 0, SETTLED, 3))
+        .thenReturn(List.of(media(1, updated), media(2, updated), media(3, updated)));
+    when(tombstoneRepository.findDeletedSince(Tombstone.MEDIA, null, 0, SETTLED, 3))
+        .thenReturn(List.of(new Tombstone(Tombstone.MEDIA, 9, deleted)));
+
+    ChangeSetResponse<Media> changes = syncService.getMediaChanges(null, null);
+
+    assertEquals(2, changes.getChanged().size());
+    assertEquals(List.of(9), changes.getDeletedIds());
+    assertTrue(changes.isHasMore());
+
+    SyncService.Watermark next = syncService.decodeToken(changes.getNextToken(), Tombstone.MEDIA);
+    assertEquals(new SyncService.Watermark(updated, 2, deleted, 9), next);
+  }
+
+  @Test
+  public void testGetMediaChanges_EmptyPollKeepsWatermark() {
+    LocalDateTime since = NOW.minusDays(1);
+    String token =
+        syncService.encodeToken(Tombstone.MEDIA, new SyncService.Watermark(since, 4, null, 0));
+    when(mediaRepository.findChangedSince(since, 4, SETTLED, 3)).thenReturn(List.of());
+    when(tombstoneRepository.findDeletedSince(Tombstone.MEDIA, null, 0, SETTLED, 3))
+        .thenReturn(List.of());
+
+    ChangeSetResponse<Media> changes = syncService.getMediaChanges(token, null);
+
+    assertTrue(changes.getChanged().isEmpty());
+    assertFalse(changes.isHasMore());
+    assertEquals(token, changes.getNextToken());
+  }
+
+  @Test
+  public void testGetPatronChanges_RejectsTokenFromAnotherCollection() {
+    String mediaToken =
+        syncService.encodeToken(
+            Tombstone.MEDIA, new SyncService.Watermark(NOW.minusDays(1), 4, null, 0));
+
+    GeneralException exception =
+        assertThrows(GeneralException.class, () -> syncService.getPatronChanges(mediaToken, null));
+
+    assertEquals(HttpStatus.BAD_REQUEST, exception.getHttpStatus());
+    verify(patronRepository, never()).findChangedSince(any(), anyInt(), any(), anyInt());
+  }
+
+  private static Media media(int mediaId, LocalDateTime lastUpdateDate) {
+    Media media = new Media();
+    media.setMediaId(mediaId);
+    media.setLastUpdateDate(lastUpdateDate);
+    return media;
+  }
+}
@@ -0,0 +1,117 @@
+package com.randomlake.library.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class ConditionalRequestsTest {
+
+  private final LocalDateTime updated = LocalDateTime.of(2024, 10, 1, 12, 0, 30, 123_456_789);
+
+  @Test
+  public void testEtag_IgnoresPrecisionMongoDoesNotStore() {
+    assertEquals(
+        ConditionalRequests.etag("media", 1, updated),
+        ConditionalRequests.etag("media", 1, updated.withNano(123_000_000)));
+    assertNotEquals(
+        ConditionalRequests.etag("media", 1, updated),
+        ConditionalRequests.etag("media", 1, updated.plusNanos(1_000_000)));
+  }
+
+  @Test
+  public void testIsNotModified_IfNoneMatch() {
+    String etag = ConditionalRequests.etag("media", 1, updated);
+    MockHttpServletRequest request = new MockHttpServletRequest();
+
+    request.addHeader("If-None-Match", "\"other\", W/" + etag);
+    assertTrue(ConditionalRequests.isNotModified(request, etag, updated));
+
+    request = new MockHttpServletRequest();
+    request.addHeader("If-None-Match", "\"other\"");
+    // If-Modified-Since is ignored when If-None-Match is present
+    request.addHeader("If-Modified-Since", httpDate(updated.plusDays(1)));
+    assertFalse(ConditionalRequests.isNotModified(request, etag, updated));
+  }
+
+  @Test
+  public void testIsNotModified_IfModifiedSinceAtSecondResolution() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader("If-Modified-Since", httpDate(updated));
+    assertTrue(ConditionalRequests.isNotModified(request, "\"x\"", updated));
+
+    request = new MockHttpServletRequest();
+    request.addHeader("If-Modified-Since", httpDate(updated.minusSeconds(1)));
+    assertFalse(ConditionalRequests.isNotModified(request, "\"x\"", updated));
+  }
+
+  @Test
+  public void testIsPreconditionFailed_StrongComparison() {
+    String etag = ConditionalRequests.etag("patron", 7, updated);
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    assertFalse(ConditionalRequests.isPreconditionFailed(request, etag));
+
+    request.addHeader("If-Match", etag);
+    assertFalse(ConditionalRequests.isPreconditionFailed(request, etag));
+
+    request = new MockHttpServletRequest();
+    request.addHeader("If-Match", "W/" + etag);
+    assertTrue(ConditionalRequests.isPreconditionFailed(request, etag));
+
+    request = new MockHttpServletRequest();
+    request.addHeader("If-Match", "*");
+    assertFalse(ConditionalRequests.isPreconditionFailed(request, etag));
+  }
+
+  @Test
+  public void testIfMatch_AcceptsOnlyStrongTagsForThisResource() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    assertSame(Precondition.NONE, ConditionalRequests.ifMatch(request, "patron", 7));
+
+    LocalDateTime other = updated.plusMinutes(1);
+    request.addHeader(
+        "If-Match",
+        ConditionalRequests.etag("patron", 7, updated)
+            + ", W/"
+            + ConditionalRequests.etag("patron", 7, other)
+            + ", "
+            + ConditionalRequests.etag("patron", 8, other)
+            + ", \"patron-7-xyz\"");
+    Precondition precondition = ConditionalRequests.ifMatch(request, "patron", 7);
+
+    assertTrue(precondition.isRequired());
+    assertTrue(precondition.matches(updated.withNano(123_000_000)));
+    assertFalse(precondition.matches(other));
+    assertFalse(precondition.matches(null));
+    assertEquals(
+        new Document("patronId", 7)
+            .append("lastUpdateDate", new Document("$in", List.of(updated.withNano(123_000_000)))),
+        precondition.addTo(Criteria.where("patronId").is(7)).getCriteriaObject());
+  }
+
+  @Test
+  public void testIfMatch_AnyVersionNeedsAStamp() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader("If-Match", "*");
+    Precondition precondition = ConditionalRequests.ifMatch(request, "media", 1);
+
+    assertTrue(precondition.matches(updated));
+    assertFalse(precondition.matches(null));
+    assertEquals(
+        "\"media-1-" + Long.toHexString(ConditionalRequests.lastModified(updated)) + "\"",
+        precondition.failed(updated).getEtag());
+    assertNull(precondition.failed(null).getEtag());
+  }
+
+  private static String httpDate(LocalDateTime time) {
+    ZonedDateTime zoned = time.atZone(ZoneId.systemDefault()).withZoneSameInstant(ZoneId.of("GMT"));
+    return DateTimeFormatter.RFC_1123_DATE_TIME.format(zoned);
+  }
+}
@@ -0,0 +1,38 @@
+package com.randomlake.library.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.StringReader;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class CsvReaderTest {
+
+  @Test
+  public void testReadRecord_QuotingAndLineEnds() throws Exception {
+    CsvReader reader =
+        new CsvReader(
+            new StringReader(
+                "\uFEFFname,notes\r\n"
+                    + "\"Smith, John\",\"The \"\"Hobbit\"\"\"\n"
+                    + "plain,\"two\r\nlines\"\r\n"
+                    + "\n"
+                    + "last,"));
+
+    assertEquals(List.of("name", "notes"), reader.readRecord());
+    assertEquals(List.of("Smith, John", "The \"Hobbit\""), reader.readRecord());
+    assertEquals(List.of("plain", "two\r\nlines"), reader.readRecord());
+    assertEquals(List.of(""), reader.readRecord());
+    assertEquals(List.of("last", ""), reader.readRecord());
+    assertNull(reader.readRecord());
+  }
+
+  @Test
+  public void testReadRecord_ReadsBackWhatCsvWriterEscapes() throws Exception {
+    String value = "a \"quoted\", multi\nline value";
+    CsvReader reader = new CsvReader(new StringReader(CsvWriter.escape(value) + ",x\r\n"));
+
+    assertEquals(List.of(value, "x"), reader.readRecord());
+    assertNull(reader.readRecord());
+  }
+}
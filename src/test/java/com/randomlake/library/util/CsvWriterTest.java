@@ -0,0 +1,39 @@
+package com.randomlake.library.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+public class CsvWriterTest {
+
+  @Test
+  public void testEscape() {
+    assertEquals("", CsvWriter.escape(null));
+    assertEquals("plain", CsvWriter.escape("plain"));
+    assertEquals("42", CsvWriter.escape(42));
+    assertEquals("\"Smith, John\"", CsvWriter.escape("Smith, John"));
+    assertEquals("\"The \"\"Hobbit\"\"\"", CsvWriter.escape("The \"Hobbit\""));
+    assertEquals("\"two\nlines\"", CsvWriter.escape("two\nlines"));
+  }
+
+  @Test
+  public void testWrite_HeaderAndExpandedRows() throws Exception {
+    AtomicBoolean closed = new AtomicBoolean();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    CsvWriter.<String>write(
+            () -> Stream.of("a", "b").onClose(() -> closed.set(true)),
+            List.of("key", "n"),
+            key -> Stream.of(Arrays.asList(key, 1), Arrays.asList(key, null)))
+        .writeTo(out);
+
+    assertEquals("key,n\r\na,1\r\na,\r\nb,1\r\nb,\r\n", out.toString(StandardCharsets.UTF_8));
+    assertTrue(closed.get());
+  }
+}
@@ -0,0 +1,73 @@
+package com.randomlake.library.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Optional;
+import javax.crypto.SecretKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class JwtUtilTest {
+
+  private static final String BASE64_KEY =
+      Base64.getEncoder().encodeToString("0123456789abcdef0123456789abcdef".getBytes());
+
+  private JwtUtil jwtUtil;
+
+  @BeforeEach
+  public void setup() {
+    jwtUtil = new JwtUtil();
+    ReflectionTestUtils.setField(jwtUtil, "base64KeyFromProperties", BASE64_KEY);
+    ReflectionTestUtils.setField(jwtUtil, "tokenCacheMaximumSize", 100L);
+    jwtUtil.init();
+  }
+
+  @Test
+  public void testVerifyAndExtractUsername_ValidToken() {
+    String token = jwtUtil.generateToken("admin");
+
+    assertEquals(Optional.of("admin"), jwtUtil.verifyAndExtractUsername(token));
+    // Second use is answered from the verified-token cache
+    assertEquals(Optional.of("admin"), jwtUtil.verifyAndExtractUsername(token));
+    assertTrue(jwtUtil.validateToken(token));
+    assertEquals("admin", jwtUtil.extractUsername(token));
+  }
+
+  @Test
+  public void testVerifyAndExtractUsername_TamperedToken() {
+    String token = jwtUtil.generateToken("admin");
+    String tampered = token.substring(0, token.length() - 2) + "xx";
+
+    assertTrue(jwtUtil.verifyAndExtractUsername(tampered).isEmpty());
+    assertFalse(jwtUtil.validateToken("not-a-token"));
+  }
+
+  @Test
+  public void testVerifyAndExtractUsername_ExpiredToken() {
+    SecretKey key = Keys.hmacShaKeyFor(Base64.getDecoder().decode(BASE64_KEY));
+    String expired =
+        Jwts.builder()
+            .subject("admin")
+            .issuedAt(new Date(System.currentTimeMillis() - 120_000))
+            .expiration(new Date(System.currentTimeMillis() - 60_000))
+            .signWith(key)
+            .compact();
+
+    assertTrue(jwtUtil.verifyAndExtractUsername(expired).isEmpty());
+  }
+
+  @Test
+  public void testVerifyAndExtractUsername_TokenSignedWithOtherKey() {
+    JwtUtil otherIssuer = new JwtUtil();
+    ReflectionTestUtils.setField(otherIssuer, "base64KeyFromProperties", "");
+    ReflectionTestUtils.setField(otherIssuer, "tokenCacheMaximumSize", 100L);
+    otherIssuer.init();
+
+    assertTrue(jwtUtil.verifyAndExtractUsername(otherIssuer.generateToken("admin")).isEmpty());
+  }
+}
@@ -0,0 +1,82 @@
+package com.randomlake.library.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.randomlake.library.dto.PageResponse;
+import com.randomlake.library.exception.GeneralException;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class KeysetPaginatorTest {
+
+  private KeysetPaginator paginator;
+
+  @BeforeEach
+  public void setup() {
+    paginator = new KeysetPaginator();
+    ReflectionTestUtils.setField(paginator, "defaultPageSize", 50);
+    ReflectionTestUtils.setField(paginator, "maxPageSize", 500);
+  }
+
+  @Test
+  public void testResolvePageSize_DefaultsAndCapsAtMaximum() {
+    assertEquals(50, paginator.resolvePageSize(null));
+    assertEquals(20, paginator.resolvePageSize(20));
+    assertEquals(500, paginator.resolvePageSize(10_000));
+  }
+
+  @Test
+  public void testResolvePageSize_RejectsNonPositiveSize() {
+    GeneralException exception =
+        assertThrows(GeneralException.class, () -> paginator.resolvePageSize(0));
+    assertEquals(HttpStatus.BAD_REQUEST, exception.getHttpStatus());
+  }
+
+  @Test
+  public void testCursor_RoundTripsWithinScope() {
+    String cursor = paginator.encodeCursor("media", 1234);
+
+    assertEquals(1234, paginator.decodeCursor(cursor, "media"));
+    assertEquals(0, paginator.decodeCursor(null, "media"));
+  }
+
+  @Test
+  public void testDecodeCursor_RejectsForeignOrMalformedCursor() {
+    String patronCursor = paginator.encodeCursor("patrons", 7);
+
+    assertThrows(GeneralException.class, () -> paginator.decodeCursor(patronCursor, "media"));
+    assertThrows(GeneralException.class, () -> paginator.decodeCursor("not a cursor!", "media"));
+  }
+
+  @Test
+  public void testToPage_ExtraRowYieldsCursorForLastItemOnPage() {
+    PageResponse<Integer> page = paginator.toPage(List.of(3, 5, 8), 2, Integer::intValue, "media");
+
+    assertEquals(List.of(3, 5), page.getItems());
+    assertEquals(5, paginator.decodeCursor(page.getNextCursor(), "media"));
+  }
+
+  @Test
+  public void testToPage_LastPageHasNoCursor() {
+    PageResponse<Integer> page = paginator.toPage(List.of(3, 5), 2, Integer::intValue, "media");
+
+    assertEquals(List.of(3, 5), page.getItems());
+    assertNull(page.getNextCursor());
+    assertEquals(List.of("3", "5"), page.map(String::valueOf).getItems());
+  }
+
+  @Test
+  public void testKeyCursor_RoundTripsWithinScope() {
+    PageResponse<String> page =
+        paginator.toKeyPage(List.of("a1", "b2", "c3"), 2, key -> key, "loan-ledger");
+
+    assertEquals(List.of("a1", "b2"), page.getItems());
+    assertEquals("b2", paginator.decodeKeyCursor(page.getNextCursor(), "loan-ledger"));
+    assertNull(paginator.decodeKeyCursor(null, "loan-ledger"));
+    assertThrows(
+        GeneralException.class, () -> paginator.decodeKeyCursor(page.getNextCursor(), "media"));
+  }
+}
@@ -0,0 +1,111 @@
+package com.randomlake.library.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.randomlake.library.enums.ExceptionType;
+import com.randomlake.library.enums.MediaStatus;
+import com.randomlake.library.exception.GeneralException;
+import com.randomlake.library.model.Media;
+import com.randomlake.library.model.Patron;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+
+public class PatchEngineTest {
+
+  private MongoMappingContext mappingContext;
+  private PatchEngine<Media> patchEngine;
+
+  @BeforeEach
+  public void setUp() {
+    mappingContext = new MongoMappingContext();
+    // The simple types Boot registers, so dates are mapped as values rather than entities
+    mappingContext.setSimpleTypeHolder(new MongoCustomConversions(List.of()).getSimpleTypeHolder());
+    patchEngine =
+        new PatchEngine<>(
+            mappingContext, Media.class, "mediaId", List.of("mediaTitle", "numberPages", "status"));
+  }
+
+  @Test
+  public void testToUpdate_UsesStoredFieldNamesAndStampsVersion() {
+    LocalDateTime now = LocalDateTime.of(2024, 10, 1, 12, 0);
+
+    Update update = patchEngine.toUpdate(Map.of("mediaTitle", "Shogun", "numberPages", 1152), now);
+
+    Document set = update.getUpdateObject().get("$set", Document.class);
+    assertEquals("Shogun", set.get("media_title"));
+    assertEquals(1152, set.get("number_pages"));
+    assertEquals(now, set.get("last_update_date"));
+    assertEquals(1, update.getUpdateObject().get("$inc", Document.class).get("version"));
+  }
+
+  @Test
+  public void testToUpdate_NullClearsFieldButNotEnum() {
+    Map<String, Object> clearPages = new HashMap<>();
+    clearPages.put("numberPages", null);
+    Document set =
+        patchEngine
+            .toUpdate(clearPages, LocalDateTime.now())
+            .getUpdateObject()
+            .get("$set", Document.class);
+    assertTrue(set.containsKey("number_pages"));
+    assertNull(set.get("number_pages"));
+
+    Map<String, Object> clearStatus = new HashMap<>();
+    clearStatus.put("status", null);
+    GeneralException exception =
+        assertThrows(
+            GeneralException.class, () -> patchEngine.toUpdate(clearStatus, LocalDateTime.now()));
+    assertEquals(HttpStatus.BAD_REQUEST, exception.getHttpStatus());
+  }
+
+  @Test
+  public void testToUpdate_RejectsFractionalAndOutOfRangeNumbers() {
+    assertThrows(
+        GeneralException.class,
+        () -> patchEngine.toUpdate(Map.of("numberPages", 12.5), LocalDateTime.now()));
+    assertThrows(
+        GeneralException.class,
+        () -> patchEngine.toUpdate(Map.of("numberPages", 1L << 40), LocalDateTime.now()));
+  }
+
+  @Test
+  public void testToCriteria_MatchesKeyAndListValues() {
+    Document criteria =
+        patchEngine
+            .toCriteria(Map.of("mediaId", List.of(1, 2), "status", "AVAILABLE"))
+            .getCriteriaObject();
+
+    assertEquals(new Document("$in", List.of(1, 2)), criteria.get("mediaId"));
+    assertEquals(MediaStatus.AVAILABLE, criteria.get("media_status"));
+  }
+
+  @Test
+  public void testToCriteria_RequiresFilterOnKnownProperties() {
+    GeneralException empty =
+        assertThrows(GeneralException.class, () -> patchEngine.toCriteria(Map.of()));
+    assertEquals(ExceptionType.INVALID_INPUT, empty.getType());
+
+    GeneralException unknown =
+        assertThrows(
+            GeneralException.class, () -> patchEngine.toCriteria(Map.of("authorName", "X")));
+    assertEquals("Unknown property: authorName", unknown.getMessage());
+  }
+
+  @Test
+  public void testConstructor_RejectsPropertiesThatCannotBePatched() {
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            new PatchEngine<>(
+                mappingContext, Patron.class, "patronId", List.of("checkedOutItems")));
+  }
+}
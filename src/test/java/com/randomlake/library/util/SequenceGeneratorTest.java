@@ -19,6 +19,7 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
 
 class SequenceGeneratorTest {
 
@@ -49,6 +50,23 @@ class SequenceGeneratorTest {
     assertEquals("MED12310007", barcode); // barcodeWithoutCheckDigit + checkDigit
   }
 
+  @Test
+  void testGenerateBarcodes_MatchesGenerateBarcodeForEachValue() {
+    when(libraryConfig.getLibraryIdCode()).thenReturn("9900");
+    when(libraryConfig.getMediaBarcodePrefix()).thenReturn("3");
+    CheckDigitCalculator calculator = new CheckDigitCalculator();
+    when(digitCalculator.calculateCheckDigit(any()))
+        .thenAnswer(invocation -> calculator.calculateCheckDigit(invocation.getArgument(0)));
+
+    String[] barcodes = sequenceGenerator.generateBarcodes(BarcodeType.MEDIA, 10000098, 4);
+
+    assertEquals(4, barcodes.length);
+    for (int i = 0; i < barcodes.length; i++) {
+      assertEquals(sequenceGenerator.generateBarcode(BarcodeType.MEDIA, 10000098 + i), barcodes[i]);
+    }
+    assertEquals("3990010000098", barcodes[0].substring(0, 13));
+  }
+
   @Test
   void testGenerateBarcode_ForCard() {
     // Arrange
@@ -126,4 +144,83 @@ class SequenceGeneratorTest {
     assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getHttpStatus());
     assertTrue(exception.getMessage().contains("Failed to generate sequence value for:"));
   }
+
+  @Test
+  void testReserveSequenceRange_returnsFirstValueOfRange() {
+    // Arrange
+    Counter mockCounter = new Counter();
+    mockCounter.setSequenceValue(1500);
+
+    when(mongoTemplate.findAndModify(
+            any(Query.class),
+            any(Update.class),
+            any(FindAndModifyOptions.class),
+            eq(Counter.class)))
+        .thenReturn(mockCounter);
+
+    // Act
+    int first = sequenceGenerator.reserveSequenceRange("fineId", 500);
+
+    // Assert
+    assertEquals(1001, first);
+  }
+
+  @Test
+  void testGetNextSequenceValue_withBlockLeasing_servesIdsFromMemory() {
+    // Arrange
+    ReflectionTestUtils.setField(sequenceGenerator, "blockSize", 1000);
+    ReflectionTestUtils.setField(sequenceGenerator, "refillThreshold", 0.2);
+
+    Counter mockCounter = new Counter();
+    mockCounter.setSequenceValue(1000);
+
+    when(mongoTemplate.findAndModify(
+            any(Query.class),
+            any(Update.class),
+            any(FindAndModifyOptions.class),
+            eq(Counter.class)))
+        .thenReturn(mockCounter);
+
+    // Act
+    int first = sequenceGenerator.getNextSequenceValueForPatron();
+    int second = sequenceGenerator.getNextSequenceValueForPatron();
+    int third = sequenceGenerator.getNextSequenceValueForPatron();
+
+    // Assert
+    assertEquals(1, first);
+    assertEquals(2, second);
+    assertEquals(3, third);
+    verify(mongoTemplate, times(1))
+        .findAndModify(
+            any(Query.class),
+            any(Update.class),
+            any(FindAndModifyOptions.class),
+            eq(Counter.class));
+  }
+
+  @Test
+  void testGetNextSequenceValue_withBlockLeasing_leasesNextBlockWhenExhausted() {
+    // Arrange
+    ReflectionTestUtils.setField(sequenceGenerator, "blockSize", 2);
+    ReflectionTestUtils.setField(sequenceGenerator, "refillThreshold", 0.0);
+    sequenceGenerator.releaseLeasedBlocks(); // no background refill, leases happen inline
+
+    Counter firstBlock = new Counter();
+    firstBlock.setSequenceValue(2);
+    Counter secondBlock = new Counter();
+    secondBlock.setSequenceValue(4);
+
+    when(mongoTemplate.findAndModify(
+            any(Query.class),
+            any(Update.class),
+            any(FindAndModifyOptions.class),
+            eq(Counter.class)))
+        .thenReturn(firstBlock, secondBlock);
+
+    // Act & Assert
+    assertEquals(1, sequenceGenerator.getNextSequenceValueForLoan());
+    assertEquals(2, sequenceGenerator.getNextSequenceValueForLoan());
+    assertEquals(3, sequenceGenerator.getNextSequenceValueForLoan());
+    assertEquals(4, sequenceGenerator.getNextSequenceValueForLoan());
+  }
 }
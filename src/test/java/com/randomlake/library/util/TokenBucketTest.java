@@ -0,0 +1,25 @@
+package com.randomlake.library.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketTest {
+
+  @Test
+  public void testReserve_BurstUpToRateThenWaits() {
+    TokenBucket bucket = new TokenBucket(2);
+
+    assertEquals(0, bucket.reserve());
+    assertEquals(0, bucket.reserve());
+
+    // The third permit is half a second away at two permits per second
+    long waitNanos = bucket.reserve();
+    assertTrue(waitNanos > 400_000_000L && waitNanos <= 500_000_000L);
+  }
+
+  @Test
+  public void testConstructor_RejectsNonPositiveRate() {
+    assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0));
+  }
+}